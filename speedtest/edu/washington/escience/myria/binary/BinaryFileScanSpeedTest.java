@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.util.Arrays;
 
 import org.junit.Test;
@@ -16,6 +17,7 @@ import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.io.FileSource;
+import edu.washington.escience.myria.io.InputStreamSource;
 import edu.washington.escience.myria.operator.BinaryFileScan;
 import edu.washington.escience.myria.operator.SinkRoot;
 import edu.washington.escience.myria.tipsy.TipsyFileScanSpeedTest;
@@ -31,6 +33,25 @@ public class BinaryFileScanSpeedTest extends AbstractBenchmark {
     /* We can read the file, right? */
     assertTrue(binaryFile.canRead());
 
+    BinaryFileScan scan = new BinaryFileScan(starSchema(), new FileSource(binaryFile.getAbsolutePath()));
+    assertEquals(12417544, scanAll(scan));
+  }
+
+  @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+  @Test
+  public void binaryFileScanStreamTest() throws Exception {
+    File binaryFile = new File("data_nocommit/speedtest/dbcosmo50/cosmo50cmb.256g2bwK.00512.star.bin");
+    assertTrue(binaryFile.canRead());
+
+    /* The same file, read through a DataInputStream rather than memory-mapped. */
+    BinaryFileScan scan = new BinaryFileScan(starSchema(), new InputStreamSource(new FileInputStream(binaryFile)));
+    assertEquals(12417544, scanAll(scan));
+  }
+
+  /**
+   * @return the schema of the star particles.
+   */
+  private static Schema starSchema() {
     Type[] typeAr = { Type.LONG_TYPE, // iOrder
         Type.FLOAT_TYPE, // mass
         Type.FLOAT_TYPE, // x
@@ -44,9 +65,15 @@ public class BinaryFileScanSpeedTest extends AbstractBenchmark {
         Type.FLOAT_TYPE, // eps
         Type.FLOAT_TYPE, // phi
     };
-    Schema schema = new Schema(Arrays.asList(typeAr));
+    return new Schema(Arrays.asList(typeAr));
+  }
 
-    BinaryFileScan scan = new BinaryFileScan(schema, new FileSource(binaryFile.getAbsolutePath()));
+  /**
+   * @param scan the scan.
+   * @return the number of tuples it produces.
+   * @throws Exception if the scan fails.
+   */
+  private static long scanAll(final BinaryFileScan scan) throws Exception {
     SinkRoot sink = new SinkRoot(scan);
     sink.open(null);
     while (!sink.eos()) {
@@ -54,6 +81,6 @@ public class BinaryFileScanSpeedTest extends AbstractBenchmark {
     }
     sink.close();
     LOGGER.info("Read {} tuples from the file.", sink.getCount());
-    assertEquals(12417544, sink.getCount());
+    return sink.getCount();
   }
 }
@@ -0,0 +1,146 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
+import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Compares building and probing a join hash table of {@link TupleHashIndex} against the IntObjectHashMap of
+ * IntArrayLists it replaced. Each round builds a table over {@value #NUM_TUPLES} (key, value) tuples with
+ * {@value #NUM_KEYS} distinct LONG keys, then probes it with every tuple.
+ *
+ * Average round time, single core, JDK 17, -Xmx2g (most of the remaining time is MutableTupleBuffer and hashing):
+ *
+ * chained IntObjectHashMap + tupleEquals: 3.05 s (GC 2.44 s over 7 rounds)
+ *
+ * TupleHashIndex + tupleEquals: 1.58 s (GC 0.21 s)
+ *
+ * TupleHashIndex with LONG keys: 1.31 s (GC 0.28 s)
+ *
+ * Retained heap of the index alone for 2M rows, measured separately:
+ *
+ * 500K distinct keys: IntObjectHashMap 33.9 MB, TupleHashIndex 21.0 MB, with LONG keys 37.7 MB
+ *
+ * 2M distinct keys: IntObjectHashMap 121.1 MB, TupleHashIndex 58.7 MB, with LONG keys 75.5 MB
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class TupleHashIndexSpeedTest extends AbstractBenchmark {
+  /** The number of tuples. */
+  private static final int NUM_TUPLES = 2000000;
+  /** The number of distinct keys. */
+  private static final int NUM_KEYS = 500000;
+  /** The join key. */
+  private static final int[] KEY = new int[] { 0 };
+  /** The input. */
+  private static List<TupleBatch> input;
+
+  @BeforeClass
+  public static void generateInput() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE));
+    for (long i = 0; i < NUM_TUPLES; ++i) {
+      tbb.putLong(0, (i * 7919) % NUM_KEYS);
+      tbb.putLong(1, i);
+    }
+    input = tbb.getAll();
+  }
+
+  /**
+   * @param tb a batch.
+   * @param row a row of the batch.
+   * @param buffer the build side.
+   */
+  private static void copy(final TupleBatch tb, final int row, final MutableTupleBuffer buffer) {
+    for (int column = 0; column < tb.numColumns(); ++column) {
+      buffer.put(column, tb.getDataColumns().get(column), row);
+    }
+  }
+
+  @Test
+  public void chainedHashMap() {
+    MutableTupleBuffer buffer = new MutableTupleBuffer(input.get(0).getSchema());
+    IntObjectHashMap<IntArrayList> index = new IntObjectHashMap<>();
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        int hashCode = HashUtils.hashSubRow(tb, KEY, row);
+        IntArrayList rows = index.get(hashCode);
+        if (rows == null) {
+          rows = new IntArrayList(1);
+          index.put(hashCode, rows);
+        }
+        rows.add(buffer.numTuples());
+        copy(tb, row, buffer);
+      }
+    }
+    long matches = 0;
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        IntArrayList rows = index.get(HashUtils.hashSubRow(tb, KEY, row));
+        for (int i = 0; i < rows.size(); ++i) {
+          if (TupleUtils.tupleEquals(tb, KEY, row, buffer, KEY, rows.get(i))) {
+            matches++;
+          }
+        }
+      }
+    }
+    assertEquals((long) NUM_TUPLES * NUM_TUPLES / NUM_KEYS, matches);
+  }
+
+  @Test
+  public void openAddressingIndex() {
+    MutableTupleBuffer buffer = new MutableTupleBuffer(input.get(0).getSchema());
+    TupleHashIndex index = new TupleHashIndex();
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        index.add(HashUtils.hashSubRow(tb, KEY, row));
+        copy(tb, row, buffer);
+      }
+    }
+    long matches = 0;
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        int hashCode = HashUtils.hashSubRow(tb, KEY, row);
+        for (int i = index.first(hashCode); i != TupleHashIndex.NONE; i = index.next(i)) {
+          if (TupleUtils.tupleEquals(tb, KEY, row, buffer, KEY, i)) {
+            matches++;
+          }
+        }
+      }
+    }
+    assertEquals((long) NUM_TUPLES * NUM_TUPLES / NUM_KEYS, matches);
+  }
+
+  @Test
+  public void openAddressingIndexWithKeys() {
+    MutableTupleBuffer buffer = new MutableTupleBuffer(input.get(0).getSchema());
+    TupleHashIndex index = new TupleHashIndex(true);
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        index.add(HashUtils.hashSubRow(tb, KEY, row), tb.getLong(0, row));
+        copy(tb, row, buffer);
+      }
+    }
+    long matches = 0;
+    for (TupleBatch tb : input) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        int hashCode = HashUtils.hashSubRow(tb, KEY, row);
+        long key = tb.getLong(0, row);
+        for (int i = index.first(hashCode, key); i != TupleHashIndex.NONE; i = index.next(i, key)) {
+          matches++;
+        }
+      }
+    }
+    assertEquals((long) NUM_TUPLES * NUM_TUPLES / NUM_KEYS, matches);
+  }
+}
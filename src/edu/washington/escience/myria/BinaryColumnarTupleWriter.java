@@ -0,0 +1,218 @@
+package edu.washington.escience.myria;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * BinaryColumnarTupleWriter is a {@link TupleWriter} that serializes tuples column by column, so that clients can load
+ * each column straight into an array (e.g., with <code>numpy.frombuffer</code>) without parsing any text.
+ *
+ * The stream starts with a header: the 8 bytes <code>MYRIACOL</code>, a 32 bit version number ({@link #VERSION}), the
+ * 32 bit number of columns, and the name of each column as a 32 bit length followed by that many bytes of UTF-8.
+ *
+ * Each batch of tuples follows as its 32 bit number of tuples, then for each column a one byte type code (see
+ * {@link #typeCode(Type)}), the 32 bit length of the column buffer in bytes, and the column buffer:
+ *
+ * <ul>
+ * <li>BOOLEAN: one byte, 0 or 1, per tuple.</li>
+ * <li>INT and FLOAT: four bytes per tuple.</li>
+ * <li>LONG and DOUBLE: eight bytes per tuple.</li>
+ * <li>DATETIME: eight bytes per tuple, the milliseconds since the epoch.</li>
+ * <li>STRING: <code>numTuples + 1</code> four byte offsets, followed by the UTF-8 bytes of all the strings. String
+ * <code>i</code> spans the bytes from offset <code>i</code> to offset <code>i + 1</code>, counted from the end of the
+ * offsets.</li>
+ * </ul>
+ *
+ * The stream ends with a batch of 0 tuples, or with a batch of -1 tuples if the query failed. All the numbers of the
+ * header and of the batch framing are big-endian, and all the values in the column buffers are little-endian.
+ */
+public class BinaryColumnarTupleWriter implements TupleWriter {
+
+  /** The bytes that start the stream. */
+  private static final byte[] MAGIC = "MYRIACOL".getBytes(StandardCharsets.US_ASCII);
+  /** The version of the format. */
+  public static final int VERSION = 1;
+  /** The number of tuples of the batch that ends a successful stream. */
+  public static final int END_OF_STREAM = 0;
+  /** The number of tuples of the batch that ends a stream after an error. */
+  public static final int ERROR = -1;
+
+  /** The stream to which the data is written. */
+  private final DataOutputStream output;
+  /** Reused to assemble each column buffer. */
+  private ByteBuffer columnBuffer;
+
+  /**
+   * Constructs a {@link BinaryColumnarTupleWriter} object.
+   *
+   * @param out the {@link OutputStream} to which the data will be written.
+   * @throws IOException if there is an IO exception
+   */
+  public BinaryColumnarTupleWriter(final OutputStream out) throws IOException {
+    output = new DataOutputStream(new BufferedOutputStream(out));
+    output.write(MAGIC);
+    output.writeInt(VERSION);
+    columnBuffer = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Override
+  public void writeColumnHeaders(final List<String> columnNames) throws IOException {
+    output.writeInt(columnNames.size());
+    for (String name : columnNames) {
+      final byte[] utf8Bytes = name.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(utf8Bytes.length);
+      output.write(utf8Bytes);
+    }
+  }
+
+  /**
+   * @param type a Myria type.
+   * @return the code that identifies the type in the stream.
+   */
+  public static byte typeCode(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return 0;
+      case INT_TYPE:
+        return 1;
+      case LONG_TYPE:
+        return 2;
+      case FLOAT_TYPE:
+        return 3;
+      case DOUBLE_TYPE:
+        return 4;
+      case DATETIME_TYPE:
+        return 5;
+      case STRING_TYPE:
+        return 6;
+    }
+    throw new IllegalArgumentException("Type " + type + " is not supported");
+  }
+
+  /**
+   * @param capacity the number of bytes needed.
+   * @return the column buffer, cleared and able to hold at least that many bytes.
+   */
+  private ByteBuffer columnBuffer(final int capacity) {
+    if (columnBuffer.capacity() < capacity) {
+      columnBuffer = ByteBuffer.allocate(Math.max(capacity, 2 * columnBuffer.capacity()));
+      columnBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    columnBuffer.clear();
+    return columnBuffer;
+  }
+
+  @Override
+  public void writeTuples(final ReadableTable tuples) throws IOException {
+    final int numTuples = tuples.numTuples();
+    if (numTuples == 0) {
+      /* An empty batch would look like the end of the stream. */
+      return;
+    }
+    final List<Type> columnTypes = tuples.getSchema().getColumnTypes();
+
+    output.writeInt(numTuples);
+    for (int j = 0; j < columnTypes.size(); ++j) {
+      final Type type = columnTypes.get(j);
+      final ReadableColumn column = tuples.asColumn(j);
+      ByteBuffer buffer;
+      switch (type) {
+        case BOOLEAN_TYPE:
+          buffer = columnBuffer(numTuples);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.put((byte) (column.getBoolean(i) ? 1 : 0));
+          }
+          break;
+        case INT_TYPE:
+          buffer = columnBuffer(numTuples * 4);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.putInt(column.getInt(i));
+          }
+          break;
+        case LONG_TYPE:
+          buffer = columnBuffer(numTuples * 8);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.putLong(column.getLong(i));
+          }
+          break;
+        case FLOAT_TYPE:
+          buffer = columnBuffer(numTuples * 4);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.putFloat(column.getFloat(i));
+          }
+          break;
+        case DOUBLE_TYPE:
+          buffer = columnBuffer(numTuples * 8);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.putDouble(column.getDouble(i));
+          }
+          break;
+        case DATETIME_TYPE:
+          buffer = columnBuffer(numTuples * 8);
+          for (int i = 0; i < numTuples; ++i) {
+            buffer.putLong(column.getDateTimeMillis(i));
+          }
+          break;
+        case STRING_TYPE:
+          buffer = stringColumn(column, numTuples);
+          break;
+        default:
+          throw new IllegalArgumentException("Type " + type + " is not supported");
+      }
+      output.writeByte(typeCode(type));
+      output.writeInt(buffer.position());
+      output.write(buffer.array(), 0, buffer.position());
+    }
+  }
+
+  /**
+   * @param column a column of strings.
+   * @param numTuples the number of strings.
+   * @return the column buffer, filled with the offsets and the UTF-8 bytes of the strings.
+   */
+  private ByteBuffer stringColumn(final ReadableColumn column, final int numTuples) {
+    final byte[][] utf8Bytes = new byte[numTuples][];
+    int numBytes = 0;
+    for (int i = 0; i < numTuples; ++i) {
+      utf8Bytes[i] = column.getString(i).getBytes(StandardCharsets.UTF_8);
+      numBytes += utf8Bytes[i].length;
+    }
+    final ByteBuffer buffer = columnBuffer((numTuples + 1) * 4 + numBytes);
+    int offset = 0;
+    buffer.putInt(offset);
+    for (int i = 0; i < numTuples; ++i) {
+      offset += utf8Bytes[i].length;
+      buffer.putInt(offset);
+    }
+    for (int i = 0; i < numTuples; ++i) {
+      buffer.put(utf8Bytes[i]);
+    }
+    return buffer;
+  }
+
+  @Override
+  public void done() throws IOException {
+    output.writeInt(END_OF_STREAM);
+    output.flush();
+    output.close();
+  }
+
+  @Override
+  public void error() throws IOException {
+    try {
+      output.writeInt(ERROR);
+      output.flush();
+    } finally {
+      output.close();
+    }
+  }
+}
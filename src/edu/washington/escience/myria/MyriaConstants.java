@@ -111,6 +111,16 @@ public final class MyriaConstants {
    */
   public static final int OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE = 80;
 
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#NETWORK_BANDWIDTH_MBPS}.
+   */
+  public static final int NETWORK_BANDWIDTH_MBPS_DEFAULT_VALUE = 1000;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#NETWORK_COMPRESSION}.
+   */
+  public static final String NETWORK_COMPRESSION_DEFAULT_VALUE = "none";
+
   /** timeout of returning a tuple batch even not filled. */
   public static final long PUSHING_TB_TIMEOUT = 1000000000;
 
@@ -228,6 +238,22 @@ public final class MyriaConstants {
    */
   public static final String WORKER_STORAGE_DATABASE_SYSTEM_DEFAULT_VALUE = STORAGE_SYSTEM_SQLITE;
 
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#WORKER_STORAGE_SQLITE_JOURNAL_MODE}.
+   */
+  public static final String WORKER_STORAGE_SQLITE_JOURNAL_MODE_DEFAULT_VALUE = "WAL";
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#WORKER_STORAGE_SQLITE_SYNCHRONOUS}. With WAL, NORMAL may lose the
+   * last transactions on a power failure, but does not corrupt the database.
+   */
+  public static final String WORKER_STORAGE_SQLITE_SYNCHRONOUS_DEFAULT_VALUE = "NORMAL";
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#WORKER_STORAGE_SQLITE_CACHE_SIZE}. 16 MB.
+   */
+  public static final int WORKER_STORAGE_SQLITE_CACHE_SIZE_DEFAULT_VALUE = -16 * 1024;
+
   /**
    * The number of bytes that can back up in a {@link java.io.PipedInputStream} before we stop writing tuples and wait
    * for the client to read them. 16 MB.
@@ -239,6 +265,47 @@ public final class MyriaConstants {
    */
   public static final int MAX_ACTIVE_QUERIES = 25;
 
+  /**
+   * The memory a query is assumed to reserve on each worker until the worker reports more, in bytes. 256 MB.
+   */
+  public static final long DEFAULT_QUERY_MEMORY_ESTIMATE_BYTES = 256L * MB;
+
+  /**
+   * The fraction of each worker's maximum heap size that the queries running at once may reserve.
+   */
+  public static final double QUERY_MEMORY_ADMISSION_FRACTION = 0.6;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#QUERY_MEMORY_BUDGET_BYTES}.
+   */
+  public static final long QUERY_MEMORY_BUDGET_BYTES_DEFAULT_VALUE = 0;
+
+  /**
+   * The resource measurement with which a worker reports the bytes of memory reserved by the operators of a subquery.
+   */
+  public static final String MEMORY_RESERVED_MEASUREMENT = "memoryReserved";
+
+  /**
+   * The resource measurement with which a worker reports its maximum heap size in bytes.
+   */
+  public static final String MEMORY_CAPACITY_MEASUREMENT = "memoryCapacity";
+
+  /**
+   * The maximum number of queries whose stored results the master remembers for reuse.
+   */
+  public static final int QUERY_RESULT_CACHE_MAX_ENTRIES = 1000;
+
+  /**
+   * How long the fragments of a subquery may run before a fragment yields its thread to the other fragments waiting
+   * for it, in nanoseconds. 20 ms.
+   */
+  public static final long SUBQUERY_EXECUTION_QUANTUM_NANOS = 20 * 1000 * 1000;
+
+  /**
+   * The shortest time a fragment runs before it yields its thread, in nanoseconds. 1 ms.
+   */
+  public static final long MIN_FRAGMENT_EXECUTION_QUANTUM_NANOS = 1000 * 1000;
+
   /**
    * The relation that stores profiling information about which operators executed when.
    */
@@ -292,6 +359,12 @@ public final class MyriaConstants {
   public static final String[] DEFAULT_JANINO_IMPORTS =
       { "com.google.common.hash.Hashing", "java.nio.charset.Charset" };
 
+  /**
+   * The maximum number of compiled expressions that a process caches, see
+   * {@link edu.washington.escience.myria.expression.evaluate.EvaluatorCache}.
+   */
+  public static final int EVALUATOR_CACHE_SIZE = 1024;
+
   /** Private constructor to disallow building utility class. */
   private MyriaConstants() {
   }
@@ -57,6 +57,40 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String TCP_CONNECTION_TIMEOUT_MILLIS = "tcp.connection.timeout.milliseconds";
 
+  /**
+   * The codec that IPC frames are compressed with before they are sent, one of the
+   * {@link edu.washington.escience.myria.parallel.ipc.CompressionCodec}s. Frames are only compressed on connections
+   * where both ends have compression turned on, and are received whatever the codec of the sender.
+   * */
+  public static final String NETWORK_COMPRESSION = "network.compression";
+
+  /**
+   * The bandwidth of the network in megabits per second. Compression is turned off on connections where compressing
+   * takes longer than sending the saved bytes at this bandwidth.
+   * */
+  public static final String NETWORK_BANDWIDTH_MBPS = "network.bandwidth.mbps";
+
+  /**
+   * The bytes of memory on each worker that the queries running at once may reserve. If 0, they may reserve
+   * {@link MyriaConstants#QUERY_MEMORY_ADMISSION_FRACTION} of the worker's maximum heap size.
+   * */
+  public static final String QUERY_MEMORY_BUDGET_BYTES = "query.memory_budget.bytes";
+
+  /**
+   * The SQLite journal_mode PRAGMA for relations written by workers, e.g., WAL.
+   * */
+  public static final String WORKER_STORAGE_SQLITE_JOURNAL_MODE = "worker.storage.sqlite.journal_mode";
+
+  /**
+   * The SQLite synchronous PRAGMA for connections that write relations. NORMAL only syncs at WAL checkpoints.
+   * */
+  public static final String WORKER_STORAGE_SQLITE_SYNCHRONOUS = "worker.storage.sqlite.synchronous";
+
+  /**
+   * The SQLite cache_size PRAGMA for connections that write relations: pages if positive, KiB if negative.
+   * */
+  public static final String WORKER_STORAGE_SQLITE_CACHE_SIZE = "worker.storage.sqlite.cache_size";
+
   /**
    * .
    * */
@@ -121,6 +155,30 @@ public final class MyriaSystemConfigKeys {
     if (!config.containsKey(WORKER_STORAGE_DATABASE_SYSTEM) || config.get(WORKER_STORAGE_DATABASE_SYSTEM) == null) {
       config.put(WORKER_STORAGE_DATABASE_SYSTEM, MyriaConstants.WORKER_STORAGE_DATABASE_SYSTEM_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(WORKER_STORAGE_SQLITE_JOURNAL_MODE)
+        || config.get(WORKER_STORAGE_SQLITE_JOURNAL_MODE) == null) {
+      config.put(WORKER_STORAGE_SQLITE_JOURNAL_MODE,
+          MyriaConstants.WORKER_STORAGE_SQLITE_JOURNAL_MODE_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(WORKER_STORAGE_SQLITE_SYNCHRONOUS)
+        || config.get(WORKER_STORAGE_SQLITE_SYNCHRONOUS) == null) {
+      config.put(WORKER_STORAGE_SQLITE_SYNCHRONOUS,
+          MyriaConstants.WORKER_STORAGE_SQLITE_SYNCHRONOUS_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(WORKER_STORAGE_SQLITE_CACHE_SIZE)
+        || config.get(WORKER_STORAGE_SQLITE_CACHE_SIZE) == null) {
+      config.put(WORKER_STORAGE_SQLITE_CACHE_SIZE,
+          MyriaConstants.WORKER_STORAGE_SQLITE_CACHE_SIZE_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(NETWORK_COMPRESSION) || config.get(NETWORK_COMPRESSION) == null) {
+      config.put(NETWORK_COMPRESSION, MyriaConstants.NETWORK_COMPRESSION_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(NETWORK_BANDWIDTH_MBPS) || config.get(NETWORK_BANDWIDTH_MBPS) == null) {
+      config.put(NETWORK_BANDWIDTH_MBPS, MyriaConstants.NETWORK_BANDWIDTH_MBPS_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(QUERY_MEMORY_BUDGET_BYTES) || config.get(QUERY_MEMORY_BUDGET_BYTES) == null) {
+      config.put(QUERY_MEMORY_BUDGET_BYTES, MyriaConstants.QUERY_MEMORY_BUDGET_BYTES_DEFAULT_VALUE + "");
+    }
   }
 
   /**
@@ -32,6 +32,9 @@ public final class Schema implements Serializable {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** The estimated bytes of memory taken by a string value, see {@link #estimatedTupleBytes()}. */
+  private static final long ESTIMATED_STRING_BYTES = 48;
+
   /** The regular expression specifying what names are valid. */
   public static final String VALID_NAME_REGEX = "^[a-zA-Z_]\\w*$";
   /** The regular expression matcher for {@link #VALID_NAME_REGEX}. */
@@ -400,6 +403,33 @@ public final class Schema implements Serializable {
     return columnTypes.size();
   }
 
+  /**
+   * @return a rough estimate of the bytes of memory taken by a tuple of this Schema when an operator keeps it.
+   */
+  public long estimatedTupleBytes() {
+    long bytes = 0;
+    for (Type type : columnTypes) {
+      switch (type) {
+        case BOOLEAN_TYPE:
+          bytes += 1;
+          break;
+        case INT_TYPE:
+        case FLOAT_TYPE:
+          bytes += 4;
+          break;
+        case LONG_TYPE:
+        case DOUBLE_TYPE:
+        case DATETIME_TYPE:
+          bytes += 8;
+          break;
+        case STRING_TYPE:
+          bytes += ESTIMATED_STRING_BYTES;
+          break;
+      }
+    }
+    return bytes;
+  }
+
   /**
    * Returns a String describing this descriptor. It should be of the form
    * "columnType[0](columnName[0]), ..., columnType[M](columnName[M])", although the exact format does not matter.
@@ -0,0 +1,141 @@
+package edu.washington.escience.myria;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+
+/**
+ * The order in which the tuples of a relation are stored: by the first column, ties broken by the second column, and
+ * so on, each column ascending or descending.
+ */
+public final class SortOrder implements Serializable {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The columns the tuples are ordered by. */
+  @JsonProperty
+  private final int[] columns;
+  /** True for each column in {@link #columns} that is ordered ascending. */
+  @JsonProperty
+  private final boolean[] ascending;
+
+  /**
+   * Static function to create a SortOrder object.
+   *
+   * @param columns the columns the tuples are ordered by.
+   * @param ascending true for each column that is ordered ascending.
+   * @return a new SortOrder.
+   */
+  @JsonCreator
+  public static SortOrder of(@JsonProperty("columns") final int[] columns,
+      @JsonProperty("ascending") final boolean[] ascending) {
+    return new SortOrder(columns, ascending);
+  }
+
+  /**
+   * @param columns the columns the tuples are ordered by.
+   * @param ascending true for each column that is ordered ascending.
+   */
+  private SortOrder(final int[] columns, final boolean[] ascending) {
+    Objects.requireNonNull(columns, "columns");
+    Objects.requireNonNull(ascending, "ascending");
+    Preconditions.checkArgument(columns.length > 0, "a sort order must have some columns");
+    Preconditions.checkArgument(columns.length == ascending.length, "columns and ascending must have the same length");
+    for (int column : columns) {
+      Preconditions.checkArgument(column >= 0, "sort column %s must be non-negative", column);
+    }
+    this.columns = columns.clone();
+    this.ascending = ascending.clone();
+  }
+
+  /**
+   * @return the number of columns the tuples are ordered by.
+   */
+  public int numColumns() {
+    return columns.length;
+  }
+
+  /**
+   * @return the columns the tuples are ordered by.
+   */
+  public int[] getColumns() {
+    return columns.clone();
+  }
+
+  /**
+   * @return true for each column in {@link #getColumns()} that is ordered ascending.
+   */
+  public boolean[] getAscending() {
+    return ascending.clone();
+  }
+
+  /**
+   * @param index the position of a column in this order.
+   * @return the column at that position.
+   */
+  public int getColumn(final int index) {
+    return columns[index];
+  }
+
+  /**
+   * @param index the position of a column in this order.
+   * @return true if the column at that position is ordered ascending.
+   */
+  public boolean isAscending(final int index) {
+    return ascending[index];
+  }
+
+  /**
+   * Tuples stored in this order are also ordered by any prefix of it, so the index of a relation stored in this order
+   * also serves a scan that asks for such a prefix.
+   *
+   * @param sortColumns the columns a reader wants the tuples ordered by.
+   * @param sortAscending true for each of those columns that should be ordered ascending.
+   * @return true if tuples in this order are ordered as requested.
+   */
+  public boolean satisfies(final int[] sortColumns, final boolean[] sortAscending) {
+    Objects.requireNonNull(sortColumns, "sortColumns");
+    Objects.requireNonNull(sortAscending, "sortAscending");
+    Preconditions.checkArgument(sortColumns.length == sortAscending.length,
+        "sortColumns and sortAscending must have the same length");
+    if (sortColumns.length > columns.length) {
+      return false;
+    }
+    for (int i = 0; i < sortColumns.length; ++i) {
+      if (sortColumns[i] != columns[i] || sortAscending[i] != ascending[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (other == null || !(other instanceof SortOrder)) {
+      return false;
+    }
+    SortOrder o = (SortOrder) other;
+    return Arrays.equals(columns, o.columns) && Arrays.equals(ascending, o.ascending);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Arrays.hashCode(columns), Arrays.hashCode(ascending));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < columns.length; ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append('$').append(columns[i]).append(ascending[i] ? " ASC" : " DESC");
+    }
+    return sb.toString();
+  }
+}
@@ -175,7 +175,7 @@ public final class JdbcAccessMethod extends AccessMethod {
                 statement.setBoolean(col + 1, tupleBatch.getBoolean(col, row));
                 break;
               case DATETIME_TYPE:
-                statement.setTimestamp(col + 1, new Timestamp(tupleBatch.getDateTime(col, row).getMillis()));
+                statement.setTimestamp(col + 1, new Timestamp(tupleBatch.getDateTimeMillis(col, row)));
                 break;
               case DOUBLE_TYPE:
                 statement.setDouble(col + 1, tupleBatch.getDouble(col, row));
@@ -8,12 +8,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteConstants;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteJob;
 import com.almworks.sqlite4java.SQLiteQueue;
@@ -49,6 +51,23 @@ public final class SQLiteAccessMethod extends AccessMethod {
   private SQLiteInfo sqliteInfo;
   /** Flag that identifies the connection type (read-only or not). **/
   private Boolean readOnly;
+  /** How long updates wait for other writers to the same database, in milliseconds. */
+  private static final long WRITE_BUSY_TIMEOUT = 10 * 60 * 1000;
+  /** The names and values of PRAGMAs that {@link #setPragma(String, String)} accepts. */
+  private static final Pattern PRAGMA_TOKEN = Pattern.compile("-?[A-Za-z0-9_]+");
+  /**
+   * The relation that the cached insert statements insert into. The statements live as long as the connection, and are
+   * only used by the queue thread.
+   */
+  private RelationKey insertRelationKey;
+  /** The schema of the tuples that the cached insert statements insert. */
+  private Schema insertSchema;
+  /** The cached statement that inserts one row. */
+  private SQLiteStatement singleRowInsert;
+  /** The cached statement that inserts {@link #rowsPerInsert} rows. */
+  private SQLiteStatement multiRowInsert;
+  /** The number of rows that {@link #multiRowInsert} inserts. */
+  private int rowsPerInsert;
 
   /**
    * The constructor. Creates an object and connects with the database
@@ -98,7 +117,13 @@ public final class SQLiteAccessMethod extends AccessMethod {
         sqliteConnection.openReadonly();
         sqliteConnection.setBusyTimeout(SQLiteAccessMethod.DEFAULT_BUSY_TIMEOUT);
       } else {
-        sqliteQueue = new SQLiteQueue(new File(sqliteInfo.getDatabaseFilename())).start();
+        sqliteQueue = new SQLiteQueue(new File(sqliteInfo.getDatabaseFilename())) {
+          @Override
+          protected void initConnection(final SQLiteConnection connection) throws SQLiteException {
+            /* Writers to the same database take turns, one transaction at a time. */
+            connection.setBusyTimeout(WRITE_BUSY_TIMEOUT);
+          }
+        }.start();
       }
     } catch (final SQLiteException e) {
       LOGGER.error(e.getMessage(), e);
@@ -125,56 +150,29 @@ public final class SQLiteAccessMethod extends AccessMethod {
       sqliteQueue.execute(new SQLiteJob<Object>() {
         @Override
         protected Object job(final SQLiteConnection sqliteConnection) throws DbException {
-          SQLiteStatement statement = null;
           Schema schema = tupleBatch.getSchema();
           try {
-            /* BEGIN TRANSACTION */
-            sqliteConnection.exec("BEGIN TRANSACTION");
-            /* Set up and execute the query */
-            statement = sqliteConnection.prepare(insertStatementFromSchema(schema, relationKey));
-            for (int row = 0; row < tupleBatch.numTuples(); ++row) {
-              for (int col = 0; col < tupleBatch.numColumns(); ++col) {
-                switch (schema.getColumnType(col)) {
-                  case BOOLEAN_TYPE:
-                    /* In SQLite, booleans are integers represented as 0 (false) or 1 (true). */
-                    int colVal = 0;
-                    if (tupleBatch.getBoolean(col, row)) {
-                      colVal = 1;
-                    }
-                    statement.bind(col + 1, colVal);
-                    break;
-                  case DATETIME_TYPE:
-                    statement.bind(col + 1, tupleBatch.getDateTime(col, row).getMillis()); // SQLite long
-                    break;
-                  case DOUBLE_TYPE:
-                    statement.bind(col + 1, tupleBatch.getDouble(col, row));
-                    break;
-                  case FLOAT_TYPE:
-                    statement.bind(col + 1, tupleBatch.getFloat(col, row));
-                    break;
-                  case INT_TYPE:
-                    statement.bind(col + 1, tupleBatch.getInt(col, row));
-                    break;
-                  case LONG_TYPE:
-                    statement.bind(col + 1, tupleBatch.getLong(col, row));
-                    break;
-                  case STRING_TYPE:
-                    statement.bind(col + 1, tupleBatch.getString(col, row));
-                    break;
-                }
-              }
-              statement.step();
-              statement.reset();
+            prepareInsertStatements(sqliteConnection, relationKey, schema);
+            /* BEGIN TRANSACTION. IMMEDIATE takes the write lock now, waiting for other writers if need be. */
+            sqliteConnection.exec("BEGIN IMMEDIATE TRANSACTION");
+            final int numTuples = tupleBatch.numTuples();
+            int row = 0;
+            for (; row + rowsPerInsert <= numTuples; row += rowsPerInsert) {
+              bindRows(multiRowInsert, tupleBatch, row, rowsPerInsert);
+              multiRowInsert.step();
+              multiRowInsert.reset(false);
+            }
+            for (; row < numTuples; ++row) {
+              bindRows(singleRowInsert, tupleBatch, row, 1);
+              singleRowInsert.step();
+              singleRowInsert.reset(false);
             }
             /* COMMIT TRANSACTION */
             sqliteConnection.exec("COMMIT TRANSACTION");
           } catch (final SQLiteException e) {
             LOGGER.error(e.getMessage());
+            rollback(sqliteConnection);
             throw new DbException(e);
-          } finally {
-            if (statement != null && !statement.isDisposed()) {
-              statement.dispose();
-            }
           }
           return null;
         }
@@ -185,6 +183,137 @@ public final class SQLiteAccessMethod extends AccessMethod {
 
   }
 
+  /**
+   * Make sure that {@link #singleRowInsert} and {@link #multiRowInsert} insert into the given relation, preparing them
+   * if they do not. Must be called from the queue thread.
+   * 
+   * @param sqliteConnection the connection of the queue.
+   * @param relationKey the relation to insert into.
+   * @param schema the schema of the inserted tuples.
+   * @throws SQLiteException if there is an error preparing the statements.
+   */
+  private void prepareInsertStatements(final SQLiteConnection sqliteConnection, final RelationKey relationKey,
+      final Schema schema) throws SQLiteException {
+    if (relationKey.equals(insertRelationKey) && schema.equals(insertSchema) && singleRowInsert != null
+        && !singleRowInsert.isDisposed() && !multiRowInsert.isDisposed()) {
+      return;
+    }
+    disposeInsertStatements();
+    /* A statement may neither have too many parameters nor, before SQLite 3.8.8, too many rows of VALUES. */
+    final int maxVariables = sqliteConnection.getLimit(SQLiteConstants.SQLITE_LIMIT_VARIABLE_NUMBER);
+    final int maxRows = sqliteConnection.getLimit(SQLiteConstants.SQLITE_LIMIT_COMPOUND_SELECT);
+    rowsPerInsert = Math.max(1, Math.min(maxRows, maxVariables / Math.max(1, schema.numColumns())));
+    singleRowInsert = sqliteConnection.prepare(insertStatementFromSchema(schema, relationKey, 1));
+    multiRowInsert = sqliteConnection.prepare(insertStatementFromSchema(schema, relationKey, rowsPerInsert));
+    insertRelationKey = relationKey;
+    insertSchema = schema;
+  }
+
+  /**
+   * Dispose the cached insert statements, e.g., before the relation they insert into is changed. Must be called from
+   * the queue thread.
+   */
+  private void disposeInsertStatements() {
+    if (singleRowInsert != null) {
+      singleRowInsert.dispose();
+      singleRowInsert = null;
+    }
+    if (multiRowInsert != null) {
+      multiRowInsert.dispose();
+      multiRowInsert = null;
+    }
+    insertRelationKey = null;
+    insertSchema = null;
+  }
+
+  /**
+   * Roll back the open transaction of the connection, if any, so that the connection can be used again.
+   * 
+   * @param sqliteConnection the connection.
+   */
+  private static void rollback(final SQLiteConnection sqliteConnection) {
+    try {
+      if (!sqliteConnection.getAutoCommit()) {
+        sqliteConnection.exec("ROLLBACK TRANSACTION");
+      }
+    } catch (final SQLiteException e) {
+      LOGGER.error("Error rolling back", e);
+    }
+  }
+
+  /**
+   * Bind consecutive rows of a batch to the parameters of an insert statement, one column at a time.
+   * 
+   * @param statement an insert statement with a group of parameters for each of <code>numRows</code> rows.
+   * @param tupleBatch the batch.
+   * @param firstRow the first row to bind.
+   * @param numRows the number of rows to bind.
+   * @throws SQLiteException if there is an error binding the parameters.
+   */
+  private static void bindRows(final SQLiteStatement statement, final TupleBatch tupleBatch, final int firstRow,
+      final int numRows) throws SQLiteException {
+    final int numColumns = tupleBatch.numColumns();
+    final Schema schema = tupleBatch.getSchema();
+    for (int col = 0; col < numColumns; ++col) {
+      final Column<?> column = tupleBatch.getDataColumns().get(col);
+      /* Parameters are numbered from 1, row-major. */
+      int parameter = col + 1;
+      switch (schema.getColumnType(col)) {
+        case BOOLEAN_TYPE:
+          /* In SQLite, booleans are integers represented as 0 (false) or 1 (true). */
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getBoolean(row) ? 1 : 0);
+          }
+          break;
+        case DATETIME_TYPE:
+          /* SQLite long */
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getDateTimeMillis(row));
+          }
+          break;
+        case DOUBLE_TYPE:
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getDouble(row));
+          }
+          break;
+        case FLOAT_TYPE:
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getFloat(row));
+          }
+          break;
+        case INT_TYPE:
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getInt(row));
+          }
+          break;
+        case LONG_TYPE:
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getLong(row));
+          }
+          break;
+        case STRING_TYPE:
+          for (int row = firstRow; row < firstRow + numRows; ++row, parameter += numColumns) {
+            statement.bind(parameter, column.getString(row));
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Set a PRAGMA on the connection used for updates, e.g., to tune it for bulk loading. Some PRAGMAs, like
+   * <code>synchronous</code> and <code>cache_size</code>, only affect this connection.
+   * 
+   * @param name the name of the PRAGMA.
+   * @param value its value.
+   * @throws DbException if there is an error setting the PRAGMA.
+   */
+  public void setPragma(final String name, final String value) throws DbException {
+    Preconditions.checkArgument(PRAGMA_TOKEN.matcher(name).matches(), "invalid PRAGMA name %s", name);
+    Preconditions.checkArgument(PRAGMA_TOKEN.matcher(value).matches(), "invalid value %s for PRAGMA %s", value, name);
+    execute("PRAGMA " + name + "=" + value + ";");
+  }
+
   /** How many times to try to open a database before we give up. Normal is 2-3, outside is 10 to 20. */
   private static final int MAX_RETRY_ATTEMPTS = 1000;
 
@@ -243,6 +372,8 @@ public final class SQLiteAccessMethod extends AccessMethod {
       sqliteQueue.execute(new SQLiteJob<Object>() {
         @Override
         protected Object job(final SQLiteConnection sqliteConnection) throws DbException {
+          /* DDL may change the relations that the cached statements insert into. */
+          disposeInsertStatements();
           try {
             sqliteConnection.exec(ddlCommand);
           } catch (final SQLiteException e) {
@@ -267,6 +398,11 @@ public final class SQLiteAccessMethod extends AccessMethod {
       try {
         sqliteQueue.stop(true).join();
         sqliteQueue = null;
+        /* disposing the connection disposed the cached statements. */
+        singleRowInsert = null;
+        multiRowInsert = null;
+        insertRelationKey = null;
+        insertSchema = null;
       } catch (InterruptedException e) {
         throw new DbException(e);
       }
@@ -274,14 +410,15 @@ public final class SQLiteAccessMethod extends AccessMethod {
   }
 
   /**
-   * Inserts a TupleBatch into the SQLite database.
+   * Inserts a TupleBatch into the SQLite database. This opens a connection for every call, so operators that insert
+   * many batches should keep a {@link SQLiteAccessMethod} open instead.
    * 
    * @param sqliteInfo SQLite connection information
    * @param relationKey the table to insert into.
    * @param tupleBatch TupleBatch that contains the data to be inserted.
    * @throws DbException if there is an error in the database.
    */
-  public static synchronized void tupleBatchInsert(final SQLiteInfo sqliteInfo, final RelationKey relationKey,
+  public static void tupleBatchInsert(final SQLiteInfo sqliteInfo, final RelationKey relationKey,
       final TupleBatch tupleBatch) throws DbException {
 
     SQLiteAccessMethod sqliteAccessMethod = null;
@@ -323,17 +460,35 @@ public final class SQLiteAccessMethod extends AccessMethod {
 
   @Override
   public String insertStatementFromSchema(final Schema schema, final RelationKey relationKey) {
+    return insertStatementFromSchema(schema, relationKey, 1);
+  }
+
+  /**
+   * @param schema the schema of the inserted tuples.
+   * @param relationKey the relation to insert into.
+   * @param numRows the number of rows that the statement inserts.
+   * @return an INSERT statement with a group of parameters for each of the rows.
+   */
+  private static String insertStatementFromSchema(final Schema schema, final RelationKey relationKey,
+      final int numRows) {
     final StringBuilder sb = new StringBuilder();
     sb.append("INSERT INTO ").append(relationKey.toString(MyriaConstants.STORAGE_SYSTEM_SQLITE)).append(" ([");
     sb.append(StringUtils.join(schema.getColumnNames(), "],["));
-    sb.append("]) VALUES (");
-    for (int i = 0; i < schema.numColumns(); ++i) {
-      if (i > 0) {
+    sb.append("]) VALUES ");
+    for (int row = 0; row < numRows; ++row) {
+      if (row > 0) {
         sb.append(',');
       }
-      sb.append('?');
+      sb.append('(');
+      for (int i = 0; i < schema.numColumns(); ++i) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append('?');
+      }
+      sb.append(')');
     }
-    sb.append(");");
+    sb.append(';');
     return sb.toString();
   }
 
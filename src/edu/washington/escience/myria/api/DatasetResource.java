@@ -36,6 +36,7 @@ import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiResponse;
 import com.wordnik.swagger.annotations.ApiResponses;
 
+import edu.washington.escience.myria.BinaryColumnarTupleWriter;
 import edu.washington.escience.myria.CsvTupleWriter;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.JsonTupleWriter;
@@ -136,14 +137,19 @@ public final class DatasetResource {
     if (cleanFormat.equals("json")) {
       return cleanFormat;
     }
-    throw new MyriaApiException(Status.BAD_REQUEST, "format must be 'csv', 'tsv', or 'json'");
+    /* Binary columnar is legal */
+    if (cleanFormat.equals("binary")) {
+      return cleanFormat;
+    }
+    throw new MyriaApiException(Status.BAD_REQUEST, "format must be 'csv', 'tsv', 'json', or 'binary'");
   }
 
   /**
    * @param userName the user who owns the target relation.
    * @param programName the program to which the target relation belongs.
    * @param relationName the name of the target relation.
-   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
+   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", "json",
+   *          and "binary" (see {@link BinaryColumnarTupleWriter}).
    * @return metadata about the specified relation.
    * @throws DbException if there is an error in the database.
    */
@@ -202,6 +208,18 @@ public final class DatasetResource {
       /* JSON: set application/json. */
       response.type(MyriaApiConstants.JSON_UTF_8);
       writer = new JsonTupleWriter(writerOutput);
+    } else if (validFormat.equals("binary")) {
+      /* Binary columnar: set application/octet-stream, attachment, and filename. */
+      try {
+        writer = new BinaryColumnarTupleWriter(writerOutput);
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      ContentDisposition contentDisposition =
+          ContentDisposition.type("attachment").fileName(relationKey.toString() + ".bin").build();
+
+      response.header("Content-Disposition", contentDisposition);
+      response.type(MediaType.APPLICATION_OCTET_STREAM);
     } else {
       /* Should not be possible to get here. */
       throw new IllegalStateException("format should have been validated by now, and yet we got here");
@@ -216,7 +234,8 @@ public final class DatasetResource {
 
   /**
    * @param numTB the number of {@link TupleBatch}es to download from each worker.
-   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
+   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", "json",
+   *          and "binary" (see {@link BinaryColumnarTupleWriter}).
    * @return metadata about the specified relation.
    * @throws DbException if there is an error in the database.
    */
@@ -270,6 +289,18 @@ public final class DatasetResource {
       /* JSON: set application/json. */
       response.type(MyriaApiConstants.JSON_UTF_8);
       writer = new JsonTupleWriter(writerOutput);
+    } else if (validFormat.equals("binary")) {
+      /* Binary columnar: set application/octet-stream, attachment, and filename. */
+      try {
+        writer = new BinaryColumnarTupleWriter(writerOutput);
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      ContentDisposition contentDisposition =
+          ContentDisposition.type("attachment").fileName("test.bin").build();
+
+      response.header("Content-Disposition", contentDisposition);
+      response.type(MediaType.APPLICATION_OCTET_STREAM);
     } else {
       /* Should not be possible to get here. */
       throw new IllegalStateException("format should have been validated by now, and yet we got here");
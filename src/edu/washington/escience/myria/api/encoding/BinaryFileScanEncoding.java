@@ -1,8 +1,14 @@
 package edu.washington.escience.myria.api.encoding;
 
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.base.MoreObjects;
+
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.io.DataSource;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.operator.BinaryFileScan;
 
 public class BinaryFileScanEncoding extends LeafOperatorEncoding<BinaryFileScan> {
@@ -11,14 +17,37 @@ public class BinaryFileScanEncoding extends LeafOperatorEncoding<BinaryFileScan>
   @Required
   public DataSource source;
   public Boolean isLittleEndian;
+  /** Which split of a local file to read, see {@link BinaryFileScan#setSplit(int, int)}. */
+  public Integer split;
+  /** The number of splits of a local file. */
+  public Integer numSplits;
 
   @Override
   public BinaryFileScan construct(ConstructArgs args) {
+    BinaryFileScan scan;
     if (isLittleEndian == null) {
-      return new BinaryFileScan(schema, source);
+      scan = new BinaryFileScan(schema, source);
     } else {
-      return new BinaryFileScan(schema, source, isLittleEndian);
+      scan = new BinaryFileScan(schema, source, isLittleEndian);
     }
+    if (numSplits != null) {
+      scan.setSplit(MoreObjects.firstNonNull(split, 0), numSplits);
+    }
+    return scan;
   }
 
+  @Override
+  protected void validateExtra() {
+    if (split != null && numSplits == null) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "split requires numSplits");
+    }
+    if (numSplits != null) {
+      if (numSplits <= 0 || split != null && (split < 0 || split >= numSplits)) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "split must be between 0 and numSplits - 1");
+      }
+      if (numSplits > 1 && !(source instanceof FileSource)) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "only local files can be split");
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterBuilder;
+
+/**
+ * Encoding for {@link BloomFilterBuilder}.
+ */
+public class BloomFilterBuilderEncoding extends UnaryOperatorEncoding<BloomFilterBuilder> {
+
+  @Required
+  public int[] argKeyColumns;
+  /** The number of bits of the filter. */
+  public int argNumBits = BloomFilterBuilder.DEFAULT_NUM_BITS;
+  /** The number of bits set for each key. */
+  public int argNumHashes = BloomFilterBuilder.DEFAULT_NUM_HASHES;
+
+  @Override
+  public BloomFilterBuilder construct(final ConstructArgs args) {
+    BloomFilterBuilder builder = new BloomFilterBuilder(null, argKeyColumns);
+    builder.setNumBits(argNumBits);
+    builder.setNumHashes(argNumHashes);
+    return builder;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argKeyColumns.length == 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "a Bloom filter needs some key columns");
+    }
+    if (argNumBits <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "num bits must be positive");
+    }
+    if (argNumHashes <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "num hashes must be positive");
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterBuilder;
+import edu.washington.escience.myria.operator.BloomFilterMerge;
+
+/**
+ * Encoding for {@link BloomFilterMerge}.
+ */
+public class BloomFilterMergeEncoding extends UnaryOperatorEncoding<BloomFilterMerge> {
+
+  /** The number of bits of the filters. */
+  public int argNumBits = BloomFilterBuilder.DEFAULT_NUM_BITS;
+
+  @Override
+  public BloomFilterMerge construct(final ConstructArgs args) {
+    BloomFilterMerge merge = new BloomFilterMerge(null);
+    merge.setNumBits(argNumBits);
+    return merge;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argNumBits <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "num bits must be positive");
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterBuilder;
+import edu.washington.escience.myria.operator.BloomFilterSemiJoin;
+
+/**
+ * Encoding for {@link BloomFilterSemiJoin}. The first child is filtered, the second child produces the filter.
+ */
+public class BloomFilterSemiJoinEncoding extends BinaryOperatorEncoding<BloomFilterSemiJoin> {
+
+  @Required
+  public int[] argKeyColumns;
+  /** The number of bits of the filter. */
+  public int argNumBits = BloomFilterBuilder.DEFAULT_NUM_BITS;
+  /** The number of bits set for each key. */
+  public int argNumHashes = BloomFilterBuilder.DEFAULT_NUM_HASHES;
+
+  @Override
+  public BloomFilterSemiJoin construct(final ConstructArgs args) {
+    BloomFilterSemiJoin semiJoin = new BloomFilterSemiJoin(null, null, argKeyColumns);
+    semiJoin.setNumBits(argNumBits);
+    semiJoin.setNumHashes(argNumHashes);
+    return semiJoin;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argKeyColumns.length == 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "a Bloom filter needs some key columns");
+    }
+    if (argNumBits <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "num bits must be positive");
+    }
+    if (argNumHashes <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "num hashes must be positive");
+    }
+  }
+}
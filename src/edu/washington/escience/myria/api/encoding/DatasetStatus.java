@@ -7,6 +7,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 
 /**
  * Metadata about a dataset that has been loaded into the system.
@@ -22,15 +23,32 @@ public class DatasetStatus {
    * @param queryId The query that created this dataset.
    * @param created When this dataset was created, in ISO8601 format.
    */
+  public DatasetStatus(final RelationKey relationKey, final Schema schema, final long numTuples, final long queryId,
+      final String created) {
+    this(relationKey, schema, numTuples, queryId, created, null);
+  }
+
+  /**
+   * Instantiate a DatasetStatus with the provided values.
+   * 
+   * @param relationKey The {@link RelationKey} identifying the dataset.
+   * @param schema The {@link Schema} of the tuples in the dataset.
+   * @param numTuples The number of tuples in the dataset.
+   * @param queryId The query that created this dataset.
+   * @param created When this dataset was created, in ISO8601 format.
+   * @param sortOrder The order in which each worker stores the tuples of the dataset, or null.
+   */
   @JsonCreator
   public DatasetStatus(@JsonProperty("relationKey") final RelationKey relationKey,
       @JsonProperty("schema") final Schema schema, @JsonProperty("numTuples") final long numTuples,
-      @JsonProperty("queryId") final long queryId, @JsonProperty("created") final String created) {
+      @JsonProperty("queryId") final long queryId, @JsonProperty("created") final String created,
+      @JsonProperty("sortOrder") final SortOrder sortOrder) {
     this.relationKey = relationKey;
     this.schema = schema;
     this.numTuples = numTuples;
     this.queryId = queryId;
     this.created = created;
+    this.sortOrder = sortOrder;
   }
 
   /** The {@link RelationKey} identifying the dataset. */
@@ -48,6 +66,9 @@ public class DatasetStatus {
   /** When this dataset was created, in ISO8601 format. */
   @JsonProperty
   private final String created;
+  /** The order in which each worker stores the tuples of the dataset, or null if they are in no particular order. */
+  @JsonProperty
+  private final SortOrder sortOrder;
   /** The URI of this resource. */
   @JsonProperty
   public URI uri;
@@ -87,6 +108,14 @@ public class DatasetStatus {
     return created;
   }
 
+  /**
+   * @return the order in which each worker stores the tuples of the dataset, or null if they are in no particular
+   *         order. Scans that request a prefix of this order do not sort the tuples.
+   */
+  public SortOrder getSortOrder() {
+    return sortOrder;
+  }
+
   /**
    * Set the URI of this dataset.
    * 
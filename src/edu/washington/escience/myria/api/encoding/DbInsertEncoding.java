@@ -2,11 +2,15 @@ package edu.washington.escience.myria.api.encoding;
 
 import java.util.List;
 
+import javax.ws.rs.core.Response.Status;
+
 import com.google.common.base.MoreObjects;
 
 import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.DbInsert;
 
@@ -27,11 +31,39 @@ public class DbInsertEncoding extends UnaryOperatorEncoding<DbInsert> {
    * database will be used.
    */
   public ConnectionInfo connectionInfo;
+  /** The columns the stored tuples are sorted by, if any. Requires overwriting the dataset. */
+  public int[] argSortColumns;
+  /** True for each sort column that is sorted ascending. */
+  public boolean[] argAscending;
+  /** The maximum number of tuples sorted in memory before a sorted run is spilled to disk. 0 means no limit. */
+  public long argSortMemoryBudget = DbInsert.DEFAULT_SORT_MEMORY_BUDGET;
 
   @Override
   public DbInsert construct(ConstructArgs args) {
     /* default overwrite to {@code false}, so we append. */
     argOverwriteTable = MoreObjects.firstNonNull(argOverwriteTable, Boolean.FALSE);
-    return new DbInsert(null, relationKey, connectionInfo, argOverwriteTable, indexes);
+    DbInsert insert = new DbInsert(null, relationKey, connectionInfo, argOverwriteTable, indexes);
+    if (argSortColumns != null && argSortColumns.length > 0) {
+      insert.setSortOrder(SortOrder.of(argSortColumns, argAscending));
+      insert.setSortMemoryBudget(argSortMemoryBudget);
+    }
+    return insert;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns == null || argSortColumns.length == 0) {
+      return;
+    }
+    if (argAscending == null || argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "sort columns number should be equal to ascending orders number!");
+    }
+    if (argOverwriteTable == null || !argOverwriteTable) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "a sorted dataset must be written with argOverwriteTable");
+    }
+    if (argSortMemoryBudget < 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "sort memory budget must be non-negative");
+    }
   }
 }
\ No newline at end of file
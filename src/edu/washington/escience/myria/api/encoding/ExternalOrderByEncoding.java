@@ -0,0 +1,39 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.ExternalOrderBy;
+
+/**
+ * Encoding for {@link ExternalOrderBy}.
+ */
+public class ExternalOrderByEncoding extends UnaryOperatorEncoding<ExternalOrderBy> {
+
+  @Required
+  public int[] argSortColumns;
+  @Required
+  public boolean[] argAscending;
+  /** The maximum number of tuples sorted in memory before a sorted run is spilled to disk. 0 means no limit. */
+  public long argMemoryBudget = 0;
+
+  @Override
+  public ExternalOrderBy construct(final ConstructArgs args) throws MyriaApiException {
+    ExternalOrderBy order = new ExternalOrderBy(null, argSortColumns, argAscending);
+    order.setMemoryBudget(argMemoryBudget);
+    return order;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "sort columns number should be equal to ascending orders number!");
+    }
+    if (argMemoryBudget < 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "memory budget must be non-negative");
+    }
+  }
+
+}
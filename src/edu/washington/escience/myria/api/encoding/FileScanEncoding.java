@@ -1,8 +1,14 @@
 package edu.washington.escience.myria.api.encoding;
 
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.base.MoreObjects;
+
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.io.DataSource;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.operator.FileScan;
 
 public class FileScanEncoding extends LeafOperatorEncoding<FileScan> {
@@ -14,9 +20,32 @@ public class FileScanEncoding extends LeafOperatorEncoding<FileScan> {
   public Character quote;
   public Character escape;
   public Integer skip;
+  /** Which split of a local file to read, see {@link FileScan#setSplit(int, int)}. */
+  public Integer split;
+  /** The number of splits of a local file. */
+  public Integer numSplits;
 
   @Override
   public FileScan construct(ConstructArgs args) {
-    return new FileScan(source, schema, delimiter, quote, escape, skip);
+    FileScan scan = new FileScan(source, schema, delimiter, quote, escape, skip);
+    if (numSplits != null) {
+      scan.setSplit(MoreObjects.firstNonNull(split, 0), numSplits);
+    }
+    return scan;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (split != null && numSplits == null) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "split requires numSplits");
+    }
+    if (numSplits != null) {
+      if (numSplits <= 0 || split != null && (split < 0 || split >= numSplits)) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "split must be between 0 and numSplits - 1");
+      }
+      if (numSplits > 1 && !(source instanceof FileSource)) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "only local files can be split");
+      }
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.HeavyHitterSketch;
+
+/**
+ * Encoding for {@link HeavyHitterSketch}.
+ */
+public class HeavyHitterSketchEncoding extends UnaryOperatorEncoding<HeavyHitterSketch> {
+
+  @Required
+  public int[] argKeyColumns;
+  /** The maximum number of keys tracked at once. */
+  public int argMaxCounters = HeavyHitterSketch.DEFAULT_MAX_COUNTERS;
+
+  @Override
+  public HeavyHitterSketch construct(final ConstructArgs args) {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(null, argKeyColumns);
+    sketch.setMaxCounters(argMaxCounters);
+    return sketch;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argKeyColumns.length == 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "a key needs some columns");
+    }
+    if (argMaxCounters <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max counters must be positive");
+    }
+  }
+}
@@ -10,9 +10,18 @@ public class MultiGroupByAggregateEncoding extends UnaryOperatorEncoding<MultiGr
   public int[] argGroupFields;
   @Required
   public AggregatorFactory[] aggregators;
+  /** True if the input holds the partial aggregation states produced by a PartialAggregate. */
+  public boolean argMergePartials = false;
 
   @Override
   public MultiGroupByAggregate construct(ConstructArgs args) {
-    return new MultiGroupByAggregate(null, argGroupFields, aggregators);
+    return new MultiGroupByAggregate(null, argGroupFields, argMergePartials, aggregators);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMergePartials) {
+      PartialAggregateEncoding.checkPartialStates(aggregators);
+    }
   }
 }
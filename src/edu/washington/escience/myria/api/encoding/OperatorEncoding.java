@@ -23,6 +23,9 @@ import edu.washington.escience.myria.operator.Operator;
 @JsonSubTypes({
     @Type(name = "Aggregate", value = AggregateEncoding.class), @Type(name = "Apply", value = ApplyEncoding.class),
     @Type(name = "BinaryFileScan", value = BinaryFileScanEncoding.class),
+    @Type(name = "BloomFilterBuilder", value = BloomFilterBuilderEncoding.class),
+    @Type(name = "BloomFilterMerge", value = BloomFilterMergeEncoding.class),
+    @Type(name = "BloomFilterSemiJoin", value = BloomFilterSemiJoinEncoding.class),
     @Type(name = "BroadcastConsumer", value = BroadcastConsumerEncoding.class),
     @Type(name = "BroadcastProducer", value = BroadcastProducerEncoding.class),
     @Type(name = "CollectConsumer", value = CollectConsumerEncoding.class),
@@ -33,7 +36,9 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "Difference", value = DifferenceEncoding.class),
     @Type(name = "DupElim", value = DupElimEncoding.class), @Type(name = "Empty", value = EmptyRelationEncoding.class),
     @Type(name = "EOSController", value = EOSControllerEncoding.class),
+    @Type(name = "ExternalOrderBy", value = ExternalOrderByEncoding.class),
     @Type(name = "FileScan", value = FileScanEncoding.class), @Type(name = "Filter", value = FilterEncoding.class),
+    @Type(name = "HeavyHitterSketch", value = HeavyHitterSketchEncoding.class),
     @Type(name = "HyperShuffleProducer", value = HyperShuffleProducerEncoding.class),
     @Type(name = "HyperShuffleConsumer", value = HyperShuffleConsumerEncoding.class),
     @Type(name = "IDBController", value = IDBControllerEncoding.class),
@@ -46,6 +51,7 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "Merge", value = MergeEncoding.class), @Type(name = "MergeJoin", value = MergeJoinEncoding.class),
     @Type(name = "MultiGroupByAggregate", value = MultiGroupByAggregateEncoding.class),
     @Type(name = "NChiladaFileScan", value = NChiladaFileScanEncoding.class),
+    @Type(name = "PartialAggregate", value = PartialAggregateEncoding.class),
     @Type(name = "RightHashCountingJoin", value = RightHashCountingJoinEncoding.class),
     @Type(name = "RightHashJoin", value = RightHashJoinEncoding.class),
     @Type(name = "SciDBOpaqueScan", value = SciDBOpaqueScanEncoding.class),
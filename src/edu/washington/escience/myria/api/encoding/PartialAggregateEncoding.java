@@ -0,0 +1,56 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
+
+/**
+ * Encoding for {@link PartialAggregate}.
+ */
+public class PartialAggregateEncoding extends UnaryOperatorEncoding<PartialAggregate> {
+
+  @Required
+  public int[] argGroupFields;
+  @Required
+  public AggregatorFactory[] aggregators;
+  /** The maximum number of groups kept in memory. */
+  public int argMaxGroups = PartialAggregate.DEFAULT_MAX_GROUPS;
+  /** The minimum fraction of the tuples that a full hash table must save for the operator to keep grouping. */
+  public double argMinReduction = PartialAggregate.DEFAULT_MIN_REDUCTION;
+
+  @Override
+  public PartialAggregate construct(final ConstructArgs args) {
+    PartialAggregate agg = new PartialAggregate(null, argGroupFields, aggregators);
+    agg.setMaxGroups(argMaxGroups);
+    agg.setMinReduction(argMinReduction);
+    return agg;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMaxGroups <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max groups must be positive");
+    }
+    if (argMinReduction < 0 || argMinReduction > 1) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "min reduction must be between 0 and 1");
+    }
+    checkPartialStates(aggregators);
+  }
+
+  /**
+   * @param aggregators the aggregators of an operator that produces or merges partial aggregation states.
+   * @throws MyriaApiException if an aggregator has no partial state, i.e., it is user-defined.
+   */
+  static void checkPartialStates(final AggregatorFactory[] aggregators) {
+    for (AggregatorFactory factory : aggregators) {
+      if (factory instanceof UserDefinedAggregatorFactory) {
+        throw new MyriaApiException(Status.BAD_REQUEST,
+            "user-defined aggregates cannot be computed from partial states");
+      }
+    }
+  }
+}
@@ -31,6 +31,8 @@ public class QueryEncoding extends MyriaApiEncoding {
   public List<ProfilingMode> profilingMode = ImmutableList.of();
   /** The fault-tolerance mode used in this query, default: none. */
   public FTMode ftMode = FTMode.NONE;
+  /** Whether to reuse the stored results of an identical earlier query, if still valid. Default: false. */
+  public boolean useResultCache = false;
 
   /** The old physical query plan encoding. */
   public List<PlanFragmentEncoding> fragments;
@@ -20,9 +20,14 @@ public class RightHashJoinEncoding extends BinaryOperatorEncoding<RightHashJoin>
   public int[] argSelect1;
   @Required
   public int[] argSelect2;
+  /** The maximum number of right tuples kept in the in-memory hash table before spilling to disk. 0 means no limit. */
+  public long argMemoryBudget = 0;
 
   @Override
   public RightHashJoin construct(ConstructArgs args) {
-    return new RightHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2);
+    RightHashJoin join =
+        new RightHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2);
+    join.setMemoryBudget(argMemoryBudget);
+    return join;
   }
 }
@@ -4,7 +4,9 @@ import java.util.Set;
 
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.HybridHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.util.MyriaArrayUtils;
 import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
@@ -19,10 +21,24 @@ public class ShuffleProducerEncoding extends AbstractProducerEncoding<GenericShu
   @Override
   public GenericShuffleProducer construct(ConstructArgs args) {
     Set<Integer> workerIds = getRealWorkerIds();
-    argPf.setNumPartitions(workerIds.size());
-    GenericShuffleProducer producer =
-        new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
-            .integerSetToIntArray(workerIds), argPf);
+    GenericShuffleProducer producer;
+    if (argPf instanceof HybridHashPartitionFunction) {
+      /* Heavy keys may go to an additional partition that is broadcast to all the workers. */
+      int numPartitions = ((HybridHashPartitionFunction) argPf).numPartitionsForWorkers(workerIds.size());
+      argPf.setNumPartitions(numPartitions);
+      int[][] cellPartition = MyriaArrayUtils.create2DVerticalIndex(numPartitions);
+      if (numPartitions > workerIds.size()) {
+        cellPartition[workerIds.size()] = MyriaArrayUtils.create2DHorizontalIndex(workerIds.size())[0];
+      }
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), cellPartition,
+              MyriaUtils.integerSetToIntArray(workerIds), argPf);
+    } else {
+      argPf.setNumPartitions(workerIds.size());
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
+              .integerSetToIntArray(workerIds), argPf);
+    }
     if (argBufferStateType != null) {
       if (argBufferStateType instanceof KeepMinValueStateEncoding) {
         producer.setBackupBufferAsMin(((KeepMinValueStateEncoding) argBufferStateType).keyColIndices,
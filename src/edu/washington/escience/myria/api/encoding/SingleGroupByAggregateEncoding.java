@@ -10,9 +10,18 @@ public class SingleGroupByAggregateEncoding extends UnaryOperatorEncoding<Single
   public AggregatorFactory[] aggregators;
   @Required
   public int argGroupField;
+  /** True if the input holds the partial aggregation states produced by a PartialAggregate. */
+  public boolean argMergePartials = false;
 
   @Override
   public SingleGroupByAggregate construct(ConstructArgs args) {
-    return new SingleGroupByAggregate(null, argGroupField, aggregators);
+    return new SingleGroupByAggregate(null, argGroupField, argMergePartials, aggregators);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMergePartials) {
+      PartialAggregateEncoding.checkPartialStates(aggregators);
+    }
   }
 }
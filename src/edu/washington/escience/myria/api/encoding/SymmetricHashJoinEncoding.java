@@ -20,6 +20,8 @@ public class SymmetricHashJoinEncoding extends BinaryOperatorEncoding<SymmetricH
   public boolean argSetSemanticsLeft = false;
   public boolean argSetSemanticsRight = false;
   public JoinPullOrder argOrder = JoinPullOrder.ALTER;
+  /** The maximum number of tuples kept in the in-memory hash tables before spilling to disk. 0 means no limit. */
+  public long argMemoryBudget = 0;
 
   @Override
   public SymmetricHashJoin construct(final ConstructArgs args) {
@@ -27,6 +29,7 @@ public class SymmetricHashJoinEncoding extends BinaryOperatorEncoding<SymmetricH
         new SymmetricHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2,
             argSetSemanticsLeft, argSetSemanticsRight);
     join.setPullOrder(argOrder);
+    join.setMemoryBudget(argMemoryBudget);
     return join;
   }
 
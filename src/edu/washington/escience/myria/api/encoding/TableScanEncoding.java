@@ -17,6 +17,10 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
   @Required
   public RelationKey relationKey;
   public Integer storedRelationId;
+  /** The columns the tuples should be ordered by, if any. The sort is cheap if the dataset is stored in this order. */
+  public int[] argSortColumns;
+  /** True for each sort column that should be ordered ascending. */
+  public boolean[] argAscending;
 
   @Override
   public DbQueryScan construct(ConstructArgs args) {
@@ -28,6 +32,20 @@ public class TableScanEncoding extends LeafOperatorEncoding<DbQueryScan> {
       throw new MyriaApiException(Status.INTERNAL_SERVER_ERROR, e);
     }
     Preconditions.checkArgument(schema != null, "Specified relation %s does not exist.", relationKey);
-    return new DbQueryScan(relationKey, schema);
+    DbQueryScan scan;
+    if (argSortColumns != null && argSortColumns.length > 0) {
+      scan = new DbQueryScan(relationKey, schema, argSortColumns, argAscending);
+    } else {
+      scan = new DbQueryScan(relationKey, schema);
+    }
+    return scan;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns != null && (argAscending == null || argSortColumns.length != argAscending.length)) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "sort columns number should be equal to ascending orders number!");
+    }
   }
 }
\ No newline at end of file
@@ -42,6 +42,11 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
     throw new UnsupportedOperationException(getClass().getName());
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return getDateTime(row).getMillis();
+  }
+
   @Override
   public double getDouble(final int row) {
     throw new UnsupportedOperationException(getClass().getName());
@@ -62,6 +67,59 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
     throw new UnsupportedOperationException(getClass().getName());
   }
 
+  /**
+   * Returns the values of this column as an array of at least {@link #size()} ints. Columns that are stored in an int[]
+   * return their storage, which must not be modified; other columns return a copy.
+   *
+   * @return the values of this column.
+   */
+  public int[] getIntArray() {
+    final int[] ret = new int[size()];
+    for (int row = 0; row < ret.length; ++row) {
+      ret[row] = getInt(row);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array of at least {@link #size()} longs, see {@link #getIntArray()}.
+   *
+   * @return the values of this column.
+   */
+  public long[] getLongArray() {
+    final long[] ret = new long[size()];
+    for (int row = 0; row < ret.length; ++row) {
+      ret[row] = getLong(row);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array of at least {@link #size()} floats, see {@link #getIntArray()}.
+   *
+   * @return the values of this column.
+   */
+  public float[] getFloatArray() {
+    final float[] ret = new float[size()];
+    for (int row = 0; row < ret.length; ++row) {
+      ret[row] = getFloat(row);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array of at least {@link #size()} doubles, see {@link #getIntArray()}.
+   *
+   * @return the values of this column.
+   */
+  public double[] getDoubleArray() {
+    final double[] ret = new double[size()];
+    for (int row = 0; row < ret.length; ++row) {
+      ret[row] = getDouble(row);
+    }
+    return ret;
+  }
+
   @Override
   public abstract T getObject(int row);
 
@@ -164,7 +222,7 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
   protected static ColumnMessage defaultDateTimeProto(final Column<?> column) {
     ByteBuffer dataBytes = ByteBuffer.allocate(column.size() * Long.SIZE / Byte.SIZE);
     for (int i = 0; i < column.size(); i++) {
-      dataBytes.putLong(column.getDateTime(i).getMillis());
+      dataBytes.putLong(column.getDateTimeMillis(i));
     }
     dataBytes.flip();
     final DateTimeColumnMessage.Builder inner =
@@ -278,7 +336,8 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
   }
 
   /**
-   * A default implementation to serialize any String column to a proto. Full copy.
+   * A default implementation to serialize any String column to a proto. Full copy. The start and end indices count
+   * the (UTF-16) characters of the decoded data, as they always have, so that older peers read the column correctly.
    * 
    * @param column the column to be serialized.
    * @return a ColumnMessage with a StringColumn member.
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.column;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import com.google.common.base.Preconditions;
 
@@ -8,24 +9,74 @@ import edu.washington.escience.myria.Type;
 
 /**
  * A column of Date values.
- * 
+ *
+ * The values are stored as milliseconds since the epoch, with the time zone shared by all of them, or one time zone
+ * per row if they differ. {@link DateTime} objects, in the ISO chronology, are only created by
+ * {@link #getDateTime(int)}; hashing, comparison, serialization and storage use {@link #getDateTimeMillis(int)}.
  */
 public final class DateTimeColumn extends Column<DateTime> {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1;
-  /** Internal representation of the column data. */
-  private final DateTime[] data;
+  /** Internal representation of the column data, in milliseconds since the epoch. */
+  private final long[] data;
+  /** The time zone of all rows, if {@link #zones} is null. */
+  private final DateTimeZone zone;
+  /** The time zone of each row, or null if all rows are in {@link #zone}. */
+  private final DateTimeZone[] zones;
   /** The number of existing rows in this column. */
   private final int position;
 
   /**
    * Constructs a new column.
-   * 
+   *
+   * @param data the data, in milliseconds since the epoch
+   * @param zone the time zone of all values
+   * @param numData number of tuples.
+   * */
+  public DateTimeColumn(final long[] data, final DateTimeZone zone, final int numData) {
+    this(data, zone, null, numData);
+  }
+
+  /**
+   * Constructs a new column.
+   *
+   * @param data the data, in milliseconds since the epoch
+   * @param zone the time zone of all values, if zones is null
+   * @param zones the time zone of each value, or null
+   * @param numData number of tuples.
+   * */
+  public DateTimeColumn(final long[] data, final DateTimeZone zone, final DateTimeZone[] zones, final int numData) {
+    Preconditions.checkArgument(zones != null || zone != null || numData == 0, "missing time zone");
+    this.data = data;
+    this.zone = zone;
+    this.zones = zones;
+    position = numData;
+  }
+
+  /**
+   * Constructs a new column.
+   *
    * @param data the data
    * @param numData number of tuples.
    * */
   public DateTimeColumn(final DateTime[] data, final int numData) {
-    this.data = data;
+    this.data = new long[numData];
+    DateTimeZone commonZone = numData == 0 ? null : data[0].getZone();
+    DateTimeZone[] rowZones = null;
+    for (int i = 0; i < numData; ++i) {
+      this.data[i] = data[i].getMillis();
+      if (rowZones == null && !data[i].getZone().equals(commonZone)) {
+        rowZones = new DateTimeZone[numData];
+        for (int j = 0; j < i; ++j) {
+          rowZones[j] = commonZone;
+        }
+      }
+      if (rowZones != null) {
+        rowZones[i] = data[i].getZone();
+      }
+    }
+    zone = commonZone;
+    zones = rowZones;
     position = numData;
   }
 
@@ -36,16 +87,48 @@ public final class DateTimeColumn extends Column<DateTime> {
 
   /**
    * Returns the element at the specified row in this column.
-   * 
+   *
    * @param row row of element to return.
    * @return the element at the specified row in this column.
    */
   @Override
   public DateTime getDateTime(final int row) {
+    Preconditions.checkElementIndex(row, position);
+    return new DateTime(data[row], getZone(row));
+  }
+
+  @Override
+  public long getDateTimeMillis(final int row) {
     Preconditions.checkElementIndex(row, position);
     return data[row];
   }
 
+  /**
+   * @param row the row.
+   * @return the time zone of the value in the specified row.
+   */
+  public DateTimeZone getZone(final int row) {
+    if (zones == null) {
+      return zone;
+    }
+    return zones[row];
+  }
+
+  /**
+   * @return true if the values of this column are in different time zones, see {@link #getZone(int)}.
+   */
+  public boolean hasRowZones() {
+    return zones != null;
+  }
+
+  /**
+   * @return the values of this column, in milliseconds since the epoch. This is the storage of the column and must not
+   *         be modified.
+   */
+  public long[] getMillisArray() {
+    return data;
+  }
+
   @Override
   public Type getType() {
     return Type.DATETIME_TYPE;
@@ -64,9 +147,9 @@ public final class DateTimeColumn extends Column<DateTime> {
       if (i > 0) {
         sb.append(", ");
       }
-      sb.append(data[i]);
+      sb.append(getDateTime(i));
     }
     sb.append(']');
     return sb.toString();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package edu.washington.escience.myria.column;
+
+import com.google.common.base.Preconditions;
+import com.gs.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+
+/**
+ * A column of String values with few distinct values, stored as a code per row into a dictionary of the distinct
+ * values. Each distinct value is a single String object shared by all rows that hold it.
+ */
+public final class DictionaryStringColumn extends StringColumn {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The number of rows that are sampled to decide whether it is worth building a dictionary. */
+  private static final int SAMPLE_SIZE = 256;
+  /** A dictionary is only built if the column has at most one distinct value per this many rows. */
+  private static final int MIN_ROWS_PER_VALUE = 4;
+  /** The distinct values. */
+  private final String[] dictionary;
+  /** The index in {@link #dictionary} of the value of each row. */
+  private final int[] codes;
+  /** Number of elements in this column. */
+  private final int numStrings;
+
+  /**
+   * Constructs a new column.
+   *
+   * @param dictionary the distinct values
+   * @param codes the index in the dictionary of the value of each row
+   * @param numStrings number of tuples
+   */
+  public DictionaryStringColumn(final String[] dictionary, final int[] codes, final int numStrings) {
+    this.dictionary = dictionary;
+    this.codes = codes;
+    this.numStrings = numStrings;
+  }
+
+  /**
+   * Dictionary-encode strings, if they have few distinct values.
+   *
+   * @param values the values
+   * @param numStrings number of values
+   * @return a dictionary-encoded column of the values, or null if they have too many distinct values
+   */
+  public static DictionaryStringColumn encode(final String[] values, final int numStrings) {
+    final int maxValues = numStrings / MIN_ROWS_PER_VALUE;
+    if (maxValues == 0) {
+      return null;
+    }
+    /* Most columns have many distinct values, so check a sample before building the whole dictionary. */
+    final int sample = Math.min(SAMPLE_SIZE, numStrings);
+    final ObjectIntHashMap<String> index = new ObjectIntHashMap<>();
+    for (int i = 0; i < sample; ++i) {
+      index.getIfAbsentPut(values[i], index.size());
+    }
+    if (index.size() > sample / MIN_ROWS_PER_VALUE) {
+      return null;
+    }
+
+    final int[] codes = new int[numStrings];
+    for (int i = 0; i < numStrings; ++i) {
+      codes[i] = index.getIfAbsentPut(values[i], index.size());
+      if (index.size() > maxValues) {
+        return null;
+      }
+    }
+    final String[] dictionary = new String[index.size()];
+    for (int i = 0; i < numStrings; ++i) {
+      dictionary[codes[i]] = values[i];
+    }
+    return new DictionaryStringColumn(dictionary, codes, numStrings);
+  }
+
+  @Override
+  public String getString(final int row) {
+    return dictionary[codes[Preconditions.checkElementIndex(row, numStrings)]];
+  }
+
+  @Override
+  public boolean stringEquals(final int row, final StringColumn other, final int otherRow) {
+    if (other instanceof DictionaryStringColumn) {
+      final DictionaryStringColumn that = (DictionaryStringColumn) other;
+      if (that.dictionary == dictionary) {
+        return codes[Preconditions.checkElementIndex(row, numStrings)] == that.codes[Preconditions.checkElementIndex(
+            otherRow, that.numStrings)];
+      }
+    }
+    return super.stringEquals(row, other, otherRow);
+  }
+
+  /**
+   * @return the number of distinct values
+   */
+  public int getDictionarySize() {
+    return dictionary.length;
+  }
+
+  /**
+   * @return the distinct values. This is the storage of the column and must not be modified.
+   */
+  public String[] getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return the index in {@link #getDictionary()} of the value in each row. This is the storage of the column and must
+   *         not be modified.
+   */
+  public int[] getCodes() {
+    return codes;
+  }
+
+  @Override
+  public ColumnMessage serializeToProto() {
+    return defaultStringProto(this);
+  }
+
+  @Override
+  public int size() {
+    return numStrings;
+  }
+}
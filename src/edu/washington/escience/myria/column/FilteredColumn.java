@@ -72,6 +72,11 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
     return inner.getDateTime(convertRow(row));
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return inner.getDateTimeMillis(convertRow(row));
+  }
+
   @Override
   public double getDouble(final int row) {
     return inner.getDouble(convertRow(row));
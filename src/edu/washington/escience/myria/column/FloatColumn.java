@@ -46,6 +46,11 @@ public final class FloatColumn extends Column<Float> {
     return data[row];
   }
 
+  @Override
+  public float[] getFloatArray() {
+    return data;
+  }
+
   @Override
   public Type getType() {
     return Type.FLOAT_TYPE;
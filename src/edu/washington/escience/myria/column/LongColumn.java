@@ -39,6 +39,11 @@ public final class LongColumn extends Column<Long> {
     return data[row];
   }
 
+  @Override
+  public long[] getLongArray() {
+    return data;
+  }
+
   @Override
   public Type getType() {
     return Type.LONG_TYPE;
@@ -45,6 +45,11 @@ public class PrefixColumn<T extends Comparable<?>> extends Column<T> {
     return inner.getDateTime(Preconditions.checkElementIndex(row, numRows));
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return inner.getDateTimeMillis(Preconditions.checkElementIndex(row, numRows));
+  }
+
   @Override
   public double getDouble(final int row) {
     return inner.getDouble(Preconditions.checkElementIndex(row, numRows));
@@ -18,6 +18,25 @@ public abstract class StringColumn extends Column<String> {
   @Override
   public abstract String getString(final int row);
 
+  /**
+   * @param row a row of this column.
+   * @param value a string.
+   * @return true if the value in the given row of this column equals the given string.
+   */
+  public boolean stringEquals(final int row, final String value) {
+    return getString(row).equals(value);
+  }
+
+  /**
+   * @param row a row of this column.
+   * @param other another column.
+   * @param otherRow a row of the other column.
+   * @return true if the value in the given row of this column equals the value in the given row of the other column.
+   */
+  public boolean stringEquals(final int row, final StringColumn other, final int otherRow) {
+    return other.stringEquals(otherRow, getString(row));
+  }
+
   @Override
   public final Type getType() {
     return Type.STRING_TYPE;
@@ -0,0 +1,197 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.ByteString;
+
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.proto.DataProto.StringColumnMessage;
+
+/**
+ * A column of String values stored as UTF-8 in a single byte array. The value in row i is
+ * {@code data[offsets[i]..offsets[i + 1])}. Compared to a {@link StringArrayColumn}, this avoids a String object and a
+ * character array per value, and the column is serialized without re-encoding its values.
+ *
+ * Values are decoded into Strings on every {@link #getString(int)}; equality checks and hashing of columns whose
+ * values are all ASCII work on the bytes directly.
+ */
+public final class Utf8StringColumn extends StringColumn {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The UTF-8 bytes of all values. */
+  private final byte[] data;
+  /** The start of the value in each row, followed by the end of the last value. */
+  private final int[] offsets;
+  /** Number of elements in this column. */
+  private final int numStrings;
+  /** True if all values are ASCII, i.e., every byte is a character. */
+  private final boolean ascii;
+
+  /**
+   * Constructs a new column.
+   *
+   * @param data the UTF-8 bytes of all values
+   * @param offsets the start of the value in each row, followed by the end of the last value
+   * @param numStrings number of tuples
+   */
+  public Utf8StringColumn(final byte[] data, final int[] offsets, final int numStrings) {
+    Preconditions.checkArgument(offsets.length > numStrings, "need %s offsets, got %s", numStrings + 1,
+        offsets.length);
+    this.data = data;
+    this.offsets = offsets;
+    this.numStrings = numStrings;
+    boolean isAscii = true;
+    for (int i = offsets[0]; i < offsets[numStrings] && isAscii; ++i) {
+      isAscii = data[i] >= 0;
+    }
+    ascii = isAscii;
+  }
+
+  /**
+   * Encodes strings to UTF-8.
+   *
+   * @param values the values
+   * @param numStrings number of values
+   * @return a column holding the UTF-8 encoding of the values, or null if a value contains an unpaired surrogate
+   *         character, which UTF-8 cannot represent
+   */
+  public static Utf8StringColumn encode(final String[] values, final int numStrings) {
+    int length = 0;
+    for (int i = 0; i < numStrings; ++i) {
+      length += values[i].length();
+    }
+    byte[] data = new byte[length];
+    final int[] offsets = new int[numStrings + 1];
+    int pos = 0;
+    for (int i = 0; i < numStrings; ++i) {
+      final String s = values[i];
+      offsets[i] = pos;
+      /* The UTF-8 encoding takes at most three bytes per character. */
+      if (data.length - pos < s.length() * 3) {
+        int needed = pos + s.length() * 3;
+        byte[] grown = new byte[Math.max(needed, data.length * 2)];
+        System.arraycopy(data, 0, grown, 0, pos);
+        data = grown;
+      }
+      for (int c = 0; c < s.length(); ++c) {
+        final char ch = s.charAt(c);
+        if (ch < 0x80) {
+          data[pos++] = (byte) ch;
+        } else if (ch < 0x800) {
+          data[pos++] = (byte) (0xC0 | (ch >> 6));
+          data[pos++] = (byte) (0x80 | (ch & 0x3F));
+        } else if (Character.isSurrogate(ch)) {
+          if (!Character.isHighSurrogate(ch) || c + 1 == s.length() || !Character.isLowSurrogate(s.charAt(c + 1))) {
+            return null;
+          }
+          final int cp = Character.toCodePoint(ch, s.charAt(++c));
+          data[pos++] = (byte) (0xF0 | (cp >> 18));
+          data[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          data[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          data[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+          data[pos++] = (byte) (0xE0 | (ch >> 12));
+          data[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+          data[pos++] = (byte) (0x80 | (ch & 0x3F));
+        }
+      }
+    }
+    offsets[numStrings] = pos;
+    return new Utf8StringColumn(data, offsets, numStrings);
+  }
+
+  @Override
+  public String getString(final int row) {
+    Preconditions.checkElementIndex(row, numStrings);
+    final int start = offsets[row];
+    if (ascii) {
+      return new String(data, start, offsets[row + 1] - start, StandardCharsets.ISO_8859_1);
+    }
+    return new String(data, start, offsets[row + 1] - start, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public boolean stringEquals(final int row, final String value) {
+    Preconditions.checkElementIndex(row, numStrings);
+    if (!ascii) {
+      return getString(row).equals(value);
+    }
+    final int start = offsets[row];
+    final int length = offsets[row + 1] - start;
+    if (length != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (data[start + i] != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean stringEquals(final int row, final StringColumn other, final int otherRow) {
+    if (!(other instanceof Utf8StringColumn)) {
+      return super.stringEquals(row, other, otherRow);
+    }
+    Preconditions.checkElementIndex(row, numStrings);
+    final Utf8StringColumn that = (Utf8StringColumn) other;
+    Preconditions.checkElementIndex(otherRow, that.numStrings);
+    final int start = offsets[row];
+    final int length = offsets[row + 1] - start;
+    final int thatStart = that.offsets[otherRow];
+    if (length != that.offsets[otherRow + 1] - thatStart) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (data[start + i] != that.data[thatStart + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if all values are ASCII, i.e., every byte of {@link #getBytes()} is one character
+   */
+  public boolean isAscii() {
+    return ascii;
+  }
+
+  /**
+   * @return the UTF-8 bytes of all values. This is the storage of the column and must not be modified.
+   */
+  public byte[] getBytes() {
+    return data;
+  }
+
+  /**
+   * @return the start of the value in each row in {@link #getBytes()}, followed by the end of the last value. This is
+   *         the storage of the column and must not be modified.
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  @Override
+  public ColumnMessage serializeToProto() {
+    if (!ascii) {
+      /* The proto's indices count characters, which are only bytes if all values are ASCII. */
+      return defaultStringProto(this);
+    }
+    final StringColumnMessage.Builder inner = StringColumnMessage.newBuilder();
+    final int base = offsets[0];
+    for (int i = 0; i < numStrings; i++) {
+      inner.addStartIndices(offsets[i] - base);
+      inner.addEndIndices(offsets[i + 1] - base);
+    }
+    inner.setData(ByteString.copyFrom(data, base, offsets[numStrings] - base));
+    return ColumnMessage.newBuilder().setType(ColumnMessage.Type.STRING).setStringColumn(inner).build();
+  }
+
+  @Override
+  public int size() {
+    return numStrings;
+  }
+}
@@ -43,6 +43,11 @@ public abstract class ColumnBuilder<T extends Comparable<?>> implements Readable
     throw new UnsupportedOperationException(getClass().getName());
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return getDateTime(row).getMillis();
+  }
+
   @Override
   public double getDouble(final int row) {
     throw new UnsupportedOperationException(getClass().getName());
@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.util.Objects;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
@@ -21,15 +22,21 @@ import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
- * A column of Date values.
- * 
+ * A column of Date values, stored as milliseconds since the epoch. See {@link DateTimeColumn}.
+ *
  */
 public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
 
   /**
-   * The internal representation of the data.
+   * The internal representation of the data, in milliseconds since the epoch.
    * */
-  private final DateTime[] data;
+  private final long[] data;
+
+  /** The time zone of all rows, if {@link #zones} is null. Null until the first value is appended. */
+  private DateTimeZone zone;
+
+  /** The time zone of each row, or null as long as all rows are in {@link #zone}. */
+  private DateTimeZone[] zones;
 
   /** Number of elements in this column. */
   private int numDates;
@@ -42,23 +49,28 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
   /** Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements. */
   public DateTimeColumnBuilder() {
     numDates = 0;
-    data = new DateTime[TupleBatch.BATCH_SIZE];
+    data = new long[TupleBatch.BATCH_SIZE];
   }
 
   /**
    * copy.
-   * 
-   * @param numDates the actual num strings in the data
+   *
+   * @param numDates the actual num dates in the data
    * @param data the underlying data
+   * @param zone the time zone of all rows, if zones is null
+   * @param zones the time zone of each row, or null
    * */
-  private DateTimeColumnBuilder(final DateTime[] data, final int numDates) {
+  private DateTimeColumnBuilder(final long[] data, final DateTimeZone zone, final DateTimeZone[] zones,
+      final int numDates) {
     this.numDates = numDates;
     this.data = data;
+    this.zone = zone;
+    this.zones = zones;
   }
 
   /**
-   * Constructs a DateColumn by deserializing the given ColumnMessage.
-   * 
+   * Constructs a DateColumn by deserializing the given ColumnMessage. The values are in the default time zone.
+   *
    * @param message a ColumnMessage containing the contents of this column.
    * @param numTuples num tuples in the column message
    * @return the built column
@@ -68,25 +80,74 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
         "Trying to construct DateColumn from non-DATE ColumnMessage %s", message.getType());
     Preconditions.checkArgument(message.hasDateColumn(), "ColumnMessage is missing DateColumn");
     final DateTimeColumnMessage dateColumn = message.getDateColumn();
-    DateTime[] newData = new DateTime[numTuples];
+    final long[] newData = new long[numTuples];
     LongBuffer data = dateColumn.getData().asReadOnlyByteBuffer().asLongBuffer();
-    for (int i = 0; i < numTuples; i++) {
-      newData[i] = new DateTime(data.get());
-    }
-    return new DateTimeColumnBuilder(newData, numTuples).build();
+    data.get(newData);
+    return new DateTimeColumn(newData, DateTimeZone.getDefault(), numTuples);
   }
 
   @Override
   public DateTimeColumnBuilder appendDateTime(final DateTime value) throws BufferOverflowException {
-    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
     Objects.requireNonNull(value, "value");
+    return appendDateTime(value.getMillis(), value.getZone());
+  }
+
+  /**
+   * Appends a value without materializing it as a {@link DateTime}.
+   *
+   * @param millis the value, in milliseconds since the epoch.
+   * @param valueZone the time zone of the value.
+   * @return this column builder.
+   * @throws BufferOverflowException if the column is already full
+   */
+  public DateTimeColumnBuilder appendDateTime(final long millis, final DateTimeZone valueZone)
+      throws BufferOverflowException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    Objects.requireNonNull(valueZone, "valueZone");
     if (numDates >= TupleBatch.BATCH_SIZE) {
       throw new BufferOverflowException();
     }
-    data[numDates++] = value;
+    data[numDates] = millis;
+    setZone(numDates, valueZone);
+    numDates++;
     return this;
   }
 
+  /**
+   * Appends a value of a {@link DateTimeColumn} without materializing it as a {@link DateTime}.
+   *
+   * @param column the column.
+   * @param row the row of the value in the column.
+   * @return this column builder.
+   * @throws BufferOverflowException if the column is already full
+   */
+  public DateTimeColumnBuilder appendDateTime(final DateTimeColumn column, final int row)
+      throws BufferOverflowException {
+    return appendDateTime(column.getDateTimeMillis(row), column.getZone(row));
+  }
+
+  /**
+   * Records the time zone of a row, switching to one time zone per row when it differs from the others.
+   *
+   * @param row the row.
+   * @param rowZone the time zone of the row.
+   */
+  private void setZone(final int row, final DateTimeZone rowZone) {
+    if (zones == null) {
+      if (zone == null) {
+        zone = rowZone;
+      }
+      if (zone.equals(rowZone)) {
+        return;
+      }
+      zones = new DateTimeZone[data.length];
+      for (int i = 0; i < numDates; ++i) {
+        zones[i] = zone;
+      }
+    }
+    zones[row] = rowZone;
+  }
+
   @Override
   public Type getType() {
     return Type.DATETIME_TYPE;
@@ -96,7 +157,7 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
   public DateTimeColumnBuilder appendFromJdbc(final ResultSet resultSet, final int jdbcIndex) throws SQLException,
       BufferOverflowException {
     Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
-    return appendDateTime(new DateTime(resultSet.getTimestamp(jdbcIndex).getTime()));
+    return appendDateTime(resultSet.getTimestamp(jdbcIndex).getTime(), DateTimeZone.getDefault());
   }
 
   @Override
@@ -104,7 +165,7 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
       throws SQLiteException, BufferOverflowException {
     Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
 
-    return appendDateTime(new DateTime(statement.columnLong(index)));
+    return appendDateTime(statement.columnLong(index), DateTimeZone.getDefault());
   }
 
   @Override
@@ -115,13 +176,13 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
   @Override
   public DateTimeColumn build() {
     built = true;
-    return new DateTimeColumn(data, numDates);
+    return new DateTimeColumn(data, zone, zones, numDates);
   }
 
   @Override
   public DateTimeMutableColumn buildMutable() {
     built = true;
-    return new DateTimeMutableColumn(data, numDates);
+    return new DateTimeMutableColumn(data, zone, zones, numDates);
   }
 
   @Override
@@ -129,7 +190,8 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
     Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
     Preconditions.checkElementIndex(row, numDates);
     Preconditions.checkNotNull(value);
-    data[row] = value;
+    data[row] = value.getMillis();
+    setZone(row, value.getZone());
   }
 
   @Override
@@ -139,6 +201,7 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
     if (numDates + size > data.length) {
       throw new BufferOverflowException();
     }
+    expandZones(numDates + size);
     numDates += size;
     return this;
   }
@@ -146,12 +209,35 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
   @Override
   public DateTimeColumnBuilder expandAll() {
     Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    expandZones(data.length);
     numDates = data.length;
     return this;
   }
 
+  /**
+   * Gives the rows added by expanding the column a time zone, the default one if the column has none yet.
+   *
+   * @param newNumDates the number of rows after expanding.
+   */
+  private void expandZones(final int newNumDates) {
+    if (zone == null) {
+      zone = DateTimeZone.getDefault();
+    }
+    if (zones != null) {
+      for (int i = numDates; i < newNumDates; ++i) {
+        zones[i] = zone;
+      }
+    }
+  }
+
   @Override
   public DateTime getDateTime(final int row) {
+    Preconditions.checkElementIndex(row, numDates);
+    return new DateTime(data[row], zones == null ? zone : zones[row]);
+  }
+
+  @Override
+  public long getDateTimeMillis(final int row) {
     Preconditions.checkElementIndex(row, numDates);
     return data[row];
   }
@@ -170,9 +256,14 @@ public final class DateTimeColumnBuilder extends ColumnBuilder<DateTime> {
 
   @Override
   public DateTimeColumnBuilder forkNewBuilder() {
-    DateTime[] newData = new DateTime[data.length];
+    long[] newData = new long[data.length];
     System.arraycopy(data, 0, newData, 0, numDates);
-    return new DateTimeColumnBuilder(newData, numDates);
+    DateTimeZone[] newZones = null;
+    if (zones != null) {
+      newZones = new DateTimeZone[zones.length];
+      System.arraycopy(zones, 0, newZones, 0, numDates);
+    }
+    return new DateTimeColumnBuilder(newData, zone, newZones, numDates);
   }
 
-}
\ No newline at end of file
+}
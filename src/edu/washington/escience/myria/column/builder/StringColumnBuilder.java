@@ -1,9 +1,9 @@
 package edu.washington.escience.myria.column.builder;
 
 import java.nio.BufferOverflowException;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
 import java.util.Objects;
 
 import com.almworks.sqlite4java.SQLiteException;
@@ -11,8 +11,10 @@ import com.almworks.sqlite4java.SQLiteStatement;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
 import edu.washington.escience.myria.column.StringArrayColumn;
 import edu.washington.escience.myria.column.StringColumn;
+import edu.washington.escience.myria.column.Utf8StringColumn;
 import edu.washington.escience.myria.column.mutable.StringMutableColumn;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
 import edu.washington.escience.myria.proto.DataProto.StringColumnMessage;
@@ -66,16 +68,42 @@ public final class StringColumnBuilder extends ColumnBuilder<String> {
         "Trying to construct StringColumn from non-STRING ColumnMessage %s", message.getType());
     Preconditions.checkArgument(message.hasStringColumn(), "ColumnMessage has type STRING but no StringColumn");
     final StringColumnMessage stringColumn = message.getStringColumn();
-    List<Integer> startIndices = stringColumn.getStartIndicesList();
-    List<Integer> endIndices = stringColumn.getEndIndicesList();
+    final byte[] data = stringColumn.getData().toByteArray();
+    final int[] offsets = new int[numTuples + 1];
+    boolean contiguous = true;
+    for (int i = 0; i < numTuples; i++) {
+      offsets[i] = stringColumn.getStartIndices(i);
+      contiguous &= i == 0 || offsets[i] == stringColumn.getEndIndices(i - 1);
+    }
+    offsets[numTuples] = numTuples == 0 ? 0 : stringColumn.getEndIndices(numTuples - 1);
+    /*
+     * The indices count characters. If the values span all the data and there are as many characters as bytes, every
+     * character is one byte of ASCII, so the indices are also byte offsets and the data can be used without decoding.
+     */
+    if (contiguous && offsets[0] == 0 && offsets[numTuples] == data.length && isAscii(data)) {
+      return new Utf8StringColumn(data, offsets, numTuples);
+    }
+    final String allStrings = new String(data, StandardCharsets.UTF_8);
     String[] newData = new String[numTuples];
-    String allStrings = stringColumn.getData().toStringUtf8();
     for (int i = 0; i < numTuples; i++) {
-      newData[i] = allStrings.substring(startIndices.get(i), endIndices.get(i));
+      newData[i] = allStrings.substring(stringColumn.getStartIndices(i), stringColumn.getEndIndices(i));
     }
     return new StringColumnBuilder(newData, numTuples).build();
   }
 
+  /**
+   * @param data some bytes.
+   * @return true if every byte is an ASCII character.
+   */
+  private static boolean isAscii(final byte[] data) {
+    for (byte b : data) {
+      if (b < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public StringColumnBuilder appendString(final String value) throws BufferOverflowException {
     Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
@@ -111,10 +139,21 @@ public final class StringColumnBuilder extends ColumnBuilder<String> {
     return numStrings;
   }
 
+  /**
+   * Builds the most compact representation of the values: a {@link DictionaryStringColumn} if they have few distinct
+   * values, otherwise a {@link Utf8StringColumn}. Values that UTF-8 cannot represent are kept as Strings.
+   */
   @Override
   public StringColumn build() {
     built = true;
-    return new StringArrayColumn(data, numStrings);
+    StringColumn ret = DictionaryStringColumn.encode(data, numStrings);
+    if (ret == null) {
+      ret = Utf8StringColumn.encode(data, numStrings);
+    }
+    if (ret == null) {
+      ret = new StringArrayColumn(data, numStrings);
+    }
+    return ret;
   }
 
   @Override
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.column.mutable;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import com.google.common.base.Preconditions;
 
@@ -8,25 +9,34 @@ import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.DateTimeColumn;
 
 /**
- * A mutable column of Date values.
- * 
+ * A mutable column of Date values, stored as milliseconds since the epoch. See {@link DateTimeColumn}.
+ *
  */
 public final class DateTimeMutableColumn extends MutableColumn<DateTime> {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
-  /** Internal representation of the column data. */
-  private final DateTime[] data;
+  /** Internal representation of the column data, in milliseconds since the epoch. */
+  private final long[] data;
+  /** The time zone of all rows, if {@link #zones} is null. */
+  private DateTimeZone zone;
+  /** The time zone of each row, or null as long as all rows are in {@link #zone}. */
+  private DateTimeZone[] zones;
   /** The number of existing rows in this column. */
   private final int position;
 
   /**
    * Constructs a new column.
-   * 
-   * @param data the data
+   *
+   * @param data the data, in milliseconds since the epoch
+   * @param zone the time zone of all values, if zones is null
+   * @param zones the time zone of each value, or null
    * @param numData number of tuples.
    * */
-  public DateTimeMutableColumn(final DateTime[] data, final int numData) {
+  public DateTimeMutableColumn(final long[] data, final DateTimeZone zone, final DateTimeZone[] zones,
+      final int numData) {
     this.data = data;
+    this.zone = zone;
+    this.zones = zones;
     position = numData;
   }
 
@@ -38,6 +48,12 @@ public final class DateTimeMutableColumn extends MutableColumn<DateTime> {
 
   @Override
   public DateTime getDateTime(final int row) {
+    Preconditions.checkElementIndex(row, position);
+    return new DateTime(data[row], zones == null ? zone : zones[row]);
+  }
+
+  @Override
+  public long getDateTimeMillis(final int row) {
     Preconditions.checkElementIndex(row, position);
     return data[row];
   }
@@ -60,7 +76,7 @@ public final class DateTimeMutableColumn extends MutableColumn<DateTime> {
       if (i > 0) {
         sb.append(", ");
       }
-      sb.append(data[i]);
+      sb.append(getDateTime(i));
     }
     sb.append(']');
     return sb.toString();
@@ -69,16 +85,30 @@ public final class DateTimeMutableColumn extends MutableColumn<DateTime> {
   @Override
   public void replaceDateTime(final DateTime value, final int row) {
     Preconditions.checkElementIndex(row, size());
-    data[row] = value;
+    data[row] = value.getMillis();
+    final DateTimeZone rowZone = value.getZone();
+    if (zones == null) {
+      if (zone == null) {
+        zone = rowZone;
+      }
+      if (zone.equals(rowZone)) {
+        return;
+      }
+      zones = new DateTimeZone[data.length];
+      for (int i = 0; i < position; ++i) {
+        zones[i] = zone;
+      }
+    }
+    zones[row] = rowZone;
   }
 
   @Override
   public DateTimeColumn toColumn() {
-    return new DateTimeColumn(data.clone(), position);
+    return new DateTimeColumn(data.clone(), zone, zones == null ? null : zones.clone(), position);
   }
 
   @Override
   public DateTimeMutableColumn clone() {
-    return new DateTimeMutableColumn(data.clone(), position);
+    return new DateTimeMutableColumn(data.clone(), zone, zones == null ? null : zones.clone(), position);
   }
-}
\ No newline at end of file
+}
@@ -33,6 +33,11 @@ public abstract class MutableColumn<T extends Comparable<?>> implements Cloneabl
     throw new UnsupportedOperationException(getClass().getName());
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return getDateTime(row).getMillis();
+  }
+
   @Override
   public double getDouble(final int row) {
     throw new UnsupportedOperationException(getClass().getName());
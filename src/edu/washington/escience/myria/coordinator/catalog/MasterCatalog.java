@@ -11,7 +11,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import javax.annotation.Nonnull;
@@ -33,11 +35,14 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Booleans;
+import com.google.common.primitives.Ints;
 
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
 import edu.washington.escience.myria.api.encoding.DatasetStatus;
@@ -130,6 +135,16 @@ public final class MasterCatalog {
   private static final String CREATE_RELATION_SCHEMA_INDEX =
       "CREATE INDEX relation_schema_idx ON relation_schema (\n"
     + "    user_name, program_name, relation_name, col_index);";
+  /** Create the relation_sort_order table, unless a catalog created by an older version is missing it. */
+  private static final String CREATE_RELATION_SORT_ORDER =
+      "CREATE TABLE IF NOT EXISTS relation_sort_order (\n"
+    + "    user_name TEXT NOT NULL,\n"
+    + "    program_name TEXT NOT NULL,\n"
+    + "    relation_name TEXT NOT NULL,\n"
+    + "    sort_index INTEGER NOT NULL,\n"
+    + "    col_index INTEGER NOT NULL,\n"
+    + "    ascending INTEGER NOT NULL,\n"
+    + "    FOREIGN KEY (user_name,program_name,relation_name) REFERENCES relations ON DELETE CASCADE);";
   /** Create the stored_relations table. */
   private static final String CREATE_STORED_RELATIONS =
       "CREATE TABLE stored_relations (\n"
@@ -225,6 +240,7 @@ public final class MasterCatalog {
             sqliteConnection.exec(CREATE_RELATIONS);
             sqliteConnection.exec(CREATE_RELATION_SCHEMA);
             sqliteConnection.exec(CREATE_RELATION_SCHEMA_INDEX);
+            sqliteConnection.exec(CREATE_RELATION_SORT_ORDER);
             sqliteConnection.exec(CREATE_STORED_RELATIONS);
             sqliteConnection.exec(CREATE_STORED_RELATIONS_INDEX);
             sqliteConnection.exec(CREATE_SHARDS);
@@ -291,6 +307,12 @@ public final class MasterCatalog {
   /** SQLite queue confines all SQLite operations to the same thread. */
   private final SQLiteQueue queue;
 
+  /** The version of each relation written since the Catalog was opened, see {@link #getRelationVersion}. */
+  private final ConcurrentHashMap<RelationKey, Long> relationVersions = new ConcurrentHashMap<>();
+
+  /** The last relation version handed out. */
+  private final AtomicLong lastRelationVersion = new AtomicLong(0);
+
   /**
    * Not publicly accessible.
    * 
@@ -309,6 +331,7 @@ public final class MasterCatalog {
           sqliteConnection.exec("BEGIN EXCLUSIVE;");
           sqliteConnection.exec("COMMIT;");
           sqliteConnection.exec(UPDATE_UNKNOWN_STATUS);
+          sqliteConnection.exec(CREATE_RELATION_SORT_ORDER);
           return null;
         }
       }).get();
@@ -439,6 +462,83 @@ public final class MasterCatalog {
     }
   }
 
+  /**
+   * Private helper to replace the order in which the tuples of a relation are stored.
+   *
+   * @param sqliteConnection the connection to the SQLite database.
+   * @param relation the relation.
+   * @param sortOrder the order of its tuples, or null if they are not stored in any particular order.
+   * @throws CatalogException if there is an error in the database.
+   */
+  private static void setRelationSortOrder(@Nonnull final SQLiteConnection sqliteConnection,
+      @Nonnull final RelationKey relation, @Nullable final SortOrder sortOrder) throws CatalogException {
+    try {
+      SQLiteStatement statement =
+          sqliteConnection
+              .prepare("DELETE FROM relation_sort_order WHERE user_name=? AND program_name=? AND relation_name=?;");
+      statement.bind(1, relation.getUserName());
+      statement.bind(2, relation.getProgramName());
+      statement.bind(3, relation.getRelationName());
+      statement.stepThrough();
+      statement.dispose();
+      statement = null;
+      if (sortOrder == null) {
+        return;
+      }
+
+      statement =
+          sqliteConnection.prepare("INSERT INTO relation_sort_order"
+              + "(user_name,program_name,relation_name,sort_index,col_index,ascending) VALUES (?,?,?,?,?,?);");
+      statement.bind(1, relation.getUserName());
+      statement.bind(2, relation.getProgramName());
+      statement.bind(3, relation.getRelationName());
+      for (int i = 0; i < sortOrder.numColumns(); ++i) {
+        statement.bind(4, i);
+        statement.bind(5, sortOrder.getColumn(i));
+        statement.bind(6, sortOrder.isAscending(i) ? 1 : 0);
+        statement.step();
+        statement.reset(false);
+      }
+      statement.dispose();
+      statement = null;
+    } catch (final SQLiteException e) {
+      throw new CatalogException(e);
+    }
+  }
+
+  /**
+   * Private helper to get the order in which the tuples of a relation are stored.
+   *
+   * @param sqliteConnection the connection to the SQLite database.
+   * @param relation the relation.
+   * @return the order of its tuples, or null if they are not stored in any particular order.
+   * @throws CatalogException if there is an error in the database.
+   */
+  private static SortOrder getRelationSortOrder(@Nonnull final SQLiteConnection sqliteConnection,
+      @Nonnull final RelationKey relation) throws CatalogException {
+    try {
+      SQLiteStatement statement =
+          sqliteConnection.prepare("SELECT col_index, ascending FROM relation_sort_order "
+              + "WHERE user_name=? AND program_name=? AND relation_name=? ORDER BY sort_index ASC;");
+      statement.bind(1, relation.getUserName());
+      statement.bind(2, relation.getProgramName());
+      statement.bind(3, relation.getRelationName());
+      List<Integer> columns = new ArrayList<>();
+      List<Boolean> ascending = new ArrayList<>();
+      while (statement.step()) {
+        columns.add(statement.columnInt(0));
+        ascending.add(statement.columnInt(1) != 0);
+      }
+      statement.dispose();
+      if (columns.isEmpty()) {
+        return null;
+      }
+      return SortOrder.of(Ints.toArray(columns), Booleans.toArray(ascending));
+    } catch (final SQLiteException e) {
+      throw new CatalogException(e);
+    }
+  }
+
   /**
    * Private helper to add the metadata for a relation into the Catalog.
    * 
@@ -926,6 +1026,31 @@ public final class MasterCatalog {
     }
   }
 
+  /**
+   * @param relationKey the key of the desired relation.
+   * @return the order in which each worker stores the tuples of the specified relation, or null if they are not stored
+   *         in any particular order or the relation is not found.
+   * @throws CatalogException if there is an error in the catalog.
+   */
+  public SortOrder getSortOrder(@Nonnull final RelationKey relationKey) throws CatalogException {
+    Objects.requireNonNull(relationKey);
+    if (isClosed) {
+      throw new CatalogException("Catalog is closed.");
+    }
+
+    /* Do the work */
+    try {
+      return queue.execute(new SQLiteJob<SortOrder>() {
+        @Override
+        protected SortOrder job(final SQLiteConnection sqliteConnection) throws CatalogException, SQLiteException {
+          return getRelationSortOrder(sqliteConnection, relationKey);
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new CatalogException(e);
+    }
+  }
+
   /**
    * @return A list of datasets in the system.
    * @throws CatalogException if there is an error accessing the desired Schema.
@@ -1074,7 +1199,7 @@ public final class MasterCatalog {
         long queryId = statement.columnLong(4);
         String created = statement.columnString(5);
         result.add(new DatasetStatus(relationKey, getDatasetSchema(connection, relationKey), numTuples, queryId,
-            created));
+            created, getRelationSortOrder(connection, relationKey)));
       }
       statement.dispose();
       return result.build();
@@ -1592,7 +1717,8 @@ public final class MasterCatalog {
             long queryId = statement.columnLong(1);
             String created = statement.columnString(2);
             statement.dispose();
-            return new DatasetStatus(relationKey, schema, numTuples, queryId, created);
+            SortOrder sortOrder = getRelationSortOrder(sqliteConnection, relationKey);
+            return new DatasetStatus(relationKey, schema, numTuples, queryId, created, sortOrder);
           } catch (final SQLiteException e) {
             throw new CatalogException(e);
           }
@@ -1786,6 +1912,10 @@ public final class MasterCatalog {
                 addRelationMetadata(sqliteConnection, relation, schema, -1, subQueryId.getQueryId());
                 addStoredRelation(sqliteConnection, relation, workers, "unknown");
                 LOGGER.debug("SubQuery #{} - adding {} to store shard of {}", subQueryId, workers, relation);
+                setRelationSortOrder(sqliteConnection, relation, meta.getSortOrder());
+              } else {
+                /* Appended tuples are stored after the existing ones, so the relation is no longer sorted. */
+                setRelationSortOrder(sqliteConnection, relation, null);
               }
             }
             sqliteConnection.exec("COMMIT TRANSACTION;");
@@ -1802,7 +1932,28 @@ public final class MasterCatalog {
       }).get();
     } catch (InterruptedException | ExecutionException e) {
       throw new CatalogException(e);
+    } finally {
+      /* The workers have written the relations even if the catalog update failed. */
+      for (RelationKey relation : relationsCreated.keySet()) {
+        relationVersions.put(relation, lastRelationVersion.incrementAndGet());
+      }
+    }
+  }
+
+  /**
+   * The version of a relation changes every time the relation is written (see {@link #updateRelationMetadata}), and
+   * is never reused. Versions are not persistent: every relation has version 0 when the Catalog is opened.
+   * 
+   * @param relation the relation.
+   * @return the current version of the relation.
+   */
+  public long getRelationVersion(@Nonnull final RelationKey relation) {
+    Objects.requireNonNull(relation, "relation");
+    Long version = relationVersions.get(relation);
+    if (version == null) {
+      return 0;
     }
+    return version;
   }
 
   /**
@@ -48,6 +48,10 @@ public class Expression implements Serializable {
    * Variable name of row index.
    */
   public static final String ROW = "row";
+  /**
+   * Variable name prefix of the arrays holding the input columns, followed by the column index.
+   */
+  public static final String COLUMN = "column";
   /**
    * Variable name of state.
    */
@@ -42,11 +42,32 @@ public class VariableExpression extends ZeroaryExpression {
 
   @Override
   public String getJavaString(final ExpressionOperatorParameter parameters) {
+    if (parameters.isBatch() && hasArray(getOutputType(parameters))) {
+      // We generate an access into the array of the column.
+      return new StringBuilder(Expression.COLUMN).append(columnIdx).append('[').append(Expression.ROW).append(']')
+          .toString();
+    }
     // We generate a variable access into the tuple buffer.
     return new StringBuilder(Expression.TB).append(".get").append(getOutputType(parameters).getName()).append(
         "(").append(columnIdx).append(", ").append(Expression.ROW).append(")").toString();
   }
 
+  /**
+   * @param type the type of a column.
+   * @return true if the column is read from an array when the expression is compiled for a whole batch.
+   */
+  public static boolean hasArray(final Type type) {
+    switch (type) {
+      case INT_TYPE:
+      case LONG_TYPE:
+      case FLOAT_TYPE:
+      case DOUBLE_TYPE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * @return the column index of this variable.
    */
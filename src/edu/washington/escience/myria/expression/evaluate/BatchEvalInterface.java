@@ -0,0 +1,22 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * Interface for evaluating a single {@link edu.washington.escience.myria.expression.Expression} on every row of a batch
+ * in one call, see {@link Evaluator#compileForBatches()}.
+ */
+public interface BatchEvalInterface {
+  /**
+   * Evaluates the expression on the first numRows rows of the batch. The values of the INT, LONG, FLOAT and DOUBLE
+   * columns that the expression uses are read from the arrays in columns, the values of other columns from the batch.
+   *
+   * @param tb a tuple batch
+   * @param numRows the number of rows to evaluate
+   * @param columns the array of each column of the batch that is read as an array, null for the other columns
+   * @param result the int[], long[], float[] or double[] that the value of row i is written to at index i, or, for a
+   *          boolean expression, the long[] words of a {@link java.util.BitSet} in which bit i is set if the expression
+   *          is true for row i
+   */
+  void evaluate(final ReadableTable tb, final int numRows, final Object[] columns, final Object result);
+}
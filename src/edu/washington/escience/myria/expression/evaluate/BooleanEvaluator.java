@@ -1,14 +1,11 @@
 package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
-
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IExpressionEvaluator;
+import java.util.BitSet;
 
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
-import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -40,17 +37,9 @@ public class BooleanEvaluator extends Evaluator {
    */
   @Override
   public void compile() throws DbException {
-    try {
-      IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
-
-      se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
-
-      evaluator =
-          (BooleanEvalInterface) se.createFastEvaluator(getJavaExpressionWithAppend(), BooleanEvalInterface.class, new String[] {
-              Expression.TB, Expression.ROW });
-    } catch (Exception e) {
-      throw new DbException("Error when compiling expression " + this, e);
-    }
+    evaluator =
+        EvaluatorCache.getExpressionEvaluator(getJavaExpressionWithAppend(), BooleanEvalInterface.class, new String[] {
+            Expression.TB, Expression.ROW }, null);
   }
 
   /**
@@ -66,4 +55,25 @@ public class BooleanEvaluator extends Evaluator {
         "Call compile first or copy the data if it is the same in the input.");
     return evaluator.evaluate(tb, rowId);
   }
+
+  /**
+   * Evaluates the expression on every row of a batch, in one call if the expression was compiled by
+   * {@link #compileForBatches()}.
+   *
+   * @param tb a tuple batch
+   * @return the rows for which the expression is true
+   * @throws InvocationTargetException exception thrown from janino
+   */
+  public BitSet evalBatch(final TupleBatch tb) throws InvocationTargetException {
+    if (isBatchCompiled()) {
+      return evaluateBatch(tb);
+    }
+    final BitSet bits = new BitSet(tb.numTuples());
+    for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
+      if (eval(tb, rowIdx)) {
+        bits.set(rowIdx);
+      }
+    }
+    return bits;
+  }
 }
@@ -1,14 +1,8 @@
 package edu.washington.escience.myria.expression.evaluate;
 
-import java.lang.reflect.InvocationTargetException;
-
-import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.janino.ExpressionEvaluator;
-
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
-import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.column.ConstantValueColumn;
@@ -25,8 +19,6 @@ import edu.washington.escience.myria.storage.TupleBatch;
  * {@link StatefulApply}.
  */
 public final class ConstantEvaluator extends GenericEvaluator {
-  /** An empty object array passed to Janino as no arguments. */
-  private static final Object[] NO_ARGS = new Object[] {};
   /** The value of this expression. */
   private final Object value;
   /** The type of the value of this expression. */
@@ -52,29 +44,11 @@ public final class ConstantEvaluator extends GenericEvaluator {
       throw new DbException("Error when generating Java expression " + this, e);
     }
 
-    evaluator = new ExpressionEvaluator();
-    evaluator.setParameters(new String[] {}, new Class<?>[] {});
-    evaluator.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
-
-    try {
-      evaluator.setExpressionType(type.toJavaType());
-      evaluator.cook(java);
-      value = evaluator.evaluate(NO_ARGS);
-    } catch (CompileException e) {
-      throw new DbException("Error when compiling expression " + java, e);
-    } catch (InvocationTargetException e) {
-      throw new DbException("Error when evaluating expression " + java, e);
-    }
+    value = EvaluatorCache.evaluateConstant(java, type.toJavaType());
   }
 
   /**
-   * Expression evaluator.
-   */
-  private final ExpressionEvaluator evaluator;
-
-  /**
-   * Creates an {@link ExpressionEvaluator} from the {@link #javaExpression}. This does not really compile the
-   * expression and is thus faster.
+   * The value is computed by the constructor, so there is nothing to compile.
    */
   @Override
   public void compile() {
@@ -82,9 +56,7 @@ public final class ConstantEvaluator extends GenericEvaluator {
   }
 
   /**
-   * Evaluates the {@link #getJavaExpressionWithAppend()} using the {@link #evaluator}.
-   *
-   * @return the result from the evaluation
+   * @return the value of this expression
    */
   public Object eval() {
     return value;
@@ -1,19 +1,35 @@
 package edu.washington.escience.myria.expression.evaluate;
 
+import java.util.BitSet;
+import java.util.LinkedList;
+
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.expression.StateExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
  * Compile and evaluate expressions.
  */
 public abstract class Evaluator {
+  /** logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(Evaluator.class);
+  /** Variable name of the number of rows in the batch evaluator. */
+  private static final String NUM_ROWS = "numRows";
+  /** Variable name of the column arrays in the batch evaluator. */
+  private static final String COLUMNS = "columns";
+  /** Variable name of the typed result in the batch evaluator. */
+  private static final String OUTPUT = "output";
+
   /**
    * The expression to be compiled and evaluated.
    */
@@ -29,6 +45,16 @@ public abstract class Evaluator {
    */
   private final boolean needsState;
 
+  /**
+   * Evaluator for whole batches, null unless compiled by {@link #compileForBatches()}.
+   */
+  private BatchEvalInterface batchEvaluator;
+
+  /**
+   * The input columns that {@link #batchEvaluator} reads as arrays.
+   */
+  private int[] arrayColumns;
+
   /**
    * @param expression the expression to be evaluated
    * @param parameters parameters that are passed to the expression
@@ -133,4 +159,135 @@ public abstract class Evaluator {
   public boolean needsState() {
     return needsState;
   }
+
+  /**
+   * @return true if the expression can be compiled into a loop over whole batches, i.e., it does not use state and
+   *         produces INT, LONG, FLOAT, DOUBLE or BOOLEAN values.
+   */
+  public boolean canEvaluateBatch() {
+    final Type type = getOutputType();
+    return !needsState() && (VariableExpression.hasArray(type) || type == Type.BOOLEAN_TYPE);
+  }
+
+  /**
+   * Compiles the expression for evaluating whole batches at once. If the expression can be evaluated in a loop over a
+   * batch ({@link #canEvaluateBatch()}), a single call evaluates all the rows of a batch, reading the values of
+   * primitive columns directly from their arrays and writing the results into a primitive array or bit set. This avoids
+   * a call through the compiled interface and the boxing column accessors for every row. Otherwise, this falls back to
+   * {@link #compile()}.
+   *
+   * @throws DbException compilation failed
+   */
+  public void compileForBatches() throws DbException {
+    if (!canEvaluateBatch()) {
+      compile();
+      return;
+    }
+
+    final ExpressionOperatorParameter batchParameters = parameters.forBatch();
+    final IntArrayList columns = new IntArrayList();
+    final LinkedList<ExpressionOperator> ops = Lists.newLinkedList();
+    ops.add(getExpression().getRootExpressionOperator());
+    while (!ops.isEmpty()) {
+      final ExpressionOperator op = ops.pop();
+      if (op instanceof VariableExpression) {
+        int column = ((VariableExpression) op).getColumnIdx();
+        if (VariableExpression.hasArray(op.getOutputType(batchParameters)) && !columns.contains(column)) {
+          columns.add(column);
+        }
+      }
+      ops.addAll(op.getChildren());
+    }
+    arrayColumns = columns.toArray();
+
+    final Type type = getOutputType();
+    final String row = Expression.ROW;
+    final String java = getExpression().getJavaExpression(batchParameters);
+    final StringBuilder script = new StringBuilder();
+    /* Boolean results are packed into the words of a bit set, 64 rows at a time. */
+    final String outputArray = type == Type.BOOLEAN_TYPE ? "long[]" : type.toJavaType().getName() + "[]";
+    script.append("final ").append(outputArray).append(' ').append(OUTPUT).append(" = (").append(outputArray).append(
+        ") ").append(Expression.RESULT).append(";\n");
+    for (int column : arrayColumns) {
+      final String array = getInputSchema().getColumnType(column).toJavaType().getName() + "[]";
+      script.append("final ").append(array).append(' ').append(Expression.COLUMN).append(column).append(" = (")
+          .append(array).append(") ").append(COLUMNS).append('[').append(column).append("];\n");
+    }
+    if (type == Type.BOOLEAN_TYPE) {
+      script.append("for (int start = 0; start < ").append(NUM_ROWS).append("; start += 64) {\n");
+      script.append("  final int end = Math.min(start + 64, ").append(NUM_ROWS).append(");\n");
+      script.append("  long word = 0L;\n");
+      script.append("  for (int ").append(row).append(" = start; ").append(row).append(" < end; ++").append(row)
+          .append(") {\n");
+      script.append("    word |= (").append(java).append(" ? 1L : 0L) << ").append(row).append(";\n");
+      script.append("  }\n");
+      script.append("  ").append(OUTPUT).append("[start >>> 6] = word;\n");
+      script.append("}\n");
+    } else {
+      script.append("for (int ").append(row).append(" = 0; ").append(row).append(" < ").append(NUM_ROWS).append(
+          "; ++").append(row).append(") {\n");
+      script.append("  ").append(OUTPUT).append('[').append(row).append("] = ").append(java).append(";\n");
+      script.append("}\n");
+    }
+
+    batchEvaluator =
+        EvaluatorCache.getScriptEvaluator(script.toString(), BatchEvalInterface.class, new String[] {
+            Expression.TB, NUM_ROWS, COLUMNS, Expression.RESULT });
+  }
+
+  /**
+   * @return true if {@link #compileForBatches()} compiled an evaluator for whole batches.
+   */
+  protected boolean isBatchCompiled() {
+    return batchEvaluator != null;
+  }
+
+  /**
+   * Evaluates a boolean expression on all the rows of a batch using the evaluator compiled by
+   * {@link #compileForBatches()}.
+   *
+   * @param tb the tuples to be input to this expression
+   * @return the rows for which the expression is true
+   */
+  protected BitSet evaluateBatch(final TupleBatch tb) {
+    final long[] words = new long[(tb.numTuples() + Long.SIZE - 1) / Long.SIZE];
+    evaluateBatch(tb, words);
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Evaluates the expression on all the rows of a batch using the evaluator compiled by {@link #compileForBatches()}.
+   *
+   * @param tb the tuples to be input to this expression
+   * @param result the array receiving the results, see {@link BatchEvalInterface}
+   */
+  protected void evaluateBatch(final TupleBatch tb, final Object result) {
+    Preconditions.checkState(batchEvaluator != null, "Call compileForBatches first.");
+    final Object[] columns = new Object[tb.numColumns()];
+    for (int column : arrayColumns) {
+      final Column<?> data = tb.getDataColumns().get(column);
+      switch (data.getType()) {
+        case INT_TYPE:
+          columns[column] = data.getIntArray();
+          break;
+        case LONG_TYPE:
+          columns[column] = data.getLongArray();
+          break;
+        case FLOAT_TYPE:
+          columns[column] = data.getFloatArray();
+          break;
+        case DOUBLE_TYPE:
+          columns[column] = data.getDoubleArray();
+          break;
+        default:
+          throw new IllegalStateException("Column " + column + " of type " + data.getType() + " has no array");
+      }
+    }
+    try {
+      batchEvaluator.evaluate(tb, tb.numTuples(), columns, result);
+    } catch (RuntimeException e) {
+      LOGGER.error(getExpression().getJavaExpression(parameters.forBatch()), e);
+      throw e;
+    }
+  }
 }
@@ -0,0 +1,220 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IExpressionEvaluator;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+
+/**
+ * A bounded cache of the evaluators that Janino compiles from generated Java source, shared by all the operators,
+ * fragments and subqueries running in this process. Compiling an expression takes milliseconds, which is a visible
+ * fraction of the time of short queries, and iterative plans compile the same expressions again in every iteration.
+ *
+ * Entries are keyed on the generated source, the interface it implements, and the names of its parameters. The source
+ * already names the accessor of every input and state column it reads (e.g., {@code tb.getLong(2, row)}), so it fully
+ * determines the compiled class and operators over schemas that only differ in column names share an entry. The
+ * compiled evaluators have no fields, so one instance is safely shared by all threads.
+ *
+ * Constant expressions are cached as parameterless {@link IExpressionEvaluator}s, which are evaluated again on every
+ * use.
+ *
+ * The least recently used entries are evicted once the cache holds {@link MyriaConstants#EVALUATOR_CACHE_SIZE}
+ * entries. Hits and misses are counted, see {@link #getStats()}.
+ */
+public final class EvaluatorCache {
+  /** logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(EvaluatorCache.class);
+
+  /** The compiled evaluators. */
+  private static final Cache<Key, Object> CACHE = CacheBuilder.newBuilder().maximumSize(
+      MyriaConstants.EVALUATOR_CACHE_SIZE).recordStats().build();
+
+  /** An empty object array passed to Janino as no arguments. */
+  private static final Object[] NO_ARGS = new Object[] {};
+
+  /** Utility classes have no constructors. */
+  private EvaluatorCache() {
+  }
+
+  /**
+   * The kind of a cache entry.
+   */
+  private enum Kind {
+    /** An {@link IExpressionEvaluator} implementing an interface. */
+    EXPRESSION,
+    /** An {@link IScriptEvaluator} implementing an interface. */
+    SCRIPT,
+    /** An {@link IExpressionEvaluator} without parameters. */
+    CONSTANT
+  }
+
+  /**
+   * The key of a cache entry.
+   */
+  private static final class Key {
+    /** The kind of the entry. */
+    private final Kind kind;
+    /** The generated Java source. */
+    private final String source;
+    /** The interface the evaluator implements, or null for a constant. */
+    private final Class<?> iface;
+    /** The type of the expression, or null for the default. */
+    private final Class<?> type;
+    /** The names of the parameters of the interface method. */
+    private final String[] parameterNames;
+
+    /**
+     * @param kind the kind of the entry.
+     * @param source the generated Java source.
+     * @param iface the interface the evaluator implements, or null for a constant.
+     * @param type the type of the expression, or null for the default.
+     * @param parameterNames the names of the parameters of the interface method.
+     */
+    Key(final Kind kind, final String source, final Class<?> iface, final Class<?> type,
+        final String[] parameterNames) {
+      this.kind = kind;
+      this.source = Objects.requireNonNull(source, "source");
+      this.iface = iface;
+      this.type = type;
+      this.parameterNames = parameterNames;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, source, iface, type, Arrays.hashCode(parameterNames));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return kind == key.kind && source.equals(key.source) && Objects.equals(iface, key.iface)
+          && Objects.equals(type, key.type)
+          && Arrays.equals(parameterNames, key.parameterNames);
+    }
+  }
+
+  /**
+   * @param source the Java expression.
+   * @param iface the interface the evaluator implements. The expression is the body of its only method.
+   * @param parameterNames the names of the parameters of the interface method.
+   * @param expressionType the type of the expression, e.g. {@code Void.TYPE}, or null to use Janino's default.
+   * @param <T> the interface type.
+   * @return a compiled evaluator of the expression.
+   * @throws DbException if the expression does not compile.
+   */
+  public static <T> T getExpressionEvaluator(final String source, final Class<T> iface, final String[] parameterNames,
+      final Class<?> expressionType) throws DbException {
+    Key key = new Key(Kind.EXPRESSION, source, iface, expressionType, parameterNames);
+    return iface.cast(get(key, new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
+        if (expressionType != null) {
+          se.setExpressionType(expressionType);
+        }
+        se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+        return se.createFastEvaluator(source, iface, parameterNames);
+      }
+    }));
+  }
+
+  /**
+   * @param source the Java script.
+   * @param iface the interface the evaluator implements. The script is the body of its only method.
+   * @param parameterNames the names of the parameters of the interface method.
+   * @param <T> the interface type.
+   * @return a compiled evaluator of the script.
+   * @throws DbException if the script does not compile.
+   */
+  public static <T> T getScriptEvaluator(final String source, final Class<T> iface, final String[] parameterNames)
+      throws DbException {
+    Key key = new Key(Kind.SCRIPT, source, iface, null, parameterNames);
+    return iface.cast(get(key, new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+        se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+        return se.createFastEvaluator(source, iface, parameterNames);
+      }
+    }));
+  }
+
+  /**
+   * @param source a Java expression without parameters.
+   * @param type the type of the expression.
+   * @return the value of the expression. The compiled expression is cached, not its value, so an expression such as
+   *         {@code Math.random()} still produces a new value in every call.
+   * @throws DbException if the expression does not compile or its evaluation fails.
+   */
+  public static Object evaluateConstant(final String source, final Class<?> type) throws DbException {
+    Key key = new Key(Kind.CONSTANT, source, null, type, null);
+    IExpressionEvaluator evaluator = (IExpressionEvaluator) get(key, new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
+        se.setParameters(new String[] {}, new Class<?>[] {});
+        se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+        se.setExpressionType(type);
+        se.cook(source);
+        return se;
+      }
+    });
+    try {
+      return evaluator.evaluate(NO_ARGS);
+    } catch (InvocationTargetException e) {
+      throw new DbException("Error when evaluating expression " + source, e);
+    }
+  }
+
+  /**
+   * @param key the key of the entry.
+   * @param loader computes the entry on a miss.
+   * @return the entry.
+   * @throws DbException if the entry cannot be computed.
+   */
+  private static Object get(final Key key, final Callable<Object> loader) throws DbException {
+    try {
+      return CACHE.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      LOGGER.error("Error when compiling expression {}", key.source, e.getCause());
+      throw new DbException("Error when compiling expression: " + key.source, e.getCause());
+    }
+  }
+
+  /**
+   * @return the number of hits, misses and evictions since this process started.
+   */
+  public static CacheStats getStats() {
+    return CACHE.stats();
+  }
+
+  /**
+   * @return the number of entries in the cache.
+   */
+  public static long size() {
+    return CACHE.size();
+  }
+
+  /**
+   * Remove all entries from the cache.
+   */
+  public static void invalidateAll() {
+    CACHE.invalidateAll();
+  }
+}
@@ -12,6 +12,8 @@ public class ExpressionOperatorParameter {
   private final Schema stateSchema;
   /** The id of the worker that is running the expression. */
   private final Integer workerID;
+  /** Whether the expression is compiled into a loop over a whole batch, see {@link #forBatch()}. */
+  private final boolean batch;
 
   /**
    * Simple constructor.
@@ -20,6 +22,7 @@ public class ExpressionOperatorParameter {
     schema = null;
     stateSchema = null;
     workerID = null;
+    batch = false;
   }
 
   /**
@@ -29,6 +32,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     workerID = null;
+    batch = false;
   }
 
   /**
@@ -39,6 +43,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     workerID = null;
+    batch = false;
   }
 
   /**
@@ -49,6 +54,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     this.workerID = workerID;
+    batch = false;
   }
 
   /**
@@ -60,6 +66,36 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     this.workerID = workerID;
+    batch = false;
+  }
+
+  /**
+   * @param schema the input schema
+   * @param stateSchema the schema of the state
+   * @param workerID id of the worker that is running the expression
+   * @param batch whether the expression is compiled into a loop over a whole batch
+   */
+  private ExpressionOperatorParameter(final Schema schema, final Schema stateSchema, final Integer workerID,
+      final boolean batch) {
+    this.schema = schema;
+    this.stateSchema = stateSchema;
+    this.workerID = workerID;
+    this.batch = batch;
+  }
+
+  /**
+   * @return the same parameters for compiling an expression into a loop over a whole batch. In such a loop, the values
+   *         of INT, LONG, FLOAT and DOUBLE input columns are read from arrays instead of through the tuple batch.
+   */
+  public ExpressionOperatorParameter forBatch() {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, true);
+  }
+
+  /**
+   * @return whether the expression is compiled into a loop over a whole batch
+   */
+  public boolean isBatch() {
+    return batch;
   }
 
   /**
@@ -2,16 +2,16 @@ package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
 
-import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IExpressionEvaluator;
-
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
-import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.column.builder.WritableColumn;
@@ -56,26 +56,9 @@ public class GenericEvaluator extends Evaluator {
     Preconditions.checkArgument(needsCompiling() || (getStateSchema() != null),
         "This expression does not need to be compiled.");
 
-    String javaExpression = getJavaExpressionWithAppend();
-    IExpressionEvaluator se;
-    try {
-      se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
-    } catch (Exception e) {
-      LOGGER.error("Could not create expression evaluator", e);
-      throw new DbException("Could not create expression evaluator", e);
-    }
-
-    se.setExpressionType(Void.TYPE);
-    se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
-
-    try {
-      evaluator =
-          (ExpressionEvalInterface) se.createFastEvaluator(javaExpression, ExpressionEvalInterface.class, new String[] {
-              Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
-    } catch (CompileException e) {
-      LOGGER.error("Error when compiling expression {}: {}", javaExpression, e);
-      throw new DbException("Error when compiling expression: " + javaExpression, e);
-    }
+    evaluator =
+        EvaluatorCache.getExpressionEvaluator(getJavaExpressionWithAppend(), ExpressionEvalInterface.class,
+            new String[] { Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE }, Void.TYPE);
   }
 
   /**
@@ -124,6 +107,9 @@ public class GenericEvaluator extends Evaluator {
     }
 
     Type type = getOutputType();
+    if (isBatchCompiled()) {
+      return evaluateBatch(tb, type);
+    }
 
     ColumnBuilder<?> ret = ColumnFactory.allocateColumn(type);
     for (int row = 0; row < tb.numTuples(); ++row) {
@@ -132,4 +118,37 @@ public class GenericEvaluator extends Evaluator {
     }
     return ret.build();
   }
+
+  /**
+   * Evaluate an expression over an entire TupleBatch using the evaluator compiled by {@link #compileForBatches()}.
+   *
+   * @param tb the tuples to be input to this expression
+   * @param type the output type of this expression
+   * @return a column containing the result of evaluating this expression on the entire TupleBatch
+   */
+  private Column<?> evaluateBatch(final TupleBatch tb, final Type type) {
+    final int numTuples = tb.numTuples();
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return new BooleanColumn(evaluateBatch(tb), numTuples);
+      case DOUBLE_TYPE:
+        final double[] doubles = new double[numTuples];
+        evaluateBatch(tb, doubles);
+        return new DoubleColumn(doubles, numTuples);
+      case FLOAT_TYPE:
+        final float[] floats = new float[numTuples];
+        evaluateBatch(tb, floats);
+        return new FloatColumn(floats, numTuples);
+      case INT_TYPE:
+        final int[] ints = new int[numTuples];
+        evaluateBatch(tb, ints);
+        return new IntArrayColumn(ints, numTuples);
+      case LONG_TYPE:
+        final long[] longs = new long[numTuples];
+        evaluateBatch(tb, longs);
+        return new LongColumn(longs, numTuples);
+      default:
+        throw new IllegalStateException("Cannot evaluate batches of type " + type);
+    }
+  }
 }
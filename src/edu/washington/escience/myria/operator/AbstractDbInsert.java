@@ -3,6 +3,13 @@
  */
 package edu.washington.escience.myria.operator;
 
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.accessmethod.AccessMethod;
+import edu.washington.escience.myria.accessmethod.SQLiteAccessMethod;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -20,4 +27,42 @@ public abstract class AbstractDbInsert extends RootOperator implements DbWriter
   public AbstractDbInsert(final Operator child) {
     super(child, TupleBatch.BATCH_SIZE);
   }
+
+  /**
+   * Tune a SQLite connection for bulk loading, using the PRAGMAs in the worker configuration or their defaults.
+   * Connections to other databases are left alone.
+   * 
+   * @param accessMethod the connection that the tuples will be inserted with.
+   * @param execEnvVars the execution environment variables, which hold the worker configuration. May be null.
+   * @throws DbException if there is an error setting a PRAGMA.
+   */
+  protected static void setBulkLoadPragmas(final AccessMethod accessMethod,
+      final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    if (!(accessMethod instanceof SQLiteAccessMethod)) {
+      return;
+    }
+    final SQLiteAccessMethod sqlite = (SQLiteAccessMethod) accessMethod;
+    sqlite.setPragma("journal_mode", getConfiguration(execEnvVars,
+        MyriaSystemConfigKeys.WORKER_STORAGE_SQLITE_JOURNAL_MODE,
+        MyriaConstants.WORKER_STORAGE_SQLITE_JOURNAL_MODE_DEFAULT_VALUE));
+    sqlite.setPragma("synchronous", getConfiguration(execEnvVars,
+        MyriaSystemConfigKeys.WORKER_STORAGE_SQLITE_SYNCHRONOUS,
+        MyriaConstants.WORKER_STORAGE_SQLITE_SYNCHRONOUS_DEFAULT_VALUE));
+    sqlite.setPragma("cache_size", getConfiguration(execEnvVars, MyriaSystemConfigKeys.WORKER_STORAGE_SQLITE_CACHE_SIZE,
+        MyriaConstants.WORKER_STORAGE_SQLITE_CACHE_SIZE_DEFAULT_VALUE + ""));
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables. May be null.
+   * @param key a configuration key.
+   * @param defaultValue the value if the key is not set.
+   * @return the value of the key.
+   */
+  private static String getConfiguration(final ImmutableMap<String, Object> execEnvVars, final String key,
+      final String defaultValue) {
+    if (execEnvVars == null || execEnvVars.get(key) == null) {
+      return defaultValue;
+    }
+    return execEnvVars.get(key).toString();
+  }
 }
@@ -106,7 +106,7 @@ public class Apply extends UnaryOperator {
         evaluator = new GenericEvaluator(expr, parameters);
       }
       if (evaluator.needsCompiling()) {
-        evaluator.compile();
+        evaluator.compileForBatches();
       }
       Preconditions.checkArgument(!evaluator.needsState());
       emitEvaluators.add(evaluator);
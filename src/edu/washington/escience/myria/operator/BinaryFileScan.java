@@ -7,20 +7,40 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.LittleEndianDataInputStream;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
 import edu.washington.escience.myria.io.DataSource;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 
 /**
  * Reads data from binary file. This class is written base on the code from FileScan.java
  * 
+ * Local files ({@link FileSource}) are memory-mapped: since every record has the same width, the position of each value
+ * is computed from the schema, and each batch is built by copying whole columns straight into primitive arrays. The
+ * records of a local file can also be divided into ranges with {@link #setSplit(int, int)}, so that several scans,
+ * e.g., in different fragments of the same worker, read one file in parallel.
+ * 
  * @author leelee
  * 
  */
@@ -39,6 +59,31 @@ public class BinaryFileScan extends LeafOperator {
   private final boolean isLittleEndian;
   /** Data input to read data from the bin file. */
   protected transient DataInput dataInput;
+  /** Which split of the records of the file this operator reads. */
+  private int split = 0;
+  /** The number of splits of the file. */
+  private int numSplits = 1;
+  /** The mapped file, when it is read without {@link #dataInput}. */
+  private transient FileChannel channel;
+  /** The mapped window of the file. */
+  private transient ByteBuffer window;
+  /** The index in the file of the first record of {@link #window}. */
+  private transient long windowFirstRecord;
+  /** The number of records in {@link #window}. */
+  private transient int windowRecords;
+  /** The index in the file of the next record to read. */
+  private transient long nextRecord;
+  /** One past the index in the file of the last record to read. */
+  private transient long endRecord;
+  /** True if the file ends with part of a record after {@link #endRecord}. */
+  private transient boolean partialRecord;
+  /** The width of a record, in bytes. */
+  private transient int recordWidth;
+  /** The position of each column in a record, in bytes. */
+  private transient int[] columnOffsets;
+
+  /** The largest window of the file that is mapped at once, in bytes. */
+  private static final int MAX_WINDOW_SIZE = 1 << 30;
 
   /**
    * Construct a new BinaryFileScan object that reads the given binary file and create tuples from the file data that
@@ -65,8 +110,33 @@ public class BinaryFileScan extends LeafOperator {
     this(schema, source, false);
   }
 
+  /**
+   * Read only one of several ranges of records of equal size of the file. The file must be a local file.
+   * 
+   * @param split which split of the file to read, from 0 to <code>numSplits - 1</code>.
+   * @param numSplits the number of splits of the file.
+   */
+  public final void setSplit(final int split, final int numSplits) {
+    Preconditions.checkArgument(numSplits > 0, "numSplits must be positive");
+    Preconditions.checkArgument(split >= 0 && split < numSplits, "split must be between 0 and numSplits - 1");
+    Preconditions.checkArgument(numSplits == 1 || source instanceof FileSource, "only local files can be split");
+    this.split = split;
+    this.numSplits = numSplits;
+  }
+
+  /**
+   * @return true if the file is read through {@link #dataInput}, false if it is memory-mapped. Subclasses that read
+   *         {@link #dataInput} themselves must return true.
+   */
+  protected boolean readsDataInput() {
+    return !(source instanceof FileSource);
+  }
+
   @Override
   protected TupleBatch fetchNextReady() throws DbException {
+    if (channel != null) {
+      return readMapped();
+    }
     boolean building = false;
     try {
       while (buffer.numTuples() < TupleBatch.BATCH_SIZE) {
@@ -108,16 +178,179 @@ public class BinaryFileScan extends LeafOperator {
     return tb;
   }
 
+  /**
+   * Build the next batch from the mapped file, one column at a time.
+   * 
+   * @return the batch, or null if the split has been read.
+   * @throws DbException if the file cannot be read.
+   */
+  private TupleBatch readMapped() throws DbException {
+    if (nextRecord == endRecord) {
+      if (partialRecord) {
+        throw new DbException("Ran out of binary data in the middle of a row");
+      }
+      return null;
+    }
+    try {
+      if (nextRecord == windowFirstRecord + windowRecords) {
+        mapWindow(nextRecord);
+      }
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    final int firstRow = (int) (nextRecord - windowFirstRecord);
+    final int numRows = Math.min(TupleBatch.BATCH_SIZE, windowRecords - firstRow);
+    final int start = firstRow * recordWidth;
+    /* Only a single column is stored contiguously, and can be copied in bulk. */
+    final boolean dense = schema.numColumns() == 1;
+    final List<Column<?>> columns = new ArrayList<>(schema.numColumns());
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      final int offset = start + columnOffsets[column];
+      switch (schema.getColumnType(column)) {
+        case DOUBLE_TYPE: {
+          final double[] data = new double[numRows];
+          if (dense) {
+            viewAt(offset).asDoubleBuffer().get(data);
+          } else {
+            for (int row = 0, pos = offset; row < numRows; ++row, pos += recordWidth) {
+              data[row] = window.getDouble(pos);
+            }
+          }
+          columns.add(new DoubleColumn(data, numRows));
+          break;
+        }
+        case FLOAT_TYPE: {
+          final float[] data = new float[numRows];
+          if (dense) {
+            viewAt(offset).asFloatBuffer().get(data);
+          } else {
+            for (int row = 0, pos = offset; row < numRows; ++row, pos += recordWidth) {
+              data[row] = window.getFloat(pos);
+            }
+          }
+          columns.add(new FloatColumn(data, numRows));
+          break;
+        }
+        case INT_TYPE: {
+          final int[] data = new int[numRows];
+          if (dense) {
+            viewAt(offset).asIntBuffer().get(data);
+          } else {
+            for (int row = 0, pos = offset; row < numRows; ++row, pos += recordWidth) {
+              data[row] = window.getInt(pos);
+            }
+          }
+          columns.add(new IntArrayColumn(data, numRows));
+          break;
+        }
+        case LONG_TYPE: {
+          final long[] data = new long[numRows];
+          if (dense) {
+            viewAt(offset).asLongBuffer().get(data);
+          } else {
+            for (int row = 0, pos = offset; row < numRows; ++row, pos += recordWidth) {
+              data[row] = window.getLong(pos);
+            }
+          }
+          columns.add(new LongColumn(data, numRows));
+          break;
+        }
+        default:
+          throw new UnsupportedOperationException(
+              "BinaryFileScan only support reading fixed width type from the binary file.");
+      }
+    }
+    nextRecord += numRows;
+    return new TupleBatch(schema, columns, numRows);
+  }
+
+  /**
+   * @param offset a position in {@link #window}.
+   * @return a buffer over {@link #window}, with the same byte order, starting at that position.
+   */
+  private ByteBuffer viewAt(final int offset) {
+    final ByteBuffer view = window.duplicate().order(window.order());
+    view.position(offset);
+    return view;
+  }
+
+  /**
+   * Map the window of the file that starts at a record.
+   * 
+   * @param firstRecord the index of the record.
+   * @throws IOException if the file cannot be mapped.
+   */
+  private void mapWindow(final long firstRecord) throws IOException {
+    final long maxRecords = Math.max(1, MAX_WINDOW_SIZE / recordWidth);
+    windowFirstRecord = firstRecord;
+    windowRecords = (int) Math.min(maxRecords, endRecord - firstRecord);
+    final MappedByteBuffer mapped =
+        channel.map(FileChannel.MapMode.READ_ONLY, firstRecord * recordWidth, (long) windowRecords * recordWidth);
+    window = mapped.order(isLittleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Map the records of this split of the local file.
+   * 
+   * @throws IOException if the file cannot be opened.
+   */
+  private void openMapped() throws IOException {
+    columnOffsets = new int[schema.numColumns()];
+    recordWidth = 0;
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      columnOffsets[column] = recordWidth;
+      switch (schema.getColumnType(column)) {
+        case DOUBLE_TYPE:
+        case LONG_TYPE:
+          recordWidth += Long.SIZE / Byte.SIZE;
+          break;
+        case FLOAT_TYPE:
+        case INT_TYPE:
+          recordWidth += Integer.SIZE / Byte.SIZE;
+          break;
+        default:
+          throw new UnsupportedOperationException(
+              "BinaryFileScan only support reading fixed width type from the binary file.");
+      }
+    }
+    channel = FileChannel.open(Paths.get(((FileSource) source).getFilename()), StandardOpenOption.READ);
+    final long fileSize = channel.size();
+    final long numRecords = fileSize / recordWidth;
+    nextRecord = numRecords * split / numSplits;
+    endRecord = numRecords * (split + 1) / numSplits;
+    partialRecord = split == numSplits - 1 && fileSize % recordWidth != 0;
+    windowFirstRecord = nextRecord;
+    windowRecords = 0;
+  }
+
   @Override
   protected final void cleanup() throws DbException {
     while (buffer.numTuples() > 0) {
       buffer.popAny();
     }
+    window = null;
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      channel = null;
+    }
   }
 
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     buffer = new TupleBatchBuffer(getSchema());
+    if (!readsDataInput()) {
+      try {
+        openMapped();
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      return;
+    }
+    Preconditions.checkState(numSplits == 1, "%s cannot be split", getClass().getSimpleName());
     InputStream inputStream;
     try {
       inputStream = new BufferedInputStream(source.getInputStream());
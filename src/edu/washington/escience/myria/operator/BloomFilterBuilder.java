@@ -0,0 +1,103 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Builds a {@link BloomFilter} over the key columns of its input, typically the build side of a hash join, and emits
+ * it as tuples of {@link BloomFilter#WORDS_SCHEMA} once the input is exhausted. The filters built on different workers
+ * can be merged by a {@link BloomFilterMerge} and pushed into a {@link BloomFilterSemiJoin} on the probe side, so that
+ * probe tuples that cannot match are dropped before they are shuffled.
+ */
+public final class BloomFilterBuilder extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The default number of bits of a filter. */
+  public static final int DEFAULT_NUM_BITS = 1 << 20;
+  /** The default number of bits set for each key. */
+  public static final int DEFAULT_NUM_HASHES = 3;
+
+  /** The key columns. */
+  private final int[] keyColumns;
+  /** The number of bits of the filter. */
+  private int numBits = DEFAULT_NUM_BITS;
+  /** The number of bits set for each key. */
+  private int numHashes = DEFAULT_NUM_HASHES;
+
+  /** The filter being built. */
+  private transient BloomFilter filter;
+  /** Buffers the words of the filter once it is built. */
+  private transient TupleBatchBuffer outputBuffer;
+
+  /**
+   * @param child the operator that is feeding us tuples.
+   * @param keyColumns the columns whose values are added to the filter.
+   */
+  public BloomFilterBuilder(@Nullable final Operator child, final int[] keyColumns) {
+    super(child);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "a Bloom filter needs some key columns");
+  }
+
+  /**
+   * @param numBits the number of bits of the filter. Filters that are merged must have the same number of bits.
+   */
+  public void setNumBits(final int numBits) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    this.numBits = numBits;
+  }
+
+  /**
+   * @param numHashes the number of bits set for each key. Filters that are merged must use the same number.
+   */
+  public void setNumHashes(final int numHashes) {
+    Preconditions.checkArgument(numHashes > 0, "numHashes must be positive");
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    filter = new BloomFilter(numBits, numHashes);
+    outputBuffer = null;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+    outputBuffer = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (outputBuffer == null) {
+      TupleBatch tb = null;
+      while ((tb = child.nextReady()) != null) {
+        filter.addAll(tb, keyColumns);
+      }
+      if (!child.eos()) {
+        return null;
+      }
+      outputBuffer = new TupleBatchBuffer(getSchema());
+      filter.appendWords(outputBuffer);
+    }
+    return outputBuffer.popAny();
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return BloomFilter.WORDS_SCHEMA;
+  }
+}
@@ -0,0 +1,83 @@
+package edu.washington.escience.myria.operator;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Merges the {@link BloomFilter}s built by {@link BloomFilterBuilder}s, typically after they have been collected at
+ * the master, so that only one filter of {@link BloomFilter#WORDS_SCHEMA} tuples is broadcast to the probe side rather
+ * than one per worker.
+ */
+public final class BloomFilterMerge extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The number of bits of the filters. */
+  private int numBits = BloomFilterBuilder.DEFAULT_NUM_BITS;
+
+  /** The merged filter. */
+  private transient BloomFilter filter;
+  /** Buffers the words of the merged filter once all the filters have been merged. */
+  private transient TupleBatchBuffer outputBuffer;
+
+  /**
+   * @param child the operator that is feeding us the words of the filters.
+   */
+  public BloomFilterMerge(@Nullable final Operator child) {
+    super(child);
+  }
+
+  /**
+   * @param numBits the number of bits of the filters, as set in the {@link BloomFilterBuilder}s.
+   */
+  public void setNumBits(final int numBits) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    this.numBits = numBits;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkState(BloomFilter.WORDS_SCHEMA.equals(getChild().getSchema()),
+        "the child of a BloomFilterMerge must produce the words of Bloom filters, not %s", getChild().getSchema());
+    /* The number of hashes does not matter to OR the words. */
+    filter = new BloomFilter(numBits, 1);
+    outputBuffer = null;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+    outputBuffer = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (outputBuffer == null) {
+      TupleBatch tb = null;
+      while ((tb = child.nextReady()) != null) {
+        filter.orWords(tb);
+      }
+      if (!child.eos()) {
+        return null;
+      }
+      outputBuffer = new TupleBatchBuffer(getSchema());
+      filter.appendWords(outputBuffer);
+    }
+    return outputBuffer.popAny();
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return BloomFilter.WORDS_SCHEMA;
+  }
+}
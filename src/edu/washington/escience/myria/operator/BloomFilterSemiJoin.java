@@ -0,0 +1,125 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Drops the tuples of the left child whose keys are not in a {@link BloomFilter} received from the right child, as
+ * tuples of {@link BloomFilter#WORDS_SCHEMA}. Placed below the producer that shuffles the probe side of a hash join, it
+ * keeps most of the tuples that cannot match from crossing the network. The filter may report false positives, so the
+ * join still has to match the tuples that are kept, but it never drops a tuple that has a match.
+ *
+ * A typical plan builds a filter over the build side of the join with a {@link BloomFilterBuilder} on every worker,
+ * collects the filters at the master, merges them with a {@link BloomFilterMerge}, and broadcasts the merged filter to
+ * the right child of this operator. The filters may also be broadcast by each worker without merging, since this
+ * operator ORs all the words it receives.
+ */
+public final class BloomFilterSemiJoin extends BinaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The key columns of the left child. */
+  private final int[] keyColumns;
+  /** The number of bits of the filter. */
+  private int numBits = BloomFilterBuilder.DEFAULT_NUM_BITS;
+  /** The number of bits set for each key. */
+  private int numHashes = BloomFilterBuilder.DEFAULT_NUM_HASHES;
+
+  /** The filter received from the right child. */
+  private transient BloomFilter filter;
+
+  /**
+   * @param left the tuples to filter.
+   * @param right the words of the filter.
+   * @param keyColumns the columns of the left child that are looked up in the filter. They must have the same types as
+   *          the key columns the filter was built over.
+   */
+  public BloomFilterSemiJoin(final Operator left, final Operator right, final int[] keyColumns) {
+    super(left, right);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "a Bloom filter needs some key columns");
+  }
+
+  /**
+   * @param numBits the number of bits of the filter, as set in the {@link BloomFilterBuilder}s.
+   */
+  public void setNumBits(final int numBits) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    this.numBits = numBits;
+  }
+
+  /**
+   * @param numHashes the number of bits set for each key, as set in the {@link BloomFilterBuilder}s.
+   */
+  public void setNumHashes(final int numHashes) {
+    Preconditions.checkArgument(numHashes > 0, "numHashes must be positive");
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkState(BloomFilter.WORDS_SCHEMA.equals(getRight().getSchema()),
+        "the right child of a BloomFilterSemiJoin must produce the words of a Bloom filter, not %s", getRight()
+            .getSchema());
+    filter = new BloomFilter(numBits, numHashes);
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+
+    /* Before we can filter anything, receive the whole filter from the right child. */
+    Operator right = getRight();
+    while (!right.eos()) {
+      TupleBatch tb = right.nextReady();
+      if (tb == null) {
+        /* The right child may have realized it's EOS now. If so, we must move onto left child to avoid livelock. */
+        if (right.eos()) {
+          break;
+        }
+        return null;
+      }
+      filter.orWords(tb);
+    }
+
+    Operator left = getLeft();
+    while (!left.eos()) {
+      TupleBatch tb = left.nextReady();
+      if (tb == null) {
+        break;
+      }
+      BitSet keep = new BitSet(tb.numTuples());
+      int numKept = filter.mightContainAll(tb, keyColumns, keep);
+      if (numKept == tb.numTuples()) {
+        return tb;
+      }
+      if (numKept > 0) {
+        return tb.filter(keep);
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator left = getLeft();
+    if (left == null) {
+      return null;
+    }
+    return left.getSchema();
+  }
+}
@@ -0,0 +1,553 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads the CSV records of a byte range of a local file, parsing them directly from a memory-mapped window of the file
+ * rather than through a {@link java.io.Reader}. It accepts the same syntax as the commons-csv parser that
+ * {@link FileScan} otherwise uses, with the format of {@link org.apache.commons.csv.CSVFormat#newFormat(char)} and an
+ * optional quote and escape character, all of which must be ASCII. Text is decoded with the default charset, as the
+ * {@link java.io.InputStreamReader} of {@link FileScan} does.
+ *
+ * The records of a split are those that start in its byte range. A split that does not begin at the start of the file
+ * begins after the first newline at or after the byte before its range, so the splits of a file must not have newlines
+ * inside quoted fields. The last record of a split may extend past its range.
+ *
+ * The fields of the current record are unescaped into a shared byte array, and numbers are parsed from there without
+ * building a {@link String}, falling back to the JDK parsers for anything but plain decimal numbers.
+ */
+final class CSVSplitReader implements Closeable {
+
+  /** The size of the window of the file that is mapped at once. */
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+  /** Returned by the parsing methods when the window ends before the record. */
+  private static final int INCOMPLETE = -1;
+  /** The longest run of digits that a long always holds. */
+  private static final int MAX_LONG_DIGITS = 18;
+  /** The most digits of a double that can be parsed exactly without {@link Double#parseDouble(String)}. */
+  private static final int MAX_DOUBLE_DIGITS = 15;
+  /** The most digits of a float that can be parsed exactly without {@link Float#parseFloat(String)}. */
+  private static final int MAX_FLOAT_DIGITS = 7;
+  /** Exact powers of ten as doubles. */
+  private static final double[] DOUBLE_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+      1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+  /** Exact powers of ten as floats. */
+  private static final float[] FLOAT_POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+      1e10f };
+
+  /** The file. */
+  private final FileChannel channel;
+  /** The size of the file. */
+  private final long fileSize;
+  /** One past the last byte at which a record of this split may start. */
+  private final long end;
+  /** The field delimiter. */
+  private final int delimiter;
+  /** The quote character, or -1 if none. */
+  private final int quote;
+  /** The escape character, or -1 if none. */
+  private final int escape;
+
+  /** The mapped window of the file. */
+  private MappedByteBuffer window;
+  /** The position of {@link #window} in the file. */
+  private long windowStart;
+  /** The size of {@link #window}. */
+  private int limit;
+  /** True if {@link #window} reaches the end of the file. */
+  private boolean atEof;
+  /** The position in {@link #window} of the next record. */
+  private int pos;
+
+  /** The unescaped bytes of the fields of the current record. */
+  private byte[] bytes = new byte[1024];
+  /** The number of bytes in {@link #bytes}. */
+  private int numBytes;
+  /** Where each field of the current record starts in {@link #bytes}. */
+  private int[] fieldStarts = new int[16];
+  /** Where each field of the current record ends in {@link #bytes}. */
+  private int[] fieldEnds = new int[16];
+  /** The number of fields of the current record. */
+  private int numFields;
+  /** The digits of the last number parsed by {@link #parseDecimal(int, int, int)}. */
+  private long parsedMantissa;
+  /** The sign of the last number parsed by {@link #parseDecimal(int, int, int)}. */
+  private boolean parsedNegative;
+
+  /**
+   * @param c a character.
+   * @return true if the character can be matched as a single byte.
+   */
+  static boolean isAscii(final Character c) {
+    return c == null || c < 0x80;
+  }
+
+  /**
+   * @param file the file.
+   * @param split which split of the file to read.
+   * @param numSplits the number of splits of the file.
+   * @param delimiter the field delimiter.
+   * @param quote the quote character, or null if none.
+   * @param escape the escape character, or null if none.
+   * @throws IOException if the file cannot be opened.
+   */
+  CSVSplitReader(final Path file, final int split, final int numSplits, final char delimiter, final Character quote,
+      final Character escape) throws IOException {
+    Preconditions.checkArgument(split >= 0 && split < numSplits, "split %s is not in [0, %s)", split, numSplits);
+    Preconditions.checkArgument(isAscii(delimiter) && isAscii(quote) && isAscii(escape),
+        "delimiter, quote and escape must be ASCII");
+    this.delimiter = delimiter;
+    this.quote = quote == null ? -1 : quote;
+    this.escape = escape == null ? -1 : escape;
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    fileSize = channel.size();
+    final long start = fileSize * split / numSplits;
+    end = fileSize * (split + 1) / numSplits;
+    if (start == 0) {
+      map(0, WINDOW_SIZE);
+    } else {
+      seekLineStart(start - 1);
+    }
+  }
+
+  /**
+   * Map a window of the file.
+   *
+   * @param position where the window starts in the file.
+   * @param size the size of the window, unless the file ends before.
+   * @throws IOException if the file cannot be mapped.
+   */
+  private void map(final long position, final int size) throws IOException {
+    windowStart = position;
+    limit = (int) Math.min(size, fileSize - position);
+    atEof = windowStart + limit == fileSize;
+    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, limit);
+    pos = 0;
+  }
+
+  /**
+   * Move to the first line that starts after a position of the file.
+   *
+   * @param from the position of the file.
+   * @throws IOException if the file cannot be read.
+   */
+  private void seekLineStart(final long from) throws IOException {
+    map(from, WINDOW_SIZE);
+    while (true) {
+      while (pos < limit && byteAt(pos) != '\n') {
+        ++pos;
+      }
+      if (pos < limit || atEof) {
+        break;
+      }
+      map(windowStart + limit, WINDOW_SIZE);
+    }
+    if (pos < limit) {
+      ++pos;
+    }
+  }
+
+  /**
+   * Read the next record of the split.
+   *
+   * @return false if the split has no more records.
+   * @throws IOException if the file cannot be read or the record is malformed.
+   */
+  boolean nextRecord() throws IOException {
+    while (true) {
+      final long recordStart = windowStart + pos;
+      if (recordStart >= end || recordStart >= fileSize) {
+        return false;
+      }
+      final int next = parseRecord(pos);
+      if (next != INCOMPLETE) {
+        pos = next;
+        return true;
+      }
+      /* The record does not fit in the window: remap the window at its start, bigger if it could not hold it. */
+      int size = WINDOW_SIZE;
+      if (pos == 0) {
+        Preconditions.checkState(limit < Integer.MAX_VALUE, "record at byte %s is too long", recordStart);
+        size = (int) Math.min(Integer.MAX_VALUE, 2L * limit);
+      }
+      map(recordStart, size);
+    }
+  }
+
+  /**
+   * @return the number of fields of the current record.
+   */
+  int numFields() {
+    return numFields;
+  }
+
+  /**
+   * Parse a record of the window.
+   *
+   * @param from where the record starts.
+   * @return where the next record starts, or {@link #INCOMPLETE}.
+   * @throws IOException if the record is malformed.
+   */
+  private int parseRecord(final int from) throws IOException {
+    numFields = 0;
+    numBytes = 0;
+    int p = from;
+    while (true) {
+      if (numFields == fieldStarts.length) {
+        fieldStarts = Arrays.copyOf(fieldStarts, numFields * 2);
+        fieldEnds = Arrays.copyOf(fieldEnds, numFields * 2);
+      }
+      fieldStarts[numFields] = numBytes;
+      if (p < limit && byteAt(p) == quote) {
+        p = parseQuotedField(p + 1);
+      } else {
+        p = parseSimpleField(p);
+      }
+      if (p == INCOMPLETE) {
+        return INCOMPLETE;
+      }
+      fieldEnds[numFields] = numBytes;
+      ++numFields;
+      if (p == limit) {
+        return p;
+      }
+      if (byteAt(p) != delimiter) {
+        return skipEndOfLine(p);
+      }
+      ++p;
+    }
+  }
+
+  /**
+   * Parse a field that is not quoted.
+   *
+   * @param from where the field starts.
+   * @return the position of the delimiter or end of line after the field, the end of the window if it is the end of
+   *         the file, or {@link #INCOMPLETE}.
+   * @throws IOException if the field is malformed.
+   */
+  private int parseSimpleField(final int from) throws IOException {
+    int p = from;
+    while (true) {
+      if (p == limit) {
+        return atEof ? p : INCOMPLETE;
+      }
+      final int c = byteAt(p);
+      if (c == delimiter || c == '\n' || c == '\r') {
+        return p;
+      }
+      ++p;
+      if (c == escape) {
+        p = parseEscape(p);
+        if (p == INCOMPLETE) {
+          return INCOMPLETE;
+        }
+      } else {
+        append(c);
+      }
+    }
+  }
+
+  /**
+   * Parse a quoted field.
+   *
+   * @param from the position after the opening quote.
+   * @return the position of the delimiter or end of line after the field, the end of the window if it is the end of
+   *         the file, or {@link #INCOMPLETE}.
+   * @throws IOException if the field is malformed.
+   */
+  private int parseQuotedField(final int from) throws IOException {
+    int p = from;
+    while (true) {
+      if (p == limit) {
+        if (atEof) {
+          throw new IOException("EOF reached before encapsulated token finished");
+        }
+        return INCOMPLETE;
+      }
+      final int c = byteAt(p);
+      ++p;
+      if (c == escape) {
+        p = parseEscape(p);
+        if (p == INCOMPLETE) {
+          return INCOMPLETE;
+        }
+      } else if (c == quote) {
+        if (p == limit && !atEof) {
+          return INCOMPLETE;
+        }
+        if (p < limit && byteAt(p) == quote) {
+          /* A doubled quote stands for a quote. */
+          append(c);
+          ++p;
+        } else {
+          return skipAfterQuote(p);
+        }
+      } else {
+        append(c);
+      }
+    }
+  }
+
+  /**
+   * Skip the whitespace between the closing quote of a field and the following delimiter or end of line.
+   *
+   * @param from the position after the closing quote.
+   * @return the position of the delimiter or end of line, the end of the window if it is the end of the file, or
+   *         {@link #INCOMPLETE}.
+   * @throws IOException if anything else follows the quote.
+   */
+  private int skipAfterQuote(final int from) throws IOException {
+    int p = from;
+    while (true) {
+      if (p == limit) {
+        return atEof ? p : INCOMPLETE;
+      }
+      final int c = byteAt(p);
+      if (c == delimiter || c == '\n' || c == '\r') {
+        return p;
+      }
+      if (!Character.isWhitespace(c)) {
+        throw new IOException("invalid char between encapsulated token and delimiter");
+      }
+      ++p;
+    }
+  }
+
+  /**
+   * Unescape the character after an escape character, the same way commons-csv does.
+   *
+   * @param from the position after the escape character.
+   * @return the position after the escaped character, or {@link #INCOMPLETE}.
+   * @throws IOException if the file ends after the escape character.
+   */
+  private int parseEscape(final int from) throws IOException {
+    if (from == limit) {
+      if (atEof) {
+        throw new IOException("EOF whilst processing escape sequence");
+      }
+      return INCOMPLETE;
+    }
+    final int c = byteAt(from);
+    switch (c) {
+      case 'r':
+        append('\r');
+        break;
+      case 'n':
+        append('\n');
+        break;
+      case 't':
+        append('\t');
+        break;
+      case 'b':
+        append('\b');
+        break;
+      case 'f':
+        append('\f');
+        break;
+      case '\r':
+      case '\n':
+      case '\t':
+      case '\b':
+      case '\f':
+        append(c);
+        break;
+      default:
+        if (c != delimiter && c != escape && c != quote) {
+          append(escape);
+        }
+        append(c);
+    }
+    return from + 1;
+  }
+
+  /**
+   * @param from the position of an end of line.
+   * @return the position after it, or {@link #INCOMPLETE}.
+   */
+  private int skipEndOfLine(final int from) {
+    if (byteAt(from) == '\r') {
+      if (from + 1 == limit && !atEof) {
+        return INCOMPLETE;
+      }
+      if (from + 1 < limit && byteAt(from + 1) == '\n') {
+        return from + 2;
+      }
+    }
+    return from + 1;
+  }
+
+  /**
+   * @param position a position in the window.
+   * @return the byte at that position, between 0 and 255 so that it never equals a missing quote or escape.
+   */
+  private int byteAt(final int position) {
+    return window.get(position) & 0xFF;
+  }
+
+  /**
+   * @param b a byte of the current field.
+   */
+  private void append(final int b) {
+    if (numBytes == bytes.length) {
+      bytes = Arrays.copyOf(bytes, numBytes * 2);
+    }
+    bytes[numBytes++] = (byte) b;
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return its text.
+   */
+  String getString(final int field) {
+    return new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field], Charset.defaultCharset());
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return its value, as {@link Integer#parseInt(String)} would parse it.
+   */
+  int getInt(final int field) {
+    final int length = fieldEnds[field] - fieldStarts[field];
+    if (length > MAX_LONG_DIGITS || !isInteger(field)) {
+      return Integer.parseInt(getString(field));
+    }
+    final long value = parseInteger(field);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+    }
+    return (int) value;
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return its value, as {@link Long#parseLong(String)} would parse it.
+   */
+  long getLong(final int field) {
+    final int length = fieldEnds[field] - fieldStarts[field];
+    if (length > MAX_LONG_DIGITS || !isInteger(field)) {
+      return Long.parseLong(getString(field));
+    }
+    return parseInteger(field);
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return true if the field is an optional sign followed by ASCII digits.
+   */
+  private boolean isInteger(final int field) {
+    int i = fieldStarts[field];
+    final int fieldEnd = fieldEnds[field];
+    if (i < fieldEnd && (bytes[i] == '-' || bytes[i] == '+')) {
+      ++i;
+    }
+    if (i == fieldEnd) {
+      return false;
+    }
+    for (; i < fieldEnd; ++i) {
+      if (bytes[i] < '0' || bytes[i] > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param field a field of the current record, that {@link #isInteger(int)} and is not too long for a long.
+   * @return its value.
+   */
+  private long parseInteger(final int field) {
+    int i = fieldStarts[field];
+    final boolean negative = bytes[i] == '-';
+    if (negative || bytes[i] == '+') {
+      ++i;
+    }
+    long value = 0;
+    for (; i < fieldEnds[field]; ++i) {
+      value = value * 10 + (bytes[i] - '0');
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return its value, as {@link Double#parseDouble(String)} would parse it.
+   */
+  double getDouble(final int field) {
+    final int decimals = parseDecimal(field, MAX_DOUBLE_DIGITS, DOUBLE_POWERS_OF_TEN.length - 1);
+    if (decimals == -1) {
+      return Double.parseDouble(getString(field));
+    }
+    /* Both operands are exact, and the division is correctly rounded. */
+    final double value = parsedMantissa / DOUBLE_POWERS_OF_TEN[decimals];
+    return parsedNegative ? -value : value;
+  }
+
+  /**
+   * @param field a field of the current record.
+   * @return its value, as {@link Float#parseFloat(String)} would parse it.
+   */
+  float getFloat(final int field) {
+    final int decimals = parseDecimal(field, MAX_FLOAT_DIGITS, FLOAT_POWERS_OF_TEN.length - 1);
+    if (decimals == -1) {
+      return Float.parseFloat(getString(field));
+    }
+    final float value = parsedMantissa / FLOAT_POWERS_OF_TEN[decimals];
+    return parsedNegative ? -value : value;
+  }
+
+  /**
+   * Parse a field of the form <code>[+-]digits[.digits]</code> into {@link #parsedMantissa} and
+   * {@link #parsedNegative}.
+   *
+   * @param field a field of the current record.
+   * @param maxDigits the most digits the number may have.
+   * @param maxDecimals the most digits it may have after the point.
+   * @return the number of digits after the point, or -1 if the field is not of that form or has too many digits.
+   */
+  private int parseDecimal(final int field, final int maxDigits, final int maxDecimals) {
+    int i = fieldStarts[field];
+    final int fieldEnd = fieldEnds[field];
+    parsedNegative = i < fieldEnd && bytes[i] == '-';
+    if (i < fieldEnd && (bytes[i] == '-' || bytes[i] == '+')) {
+      ++i;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = -1;
+    for (; i < fieldEnd; ++i) {
+      final byte b = bytes[i];
+      if (b == '.' && decimals == -1) {
+        decimals = 0;
+      } else if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        ++digits;
+        if (decimals != -1) {
+          ++decimals;
+        }
+      } else {
+        return -1;
+      }
+    }
+    if (digits == 0 || digits > maxDigits || decimals > maxDecimals) {
+      return -1;
+    }
+    parsedMantissa = mantissa;
+    return Math.max(decimals, 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+}
@@ -3,13 +3,11 @@
  */
 package edu.washington.escience.myria.operator;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
-import com.almworks.sqlite4java.SQLiteConnection;
-import com.almworks.sqlite4java.SQLiteException;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -18,10 +16,10 @@ import com.google.common.collect.ImmutableSet;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.accessmethod.AccessMethod;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
-import edu.washington.escience.myria.accessmethod.SQLiteInfo;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
 import edu.washington.escience.myria.storage.TupleBatch;
 
@@ -33,6 +31,8 @@ public class DbInsert extends AbstractDbInsert {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
+  /** The default maximum number of tuples sorted in memory before a sorted run is spilled to disk. */
+  public static final long DEFAULT_SORT_MEMORY_BUDGET = 1000 * 1000;
   /** The connection to the database database. */
   private AccessMethod accessMethod;
   /** The information for the database connection. */
@@ -45,6 +45,12 @@ public class DbInsert extends AbstractDbInsert {
   private RelationKey tempRelationKey;
   /** The indexes to be created on the table. Each entry is a list of columns. */
   private final List<List<IndexRef>> indexes;
+  /** The order in which the tuples are stored, or null to store them in the order they are received. */
+  private SortOrder sortOrder;
+  /** The maximum number of tuples sorted in memory before a sorted run is spilled to disk, or 0 for no limit. */
+  private long sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
+  /** Sorts the input in {@link #sortOrder} until it is inserted into the table. */
+  private transient ExternalSort sort;
 
   /**
    * Constructs an insertion operator to store the tuples from the specified child into the specified database. If the
@@ -146,8 +152,37 @@ public class DbInsert extends AbstractDbInsert {
     }
   }
 
+  /**
+   * Store the tuples in the specified order, index them in it, and record it in the catalog. The input is sorted like
+   * in {@link ExternalOrderBy}, spilling sorted runs to local disk beyond the memory budget (see
+   * {@link #setSortMemoryBudget(long)}), and inserted into the table once the child has reached EOS. Scans that need
+   * this order still ask the database to sort, since it may not return a table in insertion order, but the index makes
+   * that cheap.
+   * 
+   * @param sortOrder the order in which the tuples are stored, or null to store them in the order they are received.
+   */
+  public void setSortOrder(final SortOrder sortOrder) {
+    Preconditions.checkArgument(sortOrder == null || overwriteTable,
+        "Cannot keep a relation sorted when appending to it.");
+    this.sortOrder = sortOrder;
+  }
+
+  /**
+   * Bound the number of tuples kept in memory to sort them, see {@link #setSortOrder(SortOrder)}.
+   * 
+   * @param sortMemoryBudget the maximum number of tuples kept in memory, or 0 for no limit.
+   */
+  public void setSortMemoryBudget(final long sortMemoryBudget) {
+    Preconditions.checkArgument(sortMemoryBudget >= 0, "sortMemoryBudget must be non-negative");
+    this.sortMemoryBudget = sortMemoryBudget;
+  }
+
   @Override
   public void cleanup() {
+    if (sort != null) {
+      sort.clear();
+      sort = null;
+    }
     try {
       if (accessMethod != null) {
         accessMethod.close();
@@ -163,9 +198,35 @@ public class DbInsert extends AbstractDbInsert {
     Objects.requireNonNull(tempRelationKey, "tempRelationKey");
     Preconditions.checkArgument(tupleBatch.getSchema().equals(getSchema()),
         "tuple schema %s does not match operator schema %s", tupleBatch.getSchema(), getSchema());
+    if (sortOrder != null) {
+      try {
+        sort.add(tupleBatch);
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      return;
+    }
     accessMethod.tupleBatchInsert(tempRelationKey, tupleBatch);
   }
 
+  /**
+   * Insert the sorted input into the table.
+   * 
+   * @throws DbException if there is an error inserting the tuples.
+   */
+  private void insertSorted() throws DbException {
+    try {
+      final SortedRun sorted = sort.finish();
+      for (TupleBatch tb = sorted.next(); tb != null; tb = sorted.next()) {
+        accessMethod.tupleBatchInsert(tempRelationKey, tb);
+      }
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+    sort.clear();
+    sort = null;
+  }
+
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
 
@@ -178,21 +239,9 @@ public class DbInsert extends AbstractDbInsert {
       throw new DbException("Unable to instantiate DbInsert: connection information unknown");
     }
 
-    if (connectionInfo instanceof SQLiteInfo) {
-      /* Set WAL in the beginning. */
-      final File dbFile = new File(((SQLiteInfo) connectionInfo).getDatabaseFilename());
-      SQLiteConnection conn = new SQLiteConnection(dbFile);
-      try {
-        conn.open(true);
-        conn.exec("PRAGMA journal_mode=WAL;");
-      } catch (SQLiteException e) {
-        e.printStackTrace();
-      }
-      conn.dispose();
-    }
-
     /* open the database connection */
     accessMethod = AccessMethod.of(connectionInfo.getDbms(), connectionInfo, false);
+    setBulkLoadPragmas(accessMethod, execEnvVars);
 
     if (overwriteTable) {
       /* If overwriting, we insert into a temp table and then on success we drop the old and rename. */
@@ -204,14 +253,30 @@ public class DbInsert extends AbstractDbInsert {
       tempRelationKey = relationKey;
     }
 
+    List<List<IndexRef>> tableIndexes = indexes;
+    if (sortOrder != null) {
+      sort = new ExternalSort(getSchema(), sortOrder.getColumns(), sortOrder.getAscending(), sortMemoryBudget);
+      final ImmutableList.Builder<IndexRef> sortIndexBuilder = ImmutableList.builder();
+      for (int i = 0; i < sortOrder.numColumns(); ++i) {
+        sortIndexBuilder.add(IndexRef.of(sortOrder.getColumn(i), sortOrder.isAscending(i)));
+      }
+      final List<IndexRef> sortIndex = sortIndexBuilder.build();
+      if (!indexes.contains(sortIndex)) {
+        tableIndexes = ImmutableList.<List<IndexRef>> builder().addAll(indexes).add(sortIndex).build();
+      }
+    }
+
     /* Create the table */
     accessMethod.createTableIfNotExists(tempRelationKey, getSchema());
     /* Create indexes. */
-    accessMethod.createIndexes(tempRelationKey, getSchema(), indexes);
+    accessMethod.createIndexes(tempRelationKey, getSchema(), tableIndexes);
   }
 
   @Override
   protected void childEOS() throws DbException {
+    if (sortOrder != null) {
+      insertSorted();
+    }
     /* If the child finished, we're done too. If in overwrite mode, drop the existing table and rename. */
     if (overwriteTable) {
       accessMethod.dropAndRenameTables(relationKey, tempRelationKey);
@@ -231,7 +296,8 @@ public class DbInsert extends AbstractDbInsert {
 
   @Override
   public Map<RelationKey, RelationWriteMetadata> writeSet() {
-    return ImmutableMap.of(relationKey, new RelationWriteMetadata(relationKey, getSchema(), overwriteTable, false));
+    return ImmutableMap.of(relationKey, new RelationWriteMetadata(relationKey, getSchema(), overwriteTable, false,
+        sortOrder));
   }
 
 }
@@ -12,6 +12,7 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.accessmethod.AccessMethod;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -164,6 +165,16 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     this.connectionInfo = connectionInfo;
   }
 
+  /**
+   * @return the order of the tuples returned by this scan, or null if they are not returned in any particular order.
+   */
+  public SortOrder getSortOrder() {
+    if (sortedColumns != null && sortedColumns.length > 0) {
+      return SortOrder.of(sortedColumns, ascending);
+    }
+    return null;
+  }
+
   @Override
   public final void cleanup() {
     tuples = null;
@@ -218,9 +229,9 @@ public class DbQueryScan extends LeafOperator implements DbReader {
         Preconditions.checkArgument(sortedColumns.length == ascending.length);
         StringBuilder orderByClause = new StringBuilder(" ORDER BY");
 
-        for (int columnIdx : sortedColumns) {
-          orderByClause.append(prefix + " " + getSchema().getColumnName(columnIdx));
-          if (ascending[columnIdx]) {
+        for (int i = 0; i < sortedColumns.length; ++i) {
+          orderByClause.append(prefix + " " + getSchema().getColumnName(sortedColumns[i]));
+          if (ascending[i]) {
             orderByClause.append(" ASC");
           } else {
             orderByClause.append(" DESC");
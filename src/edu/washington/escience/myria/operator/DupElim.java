@@ -7,14 +7,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleHashIndex;
 import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 
@@ -35,7 +33,7 @@ public final class DupElim extends StreamingState {
   /**
    * Indices to unique tuples.
    * */
-  private transient IntObjectHashMap<IntArrayList> uniqueTupleIndices;
+  private transient TupleHashIndex uniqueTupleIndices;
 
   /**
    * The buffer for storing unique tuples.
@@ -60,31 +58,29 @@ public final class DupElim extends StreamingState {
     if (numTuples <= 0) {
       return tb;
     }
-    checkUniqueness.inputTB = tb;
     List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    final int[] hashCodes = new int[numTuples];
+    HashUtils.hashRows(tb, hashCodes);
     for (int i = 0; i < numTuples; ++i) {
-      final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashRow(tb, i);
-      IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
-      checkUniqueness.row = i;
-      checkUniqueness.unique = true;
-      if (tupleIndexList == null) {
-        tupleIndexList = new IntArrayList(1);
-        tupleIndexList.add(nextIndex);
-        uniqueTupleIndices.put(cntHashCode, tupleIndexList);
-      } else {
-        tupleIndexList.forEach(checkUniqueness);
+      final int cntHashCode = hashCodes[i];
+      boolean unique = true;
+      for (int j = uniqueTupleIndices.first(cntHashCode); j != TupleHashIndex.NONE; j = uniqueTupleIndices.next(j)) {
+        if (TupleUtils.tupleEquals(tb, i, uniqueTuples, j)) {
+          unique = false;
+          break;
+        }
       }
-      if (checkUniqueness.unique) {
+      if (unique) {
         for (int j = 0; j < tb.numColumns(); ++j) {
           uniqueTuples.put(j, columns.get(j), i);
         }
-        tupleIndexList.add(nextIndex);
+        uniqueTupleIndices.add(cntHashCode);
       } else {
         toRemove.set(i);
       }
     }
+    getOp().setReservedMemory(uniqueTuples.numTuples() * getSchema().estimatedTupleBytes());
     return tb.filterOut(toRemove);
   }
 
@@ -95,9 +91,8 @@ public final class DupElim extends StreamingState {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
-    uniqueTupleIndices = new IntObjectHashMap<>();
+    uniqueTupleIndices = new TupleHashIndex();
     uniqueTuples = new MutableTupleBuffer(getSchema());
-    checkUniqueness = new CheckUniquenessProcedure();
   }
 
   @Override
@@ -122,36 +117,6 @@ public final class DupElim extends StreamingState {
     return uniqueTuples.numTuples();
   }
 
-  /**
-   * Traverse through the list of tuples.
-   * */
-  private transient CheckUniquenessProcedure checkUniqueness;
-
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class CheckUniquenessProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /** row index of the tuple. */
-    private int row;
-
-    /** input TupleBatch. */
-    private TupleBatch inputTB;
-
-    /** if found a replacement. */
-    private boolean unique;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, row, uniqueTuples, index)) {
-        unique = false;
-      }
-    }
-  };
-
   @Override
   public StreamingState newInstanceFromMyself() {
     return new DupElim();
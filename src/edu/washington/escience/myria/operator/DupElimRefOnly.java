@@ -73,7 +73,7 @@ public final class DupElimRefOnly extends UnaryOperator {
         case STRING_TYPE:
           return tb.getString(colIndx, rowIndx1).equals(another.tb.getString(colIndx, rowIndx2));
         case DATETIME_TYPE:
-          return tb.getDateTime(colIndx, rowIndx1).equals(another.tb.getDateTime(colIndx, rowIndx2));
+          return tb.getDateTimeMillis(colIndx, rowIndx1) == another.tb.getDateTimeMillis(colIndx, rowIndx2);
       }
       return false;
     }
@@ -0,0 +1,118 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchSpillFile;
+
+/**
+ * Orders tuples, spilling them to local disk if there are too many to sort in memory.
+ *
+ * Input batches are kept as they are until the number of buffered tuples reaches the memory budget (see
+ * {@link #setMemoryBudget(long)}). They are then sorted (see {@link TupleBatchSorter}) into a run, which is written to
+ * a {@link TupleBatchSpillFile}. After the child's EOS, the runs on disk and the last run in memory are merged. If
+ * there are too many runs to merge at once ({@value ExternalSort#MAX_MERGE_FAN_IN}), groups of them are first merged
+ * into longer runs on disk. Without a budget, all tuples are sorted in memory.
+ *
+ * The sort is stable: tuples that are equal in the sort columns are returned in the order they were received.
+ */
+public final class ExternalOrderBy extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The maximum number of tuples buffered before a run is spilled, or 0 for no limit. */
+  private long memoryBudget = 0;
+
+  /** Sorts the input. */
+  private transient ExternalSort sort;
+  /** Produces the output once the child has reached EOS. */
+  private transient SortedRun output;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   */
+  public ExternalOrderBy(final Operator child, final int[] sortColumns, final boolean[] ascending) {
+    super(child);
+    Preconditions.checkNotNull(sortColumns, "sortColumns");
+    Preconditions.checkNotNull(ascending, "ascending");
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sortColumns and ascending must have the same length");
+    this.sortColumns = sortColumns.clone();
+    this.ascending = ascending.clone();
+  }
+
+  /**
+   * Bound the number of tuples kept in memory. Beyond the budget, sorted runs are spilled to local files and merged
+   * after EOS.
+   *
+   * @param memoryBudget the maximum number of tuples kept in memory, or 0 for no limit.
+   */
+  public void setMemoryBudget(final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    sort = new ExternalSort(getSchema(), sortColumns, ascending, memoryBudget);
+    output = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    try {
+      if (output == null) {
+        final Operator child = getChild();
+        while (!child.eos()) {
+          final TupleBatch tb = child.nextReady();
+          if (tb == null) {
+            if (child.eos()) {
+              break;
+            }
+            return null;
+          }
+          sort.add(tb);
+        }
+        output = sort.finish();
+      }
+
+      final TupleBatch tb = output.next();
+      if (tb == null) {
+        setEOS();
+      }
+      return tb;
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (sort != null) {
+      sort.clear();
+    }
+    sort = null;
+    output = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    final Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+}
@@ -0,0 +1,202 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchSpillFile;
+
+/**
+ * Sorts tuples, spilling them to local disk if there are too many to sort in memory. Used by {@link ExternalOrderBy},
+ * and by {@link DbInsert} to store a relation sorted.
+ *
+ * Added batches are kept as they are until the number of buffered tuples reaches the memory budget. They are then
+ * sorted (see {@link TupleBatchSorter}) into a run, which is written to a {@link TupleBatchSpillFile}. Once all tuples
+ * have been added, the runs on disk and the last run in memory are merged. If there are too many runs to merge at once
+ * ({@value #MAX_MERGE_FAN_IN}), groups of them are first merged into longer runs on disk. Without a budget, all tuples
+ * are sorted in memory.
+ *
+ * The sort is stable: tuples that are equal in the sort columns are returned in the order they were added.
+ */
+final class ExternalSort {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ExternalSort.class);
+
+  /** The most runs merged at once, which bounds the number of open spill files. */
+  static final int MAX_MERGE_FAN_IN = 64;
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The maximum number of tuples buffered before a run is spilled, or 0 for no limit. */
+  private final long memoryBudget;
+
+  /** The added batches of the current run. */
+  private List<TupleBatch> buffered;
+  /** The number of tuples in {@link #buffered}. */
+  private long numBuffered;
+  /** The runs spilled to disk, in the order they were written. */
+  private List<TupleBatchSpillFile> spilledRuns;
+  /** The readers opened by the merges. */
+  private final List<TupleBatchSpillFile.Reader> readers;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   * @param memoryBudget the maximum number of tuples kept in memory, or 0 for no limit.
+   */
+  ExternalSort(final Schema schema, final int[] sortColumns, final boolean[] ascending, final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    for (int column : sortColumns) {
+      Preconditions.checkElementIndex(column, schema.numColumns(), "sort column");
+    }
+    this.schema = schema;
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    this.memoryBudget = memoryBudget;
+    buffered = new ArrayList<TupleBatch>();
+    numBuffered = 0;
+    spilledRuns = new ArrayList<TupleBatchSpillFile>();
+    readers = new ArrayList<TupleBatchSpillFile.Reader>();
+  }
+
+  /**
+   * Add tuples to be sorted. The batch must not be modified afterwards.
+   *
+   * @param tb the tuples.
+   * @throws IOException if a run cannot be spilled.
+   */
+  void add(final TupleBatch tb) throws IOException {
+    Preconditions.checkState(buffered != null, "the sort has already finished");
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    buffered.add(tb);
+    numBuffered += tb.numTuples();
+    if (memoryBudget > 0 && numBuffered >= memoryBudget) {
+      spill();
+    }
+  }
+
+  /**
+   * Sort the buffered tuples and write them to a new run on disk.
+   *
+   * @throws IOException if the run cannot be written.
+   */
+  private void spill() throws IOException {
+    final TupleBatchSorter sorter = new TupleBatchSorter(schema, buffered, sortColumns, ascending);
+    buffered = new ArrayList<TupleBatch>();
+    numBuffered = 0;
+    final TupleBatchSpillFile file = new TupleBatchSpillFile(schema);
+    spilledRuns.add(file);
+    for (TupleBatch tb = sorter.next(); tb != null; tb = sorter.next()) {
+      file.write(tb);
+    }
+    file.finishWriting();
+  }
+
+  /**
+   * Called once all tuples have been added.
+   *
+   * @return the sorted tuples.
+   * @throws IOException if the spilled runs cannot be read.
+   */
+  SortedRun finish() throws IOException {
+    Preconditions.checkState(buffered != null, "the sort has already finished");
+    final TupleBatchSorter lastRun = new TupleBatchSorter(schema, buffered, sortColumns, ascending);
+    buffered = null;
+    final SortedRun inMemory = new SortedRun() {
+      @Override
+      public TupleBatch next() {
+        return lastRun.next();
+      }
+    };
+    if (spilledRuns.isEmpty()) {
+      return inMemory;
+    }
+
+    /* Merge groups of runs on disk until they can all be merged with the one in memory. */
+    while (spilledRuns.size() > MAX_MERGE_FAN_IN - 1) {
+      final List<TupleBatchSpillFile> mergedRuns = new ArrayList<TupleBatchSpillFile>();
+      for (int start = 0; start < spilledRuns.size(); start += MAX_MERGE_FAN_IN) {
+        final List<TupleBatchSpillFile> group =
+            spilledRuns.subList(start, Math.min(start + MAX_MERGE_FAN_IN, spilledRuns.size()));
+        if (group.size() == 1) {
+          mergedRuns.add(group.get(0));
+          continue;
+        }
+        final TupleBatchMerger merger = new TupleBatchMerger(schema, sortColumns, ascending, openRuns(group));
+        final TupleBatchSpillFile merged = new TupleBatchSpillFile(schema);
+        mergedRuns.add(merged);
+        for (TupleBatch tb = merger.next(); tb != null; tb = merger.next()) {
+          merged.write(tb);
+        }
+        merged.finishWriting();
+        closeReaders();
+        for (TupleBatchSpillFile file : group) {
+          file.delete();
+        }
+      }
+      spilledRuns = mergedRuns;
+    }
+
+    final List<SortedRun> runs = openRuns(spilledRuns);
+    /* The run in memory holds the most recent tuples, so it goes last to keep the sort stable. */
+    runs.add(inMemory);
+    return new TupleBatchMerger(schema, sortColumns, ascending, runs);
+  }
+
+  /**
+   * @param files spilled runs.
+   * @return readers of the runs, in the same order. They are added to {@link #readers}.
+   * @throws IOException if a run cannot be opened.
+   */
+  private List<SortedRun> openRuns(final List<TupleBatchSpillFile> files) throws IOException {
+    final List<SortedRun> runs = new ArrayList<SortedRun>(files.size() + 1);
+    for (TupleBatchSpillFile file : files) {
+      final TupleBatchSpillFile.Reader reader = file.openReader();
+      readers.add(reader);
+      runs.add(new SortedRun() {
+        @Override
+        public TupleBatch next() throws IOException {
+          return reader.next();
+        }
+      });
+    }
+    return runs;
+  }
+
+  /**
+   * Close the readers opened by {@link #openRuns(List)}.
+   */
+  private void closeReaders() {
+    for (TupleBatchSpillFile.Reader reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        LOGGER.warn("error closing spill file reader", e);
+      }
+    }
+    readers.clear();
+  }
+
+  /**
+   * Release the tuples in memory and delete the spilled runs. The sort cannot be used afterwards.
+   */
+  void clear() {
+    closeReaders();
+    for (TupleBatchSpillFile file : spilledRuns) {
+      file.delete();
+    }
+    spilledRuns.clear();
+    buffered = null;
+  }
+}
@@ -3,6 +3,7 @@ package edu.washington.escience.myria.operator;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.Iterator;
 
 import javax.annotation.Nullable;
@@ -34,6 +35,9 @@ import edu.washington.escience.myria.util.DateTimeUtils;
  * cell of the input can be enclosed by the default quotation mark '"'. Other quotation mark like '\'' can be specified
  * by user as well. Note that the enclosure by quotation is not required in the input file.
  * 
+ * Local files ({@link FileSource}) are parsed by a {@link CSVSplitReader} straight from a memory-mapped buffer, and can
+ * be divided into byte ranges with {@link #setSplit(int, int)} so that several FileScans, e.g., in different fragments
+ * of the same worker, load one file in parallel.
  */
 public final class FileScan extends LeafOperator {
   /** The Schema of the relation stored in this file. */
@@ -42,6 +46,12 @@ public final class FileScan extends LeafOperator {
   private transient CSVParser parser = null;
   /** Iterator over CSV records. */
   private transient Iterator<CSVRecord> iterator = null;
+  /** Reader used instead of {@link #parser} for local files. */
+  private transient CSVSplitReader splitReader = null;
+  /** Which split of the file this operator reads. */
+  private int split = 0;
+  /** The number of splits of the file. */
+  private int numSplits = 1;
   /** A user-provided file delimiter; if null, the system uses the default comma as delimiter. */
   private final Character delimiter;
   /** A user-provided quotation mark, if null, the system uses '"'. */
@@ -155,9 +165,28 @@ public final class FileScan extends LeafOperator {
     this.numberOfSkippedLines = MoreObjects.firstNonNull(numberOfSkippedLines, 0);
   }
 
+  /**
+   * Read only the records that start in one of several byte ranges of equal size of the file. The file must be a local
+   * file, and must not have newlines inside quoted fields. Only the first split skips the header lines.
+   * 
+   * @param split which split of the file to read, from 0 to <code>numSplits - 1</code>.
+   * @param numSplits the number of splits of the file.
+   */
+  public void setSplit(final int split, final int numSplits) {
+    Preconditions.checkArgument(numSplits > 0, "numSplits must be positive");
+    Preconditions.checkArgument(split >= 0 && split < numSplits, "split must be between 0 and numSplits - 1");
+    Preconditions.checkArgument(numSplits == 1 || source instanceof FileSource, "only local files can be split");
+    this.split = split;
+    this.numSplits = numSplits;
+  }
+
   @Override
-  public void cleanup() {
+  public void cleanup() throws IOException {
     parser = null;
+    if (splitReader != null) {
+      splitReader.close();
+      splitReader = null;
+    }
     while (buffer.numTuples() > 0) {
       buffer.popAny();
     }
@@ -168,7 +197,10 @@ public final class FileScan extends LeafOperator {
     /* Let's assume that the scanner always starts at the beginning of a line. */
     long lineNumberBegin = lineNumber;
 
-    while ((buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    if (splitReader != null) {
+      readSplit();
+    }
+    while (parser != null && buffer.numTuples() < TupleBatch.BATCH_SIZE) {
       lineNumber++;
       if (parser.isClosed()) {
         break;
@@ -189,44 +221,103 @@ public final class FileScan extends LeafOperator {
       }
       for (int column = 0; column < schema.numColumns(); ++column) {
         String cell = record.get(column);
+        try {
+          putCell(column, cell);
+        } catch (final IllegalArgumentException e) {
+          throw new DbException("Error parsing column " + column + " of row " + lineNumber + ", expected type: "
+              + schema.getColumnType(column) + ", scanned value: " + cell, e);
+        }
+      }
+    }
+
+    LOGGER.debug("Scanned {} input lines", lineNumber - lineNumberBegin);
+
+    return buffer.popAny();
+  }
+
+  /**
+   * Parse a cell of the input and append it to the buffer.
+   * 
+   * @param column the column of the cell.
+   * @param cell the text of the cell.
+   */
+  private void putCell(final int column, final String cell) {
+    switch (schema.getColumnType(column)) {
+      case BOOLEAN_TYPE:
+        if (Floats.tryParse(cell) != null) {
+          buffer.putBoolean(column, Floats.tryParse(cell) != 0);
+        } else if (BooleanUtils.toBoolean(cell)) {
+          buffer.putBoolean(column, Boolean.parseBoolean(cell));
+        }
+        break;
+      case DOUBLE_TYPE:
+        buffer.putDouble(column, Double.parseDouble(cell));
+        break;
+      case FLOAT_TYPE:
+        buffer.putFloat(column, Float.parseFloat(cell));
+        break;
+      case INT_TYPE:
+        buffer.putInt(column, Integer.parseInt(cell));
+        break;
+      case LONG_TYPE:
+        buffer.putLong(column, Long.parseLong(cell));
+        break;
+      case STRING_TYPE:
+        buffer.putString(column, cell);
+        break;
+      case DATETIME_TYPE:
+        buffer.putDateTime(column, DateTimeUtils.parse(cell));
+        break;
+    }
+  }
+
+  /**
+   * Fill the buffer with the records of {@link #splitReader}, parsing the numbers straight from its bytes.
+   * 
+   * @throws DbException if a record is malformed or the file cannot be read.
+   */
+  private void readSplit() throws DbException {
+    while (buffer.numTuples() < TupleBatch.BATCH_SIZE) {
+      lineNumber++;
+      try {
+        if (!splitReader.nextRecord()) {
+          splitReader.close();
+          splitReader = null;
+          return;
+        }
+      } catch (final IOException e) {
+        throw new DbException("Error parsing row " + lineNumber, e);
+      }
+
+      if (splitReader.numFields() != schema.numColumns()) {
+        throw new DbException("Error parsing row " + lineNumber + ": Found " + splitReader.numFields()
+            + " column(s) but expected " + schema.numColumns() + " column(s).");
+      }
+      for (int column = 0; column < schema.numColumns(); ++column) {
         try {
           switch (schema.getColumnType(column)) {
-            case BOOLEAN_TYPE:
-              if (Floats.tryParse(cell) != null) {
-                buffer.putBoolean(column, Floats.tryParse(cell) != 0);
-              } else if (BooleanUtils.toBoolean(cell)) {
-                buffer.putBoolean(column, Boolean.parseBoolean(cell));
-              }
-              break;
             case DOUBLE_TYPE:
-              buffer.putDouble(column, Double.parseDouble(cell));
+              buffer.putDouble(column, splitReader.getDouble(column));
               break;
             case FLOAT_TYPE:
-              buffer.putFloat(column, Float.parseFloat(cell));
+              buffer.putFloat(column, splitReader.getFloat(column));
               break;
             case INT_TYPE:
-              buffer.putInt(column, Integer.parseInt(cell));
+              buffer.putInt(column, splitReader.getInt(column));
               break;
             case LONG_TYPE:
-              buffer.putLong(column, Long.parseLong(cell));
+              buffer.putLong(column, splitReader.getLong(column));
               break;
-            case STRING_TYPE:
-              buffer.putString(column, cell);
-              break;
-            case DATETIME_TYPE:
-              buffer.putDateTime(column, DateTimeUtils.parse(cell));
+            default:
+              putCell(column, splitReader.getString(column));
               break;
           }
         } catch (final IllegalArgumentException e) {
           throw new DbException("Error parsing column " + column + " of row " + lineNumber + ", expected type: "
-              + schema.getColumnType(column) + ", scanned value: " + cell, e);
+              + schema.getColumnType(column) + ", scanned value: " + splitReader.getString(column), e);
         }
       }
     }
-
-    LOGGER.debug("Scanned {} input lines", lineNumber - lineNumberBegin);
-
-    return buffer.popAny();
   }
 
   @Override
@@ -237,6 +328,22 @@ public final class FileScan extends LeafOperator {
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     buffer = new TupleBatchBuffer(getSchema());
+    lineNumber = 0;
+    if (source instanceof FileSource && CSVSplitReader.isAscii(delimiter) && CSVSplitReader.isAscii(quote)
+        && CSVSplitReader.isAscii(escape)) {
+      try {
+        splitReader =
+            new CSVSplitReader(Paths.get(((FileSource) source).getFilename()), split, numSplits, delimiter, quote,
+                escape);
+        for (int i = 0; split == 0 && i < numberOfSkippedLines; i++) {
+          splitReader.nextRecord();
+        }
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      return;
+    }
+    Preconditions.checkState(numSplits == 1, "only local files can be split");
     try {
       parser =
           new CSVParser(new BufferedReader(new InputStreamReader(source.getInputStream())), CSVFormat.newFormat(
@@ -248,7 +355,5 @@ public final class FileScan extends LeafOperator {
     } catch (IOException e) {
       throw new DbException(e);
     }
-
-    lineNumber = 0;
   }
 }
@@ -45,17 +45,11 @@ public final class Filter extends UnaryOperator {
   protected TupleBatch fetchNextReady() throws DbException {
     Operator child = getChild();
     for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
-      BitSet bits = new BitSet(tb.numTuples());
-      for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
-        Boolean valid;
-        try {
-          valid = evaluator.eval(tb, rowIdx);
-        } catch (InvocationTargetException e) {
-          throw new DbException(e);
-        }
-        if (valid) {
-          bits.set(rowIdx);
-        }
+      BitSet bits;
+      try {
+        bits = evaluator.evalBatch(tb);
+      } catch (InvocationTargetException e) {
+        throw new DbException(e);
       }
 
       if (bits.cardinality() == 0) {
@@ -77,7 +71,7 @@ public final class Filter extends UnaryOperator {
 
     evaluator = new BooleanEvaluator(predicate, parameters);
     if (evaluator.needsCompiling()) {
-      evaluator.compile();
+      evaluator.compileForBatches();
     }
   }
 
@@ -0,0 +1,344 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleBatchSpillFile;
+import edu.washington.escience.myria.storage.TupleHashIndex;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * The tuples of one child of a hash join, divided into partitions by the hash code of their join key.
+ *
+ * A partition is either resident, in which case its tuples are kept in memory in a {@link MutableTupleBuffer} indexed
+ * by a {@link TupleHashIndex}, or spilled. When a resident partition is spilled its tuples are written to an "old"
+ * spill file; tuples that arrive afterwards for a spilled partition are appended to a separate "new" spill file.
+ * Keeping the two apart lets a symmetric join avoid emitting again the matches it already produced while the partition
+ * was resident.
+ *
+ * The partition of a tuple is taken from a different group of bits of its hash code at each recursion level, so that a
+ * spilled partition can be partitioned again when it is joined after EOS.
+ */
+final class HashJoinPartitions {
+  /** The number of partitions used by a memory-budgeted join. */
+  static final int NUM_PARTITIONS = 16;
+  /** The number of hash code bits consumed by each recursion level. */
+  private static final int BITS_PER_LEVEL = 4;
+  /** The deepest recursion level at which a fresh group of hash code bits is still available. */
+  static final int MAX_LEVEL = Integer.SIZE / BITS_PER_LEVEL - 1;
+
+  /** Receives the matches of a probe. */
+  interface MatchHandler {
+    /**
+     * @param probeTB the batch containing the probe tuple.
+     * @param probeRow the row of the probe tuple.
+     * @param build the buffer containing the matching build tuple.
+     * @param buildIndex the index of the matching build tuple in the buffer.
+     */
+    void match(TupleBatch probeTB, int probeRow, MutableTupleBuffer build, int buildIndex);
+  }
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The join key of the tuples. */
+  private final int[] keyColumns;
+  /** Whether the indices store the join key, see {@link #usePrimitiveKeys(Schema, int[], Schema, int[])}. */
+  private final boolean primitiveKeys;
+  /** The recursion level, which selects the hash code bits used for partitioning. */
+  private final int level;
+  /** The number of partitions. */
+  private final int numPartitions;
+  /** The resident tuples of each partition, null if the partition is empty or spilled. */
+  private final MutableTupleBuffer[] buffers;
+  /** {Hashcode -> tuple indices with the same hash code} for each resident partition. */
+  private final TupleHashIndex[] indices;
+  /** Whether each partition has been spilled. */
+  private final boolean[] spilled;
+  /** The tuples that were resident when each partition was spilled. */
+  private final TupleBatchSpillFile[] oldFiles;
+  /** The tuples that arrived after each partition was spilled. */
+  private final TupleBatchSpillFile[] newFiles;
+  /** Staging buffers for tuples on their way to {@link #newFiles}. */
+  private final TupleBatchBuffer[] newBuffers;
+  /** The number of resident tuples. */
+  private long numResidentTuples;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param keyColumns the join key of the tuples.
+   * @param primitiveKeys whether the join key is stored in the indices. Requires a single INT or LONG key column.
+   * @param level the recursion level.
+   * @param numPartitions the number of partitions. A single partition disables partitioning.
+   */
+  HashJoinPartitions(final Schema schema, final int[] keyColumns, final boolean primitiveKeys, final int level,
+      final int numPartitions) {
+    Preconditions.checkArgument(numPartitions == 1 || level <= MAX_LEVEL, "no hash bits left for recursion level %s",
+        level);
+    Preconditions.checkArgument(numPartitions > 0 && numPartitions <= 1 << BITS_PER_LEVEL,
+        "numPartitions must be between 1 and %s", 1 << BITS_PER_LEVEL);
+    Preconditions.checkArgument(!primitiveKeys || TupleHashIndex.isPrimitiveKey(schema, keyColumns),
+        "primitive keys require a single INT or LONG key column");
+    this.schema = schema;
+    this.keyColumns = keyColumns;
+    this.primitiveKeys = primitiveKeys;
+    this.level = level;
+    this.numPartitions = numPartitions;
+    buffers = new MutableTupleBuffer[numPartitions];
+    indices = new TupleHashIndex[numPartitions];
+    spilled = new boolean[numPartitions];
+    oldFiles = new TupleBatchSpillFile[numPartitions];
+    newFiles = new TupleBatchSpillFile[numPartitions];
+    newBuffers = new TupleBatchBuffer[numPartitions];
+    numResidentTuples = 0;
+  }
+
+  /**
+   * @param schema1 the schema of one side of a join.
+   * @param keyColumns1 the join key of that side.
+   * @param schema2 the schema of the other side.
+   * @param keyColumns2 the join key of the other side.
+   * @return whether both sides join on a single column of the same INT or LONG type, so that the key values can be
+   *         kept in the hash indices and compared directly.
+   */
+  static boolean usePrimitiveKeys(final Schema schema1, final int[] keyColumns1, final Schema schema2,
+      final int[] keyColumns2) {
+    return TupleHashIndex.isPrimitiveKey(schema1, keyColumns1) && TupleHashIndex.isPrimitiveKey(schema2, keyColumns2)
+        && schema1.getColumnType(keyColumns1[0]) == schema2.getColumnType(keyColumns2[0]);
+  }
+
+  /**
+   * @param hashCode the hash code of a join key.
+   * @return the partition of the key.
+   */
+  int partitionOf(final int hashCode) {
+    if (numPartitions == 1) {
+      return 0;
+    }
+    return ((hashCode >>> (level * BITS_PER_LEVEL)) & ((1 << BITS_PER_LEVEL) - 1)) % numPartitions;
+  }
+
+  /**
+   * @param partition a partition.
+   * @return whether the partition has been spilled.
+   */
+  boolean isSpilled(final int partition) {
+    return spilled[partition];
+  }
+
+  /**
+   * @return whether any partition has been spilled.
+   */
+  boolean hasSpilled() {
+    for (boolean s : spilled) {
+      if (s) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of partitions.
+   */
+  int numPartitions() {
+    return numPartitions;
+  }
+
+  /**
+   * Pass every resident tuple of a partition whose join key equals that of a probe tuple to a handler.
+   *
+   * @param tb the batch containing the probe tuple.
+   * @param probeColumns the join key of the probe tuple.
+   * @param row the row of the probe tuple.
+   * @param partition the partition of the probe tuple, must be resident.
+   * @param hashCode the hash code of the probe tuple's join key.
+   * @param handler receives the matches.
+   */
+  void probe(final TupleBatch tb, final int[] probeColumns, final int row, final int partition, final int hashCode,
+      final MatchHandler handler) {
+    final TupleHashIndex index = indices[partition];
+    if (index == null) {
+      return;
+    }
+    final MutableTupleBuffer buffer = buffers[partition];
+    if (primitiveKeys) {
+      final long key = TupleHashIndex.getKey(tb, probeColumns[0], row);
+      for (int i = index.first(hashCode, key); i != TupleHashIndex.NONE; i = index.next(i, key)) {
+        handler.match(tb, row, buffer, i);
+      }
+    } else {
+      for (int i = index.first(hashCode); i != TupleHashIndex.NONE; i = index.next(i)) {
+        if (TupleUtils.tupleEquals(tb, probeColumns, row, buffer, keyColumns, i)) {
+          handler.match(tb, row, buffer, i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add a tuple to a resident partition.
+   *
+   * @param tb the source TupleBatch.
+   * @param row the row to be added.
+   * @param partition the partition of the row.
+   * @param hashCode the hash code of the row's join key.
+   */
+  void addResident(final TupleBatch tb, final int row, final int partition, final int hashCode) {
+    Preconditions.checkState(!spilled[partition], "partition %s has been spilled", partition);
+    TupleHashIndex index = indices[partition];
+    if (index == null) {
+      index = new TupleHashIndex(primitiveKeys);
+      indices[partition] = index;
+      buffers[partition] = new MutableTupleBuffer(schema);
+    }
+    if (primitiveKeys) {
+      index.add(hashCode, TupleHashIndex.getKey(tb, keyColumns[0], row));
+    } else {
+      index.add(hashCode);
+    }
+    MutableTupleBuffer buffer = buffers[partition];
+    List<? extends Column<?>> inputColumns = tb.getDataColumns();
+    for (int column = 0; column < tb.numColumns(); column++) {
+      buffer.put(column, inputColumns.get(column), row);
+    }
+    numResidentTuples++;
+  }
+
+  /**
+   * Add a tuple to a spilled partition.
+   *
+   * @param tb the source TupleBatch.
+   * @param row the row to be added.
+   * @param partition the partition of the row.
+   * @throws IOException if the tuples cannot be written.
+   */
+  void addSpilled(final TupleBatch tb, final int row, final int partition) throws IOException {
+    Preconditions.checkState(spilled[partition], "partition %s has not been spilled", partition);
+    TupleBatchBuffer buffer = newBuffers[partition];
+    if (buffer == null) {
+      buffer = new TupleBatchBuffer(schema);
+      newBuffers[partition] = buffer;
+      newFiles[partition] = new TupleBatchSpillFile(schema);
+    }
+    buffer.put(tb, row);
+    TupleBatch full = buffer.popFilled();
+    if (full != null) {
+      newFiles[partition].write(full);
+    }
+  }
+
+  /**
+   * Write the resident tuples of a partition to its old spill file and mark it spilled. Spilling an empty partition
+   * only marks it.
+   *
+   * @param partition the partition to be spilled.
+   * @throws IOException if the tuples cannot be written.
+   */
+  void spill(final int partition) throws IOException {
+    Preconditions.checkState(!spilled[partition], "partition %s has already been spilled", partition);
+    spilled[partition] = true;
+    MutableTupleBuffer buffer = buffers[partition];
+    if (buffer == null) {
+      return;
+    }
+    TupleBatchSpillFile file = new TupleBatchSpillFile(schema);
+    for (TupleBatch tb : buffer.getAll()) {
+      file.write(tb);
+    }
+    file.finishWriting();
+    oldFiles[partition] = file;
+    numResidentTuples -= buffer.numTuples();
+    buffers[partition] = null;
+    indices[partition] = null;
+  }
+
+  /**
+   * @param partition a partition.
+   * @return the number of resident tuples in the partition.
+   */
+  int numResidentTuples(final int partition) {
+    if (buffers[partition] == null) {
+      return 0;
+    }
+    return buffers[partition].numTuples();
+  }
+
+  /**
+   * @return the number of resident tuples in all partitions.
+   */
+  long numResidentTuples() {
+    return numResidentTuples;
+  }
+
+  /**
+   * Release the memory of all resident partitions. Spilled partitions are not affected.
+   */
+  void dropResident() {
+    for (int i = 0; i < numPartitions; ++i) {
+      buffers[i] = null;
+      indices[i] = null;
+    }
+    numResidentTuples = 0;
+  }
+
+  /**
+   * Flush the tuples staged for the new spill files to disk. Called once no more tuples will be added.
+   *
+   * @throws IOException if the tuples cannot be written.
+   */
+  void finishSpilling() throws IOException {
+    for (int i = 0; i < numPartitions; ++i) {
+      TupleBatchBuffer buffer = newBuffers[i];
+      if (buffer != null) {
+        for (TupleBatch tb : buffer.getAll()) {
+          newFiles[i].write(tb);
+        }
+        newBuffers[i] = null;
+      }
+      if (newFiles[i] != null) {
+        newFiles[i].finishWriting();
+      }
+    }
+  }
+
+  /**
+   * @param partition a spilled partition.
+   * @return the tuples that were resident when the partition was spilled, or null if there were none.
+   */
+  TupleBatchSpillFile getOldFile(final int partition) {
+    return oldFiles[partition];
+  }
+
+  /**
+   * @param partition a spilled partition.
+   * @return the tuples that arrived after the partition was spilled, or null if there were none.
+   */
+  TupleBatchSpillFile getNewFile(final int partition) {
+    return newFiles[partition];
+  }
+
+  /**
+   * Release all memory and remove all spill files.
+   */
+  void clear() {
+    dropResident();
+    for (int i = 0; i < numPartitions; ++i) {
+      newBuffers[i] = null;
+      if (oldFiles[i] != null) {
+        oldFiles[i].delete();
+        oldFiles[i] = null;
+      }
+      if (newFiles[i] != null) {
+        newFiles[i].delete();
+        newFiles[i] = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.HybridHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Finds the keys that occur most often in its input, and emits their hash codes (the same ones
+ * {@link HybridHashPartitionFunction} uses) with an estimate of their number of occurrences, as tuples of
+ * {@link #SCHEMA}.
+ *
+ * This is a Misra-Gries sketch with at most {@link #setMaxCounters(int)} counters. A key that occurs in more than
+ * <code>1 / (maxCounters + 1)</code> of the input is always emitted, and its count is underestimated by at most that
+ * fraction of the input. The sketches of all the workers can be merged by collecting them at the master and summing
+ * the counts of each hash; the hashes whose sum exceeds a threshold are the heavy hashes of a hybrid shuffle.
+ */
+public final class HeavyHitterSketch extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The schema of the output. */
+  public static final Schema SCHEMA = Schema.ofFields(Type.INT_TYPE, "keyHash", Type.LONG_TYPE, "count");
+  /** The default maximum number of counters. */
+  public static final int DEFAULT_MAX_COUNTERS = 1000;
+
+  /** The key columns. */
+  private final int[] keyColumns;
+  /** The maximum number of counters. */
+  private int maxCounters = DEFAULT_MAX_COUNTERS;
+
+  /** The counts of the hashes currently tracked. */
+  private transient Map<Integer, Long> counters;
+  /** Buffers the output once the input is exhausted. */
+  private transient TupleBatchBuffer outputBuffer;
+
+  /**
+   * @param child the operator that is feeding us tuples.
+   * @param keyColumns the columns of the keys.
+   */
+  public HeavyHitterSketch(@Nullable final Operator child, final int[] keyColumns) {
+    super(child);
+    this.keyColumns = Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "a key needs some columns");
+  }
+
+  /**
+   * @param maxCounters the maximum number of keys tracked at once.
+   */
+  public void setMaxCounters(final int maxCounters) {
+    Preconditions.checkArgument(maxCounters > 0, "maxCounters must be positive");
+    this.maxCounters = maxCounters;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    counters = new HashMap<>();
+    outputBuffer = null;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    counters = null;
+    outputBuffer = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (outputBuffer == null) {
+      TupleBatch tb = null;
+      while ((tb = child.nextReady()) != null) {
+        count(tb);
+      }
+      if (!child.eos()) {
+        return null;
+      }
+      outputBuffer = new TupleBatchBuffer(getSchema());
+      for (Map.Entry<Integer, Long> counter : counters.entrySet()) {
+        outputBuffer.putInt(0, counter.getKey());
+        outputBuffer.putLong(1, counter.getValue());
+      }
+    }
+    return outputBuffer.popAny();
+  }
+
+  /**
+   * Count the keys of a batch.
+   *
+   * @param tb the batch.
+   */
+  private void count(final TupleBatch tb) {
+    final int[] hashes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, keyColumns, hashes);
+    for (int hash : hashes) {
+      final Long count = counters.get(hash);
+      if (count != null) {
+        counters.put(hash, count + 1);
+      } else if (counters.size() < maxCounters) {
+        counters.put(hash, 1L);
+      } else {
+        /* No room for this key: decrement all the counters, and forget the keys that reach zero. */
+        final Iterator<Map.Entry<Integer, Long>> it = counters.entrySet().iterator();
+        while (it.hasNext()) {
+          final Map.Entry<Integer, Long> counter = it.next();
+          if (counter.getValue() == 1) {
+            it.remove();
+          } else {
+            counter.setValue(counter.getValue() - 1);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return SCHEMA;
+  }
+}
@@ -42,6 +42,11 @@ public final class ImplicitDimensionBinaryFileScan extends BinaryFileScan {
     this(schema, source, dimensions, false);
   }
 
+  @Override
+  protected boolean readsDataInput() {
+    return true;
+  }
+
   @Override
   protected final TupleBatch fetchNextReady() throws DbException {
     boolean building = false;
@@ -99,6 +99,7 @@ public final class InMemoryOrderBy extends UnaryOperator {
             table.put(column, inputColumns.get(column), row);
           }
         }
+        setReservedMemory(table.numTuples() * getSchema().estimatedTupleBytes());
       } else if (!getChild().eos()) {
         return null;
       }
@@ -144,7 +145,9 @@ public final class InMemoryOrderBy extends UnaryOperator {
             compared = Type.compareRaw(table.getString(columnIdx, rowIdx), table.getString(columnIdx, otherRowIdx));
             break;
           case DATETIME_TYPE:
-            compared = Type.compareRaw(table.getDateTime(columnIdx, rowIdx), table.getDateTime(columnIdx, otherRowIdx));
+            compared =
+                Type.compareRaw(table.getDateTimeMillis(columnIdx, rowIdx), table.getDateTimeMillis(columnIdx,
+                    otherRowIdx));
             break;
         }
         if (compared != 0) {
@@ -88,6 +88,11 @@ public abstract class Operator implements Serializable {
     return execEnvVars;
   }
 
+  /**
+   * The bytes of memory this operator has reserved, see {@link #setReservedMemory(long)}.
+   */
+  private long reservedMemoryBytes = 0;
+
   /**
    * Logger for profiling.
    */
@@ -126,6 +131,35 @@ public abstract class Operator implements Serializable {
     }
   }
 
+  /**
+   * Report how much memory this operator keeps, e.g., in hash tables or sort buffers. The memory is accounted to the
+   * fragment (see {@link LocalFragmentResourceManager#getReservedMemoryBytes()}) and the query the operator is part
+   * of, and released when the operator is closed.
+   *
+   * @param bytes the estimated bytes of memory this operator keeps now.
+   */
+  protected final void setReservedMemory(final long bytes) {
+    final long delta = bytes - reservedMemoryBytes;
+    if (delta == 0) {
+      return;
+    }
+    reservedMemoryBytes = bytes;
+    if (execEnvVars != null) {
+      final LocalFragmentResourceManager resourceManager =
+          (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+      if (resourceManager != null) {
+        resourceManager.reserveMemory(delta);
+      }
+    }
+  }
+
+  /**
+   * @return the estimated bytes of memory this operator keeps, see {@link #setReservedMemory(long)}.
+   */
+  public final long getReservedMemoryBytes() {
+    return reservedMemoryBytes;
+  }
+
   /**
    * @return the executing {@link LocalFragment} that this {@link Operator} is part of.
    */
@@ -204,6 +238,7 @@ public abstract class Operator implements Serializable {
     } catch (Throwable e) {
       errors = new DbException(e);
     }
+    setReservedMemory(0);
     final Operator[] children = getChildren();
     if (children != null) {
       for (final Operator child : children) {
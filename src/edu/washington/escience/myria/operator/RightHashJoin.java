@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -7,9 +8,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
@@ -19,7 +17,6 @@ import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
@@ -27,6 +24,10 @@ import edu.washington.escience.myria.util.MyriaArrayUtils;
  * This is an implementation of unbalanced hash join. This operator only builds hash tables for its right child, thus
  * will begin to output tuples after right child EOS.
  * 
+ * If a memory budget is set (see {@link #setMemoryBudget(long)}), the hash table is divided into partitions by join key
+ * hash code. Whenever the right child's tuples in memory exceed the budget, the largest partition is spilled to a local
+ * file, and left tuples that fall into a spilled partition are spilled too. The spilled partitions are joined,
+ * recursively partitioning them again if needed, after the left child reaches EOS.
  */
 public final class RightHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
@@ -47,14 +48,21 @@ public final class RightHashJoin extends BinaryOperator {
   private final int[] rightCompareIndx;
 
   /**
-   * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
+   * The hash table holding the tuples from right, partitioned by hash code.
    */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
-
+  private transient HashJoinPartitions rightHashTable;
+  /**
+   * The tuples from left that fall into spilled partitions of the right hash table.
+   */
+  private transient HashJoinPartitions leftSpills;
   /**
-   * The buffer holding the valid tuples from right.
+   * Joins the spilled partitions after EOS, null until then.
    */
-  private transient MutableTupleBuffer rightHashTable;
+  private transient SpilledHashJoins spilledJoins;
+  /**
+   * The maximum number of right tuples kept in memory, or 0 for no limit.
+   */
+  private long memoryBudget = 0;
   /**
    * The buffer holding the results.
    */
@@ -65,42 +73,14 @@ public final class RightHashJoin extends BinaryOperator {
   private final int[] rightAnswerColumns;
 
   /**
-   * Traverse through the list of tuples with the same hash code.
+   * Adds the matches of a left tuple to the answer.
    * */
-  private final class JoinProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * 
-     * */
-    private int[] inputCmpColumns;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] joinAgainstCmpColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
+  private final class JoinProcedure implements HashJoinPartitions.MatchHandler {
 
     @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, joinAgainstCmpColumns, index)) {
-        addToAns(inputTB, row, joinAgainstHashTable, index);
-      }
+    public void match(final TupleBatch probeTB, final int probeRow, final MutableTupleBuffer build,
+        final int buildIndex) {
+      addToAns(probeTB, probeRow, build, buildIndex);
     }
   };
 
@@ -264,10 +244,29 @@ public final class RightHashJoin extends BinaryOperator {
 
   }
 
+  /**
+   * Bound the number of right tuples kept in memory. Partitions of the hash table beyond the budget are spilled to local
+   * files and joined after EOS.
+   * 
+   * @param memoryBudget the maximum number of right tuples kept in memory, or 0 for no limit.
+   */
+  public void setMemoryBudget(final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    this.memoryBudget = memoryBudget;
+  }
+
   @Override
   protected void cleanup() throws DbException {
+    if (rightHashTable != null) {
+      rightHashTable.clear();
+      leftSpills.clear();
+    }
+    if (spilledJoins != null) {
+      spilledJoins.clear();
+    }
     rightHashTable = null;
-    rightHashTableIndices = null;
+    leftSpills = null;
+    spilledJoins = null;
     ans = null;
   }
 
@@ -276,7 +275,7 @@ public final class RightHashJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && right.eos() && ans.numTuples() == 0) {
+    if (left.eos() && right.eos() && ans.numTuples() == 0 && (spilledJoins == null || !spilledJoins.hasWork())) {
       setEOS();
       return;
     }
@@ -357,6 +356,13 @@ public final class RightHashJoin extends BinaryOperator {
        */
     }
 
+    if (left.eos()) {
+      nexttb = fetchNextSpilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+
     if (isEOIReady()) {
       nexttb = ans.popAny();
     }
@@ -364,12 +370,54 @@ public final class RightHashJoin extends BinaryOperator {
     return nexttb;
   }
 
+  /**
+   * Join the spilled partitions, if any. Called once both children have reached EOS.
+   * 
+   * @return the next batch of results of the spilled partitions, or null if there are none left.
+   * @throws DbException if a spill file cannot be read or written.
+   */
+  private TupleBatch fetchNextSpilled() throws DbException {
+    try {
+      if (spilledJoins == null && rightHashTable.hasSpilled()) {
+        rightHashTable.finishSpilling();
+        leftSpills.finishSpilling();
+        spilledJoins =
+            new SpilledHashJoins(getRight().getSchema(), getLeft().getSchema(), rightCompareIndx, leftCompareIndx,
+                memoryBudget, doJoin);
+        for (int p = 0; p < rightHashTable.numPartitions(); ++p) {
+          if (rightHashTable.isSpilled(p)) {
+            spilledJoins.add(Arrays.asList(rightHashTable.getOldFile(p), rightHashTable.getNewFile(p)),
+                Arrays.asList(leftSpills.getNewFile(p)), 1);
+          }
+        }
+        rightHashTable.dropResident();
+      }
+      if (spilledJoins == null) {
+        return null;
+      }
+      while (spilledJoins.hasWork()) {
+        spilledJoins.step();
+        TupleBatch nexttb = ans.popAnyUsingTimeout();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
+    } catch (IOException e) {
+      throw new DbException("error joining spilled partitions", e);
+    }
+    return null;
+  }
+
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator right = getRight();
 
-    rightHashTableIndices = new IntObjectHashMap<>();
-    rightHashTable = new MutableTupleBuffer(right.getSchema());
+    final int numPartitions = memoryBudget > 0 ? HashJoinPartitions.NUM_PARTITIONS : 1;
+    final boolean primitiveKeys =
+        HashJoinPartitions.usePrimitiveKeys(right.getSchema(), rightCompareIndx, getLeft().getSchema(),
+            leftCompareIndx);
+    rightHashTable = new HashJoinPartitions(right.getSchema(), rightCompareIndx, primitiveKeys, 0, numPartitions);
+    leftSpills = new HashJoinPartitions(getLeft().getSchema(), leftCompareIndx, primitiveKeys, 0, numPartitions);
 
     ans = new TupleBatchBuffer(getSchema());
     doJoin = new JoinProcedure();
@@ -379,20 +427,23 @@ public final class RightHashJoin extends BinaryOperator {
    * Process the tuples from left child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if tuples cannot be spilled.
    */
-  protected void processLeftChildTB(final TupleBatch tb) {
-    doJoin.joinAgainstHashTable = rightHashTable;
-    doJoin.inputCmpColumns = leftCompareIndx;
-    doJoin.joinAgainstCmpColumns = rightCompareIndx;
-    doJoin.inputTB = tb;
-
+  protected void processLeftChildTB(final TupleBatch tb) throws DbException {
+    final int[] hashCodes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, leftCompareIndx, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = rightHashTableIndices.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doJoin.row = row;
-        tuplesWithHashCode.forEach(doJoin);
+      final int cntHashCode = hashCodes[row];
+      final int partition = rightHashTable.partitionOf(cntHashCode);
+      if (rightHashTable.isSpilled(partition)) {
+        try {
+          leftSpills.addSpilled(tb, row, partition);
+        } catch (IOException e) {
+          throw new DbException("error spilling left tuples", e);
+        }
+        continue;
       }
+      rightHashTable.probe(tb, leftCompareIndx, row, partition, cntHashCode, doJoin);
     }
   }
 
@@ -400,36 +451,31 @@ public final class RightHashJoin extends BinaryOperator {
    * Process the tuples from right child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if tuples cannot be spilled.
    */
-  protected void processRightChildTB(final TupleBatch tb) {
-
-    for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
-      // only build hash table on two sides if none of the children is EOS
-      addToHashTable(tb, row, rightHashTable, rightHashTableIndices, cntHashCode);
-    }
-
-  }
-
-  /**
-   * @param tb the source TupleBatch
-   * @param row the row number to get added to hash table
-   * @param hashTable the target hash table
-   * @param hashTable1IndicesLocal hash table 1 indices local
-   * @param hashCode the hashCode of the tb.
-   * */
-  private void addToHashTable(final TupleBatch tb, final int row, final MutableTupleBuffer hashTable,
-      final IntObjectHashMap<IntArrayList> hashTable1IndicesLocal, final int hashCode) {
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTable1IndicesLocal.get(hashCode);
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTable1IndicesLocal.put(hashCode, tupleIndicesList);
-    }
-    tupleIndicesList.add(nextIndex);
-    List<? extends Column<?>> inputColumns = tb.getDataColumns();
-    for (int column = 0; column < tb.numColumns(); column++) {
-      hashTable.put(column, inputColumns.get(column), row);
+  protected void processRightChildTB(final TupleBatch tb) throws DbException {
+    try {
+      final int[] hashCodes = new int[tb.numTuples()];
+      HashUtils.hashColumns(tb, rightCompareIndx, hashCodes);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        final int cntHashCode = hashCodes[row];
+        final int partition = rightHashTable.partitionOf(cntHashCode);
+        if (rightHashTable.isSpilled(partition)) {
+          rightHashTable.addSpilled(tb, row, partition);
+        } else {
+          rightHashTable.addResident(tb, row, partition, cntHashCode);
+        }
+      }
+      if (memoryBudget > 0) {
+        while (rightHashTable.numResidentTuples() > memoryBudget) {
+          int partition = SpilledHashJoins.largestResidentPartition(rightHashTable);
+          rightHashTable.spill(partition);
+          leftSpills.spill(partition);
+        }
+      }
+    } catch (IOException e) {
+      throw new DbException("error spilling right tuples", e);
     }
+    setReservedMemory(rightHashTable.numResidentTuples() * getRight().getSchema().estimatedTupleBytes());
   }
 }
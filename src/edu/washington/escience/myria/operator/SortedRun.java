@@ -0,0 +1,16 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A sequence of {@link TupleBatch}es whose tuples are sorted, see {@link TupleBatchMerger}.
+ */
+interface SortedRun {
+  /**
+   * @return the next batch of the run, or null at its end.
+   * @throws IOException if the run cannot be read.
+   */
+  TupleBatch next() throws IOException;
+}
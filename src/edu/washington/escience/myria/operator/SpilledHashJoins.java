@@ -0,0 +1,319 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchSpillFile;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Joins the partitions that a memory-budgeted hash join spilled to disk, once both children have reached EOS.
+ *
+ * Each pending join has a build side and a probe side, each a list of spill files. The build side is loaded into a
+ * {@link HashJoinPartitions} one level deeper than the one it was spilled from; if it does not fit in the memory budget
+ * some of its partitions are spilled again, and the matching probe tuples with them, producing new pending joins. The
+ * recursion stops when the hash code has no bits left, at which point the build side is kept in memory regardless of
+ * the budget.
+ *
+ * The work is done one probe batch at a time so that the operator can hand out results as they become available.
+ */
+final class SpilledHashJoins {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(SpilledHashJoins.class);
+
+  /** A join of spilled build and probe tuples. */
+  private static final class PendingJoin {
+    /** The build side. */
+    private final List<TupleBatchSpillFile> buildFiles;
+    /** The probe side. */
+    private final List<TupleBatchSpillFile> probeFiles;
+    /** The recursion level at which the build side will be partitioned. */
+    private final int level;
+
+    /**
+     * @param buildFiles the build side.
+     * @param probeFiles the probe side.
+     * @param level the recursion level at which the build side will be partitioned.
+     */
+    private PendingJoin(final List<TupleBatchSpillFile> buildFiles, final List<TupleBatchSpillFile> probeFiles,
+        final int level) {
+      this.buildFiles = buildFiles;
+      this.probeFiles = probeFiles;
+      this.level = level;
+    }
+  }
+
+  /** The schema of the build side. */
+  private final Schema buildSchema;
+  /** The schema of the probe side. */
+  private final Schema probeSchema;
+  /** The join key of the build side. */
+  private final int[] buildCompareIndx;
+  /** The join key of the probe side. */
+  private final int[] probeCompareIndx;
+  /** The maximum number of build tuples kept in memory. */
+  private final long memoryBudget;
+  /** Whether the hash indices store the join key. */
+  private final boolean primitiveKeys;
+  /** Receives the matches. */
+  private final HashJoinPartitions.MatchHandler handler;
+  /** The joins that have not been started. */
+  private final Deque<PendingJoin> pending;
+  /** Every spill file handed to or created by this object, deleted by {@link #clear()}. */
+  private final List<TupleBatchSpillFile> allFiles;
+
+  /** The join in progress, or null. */
+  private PendingJoin current;
+  /** The build side of the join in progress. */
+  private HashJoinPartitions currentBuild;
+  /** Receives the probe tuples of the join in progress whose partitions were spilled again. */
+  private HashJoinPartitions currentProbeSpills;
+  /** The remaining probe files of the join in progress. */
+  private Iterator<TupleBatchSpillFile> probeFiles;
+  /** The probe file being read. */
+  private TupleBatchSpillFile.Reader probeReader;
+
+  /**
+   * @param buildSchema the schema of the build side.
+   * @param probeSchema the schema of the probe side.
+   * @param buildCompareIndx the join key of the build side.
+   * @param probeCompareIndx the join key of the probe side.
+   * @param memoryBudget the maximum number of build tuples kept in memory.
+   * @param handler receives the matches.
+   */
+  SpilledHashJoins(final Schema buildSchema, final Schema probeSchema, final int[] buildCompareIndx,
+      final int[] probeCompareIndx, final long memoryBudget, final HashJoinPartitions.MatchHandler handler) {
+    this.buildSchema = buildSchema;
+    this.probeSchema = probeSchema;
+    this.buildCompareIndx = buildCompareIndx;
+    this.probeCompareIndx = probeCompareIndx;
+    this.memoryBudget = memoryBudget;
+    this.handler = handler;
+    primitiveKeys = HashJoinPartitions.usePrimitiveKeys(buildSchema, buildCompareIndx, probeSchema, probeCompareIndx);
+    pending = new ArrayDeque<PendingJoin>();
+    allFiles = new ArrayList<TupleBatchSpillFile>();
+  }
+
+  /**
+   * Schedule a join. Null files are ignored; a join with an empty side is dropped since it has no results.
+   *
+   * @param buildFiles the build side.
+   * @param probeFiles the probe side.
+   * @param level the recursion level at which the build side will be partitioned.
+   */
+  void add(final List<TupleBatchSpillFile> buildFiles, final List<TupleBatchSpillFile> probeFiles, final int level) {
+    List<TupleBatchSpillFile> build = nonEmpty(buildFiles);
+    List<TupleBatchSpillFile> probe = nonEmpty(probeFiles);
+    if (build.isEmpty() || probe.isEmpty()) {
+      return;
+    }
+    pending.add(new PendingJoin(build, probe, level));
+  }
+
+  /**
+   * @param files spill files, some possibly null.
+   * @return the files that are not null and not empty.
+   */
+  private List<TupleBatchSpillFile> nonEmpty(final List<TupleBatchSpillFile> files) {
+    ImmutableList.Builder<TupleBatchSpillFile> ret = ImmutableList.builder();
+    for (TupleBatchSpillFile f : files) {
+      if (f != null) {
+        if (!allFiles.contains(f)) {
+          allFiles.add(f);
+        }
+        if (f.numTuples() > 0) {
+          ret.add(f);
+        }
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * @return whether some spilled tuples have not been joined yet.
+   */
+  boolean hasWork() {
+    return current != null || !pending.isEmpty();
+  }
+
+  /**
+   * Join the next batch of spilled probe tuples, building the hash table of the next pending join first if needed.
+   *
+   * @throws IOException if a spill file cannot be read or written.
+   */
+  void step() throws IOException {
+    if (current == null) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      startJoin(pending.poll());
+    }
+    TupleBatch tb = nextProbeBatch();
+    if (tb == null) {
+      finishJoin();
+      return;
+    }
+    final int[] hashCodes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, probeCompareIndx, hashCodes);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      final int cntHashCode = hashCodes[row];
+      final int partition = currentBuild.partitionOf(cntHashCode);
+      if (currentBuild.isSpilled(partition)) {
+        currentProbeSpills.addSpilled(tb, row, partition);
+        continue;
+      }
+      currentBuild.probe(tb, probeCompareIndx, row, partition, cntHashCode, handler);
+    }
+  }
+
+  /**
+   * Load the build side of a pending join into memory.
+   *
+   * @param join the join.
+   * @throws IOException if a spill file cannot be read or written.
+   */
+  private void startJoin(final PendingJoin join) throws IOException {
+    current = join;
+    final boolean canRecurse = join.level <= HashJoinPartitions.MAX_LEVEL;
+    final int numPartitions = canRecurse ? HashJoinPartitions.NUM_PARTITIONS : 1;
+    currentBuild = new HashJoinPartitions(buildSchema, buildCompareIndx, primitiveKeys, join.level, numPartitions);
+    currentProbeSpills =
+        new HashJoinPartitions(probeSchema, probeCompareIndx, primitiveKeys, join.level, numPartitions);
+    if (!canRecurse) {
+      LOGGER.warn("spilled hash join partition cannot be split further, joining {} tuples in memory",
+          numTuples(join.buildFiles));
+    }
+    for (TupleBatchSpillFile f : join.buildFiles) {
+      try (TupleBatchSpillFile.Reader reader = f.openReader()) {
+        for (TupleBatch tb = reader.next(); tb != null; tb = reader.next()) {
+          final int[] hashCodes = new int[tb.numTuples()];
+          HashUtils.hashColumns(tb, buildCompareIndx, hashCodes);
+          for (int row = 0; row < tb.numTuples(); ++row) {
+            final int cntHashCode = hashCodes[row];
+            final int partition = currentBuild.partitionOf(cntHashCode);
+            if (currentBuild.isSpilled(partition)) {
+              currentBuild.addSpilled(tb, row, partition);
+            } else {
+              currentBuild.addResident(tb, row, partition, cntHashCode);
+            }
+          }
+          if (canRecurse) {
+            while (currentBuild.numResidentTuples() > memoryBudget) {
+              int partition = largestResidentPartition(currentBuild);
+              currentBuild.spill(partition);
+              currentProbeSpills.spill(partition);
+            }
+          }
+        }
+      }
+    }
+    probeFiles = join.probeFiles.iterator();
+    probeReader = null;
+  }
+
+  /**
+   * @return the next batch of the probe side of the join in progress, or null if there is none.
+   * @throws IOException if a spill file cannot be read.
+   */
+  private TupleBatch nextProbeBatch() throws IOException {
+    while (true) {
+      if (probeReader == null) {
+        if (!probeFiles.hasNext()) {
+          return null;
+        }
+        probeReader = probeFiles.next().openReader();
+      }
+      TupleBatch tb = probeReader.next();
+      if (tb != null) {
+        return tb;
+      }
+      probeReader.close();
+      probeReader = null;
+    }
+  }
+
+  /**
+   * Finish the join in progress, scheduling the joins of any partitions it spilled again.
+   *
+   * @throws IOException if a spill file cannot be written.
+   */
+  private void finishJoin() throws IOException {
+    currentBuild.finishSpilling();
+    currentProbeSpills.finishSpilling();
+    for (int p = 0; p < currentBuild.numPartitions(); ++p) {
+      if (currentBuild.isSpilled(p)) {
+        add(Arrays.asList(currentBuild.getOldFile(p), currentBuild.getNewFile(p)), Arrays
+            .asList(currentProbeSpills.getNewFile(p)), current.level + 1);
+      }
+    }
+    currentBuild.dropResident();
+    for (TupleBatchSpillFile f : current.buildFiles) {
+      f.delete();
+    }
+    current = null;
+    currentBuild = null;
+    currentProbeSpills = null;
+    probeFiles = null;
+  }
+
+  /**
+   * @param partitions the partitions.
+   * @return the resident partition with the most tuples.
+   */
+  static int largestResidentPartition(final HashJoinPartitions partitions) {
+    int ret = -1;
+    int max = -1;
+    for (int p = 0; p < partitions.numPartitions(); ++p) {
+      if (!partitions.isSpilled(p) && partitions.numResidentTuples(p) > max) {
+        ret = p;
+        max = partitions.numResidentTuples(p);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param files spill files.
+   * @return the total number of tuples in them.
+   */
+  private static long numTuples(final List<TupleBatchSpillFile> files) {
+    long ret = 0;
+    for (TupleBatchSpillFile f : files) {
+      ret += f.numTuples();
+    }
+    return ret;
+  }
+
+  /**
+   * Abandon any remaining work and remove all spill files.
+   */
+  void clear() {
+    if (probeReader != null) {
+      try {
+        probeReader.close();
+      } catch (IOException e) {
+        LOGGER.warn("error closing spill file reader", e);
+      }
+      probeReader = null;
+    }
+    if (currentBuild != null) {
+      currentBuild.clear();
+      currentProbeSpills.clear();
+    }
+    current = null;
+    pending.clear();
+    for (TupleBatchSpillFile f : allFiles) {
+      f.delete();
+    }
+    allFiles.clear();
+  }
+}
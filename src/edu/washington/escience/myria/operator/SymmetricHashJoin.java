@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -7,9 +8,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
@@ -21,13 +19,17 @@ import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
 /**
  * This is an implementation of hash equal join. The same as in DupElim, this implementation does not keep the
  * references to the incoming TupleBatches in order to get better memory performance.
+ * 
+ * If a memory budget is set (see {@link #setMemoryBudget(long)}), both hash tables are divided into partitions by join
+ * key hash code. Whenever the tuples in memory exceed the budget, the largest partition is spilled to local files on
+ * both sides, and later tuples of that partition are spilled as well instead of being joined. The spilled partitions
+ * are joined after both children reach EOS, without repeating the matches found while they were in memory.
  */
 public final class SymmetricHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
@@ -47,22 +49,25 @@ public final class SymmetricHashJoin extends BinaryOperator {
    */
   private final int[] rightCompareIndx;
   /**
-   * A hash table for tuples from child 1. {Hashcode -> List of tuple indices with the same hash code}
+   * The hash table holding the tuples from left, partitioned by hash code.
    */
-  private transient IntObjectHashMap<IntArrayList> leftHashTableIndices;
+  private transient HashJoinPartitions hashTable1;
   /**
-   * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
+   * The hash table holding the tuples from right, partitioned by hash code.
    */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
-
+  private transient HashJoinPartitions hashTable2;
+  /** Whether the left hash table still keeps tuples in memory. */
+  private transient boolean hashTable1Resident;
+  /** Whether the right hash table still keeps tuples in memory. */
+  private transient boolean hashTable2Resident;
   /**
-   * The buffer holding the valid tuples from left.
+   * Joins the spilled partitions after EOS, null until then.
    */
-  private transient MutableTupleBuffer hashTable1;
+  private transient SpilledHashJoins spilledJoins;
   /**
-   * The buffer holding the valid tuples from right.
+   * The maximum number of tuples kept in memory by both hash tables, or 0 for no limit.
    */
-  private transient MutableTupleBuffer hashTable2;
+  private long memoryBudget = 0;
   /**
    * The buffer holding the results.
    */
@@ -73,88 +78,35 @@ public final class SymmetricHashJoin extends BinaryOperator {
   private final int[] rightAnswerColumns;
 
   /**
-   * Traverse through the list of tuples with the same hash code.
+   * Adds the matches of a tuple to the answer.
    * */
-  private final class JoinProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * 
-     * */
-    private int[] inputCmpColumns;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] joinAgainstCmpColumns;
+  private final class JoinProcedure implements HashJoinPartitions.MatchHandler {
     /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
-    /**
-     * if the tuple which is comparing against the list of tuples with the same hash code is from left child.
+     * if the tuple which is probing the hash table is from left child.
      * */
     private boolean fromLeft;
 
     @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, joinAgainstCmpColumns, index)) {
-
-        addToAns(inputTB, row, joinAgainstHashTable, index, fromLeft);
-      }
+    public void match(final TupleBatch probeTB, final int probeRow, final MutableTupleBuffer build,
+        final int buildIndex) {
+      addToAns(probeTB, probeRow, build, buildIndex, fromLeft);
     }
   };
 
   /**
-   * Traverse through the list of tuples with the same hash code.
+   * Replaces the tuples in a hash table that have the same key as an incoming tuple.
    * */
-  private final class ReplaceProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer hashTable;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] keyColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
+  private final class ReplaceProcedure implements HashJoinPartitions.MatchHandler {
 
     /** if found a replacement. */
     private boolean replaced;
 
     @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, keyColumns, row, hashTable, keyColumns, index)) {
-        replaced = true;
-        List<? extends Column<?>> columns = inputTB.getDataColumns();
-        for (int j = 0; j < inputTB.numColumns(); ++j) {
-          hashTable.replace(j, index, columns.get(j), row);
-        }
+    public void match(final TupleBatch inputTB, final int row, final MutableTupleBuffer hashTable, final int index) {
+      replaced = true;
+      List<? extends Column<?>> columns = inputTB.getDataColumns();
+      for (int j = 0; j < inputTB.numColumns(); ++j) {
+        hashTable.replace(j, index, columns.get(j), row);
       }
     }
   };
@@ -397,8 +349,16 @@ public final class SymmetricHashJoin extends BinaryOperator {
 
   @Override
   protected void cleanup() throws DbException {
+    if (hashTable1 != null) {
+      hashTable1.clear();
+      hashTable2.clear();
+    }
+    if (spilledJoins != null) {
+      spilledJoins.clear();
+    }
     hashTable1 = null;
     hashTable2 = null;
+    spilledJoins = null;
     ans = null;
   }
 
@@ -412,6 +372,9 @@ public final class SymmetricHashJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
     TupleBatch nexttb = ans.popFilled();
+    if (nexttb == null && left.eos() && right.eos()) {
+      nexttb = fetchNextSpilled();
+    }
     while (nexttb == null) {
       boolean hasnewtuple = false;
       if (!left.eos() && !childrenEOI[0]) {
@@ -453,7 +416,7 @@ public final class SymmetricHashJoin extends BinaryOperator {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && right.eos() && ans.numTuples() == 0) {
+    if (left.eos() && right.eos() && ans.numTuples() == 0 && (spilledJoins == null || !spilledJoins.hasWork())) {
       setEOS();
       return;
     }
@@ -501,6 +464,53 @@ public final class SymmetricHashJoin extends BinaryOperator {
     return false;
   }
 
+  /**
+   * Join the spilled partitions, if any. Called once both children have reached EOS.
+   * 
+   * @return the next batch of results of the spilled partitions, or null if there are none left.
+   * @throws DbException if a spill file cannot be read or written.
+   */
+  private TupleBatch fetchNextSpilled() throws DbException {
+    try {
+      if (spilledJoins == null && hashTable2.hasSpilled()) {
+        hashTable1.finishSpilling();
+        hashTable2.finishSpilling();
+        spilledJoins =
+            new SpilledHashJoins(getRight().getSchema(), getLeft().getSchema(), rightCompareIndx, leftCompareIndx,
+                memoryBudget, doJoin);
+        /* spilled partitions are always joined with the right tuples as the build side. */
+        doJoin.fromLeft = true;
+        for (int p = 0; p < hashTable2.numPartitions(); ++p) {
+          if (hashTable2.isSpilled(p)) {
+            /*
+             * The tuples that were in memory when the partition was spilled (old) have already been joined with each
+             * other. What remains is new right x (old + new) left, and old right x new left.
+             */
+            spilledJoins.add(Arrays.asList(hashTable2.getNewFile(p)), Arrays.asList(hashTable1.getOldFile(p),
+                hashTable1.getNewFile(p)), 1);
+            spilledJoins.add(Arrays.asList(hashTable2.getOldFile(p)), Arrays.asList(hashTable1.getNewFile(p)),
+                1);
+          }
+        }
+        hashTable1.dropResident();
+        hashTable2.dropResident();
+      }
+      if (spilledJoins == null) {
+        return null;
+      }
+      while (spilledJoins.hasWork()) {
+        spilledJoins.step();
+        TupleBatch nexttb = ans.popAnyUsingTimeout();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
+    } catch (IOException e) {
+      throw new DbException("error joining spilled partitions", e);
+    }
+    return null;
+  }
+
   @Override
   protected TupleBatch fetchNextReady() throws DbException {
     if (!nonBlocking) {
@@ -524,6 +534,12 @@ public final class SymmetricHashJoin extends BinaryOperator {
      * set EOS or EOI.
      */
     if (isEOIReady()) {
+      if (getLeft().eos() && getRight().eos()) {
+        nexttb = fetchNextSpilled();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
       nexttb = ans.popAny();
       if (nexttb == null) {
         checkEOSAndEOI();
@@ -579,6 +595,12 @@ public final class SymmetricHashJoin extends BinaryOperator {
      * and/or EOS
      */
     if (isEOIReady()) {
+      if (left.eos() && right.eos()) {
+        nexttb = fetchNextSpilled();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
       nexttb = ans.popAny();
       if (nexttb == null) {
         checkEOSAndEOI();
@@ -591,11 +613,13 @@ public final class SymmetricHashJoin extends BinaryOperator {
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator left = getLeft();
     final Operator right = getRight();
-    leftHashTableIndices = new IntObjectHashMap<IntArrayList>();
-    rightHashTableIndices = new IntObjectHashMap<IntArrayList>();
-
-    hashTable1 = new MutableTupleBuffer(left.getSchema());
-    hashTable2 = new MutableTupleBuffer(right.getSchema());
+    final int numPartitions = memoryBudget > 0 ? HashJoinPartitions.NUM_PARTITIONS : 1;
+    final boolean primitiveKeys =
+        HashJoinPartitions.usePrimitiveKeys(left.getSchema(), leftCompareIndx, right.getSchema(), rightCompareIndx);
+    hashTable1 = new HashJoinPartitions(left.getSchema(), leftCompareIndx, primitiveKeys, 0, numPartitions);
+    hashTable2 = new HashJoinPartitions(right.getSchema(), rightCompareIndx, primitiveKeys, 0, numPartitions);
+    hashTable1Resident = true;
+    hashTable2Resident = true;
 
     ans = new TupleBatchBuffer(getSchema());
 
@@ -613,106 +637,115 @@ public final class SymmetricHashJoin extends BinaryOperator {
   /**
    * @param tb the incoming TupleBatch for processing join.
    * @param fromLeft if the tb is from left.
+   * @throws DbException if tuples cannot be spilled.
    */
-  protected void processChildTB(final TupleBatch tb, final boolean fromLeft) {
+  protected void processChildTB(final TupleBatch tb, final boolean fromLeft) throws DbException {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && rightHashTableIndices != null) {
+    if (left.eos() && hashTable2Resident) {
       /*
        * delete right child's hash table if the left child is EOS, since there will be no incoming tuples from right as
        * it will never be probed again.
        */
-      rightHashTableIndices = null;
-      hashTable2 = null;
+      hashTable2.dropResident();
+      hashTable2Resident = false;
     }
-    if (right.eos() && leftHashTableIndices != null) {
+    if (right.eos() && hashTable1Resident) {
       /*
        * delete left child's hash table if the right child is EOS, since there will be no incoming tuples from left as
        * it will never be probed again.
        */
-      leftHashTableIndices = null;
-      hashTable1 = null;
+      hashTable1.dropResident();
+      hashTable1Resident = false;
     }
 
     final boolean useSetSemantics = fromLeft && setSemanticsLeft || !fromLeft && setSemanticsRight;
-    MutableTupleBuffer hashTable1Local = null;
-    IntObjectHashMap<IntArrayList> hashTable1IndicesLocal = null;
-    IntObjectHashMap<IntArrayList> hashTable2IndicesLocal = null;
+    final HashJoinPartitions hashTable1Local;
+    final HashJoinPartitions hashTable2Local;
+    final boolean buildHashTable;
+    final int[] inputCmpColumns;
     if (fromLeft) {
       hashTable1Local = hashTable1;
-      doJoin.joinAgainstHashTable = hashTable2;
-      hashTable1IndicesLocal = leftHashTableIndices;
-      hashTable2IndicesLocal = rightHashTableIndices;
-      doJoin.inputCmpColumns = leftCompareIndx;
-      doJoin.joinAgainstCmpColumns = rightCompareIndx;
-      if (useSetSemantics) {
-        doReplace.hashTable = hashTable1;
-        doReplace.keyColumns = leftCompareIndx;
-      }
+      hashTable2Local = hashTable2;
+      buildHashTable = hashTable1Resident;
+      inputCmpColumns = leftCompareIndx;
     } else {
       hashTable1Local = hashTable2;
-      doJoin.joinAgainstHashTable = hashTable1;
-      hashTable1IndicesLocal = rightHashTableIndices;
-      hashTable2IndicesLocal = leftHashTableIndices;
-      doJoin.inputCmpColumns = rightCompareIndx;
-      doJoin.joinAgainstCmpColumns = leftCompareIndx;
-      if (useSetSemantics) {
-        doReplace.hashTable = hashTable2;
-        doReplace.keyColumns = rightCompareIndx;
-      }
+      hashTable2Local = hashTable1;
+      buildHashTable = hashTable2Resident;
+      inputCmpColumns = rightCompareIndx;
     }
     doJoin.fromLeft = fromLeft;
-    doJoin.inputTB = tb;
-    if (useSetSemantics) {
-      doReplace.inputTB = tb;
-    }
 
-    for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doJoin.row = row;
-        tuplesWithHashCode.forEach(doJoin);
+    final int[] hashCodes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, inputCmpColumns, hashCodes);
+    try {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        final int cntHashCode = hashCodes[row];
+        final int partition = hashTable1Local.partitionOf(cntHashCode);
+        if (hashTable1Local.isSpilled(partition)) {
+          /* the partition is spilled on both sides, so this tuple will be joined after EOS. */
+          hashTable1Local.addSpilled(tb, row, partition);
+          continue;
+        }
+        hashTable2Local.probe(tb, inputCmpColumns, row, partition, cntHashCode, doJoin);
+
+        if (buildHashTable) {
+          // only build hash table on two sides if none of the children is EOS
+          addToHashTable(tb, inputCmpColumns, row, hashTable1Local, partition, cntHashCode, useSetSemantics);
+        }
       }
+      if (memoryBudget > 0) {
+        spillIfNeeded();
+      }
+    } catch (IOException e) {
+      throw new DbException("error spilling tuples", e);
+    }
+    setReservedMemory(hashTable1.numResidentTuples() * left.getSchema().estimatedTupleBytes()
+        + hashTable2.numResidentTuples() * right.getSchema().estimatedTupleBytes());
+  }
 
-      if (hashTable1Local != null) {
-        // only build hash table on two sides if none of the children is EOS
-        addToHashTable(tb, row, hashTable1Local, hashTable1IndicesLocal, cntHashCode, useSetSemantics);
+  /**
+   * Spill the largest partitions of the hash tables until the tuples in memory fit in the memory budget. A partition is
+   * always spilled on both sides at once.
+   * 
+   * @throws IOException if tuples cannot be written.
+   */
+  private void spillIfNeeded() throws IOException {
+    while (hashTable1.numResidentTuples() + hashTable2.numResidentTuples() > memoryBudget) {
+      int largest = -1;
+      int max = -1;
+      for (int p = 0; p < hashTable1.numPartitions(); ++p) {
+        int size = hashTable1.numResidentTuples(p) + hashTable2.numResidentTuples(p);
+        if (!hashTable1.isSpilled(p) && size > max) {
+          largest = p;
+          max = size;
+        }
       }
+      hashTable1.spill(largest);
+      hashTable2.spill(largest);
     }
   }
 
   /**
    * @param tb the source TupleBatch
+   * @param keyColumns the key columns of the tb.
    * @param row the row number to get added to hash table
    * @param hashTable the target hash table
-   * @param hashTable1IndicesLocal hash table 1 indices local
+   * @param partition the partition of the row in the hash table.
    * @param hashCode the hashCode of the tb.
    * @param useSetSemantics if need to update the hash table using set semantics.
    * */
-  private void addToHashTable(final TupleBatch tb, final int row, final MutableTupleBuffer hashTable,
-      final IntObjectHashMap<IntArrayList> hashTable1IndicesLocal, final int hashCode, final boolean useSetSemantics) {
-
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTable1IndicesLocal.get(hashCode);
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTable1IndicesLocal.put(hashCode, tupleIndicesList);
-    }
-
+  private void addToHashTable(final TupleBatch tb, final int[] keyColumns, final int row,
+      final HashJoinPartitions hashTable, final int partition, final int hashCode, final boolean useSetSemantics) {
     doReplace.replaced = false;
     if (useSetSemantics) {
-      doReplace.row = row;
-      tupleIndicesList.forEach(doReplace);
+      hashTable.probe(tb, keyColumns, row, partition, hashCode, doReplace);
     }
     if (!doReplace.replaced) {
       /* not using set semantics || using set semantics but found nothing to replace (i.e. new) */
-      tupleIndicesList.add(nextIndex);
-      List<? extends Column<?>> inputColumns = tb.getDataColumns();
-      for (int column = 0; column < tb.numColumns(); column++) {
-        hashTable.put(column, inputColumns.get(column), row);
-      }
+      hashTable.addResident(tb, row, partition, hashCode);
     }
   }
 
@@ -721,11 +754,13 @@ public final class SymmetricHashJoin extends BinaryOperator {
    */
   public long getNumTuplesInHashTables() {
     long sum = 0;
-    if (hashTable1 != null) {
-      sum += hashTable1.numTuples();
+    HashJoinPartitions table = hashTable1;
+    if (table != null) {
+      sum += table.numResidentTuples();
     }
-    if (hashTable2 != null) {
-      sum += hashTable2.numTuples();
+    table = hashTable2;
+    if (table != null) {
+      sum += table.numResidentTuples();
     }
     return sum;
   }
@@ -740,6 +775,19 @@ public final class SymmetricHashJoin extends BinaryOperator {
     RIGHT
   }
 
+  /**
+   * Bound the number of tuples kept in memory by the hash tables. Partitions beyond the budget are spilled to local files
+   * and joined after EOS. Not supported with set semantics.
+   * 
+   * @param memoryBudget the maximum number of tuples kept in memory by both hash tables, or 0 for no limit.
+   */
+  public void setMemoryBudget(final long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget >= 0, "memoryBudget must be non-negative");
+    Preconditions.checkArgument(memoryBudget == 0 || !(setSemanticsLeft || setSemanticsRight),
+        "a memory budget cannot be used with set semantics");
+    this.memoryBudget = memoryBudget;
+  }
+
   /**
    * Set the pull order.
    * 
@@ -0,0 +1,177 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Merges runs of {@link TupleBatch}es, each sorted in the same order, into one sorted run. The runs are kept in a heap
+ * ordered by their current tuple, and tuples that are equal in the sort columns are returned in the order of their
+ * runs, so merging runs of consecutive input keeps a sort stable.
+ */
+final class TupleBatchMerger implements SortedRun {
+
+  /** The position of a merge in one of its runs. */
+  private static final class RunCursor {
+    /** The run. */
+    private final SortedRun run;
+    /** The position of the run in the merge, to break ties. */
+    private final int index;
+    /** The current batch of the run. */
+    private TupleBatch batch;
+    /** The current row of {@link #batch}. */
+    private int row;
+
+    /**
+     * @param run the run.
+     * @param index the position of the run in the merge.
+     */
+    RunCursor(final SortedRun run, final int index) {
+      this.run = run;
+      this.index = index;
+    }
+
+    /**
+     * Move to the next tuple of the run.
+     *
+     * @return false if the run has ended.
+     * @throws IOException if the run cannot be read.
+     */
+    boolean advance() throws IOException {
+      ++row;
+      while (batch == null || row >= batch.numTuples()) {
+        batch = run.next();
+        row = 0;
+        if (batch == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The columns the runs are sorted by. */
+  private final int[] sortColumns;
+  /** True for each sort column that is sorted ascending. */
+  private final boolean[] ascending;
+  /** The types of the sort columns. */
+  private final Type[] sortTypes;
+  /** The runs that have tuples left, ordered by their current tuple. */
+  private final PriorityQueue<RunCursor> heap;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param sortColumns the columns the runs are sorted by, in order of precedence.
+   * @param ascending true for each sort column that is sorted ascending.
+   * @param runs the runs. Runs that come earlier win ties.
+   * @throws IOException if a run cannot be read.
+   */
+  TupleBatchMerger(final Schema schema, final int[] sortColumns, final boolean[] ascending,
+      final List<? extends SortedRun> runs) throws IOException {
+    this.schema = schema;
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    sortTypes = new Type[sortColumns.length];
+    for (int i = 0; i < sortColumns.length; ++i) {
+      sortTypes[i] = schema.getColumnType(sortColumns[i]);
+    }
+    heap = new PriorityQueue<RunCursor>(Math.max(1, runs.size()), new Comparator<RunCursor>() {
+      @Override
+      public int compare(final RunCursor c1, final RunCursor c2) {
+        final int compared = compareTuples(c1.batch, c1.row, c2.batch, c2.row);
+        if (compared != 0) {
+          return compared;
+        }
+        return Integer.compare(c1.index, c2.index);
+      }
+    });
+    for (int i = 0; i < runs.size(); ++i) {
+      final RunCursor cursor = new RunCursor(runs.get(i), i);
+      cursor.row = -1;
+      if (cursor.advance()) {
+        heap.add(cursor);
+      }
+    }
+  }
+
+  /**
+   * @param tb1 a batch.
+   * @param row1 a row of that batch.
+   * @param tb2 another batch.
+   * @param row2 a row of the other batch.
+   * @return how the first tuple compares to the second in the sort order.
+   */
+  private int compareTuples(final TupleBatch tb1, final int row1, final TupleBatch tb2, final int row2) {
+    for (int i = 0; i < sortColumns.length; ++i) {
+      final Column<?> c1 = tb1.getDataColumns().get(sortColumns[i]);
+      final Column<?> c2 = tb2.getDataColumns().get(sortColumns[i]);
+      int compared;
+      switch (sortTypes[i]) {
+        case BOOLEAN_TYPE:
+          compared = Type.compareRaw(c1.getBoolean(row1), c2.getBoolean(row2));
+          break;
+        case DOUBLE_TYPE:
+          compared = Type.compareRaw(c1.getDouble(row1), c2.getDouble(row2));
+          break;
+        case FLOAT_TYPE:
+          compared = Type.compareRaw(c1.getFloat(row1), c2.getFloat(row2));
+          break;
+        case INT_TYPE:
+          compared = Type.compareRaw(c1.getInt(row1), c2.getInt(row2));
+          break;
+        case LONG_TYPE:
+          compared = Type.compareRaw(c1.getLong(row1), c2.getLong(row2));
+          break;
+        case STRING_TYPE:
+          compared = Type.compareRaw(c1.getString(row1), c2.getString(row2));
+          break;
+        case DATETIME_TYPE:
+          compared = Type.compareRaw(c1.getDateTimeMillis(row1), c2.getDateTimeMillis(row2));
+          break;
+        default:
+          throw new IllegalStateException("Invalid type.");
+      }
+      if (compared != 0) {
+        return ascending[i] ? compared : -compared;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public TupleBatch next() throws IOException {
+    if (heap.isEmpty()) {
+      return null;
+    }
+    final List<ColumnBuilder<?>> builders = ColumnFactory.allocateColumns(schema);
+    int numTuples = 0;
+    while (numTuples < TupleBatch.BATCH_SIZE && !heap.isEmpty()) {
+      final RunCursor cursor = heap.poll();
+      final List<? extends Column<?>> columns = cursor.batch.getDataColumns();
+      for (int column = 0; column < builders.size(); ++column) {
+        TupleUtils.copyValue(columns.get(column), cursor.row, builders.get(column));
+      }
+      ++numTuples;
+      if (cursor.advance()) {
+        heap.add(cursor);
+      }
+    }
+    final List<Column<?>> columns = new ArrayList<Column<?>>(builders.size());
+    for (ColumnBuilder<?> builder : builders) {
+      columns.add(builder.build());
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+}
@@ -0,0 +1,422 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Sorts the tuples of a list of {@link TupleBatch}es in memory.
+ *
+ * The values of each sort column are first copied into one primitive array, indexed by the position of the tuple in
+ * the input. The positions are then sorted as an <code>int[]</code> by a stable merge sort whose comparisons only read
+ * those arrays, so they neither box indexes nor switch on the column type. If the first sort column is not a string,
+ * its values are also normalized into longs that compare like the column in its sort direction, and sorted alongside
+ * the positions, so that most comparisons do not leave the arrays being merged. Finally the sorted tuples are gathered
+ * into new batches, one column at a time.
+ */
+final class TupleBatchSorter {
+  /** Ranges shorter than this are sorted by insertion sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** The values of one sort column, indexed by the position of the tuple in the input. */
+  private abstract static class SortKey {
+    /** Whether the column is sorted ascending. */
+    private final boolean ascending;
+
+    /**
+     * @param ascending whether the column is sorted ascending.
+     */
+    SortKey(final boolean ascending) {
+      this.ascending = ascending;
+    }
+
+    /**
+     * @param tuple1 the position of a tuple.
+     * @param tuple2 the position of another tuple.
+     * @return how the first tuple compares to the second in this column, in the sort direction of the column.
+     */
+    final int compare(final int tuple1, final int tuple2) {
+      final int compared = compareAscending(tuple1, tuple2);
+      return ascending ? compared : -compared;
+    }
+
+    /**
+     * @param tuple1 the position of a tuple.
+     * @param tuple2 the position of another tuple.
+     * @return how the first tuple compares to the second in this column.
+     */
+    abstract int compareAscending(int tuple1, int tuple2);
+
+    /**
+     * @return whether {@link #normalized(int)} is supported.
+     */
+    boolean isNormalizable() {
+      return false;
+    }
+
+    /**
+     * @param tuple the position of a tuple.
+     * @return a long that compares to those of other tuples like their values in the sort direction of the column.
+     */
+    long normalized(final int tuple) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param value a long that compares like the values of the column in ascending order.
+     * @return the long for the sort direction of the column.
+     */
+    final long direct(final long value) {
+      return ascending ? value : ~value;
+    }
+  }
+
+  /** A BOOLEAN, INT, LONG or DATETIME column, as longs. DATETIME values are compared by their milliseconds. */
+  private static final class LongKey extends SortKey {
+    /** The values. */
+    private final long[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending whether the column is sorted ascending.
+     */
+    LongKey(final long[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareAscending(final int tuple1, final int tuple2) {
+      return Long.compare(values[tuple1], values[tuple2]);
+    }
+
+    @Override
+    boolean isNormalizable() {
+      return true;
+    }
+
+    @Override
+    long normalized(final int tuple) {
+      return direct(values[tuple]);
+    }
+  }
+
+  /** A FLOAT or DOUBLE column, as doubles. Widening keeps the order of {@link Float#compare(float, float)}. */
+  private static final class DoubleKey extends SortKey {
+    /** The values. */
+    private final double[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending whether the column is sorted ascending.
+     */
+    DoubleKey(final double[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareAscending(final int tuple1, final int tuple2) {
+      return Double.compare(values[tuple1], values[tuple2]);
+    }
+
+    @Override
+    boolean isNormalizable() {
+      return true;
+    }
+
+    @Override
+    long normalized(final int tuple) {
+      /* The order of Double.compare: flip the magnitude bits of negative numbers so that they sort below. */
+      final long bits = Double.doubleToLongBits(values[tuple]);
+      return direct(bits ^ ((bits >> (Long.SIZE - 1)) & Long.MAX_VALUE));
+    }
+  }
+
+  /** A STRING column. */
+  private static final class StringKey extends SortKey {
+    /** The values. */
+    private final String[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending whether the column is sorted ascending.
+     */
+    StringKey(final String[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareAscending(final int tuple1, final int tuple2) {
+      return values[tuple1].compareTo(values[tuple2]);
+    }
+  }
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The input batches. */
+  private final List<TupleBatch> batches;
+  /** The position of the first tuple of each input batch. */
+  private final int[] batchStarts;
+  /** The sort columns. */
+  private final SortKey[] keys;
+  /** The positions of the tuples, in sorted order once {@link #sort(long[])} has run. */
+  private final int[] order;
+  /** The first sort key that is not normalized into the prefixes sorted alongside {@link #order}. */
+  private final int firstUnnormalizedKey;
+  /** The index in {@link #order} of the first tuple that {@link #next()} has not yet returned. */
+  private int nextTuple;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param batches the tuples. The list is not copied.
+   * @param sortColumns the columns to sort by, in order of precedence.
+   * @param ascending whether each of the sort columns is sorted ascending.
+   */
+  TupleBatchSorter(final Schema schema, final List<TupleBatch> batches, final int[] sortColumns,
+      final boolean[] ascending) {
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sortColumns and ascending must have the same length");
+    this.schema = schema;
+    this.batches = batches;
+    batchStarts = new int[batches.size()];
+    long numTuples = 0;
+    for (int i = 0; i < batches.size(); ++i) {
+      Preconditions.checkArgument(numTuples <= Integer.MAX_VALUE, "too many tuples to sort in memory");
+      batchStarts[i] = (int) numTuples;
+      numTuples += batches.get(i).numTuples();
+    }
+    Preconditions.checkArgument(numTuples <= Integer.MAX_VALUE, "too many tuples to sort in memory");
+    keys = new SortKey[sortColumns.length];
+    for (int i = 0; i < sortColumns.length; ++i) {
+      keys[i] = extractKey(sortColumns[i], ascending[i], (int) numTuples);
+    }
+    order = new int[(int) numTuples];
+    final long[] prefixes = new long[order.length];
+    firstUnnormalizedKey = keys.length > 0 && keys[0].isNormalizable() ? 1 : 0;
+    for (int i = 0; i < order.length; ++i) {
+      order[i] = i;
+      if (firstUnnormalizedKey > 0) {
+        prefixes[i] = keys[0].normalized(i);
+      }
+    }
+    sort(prefixes);
+    nextTuple = 0;
+  }
+
+  /**
+   * Copy the values of a sort column into a primitive array.
+   *
+   * @param column the column.
+   * @param ascending whether the column is sorted ascending.
+   * @param numTuples the number of tuples.
+   * @return the values of the column.
+   */
+  private SortKey extractKey(final int column, final boolean ascending, final int numTuples) {
+    switch (schema.getColumnType(column)) {
+      case BOOLEAN_TYPE:
+      case INT_TYPE:
+      case LONG_TYPE:
+      case DATETIME_TYPE: {
+        final long[] values = new long[numTuples];
+        int i = 0;
+        for (TupleBatch tb : batches) {
+          final Column<?> c = tb.getDataColumns().get(column);
+          final int n = tb.numTuples();
+          switch (schema.getColumnType(column)) {
+            case BOOLEAN_TYPE:
+              for (int row = 0; row < n; ++row) {
+                values[i++] = c.getBoolean(row) ? 1 : 0;
+              }
+              break;
+            case INT_TYPE:
+              for (int row = 0; row < n; ++row) {
+                values[i++] = c.getInt(row);
+              }
+              break;
+            case LONG_TYPE:
+              for (int row = 0; row < n; ++row) {
+                values[i++] = c.getLong(row);
+              }
+              break;
+            default:
+              for (int row = 0; row < n; ++row) {
+                values[i++] = c.getDateTimeMillis(row);
+              }
+              break;
+          }
+        }
+        return new LongKey(values, ascending);
+      }
+      case FLOAT_TYPE:
+      case DOUBLE_TYPE: {
+        final double[] values = new double[numTuples];
+        final boolean isFloat = schema.getColumnType(column) == Type.FLOAT_TYPE;
+        int i = 0;
+        for (TupleBatch tb : batches) {
+          final Column<?> c = tb.getDataColumns().get(column);
+          final int n = tb.numTuples();
+          for (int row = 0; row < n; ++row) {
+            values[i++] = isFloat ? c.getFloat(row) : c.getDouble(row);
+          }
+        }
+        return new DoubleKey(values, ascending);
+      }
+      case STRING_TYPE: {
+        final String[] values = new String[numTuples];
+        int i = 0;
+        for (TupleBatch tb : batches) {
+          final Column<?> c = tb.getDataColumns().get(column);
+          final int n = tb.numTuples();
+          for (int row = 0; row < n; ++row) {
+            values[i++] = c.getString(row);
+          }
+        }
+        return new StringKey(values, ascending);
+      }
+    }
+    throw new IllegalStateException("Invalid type.");
+  }
+
+  /**
+   * @param prefix1 the normalized first sort key of a tuple, or 0.
+   * @param tuple1 the position of the tuple.
+   * @param prefix2 the normalized first sort key of another tuple, or 0.
+   * @param tuple2 the position of the other tuple.
+   * @return how the first tuple compares to the second in the sort order.
+   */
+  private int compare(final long prefix1, final int tuple1, final long prefix2, final int tuple2) {
+    if (prefix1 != prefix2) {
+      return prefix1 < prefix2 ? -1 : 1;
+    }
+    for (int i = firstUnnormalizedKey; i < keys.length; ++i) {
+      final int compared = keys[i].compare(tuple1, tuple2);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sort {@link #order}.
+   *
+   * @param prefixes the normalized first sort key of each tuple, or zeros if it cannot be normalized.
+   */
+  private void sort(final long[] prefixes) {
+    if (order.length < 2) {
+      return;
+    }
+    mergeSort(prefixes.clone(), order.clone(), prefixes, order, 0, order.length);
+  }
+
+  /**
+   * Stable merge sort of the tuples in <code>[from, to)</code> of <code>dstPrefixes</code> and <code>dstOrder</code>,
+   * which hold the same values as the src arrays in that range. All arrays are overwritten; the sorted tuples end up in
+   * the dst arrays.
+   *
+   * @param srcPrefixes scratch space, holding the same values as dstPrefixes.
+   * @param srcOrder scratch space, holding the same values as dstOrder.
+   * @param dstPrefixes the normalized first sort keys of the tuples to sort.
+   * @param dstOrder the positions of the tuples to sort.
+   * @param from the first index to sort.
+   * @param to one past the last index to sort.
+   */
+  private void mergeSort(final long[] srcPrefixes, final int[] srcOrder, final long[] dstPrefixes,
+      final int[] dstOrder, final int from, final int to) {
+    if (to - from < INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; ++i) {
+        final long prefix = dstPrefixes[i];
+        final int tuple = dstOrder[i];
+        int j = i;
+        while (j > from && compare(dstPrefixes[j - 1], dstOrder[j - 1], prefix, tuple) > 0) {
+          dstPrefixes[j] = dstPrefixes[j - 1];
+          dstOrder[j] = dstOrder[j - 1];
+          --j;
+        }
+        dstPrefixes[j] = prefix;
+        dstOrder[j] = tuple;
+      }
+      return;
+    }
+    final int mid = (from + to) >>> 1;
+    /* Sort the halves into src, then merge them into dst. */
+    mergeSort(dstPrefixes, dstOrder, srcPrefixes, srcOrder, from, mid);
+    mergeSort(dstPrefixes, dstOrder, srcPrefixes, srcOrder, mid, to);
+    if (compare(srcPrefixes[mid - 1], srcOrder[mid - 1], srcPrefixes[mid], srcOrder[mid]) <= 0) {
+      System.arraycopy(srcPrefixes, from, dstPrefixes, from, to - from);
+      System.arraycopy(srcOrder, from, dstOrder, from, to - from);
+      return;
+    }
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; ++i) {
+      if (right >= to || left < mid
+          && compare(srcPrefixes[left], srcOrder[left], srcPrefixes[right], srcOrder[right]) <= 0) {
+        dstPrefixes[i] = srcPrefixes[left];
+        dstOrder[i] = srcOrder[left++];
+      } else {
+        dstPrefixes[i] = srcPrefixes[right];
+        dstOrder[i] = srcOrder[right++];
+      }
+    }
+  }
+
+  /**
+   * @return the number of tuples.
+   */
+  int numTuples() {
+    return order.length;
+  }
+
+  /**
+   * @return the next batch of sorted tuples, or null if all tuples have been returned.
+   */
+  TupleBatch next() {
+    if (nextTuple >= order.length) {
+      return null;
+    }
+    final int numTuples = Math.min(TupleBatch.BATCH_SIZE, order.length - nextTuple);
+    /* Find where each tuple comes from once, then gather one column at a time. */
+    final TupleBatch[] sourceBatches = new TupleBatch[numTuples];
+    final int[] sourceRows = new int[numTuples];
+    for (int i = 0; i < numTuples; ++i) {
+      final int tuple = order[nextTuple + i];
+      int batch = Arrays.binarySearch(batchStarts, tuple);
+      if (batch < 0) {
+        batch = -batch - 2;
+      }
+      /* Skip over empty batches, which share their start with the next one. */
+      while (batch + 1 < batchStarts.length && batchStarts[batch + 1] == tuple) {
+        ++batch;
+      }
+      sourceBatches[i] = batches.get(batch);
+      sourceRows[i] = tuple - batchStarts[batch];
+    }
+    nextTuple += numTuples;
+
+    final List<ColumnBuilder<?>> builders = ColumnFactory.allocateColumns(schema);
+    for (int column = 0; column < builders.size(); ++column) {
+      final ColumnBuilder<?> builder = builders.get(column);
+      for (int i = 0; i < numTuples; ++i) {
+        TupleUtils.copyValue(sourceBatches[i].getDataColumns().get(column), sourceRows[i], builder);
+      }
+    }
+    final List<Column<?>> columns = new ArrayList<Column<?>>(builders.size());
+    for (ColumnBuilder<?> builder : builders) {
+      columns.add(builder.build());
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+}
@@ -27,6 +27,18 @@ public final class AggUtils {
   private static final Set<AggregationOp> STATS_OPS = ImmutableSet.of(AggregationOp.MIN, AggregationOp.MAX,
       AggregationOp.SUM, AggregationOp.AVG, AggregationOp.STDEV);
 
+  /** The smallest number of groups for which grouped aggregation states are allocated. */
+  private static final int MIN_GROUP_CAPACITY = 16;
+
+  /**
+   * @param capacity the number of groups the aggregation states can hold.
+   * @param numGroups the number of groups the aggregation states must hold, more than <code>capacity</code>.
+   * @return the number of groups the grown aggregation states should hold.
+   */
+  public static int growCapacity(final int capacity, final int numGroups) {
+    return Math.max(numGroups, Math.max(MIN_GROUP_CAPACITY, capacity + (capacity >> 1)));
+  }
+
   /**
    * @param aggOps the aggregate operations
    * @return true if count must be computed.
@@ -92,6 +104,58 @@ public final class AggUtils {
     return aggregators;
   }
 
+  /**
+   * Utility class to allocate the aggregators that merge the partial aggregation states produced by a
+   * {@link PartialAggregate}. The partial states of the aggregates are next to each other, in the order of the
+   * factories.
+   * 
+   * @param factories The factories that produced the partial aggregation states.
+   * @param partialSchema The schema of the partial aggregation states.
+   * @param firstColumn The first column of the partial state of the first aggregate.
+   * @return the aggregators for this operator.
+   * @throws DbException if there is an error.
+   */
+  public static Aggregator[] allocateMergers(final AggregatorFactory[] factories, final Schema partialSchema,
+      final int firstColumn) throws DbException {
+    Aggregator[] aggregators = new Aggregator[factories.length];
+    int column = firstColumn;
+    for (int j = 0; j < factories.length; ++j) {
+      aggregators[j] = factories[j].getMerger(partialSchema, column);
+      column += aggregators[j].getPartialSchema().numColumns();
+    }
+    return aggregators;
+  }
+
+  /**
+   * @param aggregators the {@link Aggregator}s that merge partial aggregation states, see
+   *          {@link #allocateMergers(AggregatorFactory[], Schema, int)}.
+   * @param firstColumn the first column of the partial state of the first aggregate.
+   * @return the first column of the partial state of each aggregate.
+   */
+  public static int[] getPartialColumns(final Aggregator[] aggregators, final int firstColumn) {
+    int[] columns = new int[aggregators.length];
+    int column = firstColumn;
+    for (int j = 0; j < aggregators.length; ++j) {
+      columns[j] = column;
+      column += aggregators[j].getPartialSchema().numColumns();
+    }
+    return columns;
+  }
+
+  /**
+   * Utility class to allocate the initial aggregation states of a set of groups from a set of {@link Aggregator}s.
+   * 
+   * @param aggregators the {@link Aggregator}s that will update the states.
+   * @return the initial aggregation states of an empty set of groups for the specified {@link Aggregator}s.
+   */
+  public static Object[] allocateGroupStates(final Aggregator[] aggregators) {
+    Object[] states = new Object[aggregators.length];
+    for (int j = 0; j < aggregators.length; ++j) {
+      states[j] = aggregators[j].getInitialGroupStates();
+    }
+    return states;
+  }
+
   /**
    * Utility class to allocate the initial aggregation states from a set of {@link Aggregator}s.
    * 
@@ -41,6 +41,53 @@ public interface Aggregator extends Serializable {
    */
   void getResult(AppendableTable dest, int destColumn, Object state) throws DbException;
 
+  /**
+   * Update the aggregates of a set of groups using all rows of the specified table. The states of all groups are kept
+   * together, in flat arrays indexed by group where possible, so that each aggregate is computed in a tight loop over
+   * the rows.
+   * 
+   * @param from the source {@link ReadableTable}.
+   * @param groups the group of each row. Groups are numbered from 0.
+   * @param numGroups the number of groups, including those that first appear in this table.
+   * @param groupStates the states of the groups, see {@link #getInitialGroupStates()}, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addBatch(ReadableTable from, int[] groups, int numGroups, Object groupStates) throws DbException;
+
+  /**
+   * Update the aggregates of a set of groups by merging the partial aggregation states in all rows of the specified
+   * table. See {@link #addBatch(ReadableTable, int[], int, Object)} and
+   * {@link #addPartialRow(ReadableTable, int, int, Object)}.
+   * 
+   * @param from the source {@link ReadableTable}.
+   * @param fromColumn the first column of the partial aggregation state, see {@link #getPartialSchema()}.
+   * @param groups the group of each row. Groups are numbered from 0.
+   * @param numGroups the number of groups, including those that first appear in this table.
+   * @param groupStates the states of the groups, see {@link #getInitialGroupStates()}, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addPartialBatch(ReadableTable from, int fromColumn, int[] groups, int numGroups, Object groupStates)
+      throws DbException;
+
+  /**
+   * Append the aggregate result(s) of a group to the given table starting from the given column.
+   * 
+   * @param dest where to store the aggregate result.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @param groupStates the states of the groups, see {@link #getInitialGroupStates()}.
+   * @param group the group.
+   * @throws DbException if there is an error.
+   */
+  void getGroupResult(AppendableTable dest, int destColumn, Object groupStates, int group) throws DbException;
+
+  /**
+   * Compute and return the initial states of an empty set of groups for instances of this {@link Aggregator}. The
+   * states grow as {@link #addBatch(ReadableTable, int[], int, Object)} sees new groups.
+   * 
+   * @return the initial states of an empty set of groups.
+   */
+  Object getInitialGroupStates();
+
   /**
    * Compute and return the initial state tuple for instances of this {@link Aggregator}.
    * 
@@ -54,4 +101,35 @@ public interface Aggregator extends Serializable {
    * @return the schema of the outputs of this {@link Aggregator}.
    */
   Schema getResultSchema();
+
+  /**
+   * Compute and return the schema of the partial aggregation states of this {@link Aggregator}. See
+   * {@link #getPartialResult(AppendableTable, int, Object)}.
+   * 
+   * @return the schema of the partial aggregation states of this {@link Aggregator}.
+   */
+  Schema getPartialSchema();
+
+  /**
+   * Append the partial aggregation state to the given table starting from the given column. The partial states of a
+   * group are combined by the {@link Aggregator} made by {@link AggregatorFactory#getMerger(Schema, int)}, which then
+   * produces the same result as if this {@link Aggregator} had seen all the rows of the group.
+   * 
+   * @param dest where to store the partial aggregation state.
+   * @param destColumn the starting index into which the state will be output.
+   * @param state the state of the aggregate.
+   * @throws DbException if there is an error.
+   */
+  void getPartialResult(AppendableTable dest, int destColumn, Object state) throws DbException;
+
+  /**
+   * Update this aggregate by merging the partial aggregation state in the specified row of the specified table.
+   * 
+   * @param from the source {@link ReadableTable}.
+   * @param fromColumn the first column of the partial aggregation state, see {@link #getPartialSchema()}.
+   * @param row the specified row.
+   * @param state the initial state of the aggregate, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addPartialRow(ReadableTable from, int fromColumn, int row, Object state) throws DbException;
 }
@@ -29,4 +29,16 @@ public interface AggregatorFactory extends Serializable {
    */
   @Nonnull
   Aggregator get(Schema inputSchema) throws DbException;
+
+  /**
+   * Create a new aggregator that merges the partial aggregation states produced by the aggregators of this factory. See
+   * {@link Aggregator#getPartialResult}.
+   * 
+   * @param partialSchema the schema of the incoming partial aggregation states.
+   * @param column the first column of the partial aggregation state of this aggregate.
+   * @return a new aggregator that merges the partial aggregation states of this aggregate.
+   * @throws DbException if this aggregate cannot be computed from partial aggregation states.
+   */
+  @Nonnull
+  Aggregator getMerger(Schema partialSchema, int column) throws DbException;
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -9,6 +10,7 @@ import com.google.common.math.LongMath;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -97,6 +99,59 @@ public final class BooleanAggregator extends PrimitiveAggregator {
     addBoolean(from.getBoolean(fromColumn, row), state);
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    BooleanAggState b = (BooleanAggState) state;
+    dest.putLong(destColumn, b.count);
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    BooleanAggState b = (BooleanAggState) state;
+    b.count = LongMath.checkedAdd(b.count, from.getLong(fromColumn, row));
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new BooleanGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final BooleanGroupStates s = (BooleanGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final long[] count = s.count;
+    final int numTuples = from.numTuples();
+    for (int row = 0; row < numTuples; ++row) {
+      count[groups[row]]++;
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final BooleanGroupStates s = (BooleanGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final long[] count = s.count;
+    final ReadableColumn column = from.asColumn(fromColumn);
+    final int numTuples = from.numTuples();
+    for (int row = 0; row < numTuples; ++row) {
+      final int group = groups[row];
+      count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    dest.putLong(destColumn, ((BooleanGroupStates) groupStates).count[group]);
+  }
+
   @Override
   public Object getInitialState() {
     return new BooleanAggState();
@@ -107,4 +162,21 @@ public final class BooleanAggregator extends PrimitiveAggregator {
     /** The number of tuples seen so far. */
     private long count = 0;
   }
+
+  /** Private internal class that wraps the number of tuples seen so far in each of a set of groups. */
+  private final class BooleanGroupStates {
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups > count.length) {
+        count = Arrays.copyOf(count, AggUtils.growCapacity(count.length, numGroups));
+      }
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -10,6 +11,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -138,6 +140,146 @@ public final class DateTimeAggregator extends PrimitiveAggregator {
     return AVAILABLE_AGG;
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DateTimeAggState d = (DateTimeAggState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, d.count);
+    }
+    if (needsMin) {
+      dest.putDateTime(idx++, d.min);
+    }
+    if (needsMax) {
+      dest.putDateTime(idx, d.max);
+    }
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    DateTimeAggState d = (DateTimeAggState) state;
+    int idx = fromColumn;
+    if (needsCount) {
+      d.count = LongMath.checkedAdd(d.count, from.getLong(idx++, row));
+    }
+    if (needsMin) {
+      final DateTime min = from.getDateTime(idx++, row);
+      if (d.min == null || d.min.compareTo(min) > 0) {
+        d.min = min;
+      }
+    }
+    if (needsMax) {
+      final DateTime max = from.getDateTime(idx, row);
+      if (d.max == null || d.max.compareTo(max) < 0) {
+        d.max = max;
+      }
+    }
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new DateTimeGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final DateTimeGroupStates s = (DateTimeGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        count[groups[row]]++;
+      }
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsMin) {
+      final DateTime[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (min[group] == null || min[group].getMillis() > column.getDateTimeMillis(row)) {
+          min[group] = column.getDateTime(row);
+        }
+      }
+    }
+    if (needsMax) {
+      final DateTime[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (max[group] == null || max[group].getMillis() < column.getDateTimeMillis(row)) {
+          max[group] = column.getDateTime(row);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final DateTimeGroupStates s = (DateTimeGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (needsCount) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+      }
+    }
+    if (needsMin) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final DateTime[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (min[group] == null || min[group].getMillis() > column.getDateTimeMillis(row)) {
+          min[group] = column.getDateTime(row);
+        }
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn column = from.asColumn(idx);
+      final DateTime[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (max[group] == null || max[group].getMillis() < column.getDateTimeMillis(row)) {
+          max[group] = column.getDateTime(row);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    final DateTimeGroupStates s = (DateTimeGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case COUNT:
+          dest.putLong(idx, s.count[group]);
+          break;
+        case MAX:
+          dest.putDateTime(idx, s.max[group]);
+          break;
+        case MIN:
+          dest.putDateTime(idx, s.min[group]);
+          break;
+        case AVG:
+        case STDEV:
+        case SUM:
+          throw new UnsupportedOperationException("Aggregate " + op + " on type DateTime");
+      }
+      idx++;
+    }
+  }
+
   @Override
   public Object getInitialState() {
     return new DateTimeAggState();
@@ -152,4 +294,41 @@ public final class DateTimeAggregator extends PrimitiveAggregator {
     /** The maximum value in the aggregated column. */
     private DateTime max = null;
   }
+
+  /**
+   * Private internal class that wraps the states of a set of groups in flat arrays indexed by group. Only the arrays
+   * needed by the {@link #aggOps} grow with the number of groups.
+   */
+  private final class DateTimeGroupStates {
+    /** The number of groups the arrays can hold. */
+    private int capacity = 0;
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column in each group. */
+    private DateTime[] min = new DateTime[0];
+    /** The maximum value in the aggregated column in each group. */
+    private DateTime[] max = new DateTime[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups <= capacity) {
+        return;
+      }
+      final int newCapacity = AggUtils.growCapacity(capacity, numGroups);
+      if (needsCount) {
+        count = Arrays.copyOf(count, newCapacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, newCapacity);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, newCapacity);
+      }
+      capacity = newCapacity;
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -136,6 +138,186 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     return Type.DOUBLE_TYPE;
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    DoubleAggState d = (DoubleAggState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, d.count);
+    }
+    if (needsSum) {
+      dest.putDouble(idx++, d.sum);
+    }
+    if (needsSumSq) {
+      dest.putDouble(idx++, d.sumSquared);
+    }
+    if (needsMin) {
+      dest.putDouble(idx++, d.min);
+    }
+    if (needsMax) {
+      dest.putDouble(idx, d.max);
+    }
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    DoubleAggState d = (DoubleAggState) state;
+    int idx = fromColumn;
+    if (needsCount) {
+      d.count = LongMath.checkedAdd(d.count, from.getLong(idx++, row));
+    }
+    if (needsSum) {
+      d.sum += from.getDouble(idx++, row);
+    }
+    if (needsSumSq) {
+      d.sumSquared += from.getDouble(idx++, row);
+    }
+    if (needsMin) {
+      d.min = Math.min(d.min, from.getDouble(idx++, row));
+    }
+    if (needsMax) {
+      d.max = Math.max(d.max, from.getDouble(idx, row));
+    }
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new DoubleGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final DoubleGroupStates s = (DoubleGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        count[groups[row]]++;
+      }
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final double[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = sum[group] + column.getDouble(row);
+      }
+    }
+    if (needsSumSq) {
+      final double[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        final double value = column.getDouble(row);
+        sumSquared[group] = sumSquared[group] + value * value;
+      }
+    }
+    if (needsMin) {
+      final double[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getDouble(row));
+      }
+    }
+    if (needsMax) {
+      final double[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getDouble(row));
+      }
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final DoubleGroupStates s = (DoubleGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (needsCount) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+      }
+    }
+    if (needsSum) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final double[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = sum[group] + column.getDouble(row);
+      }
+    }
+    if (needsSumSq) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final double[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sumSquared[group] = sumSquared[group] + column.getDouble(row);
+      }
+    }
+    if (needsMin) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final double[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getDouble(row));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn column = from.asColumn(idx);
+      final double[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getDouble(row));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    final DoubleGroupStates s = (DoubleGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, s.sum[group] * 1.0 / s.count[group]);
+          break;
+        case COUNT:
+          dest.putLong(idx, s.count[group]);
+          break;
+        case MAX:
+          dest.putDouble(idx, s.max[group]);
+          break;
+        case MIN:
+          dest.putDouble(idx, s.min[group]);
+          break;
+        case STDEV:
+          double first = s.sumSquared[group] / s.count[group];
+          double second = s.sum[group] / s.count[group];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putDouble(idx, s.sum[group]);
+          break;
+      }
+      idx++;
+    }
+  }
+
   @Override
   public Object getInitialState() {
     return new DoubleAggState();
@@ -148,10 +330,59 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     /** The minimum value in the aggregated column. */
     private double min = Double.MAX_VALUE;
     /** The maximum value in the aggregated column. */
-    private double max = Double.MIN_VALUE;
+    private double max = Double.NEGATIVE_INFINITY;
     /** The sum of values in the aggregated column. */
     private double sum = 0;
     /** private temp variables for computing stdev. */
     private double sumSquared = 0;
   }
+
+  /**
+   * Private internal class that wraps the states of a set of groups in flat arrays indexed by group. Only the arrays
+   * needed by the {@link #aggOps} grow with the number of groups.
+   */
+  private final class DoubleGroupStates {
+    /** The number of groups the arrays can hold. */
+    private int capacity = 0;
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column in each group. */
+    private double[] min = new double[0];
+    /** The maximum value in the aggregated column in each group. */
+    private double[] max = new double[0];
+    /** The sum of values in the aggregated column in each group. */
+    private double[] sum = new double[0];
+    /** The sum of squared values in the aggregated column in each group, for computing stdev. */
+    private double[] sumSquared = new double[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups <= capacity) {
+        return;
+      }
+      final int newCapacity = AggUtils.growCapacity(capacity, numGroups);
+      if (needsCount) {
+        count = Arrays.copyOf(count, newCapacity);
+      }
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, newCapacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, newCapacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, newCapacity);
+        Arrays.fill(min, capacity, newCapacity, Double.POSITIVE_INFINITY);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, newCapacity);
+        Arrays.fill(max, capacity, newCapacity, Double.NEGATIVE_INFINITY);
+      }
+      capacity = newCapacity;
+    }
+  }
 }
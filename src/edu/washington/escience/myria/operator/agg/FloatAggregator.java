@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -138,6 +140,186 @@ public final class FloatAggregator extends PrimitiveAggregator {
     return AVAILABLE_AGG;
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    FloatAggState f = (FloatAggState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, f.count);
+    }
+    if (needsSum) {
+      dest.putDouble(idx++, f.sum);
+    }
+    if (needsSumSq) {
+      dest.putDouble(idx++, f.sumSquared);
+    }
+    if (needsMin) {
+      dest.putFloat(idx++, f.min);
+    }
+    if (needsMax) {
+      dest.putFloat(idx, f.max);
+    }
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    FloatAggState f = (FloatAggState) state;
+    int idx = fromColumn;
+    if (needsCount) {
+      f.count = LongMath.checkedAdd(f.count, from.getLong(idx++, row));
+    }
+    if (needsSum) {
+      f.sum += from.getDouble(idx++, row);
+    }
+    if (needsSumSq) {
+      f.sumSquared += from.getDouble(idx++, row);
+    }
+    if (needsMin) {
+      f.min = Math.min(f.min, from.getFloat(idx++, row));
+    }
+    if (needsMax) {
+      f.max = Math.max(f.max, from.getFloat(idx, row));
+    }
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new FloatGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final FloatGroupStates s = (FloatGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        count[groups[row]]++;
+      }
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final double[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = sum[group] + column.getFloat(row);
+      }
+    }
+    if (needsSumSq) {
+      final double[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        final float value = column.getFloat(row);
+        sumSquared[group] = sumSquared[group] + value * value;
+      }
+    }
+    if (needsMin) {
+      final float[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getFloat(row));
+      }
+    }
+    if (needsMax) {
+      final float[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getFloat(row));
+      }
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final FloatGroupStates s = (FloatGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (needsCount) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+      }
+    }
+    if (needsSum) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final double[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = sum[group] + column.getDouble(row);
+      }
+    }
+    if (needsSumSq) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final double[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sumSquared[group] = sumSquared[group] + column.getDouble(row);
+      }
+    }
+    if (needsMin) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final float[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getFloat(row));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn column = from.asColumn(idx);
+      final float[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getFloat(row));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    final FloatGroupStates s = (FloatGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, s.sum[group] * 1.0 / s.count[group]);
+          break;
+        case COUNT:
+          dest.putLong(idx, s.count[group]);
+          break;
+        case MAX:
+          dest.putFloat(idx, s.max[group]);
+          break;
+        case MIN:
+          dest.putFloat(idx, s.min[group]);
+          break;
+        case STDEV:
+          double first = s.sumSquared[group] / s.count[group];
+          double second = s.sum[group] / s.count[group];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putDouble(idx, s.sum[group]);
+          break;
+      }
+      idx++;
+    }
+  }
+
   @Override
   public Object getInitialState() {
     return new FloatAggState();
@@ -150,10 +332,59 @@ public final class FloatAggregator extends PrimitiveAggregator {
     /** The minimum value in the aggregated column. */
     private float min = Float.MAX_VALUE;
     /** The maximum value in the aggregated column. */
-    private float max = Float.MIN_VALUE;
+    private float max = Float.NEGATIVE_INFINITY;
     /** The sum of values in the aggregated column. */
     private double sum = 0;
     /** private temp variables for computing stdev. */
     private double sumSquared = 0;
   }
+
+  /**
+   * Private internal class that wraps the states of a set of groups in flat arrays indexed by group. Only the arrays
+   * needed by the {@link #aggOps} grow with the number of groups.
+   */
+  private final class FloatGroupStates {
+    /** The number of groups the arrays can hold. */
+    private int capacity = 0;
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column in each group. */
+    private float[] min = new float[0];
+    /** The maximum value in the aggregated column in each group. */
+    private float[] max = new float[0];
+    /** The sum of values in the aggregated column in each group. */
+    private double[] sum = new double[0];
+    /** The sum of squared values in the aggregated column in each group, for computing stdev. */
+    private double[] sumSquared = new double[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups <= capacity) {
+        return;
+      }
+      final int newCapacity = AggUtils.growCapacity(capacity, numGroups);
+      if (needsCount) {
+        count = Arrays.copyOf(count, newCapacity);
+      }
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, newCapacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, newCapacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, newCapacity);
+        Arrays.fill(min, capacity, newCapacity, Float.POSITIVE_INFINITY);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, newCapacity);
+        Arrays.fill(max, capacity, newCapacity, Float.NEGATIVE_INFINITY);
+      }
+      capacity = newCapacity;
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -138,6 +140,186 @@ public final class LongAggregator extends PrimitiveAggregator {
     return Type.LONG_TYPE;
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    LongAggState lstate = (LongAggState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, lstate.count);
+    }
+    if (needsSum) {
+      dest.putLong(idx++, lstate.sum);
+    }
+    if (needsSumSq) {
+      dest.putLong(idx++, lstate.sumSquared);
+    }
+    if (needsMin) {
+      dest.putLong(idx++, lstate.min);
+    }
+    if (needsMax) {
+      dest.putLong(idx, lstate.max);
+    }
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    LongAggState lstate = (LongAggState) state;
+    int idx = fromColumn;
+    if (needsCount) {
+      lstate.count = LongMath.checkedAdd(lstate.count, from.getLong(idx++, row));
+    }
+    if (needsSum) {
+      lstate.sum = LongMath.checkedAdd(lstate.sum, from.getLong(idx++, row));
+    }
+    if (needsSumSq) {
+      lstate.sumSquared = LongMath.checkedAdd(lstate.sumSquared, from.getLong(idx++, row));
+    }
+    if (needsMin) {
+      lstate.min = Math.min(lstate.min, from.getLong(idx++, row));
+    }
+    if (needsMax) {
+      lstate.max = Math.max(lstate.max, from.getLong(idx, row));
+    }
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new LongGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final LongGroupStates s = (LongGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        count[groups[row]]++;
+      }
+    }
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final long[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = LongMath.checkedAdd(sum[group], column.getLong(row));
+      }
+    }
+    if (needsSumSq) {
+      final long[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        final long value = column.getLong(row);
+        sumSquared[group] = LongMath.checkedAdd(sumSquared[group], LongMath.checkedMultiply(value, value));
+      }
+    }
+    if (needsMin) {
+      final long[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getLong(row));
+      }
+    }
+    if (needsMax) {
+      final long[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getLong(row));
+      }
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final LongGroupStates s = (LongGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (needsCount) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+      }
+    }
+    if (needsSum) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] sum = s.sum;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sum[group] = LongMath.checkedAdd(sum[group], column.getLong(row));
+      }
+    }
+    if (needsSumSq) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] sumSquared = s.sumSquared;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        sumSquared[group] = LongMath.checkedAdd(sumSquared[group], column.getLong(row));
+      }
+    }
+    if (needsMin) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        min[group] = Math.min(min[group], column.getLong(row));
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn column = from.asColumn(idx);
+      final long[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        max[group] = Math.max(max[group], column.getLong(row));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    final LongGroupStates s = (LongGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, s.sum[group] * 1.0 / s.count[group]);
+          break;
+        case COUNT:
+          dest.putLong(idx, s.count[group]);
+          break;
+        case MAX:
+          dest.putLong(idx, s.max[group]);
+          break;
+        case MIN:
+          dest.putLong(idx, s.min[group]);
+          break;
+        case STDEV:
+          double first = ((double) s.sumSquared[group]) / s.count[group];
+          double second = ((double) s.sum[group]) / s.count[group];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putLong(idx, s.sum[group]);
+          break;
+      }
+      idx++;
+    }
+  }
+
   @Override
   public Object getInitialState() {
     return new LongAggState();
@@ -156,4 +338,53 @@ public final class LongAggregator extends PrimitiveAggregator {
     /** private temp variables for computing stdev. */
     private long sumSquared = 0;
   }
+
+  /**
+   * Private internal class that wraps the states of a set of groups in flat arrays indexed by group. Only the arrays
+   * needed by the {@link #aggOps} grow with the number of groups.
+   */
+  private final class LongGroupStates {
+    /** The number of groups the arrays can hold. */
+    private int capacity = 0;
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column in each group. */
+    private long[] min = new long[0];
+    /** The maximum value in the aggregated column in each group. */
+    private long[] max = new long[0];
+    /** The sum of values in the aggregated column in each group. */
+    private long[] sum = new long[0];
+    /** The sum of squared values in the aggregated column in each group, for computing stdev. */
+    private long[] sumSquared = new long[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups <= capacity) {
+        return;
+      }
+      final int newCapacity = AggUtils.growCapacity(capacity, numGroups);
+      if (needsCount) {
+        count = Arrays.copyOf(count, newCapacity);
+      }
+      if (needsSum) {
+        sum = Arrays.copyOf(sum, newCapacity);
+      }
+      if (needsSumSq) {
+        sumSquared = Arrays.copyOf(sumSquared, newCapacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, newCapacity);
+        Arrays.fill(min, capacity, newCapacity, Long.MAX_VALUE);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, newCapacity);
+        Arrays.fill(max, capacity, newCapacity, Long.MIN_VALUE);
+      }
+      capacity = newCapacity;
+    }
+  }
 }
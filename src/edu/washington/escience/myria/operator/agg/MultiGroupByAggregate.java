@@ -1,6 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -10,8 +10,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
@@ -22,6 +20,7 @@ import edu.washington.escience.myria.operator.UnaryOperator;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.storage.TupleBuffer;
+import edu.washington.escience.myria.storage.TupleHashIndex;
 import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
 
@@ -41,10 +40,12 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   private transient TupleBuffer groupKeys;
   /** Final group keys. */
   private List<TupleBatch> groupKeyList;
-  /** Holds the corresponding aggregation state for each group key in {@link #groupKeys}. */
-  private transient List<Object[]> aggStates;
-  /** Maps the hash of a grouping key to a list of indices in {@link #groupKeys}. */
-  private transient IntObjectHashMap<IntArrayList> groupKeyMap;
+  /** The aggregation states of the groups of each aggregator, indexed like the group keys in {@link #groupKeys}. */
+  private transient Object[] groupStates;
+  /** The group of the first row of the next batch of results. */
+  private transient int nextResultGroup;
+  /** Maps the hash of a grouping key to indices in {@link #groupKeys}. */
+  private transient TupleHashIndex groupKeyMap;
   /** The schema of the columns indicated by the group keys. */
   private Schema groupSchema;
   /** The schema of the aggregation result. */
@@ -58,6 +59,10 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   private final int[] gfields;
   /** An array [0, 1, .., gfields.length-1] used for comparing tuples. */
   private final int[] grpRange;
+  /** True if the input holds partial aggregation states, see {@link PartialAggregate}. */
+  private final boolean mergePartials;
+  /** When merging partial aggregation states, the first column of the state of each aggregate. */
+  private int[] partialColumns;
 
   /**
    * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates.
@@ -68,6 +73,22 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    */
   public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields,
       final AggregatorFactory... factories) {
+    this(child, gfields, false, factories);
+  }
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates. If
+   * <code>mergePartials</code> is true, the input is the output of a {@link PartialAggregate} with the same grouping
+   * fields and factories: the grouping fields are the leading columns, and are followed by the partial aggregation
+   * states, which are merged.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param mergePartials true if the input holds partial aggregation states.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group.
+   */
+  public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields, final boolean mergePartials,
+      final AggregatorFactory... factories) {
     super(child);
     this.gfields = Objects.requireNonNull(gfields, "gfields");
     this.factories = Objects.requireNonNull(factories, "factories");
@@ -77,13 +98,18 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     for (int i = 0; i < gfields.length; ++i) {
       grpRange[i] = i;
     }
+    if (mergePartials) {
+      Preconditions.checkArgument(Arrays.equals(gfields, grpRange),
+          "to merge partial aggregates, must group over the leading fields");
+    }
+    this.mergePartials = mergePartials;
     groupKeyList = null;
   }
 
   @Override
   protected void cleanup() throws DbException {
     groupKeys = null;
-    aggStates = null;
+    groupStates = null;
     groupKeyMap = null;
     groupKeyList = null;
   }
@@ -106,29 +132,26 @@ public final class MultiGroupByAggregate extends UnaryOperator {
 
     TupleBatch tb = child.nextReady();
     while (tb != null) {
+      final int[] groups = new int[tb.numTuples()];
+      final int[] hashCodes = new int[tb.numTuples()];
+      HashUtils.hashColumns(tb, gfields, hashCodes);
       for (int row = 0; row < tb.numTuples(); ++row) {
-        int rowHash = HashUtils.hashSubRow(tb, gfields, row);
-        IntArrayList hashMatches = groupKeyMap.get(rowHash);
-        if (hashMatches == null) {
-          hashMatches = newKey(rowHash);
-          newGroup(tb, row, hashMatches);
-          continue;
-        }
-        boolean found = false;
-        for (int i = 0; i < hashMatches.size(); i++) {
-          int value = hashMatches.get(i);
+        int rowHash = hashCodes[row];
+        int group = TupleHashIndex.NONE;
+        for (int value = groupKeyMap.first(rowHash); value != TupleHashIndex.NONE; value = groupKeyMap.next(value)) {
           if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
-            updateGroup(tb, row, aggStates.get(value));
-            found = true;
+            group = value;
             break;
           }
         }
 
-        if (!found) {
-          newGroup(tb, row, hashMatches);
+        if (group == TupleHashIndex.NONE) {
+          group = newGroup(tb, row, rowHash);
         }
-        Preconditions.checkState(groupKeys.numTuples() == aggStates.size());
+        groups[row] = group;
       }
+      updateGroups(tb, groups);
+      setReservedMemory(groupKeyMap.size() * getSchema().estimatedTupleBytes());
       tb = child.nextReady();
     }
 
@@ -149,46 +172,32 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    * 
    * @param tb the source {@link TupleBatch}
    * @param row the row in <code>tb</code> that contains the new group
-   * @param hashMatches the list of all rows in the output {@link TupleBuffer}s that match this hash.
-   * @throws DbException if there is an error.
+   * @param groupHash the hash of the grouping columns in the row.
+   * @return the new group.
    */
-  private void newGroup(final TupleBatch tb, final int row, final IntArrayList hashMatches) throws DbException {
-    int newIndex = groupKeys.numTuples();
+  private int newGroup(final TupleBatch tb, final int row, final int groupHash) {
     for (int column = 0; column < gfields.length; ++column) {
       TupleUtils.copyValue(tb, gfields[column], row, groupKeys, column);
     }
-    hashMatches.add(newIndex);
-    Object[] curAggStates = AggUtils.allocateAggStates(aggregators);
-    aggStates.add(curAggStates);
-    updateGroup(tb, row, curAggStates);
-    Preconditions.checkState(groupKeys.numTuples() == aggStates.size(), "groupKeys %s != groupAggs %s", groupKeys
-        .numTuples(), aggStates.size());
-  }
-
-  /**
-   * Called when there is no list yet of which output aggregators match the specified hash. Creates a new int list to
-   * store these matches, and insert it into the {@link #groupKeyMap}.
-   * 
-   * @param groupHash the hash of the grouping columns in a tuple
-   * @return the new (empty still) int list storing which output aggregators match the specified hash
-   */
-  private IntArrayList newKey(final int groupHash) {
-    IntArrayList matches = new IntArrayList(1);
-    groupKeyMap.put(groupHash, matches);
-    return matches;
+    groupKeyMap.add(groupHash);
+    return groupKeyMap.size() - 1;
   }
 
   /**
-   * Update the aggregation states with the tuples in the specified row.
+   * Update the aggregation states of the groups with all the tuples of the specified batch.
    * 
    * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new values
-   * @param curAggStates the aggregation states to be updated.
+   * @param groups the group of each row of <code>tb</code>
    * @throws DbException if there is an error.
    */
-  private void updateGroup(final TupleBatch tb, final int row, final Object[] curAggStates) throws DbException {
+  private void updateGroups(final TupleBatch tb, final int[] groups) throws DbException {
+    final int numGroups = groupKeyMap.size();
     for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].addRow(tb, row, curAggStates[agg]);
+      if (mergePartials) {
+        aggregators[agg].addPartialBatch(tb, partialColumns[agg], groups, numGroups, groupStates[agg]);
+      } else {
+        aggregators[agg].addBatch(tb, groups, numGroups, groupStates[agg]);
+      }
     }
   }
 
@@ -210,10 +219,9 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     TupleBatch curGroupKeys = groupKeyList.remove(0);
     TupleBatchBuffer curGroupAggs = new TupleBatchBuffer(aggSchema);
     for (int row = 0; row < curGroupKeys.numTuples(); ++row) {
-      Object[] rowAggs = aggStates.get(row);
       int curCol = 0;
       for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].getResult(curGroupAggs, curCol, rowAggs[agg]);
+        aggregators[agg].getGroupResult(curGroupAggs, curCol, groupStates[agg], nextResultGroup + row);
         curCol += aggregators[agg].getResultSchema().numColumns();
       }
     }
@@ -221,8 +229,7 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     Preconditions.checkState(curGroupKeys.numTuples() == aggResults.numTuples(),
         "curGroupKeys size %s != aggResults size %s", curGroupKeys.numTuples(), aggResults.numTuples());
 
-    /* Note: as of Java7 sublists of sublists do what we want -- the sublists are at most one deep. */
-    aggStates = aggStates.subList(curGroupKeys.numTuples(), aggStates.size());
+    nextResultGroup += curGroupKeys.numTuples();
     return new TupleBatch(getSchema(), ImmutableList.<Column<?>> builder().addAll(curGroupKeys.getDataColumns())
         .addAll(aggResults.getDataColumns()).build());
   }
@@ -250,7 +257,7 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     final ImmutableList.Builder<String> aggNames = ImmutableList.<String> builder();
 
     try {
-      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
+      for (Aggregator agg : allocateAggs(inputSchema)) {
         Schema curAggSchema = agg.getResultSchema();
         aggTypes.addAll(curAggSchema.getColumnTypes());
         aggNames.addAll(curAggSchema.getColumnNames());
@@ -262,12 +269,28 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     return Schema.merge(groupSchema, aggSchema);
   }
 
+  /**
+   * @param inputSchema the schema of the input.
+   * @return the aggregators, which merge partial aggregation states if {@link #mergePartials} is true.
+   * @throws DbException if there is an error.
+   */
+  private Aggregator[] allocateAggs(final Schema inputSchema) throws DbException {
+    if (mergePartials) {
+      return AggUtils.allocateMergers(factories, inputSchema, gfields.length);
+    }
+    return AggUtils.allocateAggs(factories, inputSchema);
+  }
+
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    aggregators = allocateAggs(getChild().getSchema());
+    if (mergePartials) {
+      partialColumns = AggUtils.getPartialColumns(aggregators, gfields.length);
+    }
     groupKeys = new TupleBuffer(groupSchema);
-    aggStates = new ArrayList<>();
-    groupKeyMap = new IntObjectHashMap<>();
+    groupStates = AggUtils.allocateGroupStates(aggregators);
+    nextResultGroup = 0;
+    groupKeyMap = new TupleHashIndex();
   }
 };
@@ -0,0 +1,307 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.UnaryOperator;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleBuffer;
+import edu.washington.escience.myria.storage.TupleHashIndex;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Computes the partial aggregation states of the groups of its input, typically before a shuffle so that fewer tuples
+ * cross the network. The output has the grouping columns followed by the partial state of each aggregate (see
+ * {@link Aggregator#getPartialSchema()}), and may contain several rows for the same group. A
+ * {@link MultiGroupByAggregate} or {@link SingleGroupByAggregate} that merges partial states, grouping by the leading
+ * columns of the output, then computes the final results.
+ *
+ * At most {@link #setMaxGroups(int)} groups are kept in memory. When the hash table is full, the partial states of all
+ * its groups are emitted and it starts over. If the full table saved less than {@link #setMinReduction(double)} of the
+ * tuples it absorbed, grouping is not worth its cost and the operator switches to pass-through: every following input
+ * tuple is emitted as the partial state of its own group.
+ */
+public final class PartialAggregate extends UnaryOperator {
+
+  /** Java requires this. **/
+  private static final long serialVersionUID = 1L;
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(PartialAggregate.class);
+
+  /** The default maximum number of groups kept in memory. */
+  public static final int DEFAULT_MAX_GROUPS = 10 * TupleBatch.BATCH_SIZE;
+  /** The default minimum fraction of the tuples that a full hash table must save. */
+  public static final double DEFAULT_MIN_REDUCTION = 0.2;
+
+  /** Factories to make the Aggregators. **/
+  private final AggregatorFactory[] factories;
+  /** Group fields. **/
+  private final int[] gfields;
+  /** An array [0, 1, .., gfields.length-1] used for comparing tuples. */
+  private final int[] grpRange;
+  /** The maximum number of groups kept in memory. */
+  private int maxGroups = DEFAULT_MAX_GROUPS;
+  /** The minimum fraction of the tuples that a full hash table must save to keep grouping. */
+  private double minReduction = DEFAULT_MIN_REDUCTION;
+
+  /** The schema of the columns indicated by the group keys. */
+  private Schema groupSchema;
+  /** The actual Aggregators. **/
+  private transient Aggregator[] aggregators;
+  /** Holds the distinct grouping keys. */
+  private transient TupleBuffer groupKeys;
+  /** Holds the corresponding aggregation state for each group key in {@link #groupKeys}. */
+  private transient List<Object[]> aggStates;
+  /** Maps the hash of a grouping key to indices in {@link #groupKeys}. */
+  private transient TupleHashIndex groupKeyMap;
+  /** The number of input tuples aggregated into the current groups. */
+  private transient long numAggregated;
+  /** True once grouping has been given up, see {@link PartialAggregate}. */
+  private transient boolean passThrough;
+  /** Buffers the output tuples. */
+  private transient TupleBatchBuffer outputBuffer;
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then produces the partial states of the
+   * specified aggregates.
+   *
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group.
+   */
+  public PartialAggregate(@Nullable final Operator child, final int[] gfields, final AggregatorFactory... factories) {
+    super(child);
+    this.gfields = Objects.requireNonNull(gfields, "gfields");
+    this.factories = Objects.requireNonNull(factories, "factories");
+    Preconditions.checkArgument(gfields.length > 0, "to use PartialAggregate, must group over some fields");
+    Preconditions.checkArgument(factories.length != 0, "to use PartialAggregate, must specify some aggregates");
+    grpRange = new int[gfields.length];
+    for (int i = 0; i < gfields.length; ++i) {
+      grpRange[i] = i;
+    }
+  }
+
+  /**
+   * @param maxGroups the maximum number of groups kept in memory.
+   */
+  public void setMaxGroups(final int maxGroups) {
+    Preconditions.checkArgument(maxGroups > 0, "maxGroups must be positive");
+    this.maxGroups = maxGroups;
+  }
+
+  /**
+   * @param minReduction the minimum fraction of the tuples that a full hash table must save to keep grouping, between 0
+   *          (always group) and 1 (stop grouping as soon as the hash table is full).
+   */
+  public void setMinReduction(final double minReduction) {
+    Preconditions.checkArgument(minReduction >= 0 && minReduction <= 1, "minReduction must be between 0 and 1");
+    this.minReduction = minReduction;
+  }
+
+  /**
+   * @return true if grouping has been given up and every input tuple is emitted as its own partial state.
+   */
+  public boolean isPassThrough() {
+    return passThrough;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
+    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    outputBuffer = new TupleBatchBuffer(getSchema());
+    passThrough = false;
+    resetGroups();
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    aggregators = null;
+    groupKeys = null;
+    aggStates = null;
+    groupKeyMap = null;
+    outputBuffer = null;
+  }
+
+  /** Start over with an empty hash table. */
+  private void resetGroups() {
+    groupKeys = new TupleBuffer(groupSchema);
+    aggStates = new ArrayList<>();
+    groupKeyMap = new TupleHashIndex();
+    numAggregated = 0;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    TupleBatch tb = null;
+    while (!outputBuffer.hasFilledTB() && (tb = child.nextReady()) != null) {
+      if (passThrough) {
+        passTuples(tb, 0);
+      } else {
+        aggregateTuples(tb);
+      }
+    }
+
+    TupleBatch ret = outputBuffer.popFilled();
+    if (ret == null && child.eos()) {
+      emitGroups();
+      ret = outputBuffer.popAny();
+    }
+    return ret;
+  }
+
+  /**
+   * Aggregate the tuples of a batch into their groups.
+   *
+   * @param tb the batch.
+   * @throws DbException if there is an error.
+   */
+  private void aggregateTuples(final TupleBatch tb) throws DbException {
+    final int[] hashCodes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, gfields, hashCodes);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      final int rowHash = hashCodes[row];
+      Object[] rowAggStates = null;
+      for (int value = groupKeyMap.first(rowHash); value != TupleHashIndex.NONE; value = groupKeyMap.next(value)) {
+        if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
+          rowAggStates = aggStates.get(value);
+          break;
+        }
+      }
+
+      if (rowAggStates == null) {
+        if (aggStates.size() >= maxGroups) {
+          flushGroups();
+          if (passThrough) {
+            passTuples(tb, row);
+            return;
+          }
+        }
+        for (int column = 0; column < gfields.length; ++column) {
+          TupleUtils.copyValue(tb, gfields[column], row, groupKeys, column);
+        }
+        groupKeyMap.add(rowHash);
+        rowAggStates = AggUtils.allocateAggStates(aggregators);
+        aggStates.add(rowAggStates);
+      }
+
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        aggregators[agg].addRow(tb, row, rowAggStates[agg]);
+      }
+      numAggregated++;
+    }
+  }
+
+  /**
+   * Emit the groups of the full hash table, and switch to pass-through if it did not save enough tuples.
+   *
+   * @throws DbException if there is an error.
+   */
+  private void flushGroups() throws DbException {
+    final double reduction = 1 - (double) aggStates.size() / numAggregated;
+    if (reduction < minReduction) {
+      LOGGER.debug("{} groups in {} tuples, switching to pass-through", aggStates.size(), numAggregated);
+      passThrough = true;
+    }
+    emitGroups();
+  }
+
+  /**
+   * Emit the partial states of the groups in the hash table, then empty it.
+   *
+   * @throws DbException if there is an error.
+   */
+  private void emitGroups() throws DbException {
+    for (int row = 0; row < aggStates.size(); ++row) {
+      emit(groupKeys, grpRange, row, aggStates.get(row));
+    }
+    resetGroups();
+  }
+
+  /**
+   * Emit every tuple of a batch, starting from the specified row, as the partial state of its own group.
+   *
+   * @param tb the batch.
+   * @param fromRow the first row to emit.
+   * @throws DbException if there is an error.
+   */
+  private void passTuples(final TupleBatch tb, final int fromRow) throws DbException {
+    for (int row = fromRow; row < tb.numTuples(); ++row) {
+      final Object[] rowAggStates = AggUtils.allocateAggStates(aggregators);
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        aggregators[agg].addRow(tb, row, rowAggStates[agg]);
+      }
+      emit(tb, gfields, row, rowAggStates);
+    }
+  }
+
+  /**
+   * Append a group and its partial aggregation states to the output.
+   *
+   * @param keys the table holding the group key.
+   * @param keyColumns the columns of the group key in <code>keys</code>.
+   * @param row the row of the group key in <code>keys</code>.
+   * @param rowAggStates the aggregation states of the group.
+   * @throws DbException if there is an error.
+   */
+  private void emit(final ReadableTable keys, final int[] keyColumns, final int row, final Object[] rowAggStates)
+      throws DbException {
+    for (int column = 0; column < keyColumns.length; ++column) {
+      TupleUtils.copyValue(keys, keyColumns[column], row, outputBuffer, column);
+    }
+    int curCol = keyColumns.length;
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      aggregators[agg].getPartialResult(outputBuffer, curCol, rowAggStates[agg]);
+      curCol += aggregators[agg].getPartialSchema().numColumns();
+    }
+  }
+
+  /**
+   * The schema of the output. Grouping fields first and then the partial states of the aggregates.
+   *
+   * @return the resulting schema
+   */
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    Schema inputSchema = child.getSchema();
+    if (inputSchema == null) {
+      return null;
+    }
+
+    groupSchema = inputSchema.getSubSchema(gfields);
+
+    final ImmutableList.Builder<Type> types = ImmutableList.<Type> builder();
+    final ImmutableList.Builder<String> names = ImmutableList.<String> builder();
+    types.addAll(groupSchema.getColumnTypes());
+    names.addAll(groupSchema.getColumnNames());
+    try {
+      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
+        Schema curAggSchema = agg.getPartialSchema();
+        types.addAll(curAggSchema.getColumnTypes());
+        names.addAll(curAggSchema.getColumnNames());
+      }
+    } catch (DbException e) {
+      throw new RuntimeException("unable to allocate aggregators to determine output schema", e);
+    }
+    return new Schema(types, names);
+  }
+}
@@ -67,6 +67,12 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
    */
   private final Schema resultSchema;
 
+  /**
+   * Partial schema. The count, sum, sum of squares, min and max, in this order, of those that are needed by the
+   * {@link #aggOps}.
+   */
+  private final Schema partialSchema;
+
   /**
    * Instantiate a PrimitiveAggregator that computes the specified aggregates.
    * 
@@ -126,6 +132,30 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
       }
     }
     resultSchema = new Schema(types, names);
+
+    final ImmutableList.Builder<Type> partialTypes = ImmutableList.builder();
+    final ImmutableList.Builder<String> partialNames = ImmutableList.builder();
+    if (needsCount) {
+      partialTypes.add(Type.LONG_TYPE);
+      partialNames.add("count_" + fieldName);
+    }
+    if (needsSum) {
+      partialTypes.add(getSumType());
+      partialNames.add("sum_" + fieldName);
+    }
+    if (needsSumSq) {
+      partialTypes.add(getSumType());
+      partialNames.add("sumsq_" + fieldName);
+    }
+    if (needsMin) {
+      partialTypes.add(getType());
+      partialNames.add("min_" + fieldName);
+    }
+    if (needsMax) {
+      partialTypes.add(getType());
+      partialNames.add("max_" + fieldName);
+    }
+    partialSchema = new Schema(partialTypes.build(), partialNames.build());
   }
 
   /**
@@ -151,4 +181,9 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
   public final Schema getResultSchema() {
     return resultSchema;
   }
+
+  @Override
+  public final Schema getPartialSchema() {
+    return partialSchema;
+  }
 }
@@ -1,10 +1,12 @@
 package edu.washington.escience.myria.operator.agg;
 
 import java.util.Objects;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
@@ -65,4 +67,52 @@ public class SingleColumnAggregatorFactory implements AggregatorFactory {
     }
     throw new IllegalArgumentException("Unknown column type: " + type);
   }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * The type of the aggregated column is that of the min or max in the partial state. Without them, integers are merged
+   * as longs and floats as doubles, which gives the same results since their sums are already longs and doubles, and a
+   * count alone is merged the same way for any type.
+   */
+  @Override
+  public Aggregator getMerger(final Schema partialSchema, final int firstColumn) {
+    Objects.requireNonNull(partialSchema, "partialSchema");
+    final Set<AggregationOp> ops = ImmutableSet.copyOf(aggOps);
+    int column = firstColumn;
+    if (AggUtils.needsCount(ops)) {
+      column++;
+    }
+    Type type = Type.LONG_TYPE;
+    if (AggUtils.needsSum(ops)) {
+      type = partialSchema.getColumnType(column);
+      column++;
+    }
+    if (AggUtils.needsSumSq(ops)) {
+      column++;
+    }
+    if (AggUtils.needsMin(ops) || AggUtils.needsMax(ops)) {
+      type = partialSchema.getColumnType(column);
+    }
+    /* Recover the name of the aggregated column from that of the first column of the partial state, e.g., sum_x. */
+    final String partialName = partialSchema.getColumnName(firstColumn);
+    final String inputName = partialName.substring(partialName.indexOf('_') + 1);
+    switch (type) {
+      case DATETIME_TYPE:
+        return new DateTimeAggregator(inputName, aggOps, firstColumn);
+      case DOUBLE_TYPE:
+        return new DoubleAggregator(inputName, aggOps, firstColumn);
+      case FLOAT_TYPE:
+        return new FloatAggregator(inputName, aggOps, firstColumn);
+      case INT_TYPE:
+        return new IntegerAggregator(inputName, aggOps, firstColumn);
+      case LONG_TYPE:
+        return new LongAggregator(inputName, aggOps, firstColumn);
+      case STRING_TYPE:
+        return new StringAggregator(inputName, aggOps, firstColumn);
+      case BOOLEAN_TYPE:
+        break;
+    }
+    throw new IllegalArgumentException("Unexpected partial aggregation state of type: " + type);
+  }
 }
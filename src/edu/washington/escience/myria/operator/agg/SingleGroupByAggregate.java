@@ -1,7 +1,5 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -10,19 +8,22 @@ import org.joda.time.DateTime;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.impl.map.mutable.primitive.DoubleObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.FloatObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import com.gs.collections.impl.map.mutable.primitive.DoubleIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.FloatIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.IntIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.LongIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.UnaryOperator;
-import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max, min) with a single group by column.
@@ -49,43 +50,63 @@ public class SingleGroupByAggregate extends UnaryOperator {
    */
   private final int gColumn;
 
+  /**
+   * True if the input holds partial aggregation states, see {@link PartialAggregate}.
+   */
+  private final boolean mergePartials;
+
+  /**
+   * When merging partial aggregation states, the first column of the state of each aggregate.
+   */
+  private int[] partialColumns;
+
   /**
    * A cache of the group-by column type.
    */
   private Type gColumnType;
 
   /**
-   * The buffer storing in-progress group by results. {groupby-column-value -> Aggregator Array} when the group key is
-   * String
+   * Maps each group-by value to its group when the group key is String.
    */
-  private transient HashMap<String, Object[]> stringAggState;
+  private transient ObjectIntHashMap<String> stringGroups;
 
   /**
-   * The buffer storing in-progress group by results. {groupby-column-value -> Aggregator Array} when the group key is
-   * DateTime.
+   * Maps each group-by value to its group when the group key is DateTime.
    */
-  private transient HashMap<DateTime, Object[]> datetimeAggState;
+  private transient ObjectIntHashMap<DateTime> datetimeGroups;
 
   /**
-   * The buffer storing in-progress group by results when the group key is int.
+   * Maps each group-by value to its group when the group key is int.
+   */
+  private transient IntIntHashMap intGroups;
+  /**
+   * The groups of true and false, in this order, when the group key is boolean. -1 until the group appears.
    */
-  private transient IntObjectHashMap<Object[]> intAggState;
+  private transient int[] booleanGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is boolean.
+   * Maps each group-by value to its group when the group key is long.
    */
-  private transient Object[][] booleanAggState;
+  private transient LongIntHashMap longGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is long.
+   * Maps each group-by value to its group when the group key is float.
    */
-  private transient LongObjectHashMap<Object[]> longAggState;
+  private transient FloatIntHashMap floatGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is float.
+   * Maps each group-by value to its group when the group key is double.
    */
-  private transient FloatObjectHashMap<Object[]> floatAggState;
+  private transient DoubleIntHashMap doubleGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is double.
+   * The group-by value of each group, in the order in which the groups appeared.
    */
-  private transient DoubleObjectHashMap<Object[]> doubleAggState;
+  private transient TupleBuffer groupKeys;
+  /**
+   * The number of groups. Groups are numbered from 0 in the order in which they appear.
+   */
+  private transient int numGroups;
+  /**
+   * The aggregation states of the groups of each aggregator, see {@link Aggregator#getInitialGroupStates()}.
+   */
+  private transient Object[] groupStates;
   /**
    * The aggregators that will initialize and update the state.
    */
@@ -104,104 +125,114 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * @param factories Factories for the aggregation operators to use.
    */
   public SingleGroupByAggregate(@Nullable final Operator child, final int gfield, final AggregatorFactory... factories) {
+    this(child, gfield, false, factories);
+  }
+
+  /**
+   * Constructor. If <code>mergePartials</code> is true, the input is the output of a {@link PartialAggregate} with the
+   * same grouping field and factories: the grouping field is column 0, and is followed by the partial aggregation
+   * states, which are merged.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param gfield The column over which we are grouping the result.
+   * @param mergePartials true if the input holds partial aggregation states.
+   * @param factories Factories for the aggregation operators to use.
+   */
+  public SingleGroupByAggregate(@Nullable final Operator child, final int gfield, final boolean mergePartials,
+      final AggregatorFactory... factories) {
     super(child);
     gColumn = Objects.requireNonNull(gfield, "gfield");
     this.factories = Objects.requireNonNull(factories, "factories");
+    Preconditions.checkArgument(!mergePartials || gfield == 0,
+        "to merge partial aggregates, must group over the leading field");
+    this.mergePartials = mergePartials;
   }
 
   @Override
   protected final void cleanup() throws DbException {
-    stringAggState = null;
-    datetimeAggState = null;
-    doubleAggState = null;
-    booleanAggState = null;
-    floatAggState = null;
-    intAggState = null;
-    longAggState = null;
+    stringGroups = null;
+    datetimeGroups = null;
+    doubleGroups = null;
+    booleanGroups = null;
+    floatGroups = null;
+    intGroups = null;
+    longGroups = null;
+    groupKeys = null;
+    groupStates = null;
     resultBuffer = null;
   }
 
   /**
-   * Utility function to fetch or create/initialize the aggregation state for the group corresponding to the data in the
-   * specified table and row.
+   * Utility function to find the groups of the rows of a batch, creating the groups that do not exist yet.
    * 
-   * @param table the data to be aggregated.
-   * @param row which row of the table is to be aggregated.
-   * @return the aggregation state for that row.
-   * @throws DbException if there is an error.
+   * @param tb the data to be aggregated.
+   * @return the group of each row.
    */
-  private Object[] getAggState(final ReadableTable table, final int row) throws DbException {
-    Object[] aggState = null;
+  private int[] getGroups(final TupleBatch tb) {
+    final int numTuples = tb.numTuples();
+    final int[] groups = new int[numTuples];
+    final ReadableColumn column = tb.asColumn(gColumn);
     switch (gColumnType) {
       case BOOLEAN_TYPE:
-        boolean groupByBool = table.getBoolean(gColumn, row);
-        if (groupByBool) {
-          aggState = booleanAggState[0];
-        } else {
-          aggState = booleanAggState[1];
-        }
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          if (groupByBool) {
-            booleanAggState[0] = aggState;
-          } else {
-            booleanAggState[1] = aggState;
+        for (int row = 0; row < numTuples; ++row) {
+          /* True is index 0 in booleanGroups, False is index 1. */
+          final int bucket = column.getBoolean(row) ? 0 : 1;
+          if (booleanGroups[bucket] == -1) {
+            booleanGroups[bucket] = newGroup(tb, row);
           }
+          groups[row] = booleanGroups[bucket];
         }
         break;
       case STRING_TYPE:
-        String groupByString = table.getString(gColumn, row);
-        aggState = stringAggState.get(groupByString);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          stringAggState.put(groupByString, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = stringGroups.getIfAbsentPut(column.getString(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
       case DATETIME_TYPE:
-        DateTime groupByDateTime = table.getDateTime(gColumn, row);
-        aggState = datetimeAggState.get(groupByDateTime);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          datetimeAggState.put(groupByDateTime, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = datetimeGroups.getIfAbsentPut(column.getDateTime(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
       case INT_TYPE:
-        int groupByInt = table.getInt(gColumn, row);
-        aggState = intAggState.get(groupByInt);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          intAggState.put(groupByInt, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = intGroups.getIfAbsentPut(column.getInt(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
       case LONG_TYPE:
-        long groupByLong = table.getLong(gColumn, row);
-        aggState = longAggState.get(groupByLong);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          longAggState.put(groupByLong, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = longGroups.getIfAbsentPut(column.getLong(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
       case FLOAT_TYPE:
-        float groupByFloat = table.getFloat(gColumn, row);
-        aggState = floatAggState.get(groupByFloat);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          floatAggState.put(groupByFloat, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = floatGroups.getIfAbsentPut(column.getFloat(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
       case DOUBLE_TYPE:
-        double groupByDouble = table.getDouble(gColumn, row);
-        aggState = doubleAggState.get(groupByDouble);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          doubleAggState.put(groupByDouble, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final int group = doubleGroups.getIfAbsentPut(column.getDouble(row), numGroups);
+          groups[row] = group == numGroups ? newGroup(tb, row) : group;
         }
         break;
     }
-    if (aggState == null) {
-      throw new IllegalStateException("Aggregating values of unknown type.");
-    }
-    return aggState;
+    return groups;
+  }
+
+  /**
+   * Record the group-by value of a new group.
+   * 
+   * @param tb the data to be aggregated.
+   * @param row the row of the first tuple of the group.
+   * @return the new group.
+   */
+  private int newGroup(final TupleBatch tb, final int row) {
+    TupleUtils.copyValue(tb, gColumn, row, groupKeys, 0);
+    return numGroups++;
   }
 
   /**
@@ -209,10 +240,12 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * @throws DbException if there is an error.
    */
   private void processTupleBatch(final TupleBatch tb) throws DbException {
-    for (int i = 0; i < tb.numTuples(); ++i) {
-      Object[] groupAgg = getAggState(tb, i);
-      for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].addRow(tb, i, groupAgg[agg]);
+    final int[] groups = getGroups(tb);
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      if (mergePartials) {
+        aggregators[agg].addPartialBatch(tb, partialColumns[agg], groups, numGroups, groupStates[agg]);
+      } else {
+        aggregators[agg].addBatch(tb, groups, numGroups, groupStates[agg]);
       }
     }
   }
@@ -222,13 +255,13 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * goes in column 0, and the aggregates are appended starting at column 1.
    * 
    * @param resultBuffer where the tuples will be appended.
-   * @param aggState the states corresponding to all aggregators.
+   * @param group the group.
    * @throws DbException if there is an error.
    */
-  private void concatResults(final TupleBatchBuffer resultBuffer, final Object[] aggState) throws DbException {
+  private void concatResults(final TupleBatchBuffer resultBuffer, final int group) throws DbException {
     int index = 1;
     for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].getResult(resultBuffer, index, aggState[agg]);
+      aggregators[agg].getGroupResult(resultBuffer, index, groupStates[agg], group);
       index += aggregators[agg].getResultSchema().numColumns();
     }
   }
@@ -238,56 +271,10 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * @throws DbException if there is an error.
    */
   private void generateResult(final TupleBatchBuffer resultBuffer) throws DbException {
-
-    switch (gColumnType) {
-      case BOOLEAN_TYPE:
-        for (int boolBucket = 0; boolBucket < 2; ++boolBucket) {
-          Object[] aggState = booleanAggState[boolBucket];
-          if (aggState != null) {
-            /* True is index 0 in booleanAggState, False is index 1. */
-            resultBuffer.putBoolean(0, boolBucket == 0);
-            concatResults(resultBuffer, aggState);
-          }
-        }
-        break;
-      case STRING_TYPE:
-        for (final Map.Entry<String, Object[]> e : stringAggState.entrySet()) {
-          resultBuffer.putString(0, e.getKey());
-          concatResults(resultBuffer, e.getValue());
-        }
-        break;
-      case DATETIME_TYPE:
-        for (final Map.Entry<DateTime, Object[]> e : datetimeAggState.entrySet()) {
-          resultBuffer.putDateTime(0, e.getKey());
-          concatResults(resultBuffer, e.getValue());
-        }
-        break;
-      case INT_TYPE:
-        for (int key : intAggState.keySet().toArray()) {
-          resultBuffer.putInt(0, key);
-          concatResults(resultBuffer, intAggState.get(key));
-        }
-        break;
-      case LONG_TYPE:
-        for (long key : longAggState.keySet().toArray()) {
-          resultBuffer.putLong(0, key);
-          concatResults(resultBuffer, longAggState.get(key));
-        }
-        break;
-      case FLOAT_TYPE:
-        for (float key : floatAggState.keySet().toArray()) {
-          resultBuffer.putFloat(0, key);
-          concatResults(resultBuffer, floatAggState.get(key));
-        }
-        break;
-      case DOUBLE_TYPE:
-        for (double key : doubleAggState.keySet().toArray()) {
-          resultBuffer.putDouble(0, key);
-          concatResults(resultBuffer, doubleAggState.get(key));
-        }
-        break;
+    for (int group = 0; group < numGroups; ++group) {
+      TupleUtils.copyValue(groupKeys, 0, group, resultBuffer, 0);
+      concatResults(resultBuffer, group);
     }
-
   }
 
   @Override
@@ -309,6 +296,7 @@ public class SingleGroupByAggregate extends UnaryOperator {
         LOGGER.debug("get a TB from child");
       }
       processTupleBatch(tb);
+      setReservedMemory(numGroups * getSchema().estimatedTupleBytes());
     }
 
     if (child.eos()) {
@@ -324,34 +312,52 @@ public class SingleGroupByAggregate extends UnaryOperator {
     return gColumn;
   }
 
+  /**
+   * @param inputSchema the schema of the input.
+   * @return the aggregators, which merge partial aggregation states if {@link #mergePartials} is true.
+   * @throws DbException if there is an error.
+   */
+  private Aggregator[] allocateAggs(final Schema inputSchema) throws DbException {
+    if (mergePartials) {
+      return AggUtils.allocateMergers(factories, inputSchema, 1);
+    }
+    return AggUtils.allocateAggs(factories, inputSchema);
+  }
+
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
 
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    aggregators = allocateAggs(getChild().getSchema());
+    if (mergePartials) {
+      partialColumns = AggUtils.getPartialColumns(aggregators, 1);
+    }
     resultBuffer = new TupleBatchBuffer(getSchema());
 
+    groupKeys = new TupleBuffer(Schema.ofFields(gColumnType, "key"));
+    numGroups = 0;
+    groupStates = AggUtils.allocateGroupStates(aggregators);
     switch (gColumnType) {
       case BOOLEAN_TYPE:
-        booleanAggState = new Object[2][];
+        booleanGroups = new int[] { -1, -1 };
         break;
       case INT_TYPE:
-        intAggState = new IntObjectHashMap<Object[]>();
+        intGroups = new IntIntHashMap();
         break;
       case LONG_TYPE:
-        longAggState = new LongObjectHashMap<Object[]>();
+        longGroups = new LongIntHashMap();
         break;
       case FLOAT_TYPE:
-        floatAggState = new FloatObjectHashMap<Object[]>();
+        floatGroups = new FloatIntHashMap();
         break;
       case DOUBLE_TYPE:
-        doubleAggState = new DoubleObjectHashMap<Object[]>();
+        doubleGroups = new DoubleIntHashMap();
         break;
       case STRING_TYPE:
-        stringAggState = new HashMap<String, Object[]>();
+        stringGroups = new ObjectIntHashMap<String>();
         break;
       case DATETIME_TYPE:
-        datetimeAggState = new HashMap<DateTime, Object[]>();
+        datetimeGroups = new ObjectIntHashMap<DateTime>();
         break;
     }
   }
@@ -373,7 +379,7 @@ public class SingleGroupByAggregate extends UnaryOperator {
 
     gColumnType = inputSchema.getColumnType(gColumn);
     try {
-      for (Aggregator a : AggUtils.allocateAggs(factories, inputSchema)) {
+      for (Aggregator a : allocateAggs(inputSchema)) {
         outputSchema = Schema.merge(outputSchema, a.getResultSchema());
       }
     } catch (DbException e) {
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -8,6 +9,7 @@ import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
@@ -106,6 +108,7 @@ public final class StringAggregator extends PrimitiveAggregator {
         case SUM:
           throw new UnsupportedOperationException("Aggregate " + op + " on type String");
       }
+      idx++;
     }
   }
 
@@ -124,6 +127,146 @@ public final class StringAggregator extends PrimitiveAggregator {
     return AVAILABLE_AGG;
   }
 
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    Objects.requireNonNull(dest, "dest");
+    StringAggState sstate = (StringAggState) state;
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, sstate.count);
+    }
+    if (needsMin) {
+      dest.putString(idx++, sstate.min);
+    }
+    if (needsMax) {
+      dest.putString(idx, sstate.max);
+    }
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    Objects.requireNonNull(from, "from");
+    StringAggState sstate = (StringAggState) state;
+    int idx = fromColumn;
+    if (needsCount) {
+      sstate.count = LongMath.checkedAdd(sstate.count, from.getLong(idx++, row));
+    }
+    if (needsMin) {
+      final String min = from.getString(idx++, row);
+      if (sstate.min == null || sstate.min.compareTo(min) > 0) {
+        sstate.min = min;
+      }
+    }
+    if (needsMax) {
+      final String max = from.getString(idx, row);
+      if (sstate.max == null || sstate.max.compareTo(max) < 0) {
+        sstate.max = max;
+      }
+    }
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new StringGroupStates();
+  }
+
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final StringGroupStates s = (StringGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        count[groups[row]]++;
+      }
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsMin) {
+      final String[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (min[group] == null || min[group].compareTo(column.getString(row)) > 0) {
+          min[group] = column.getString(row);
+        }
+      }
+    }
+    if (needsMax) {
+      final String[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (max[group] == null || max[group].compareTo(column.getString(row)) < 0) {
+          max[group] = column.getString(row);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    final StringGroupStates s = (StringGroupStates) groupStates;
+    s.ensureGroups(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (needsCount) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final long[] count = s.count;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(row));
+      }
+    }
+    if (needsMin) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final String[] min = s.min;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (min[group] == null || min[group].compareTo(column.getString(row)) > 0) {
+          min[group] = column.getString(row);
+        }
+      }
+    }
+    if (needsMax) {
+      final ReadableColumn column = from.asColumn(idx);
+      final String[] max = s.max;
+      for (int row = 0; row < numTuples; ++row) {
+        final int group = groups[row];
+        if (max[group] == null || max[group].compareTo(column.getString(row)) < 0) {
+          max[group] = column.getString(row);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) {
+    Objects.requireNonNull(dest, "dest");
+    final StringGroupStates s = (StringGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case COUNT:
+          dest.putLong(idx, s.count[group]);
+          break;
+        case MAX:
+          dest.putString(idx, s.max[group]);
+          break;
+        case MIN:
+          dest.putString(idx, s.min[group]);
+          break;
+        case AVG:
+        case STDEV:
+        case SUM:
+          throw new UnsupportedOperationException("Aggregate " + op + " on type String");
+      }
+      idx++;
+    }
+  }
+
   @Override
   public Object getInitialState() {
     return new StringAggState();
@@ -138,4 +281,41 @@ public final class StringAggregator extends PrimitiveAggregator {
     /** The maximum value in the aggregated column. */
     private String max = null;
   }
-}
\ No newline at end of file
+
+  /**
+   * Private internal class that wraps the states of a set of groups in flat arrays indexed by group. Only the arrays
+   * needed by the {@link #aggOps} grow with the number of groups.
+   */
+  private final class StringGroupStates {
+    /** The number of groups the arrays can hold. */
+    private int capacity = 0;
+    /** The number of tuples seen so far in each group. */
+    private long[] count = new long[0];
+    /** The minimum value in the aggregated column in each group. */
+    private String[] min = new String[0];
+    /** The maximum value in the aggregated column in each group. */
+    private String[] max = new String[0];
+
+    /**
+     * Make room for the specified number of groups.
+     * 
+     * @param numGroups the number of groups.
+     */
+    private void ensureGroups(final int numGroups) {
+      if (numGroups <= capacity) {
+        return;
+      }
+      final int newCapacity = AggUtils.growCapacity(capacity, numGroups);
+      if (needsCount) {
+        count = Arrays.copyOf(count, newCapacity);
+      }
+      if (needsMin) {
+        min = Arrays.copyOf(min, newCapacity);
+      }
+      if (needsMax) {
+        max = Arrays.copyOf(max, newCapacity);
+      }
+      capacity = newCapacity;
+    }
+  }
+}
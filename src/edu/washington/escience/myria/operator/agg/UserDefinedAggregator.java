@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.operator.agg;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.washington.escience.myria.DbException;
@@ -87,6 +88,59 @@ public class UserDefinedAggregator implements Aggregator {
     return resultSchema;
   }
 
+  @Override
+  public Schema getPartialSchema() {
+    throw new UnsupportedOperationException("user-defined aggregates cannot be computed from partial states");
+  }
+
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final Object state) {
+    throw new UnsupportedOperationException("user-defined aggregates cannot be computed from partial states");
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final Object state) {
+    throw new UnsupportedOperationException("user-defined aggregates cannot be computed from partial states");
+  }
+
+  @Override
+  public Object getInitialGroupStates() {
+    return new ArrayList<Tuple>();
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * The state of a user-defined aggregate is a tuple, so the states of the groups are a list of tuples that are
+   * updated one row at a time.
+   */
+  @Override
+  public void addBatch(final ReadableTable from, final int[] groups, final int numGroups, final Object groupStates)
+      throws DbException {
+    @SuppressWarnings("unchecked")
+    final List<Tuple> states = (List<Tuple>) groupStates;
+    while (states.size() < numGroups) {
+      states.add(initialState.clone());
+    }
+    for (int row = 0; row < from.numTuples(); ++row) {
+      addRow(from, row, states.get(groups[row]));
+    }
+  }
+
+  @Override
+  public void addPartialBatch(final ReadableTable from, final int fromColumn, final int[] groups,
+      final int numGroups, final Object groupStates) {
+    throw new UnsupportedOperationException("user-defined aggregates cannot be computed from partial states");
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final Object groupStates,
+      final int group) throws DbException {
+    @SuppressWarnings("unchecked")
+    final List<Tuple> states = (List<Tuple>) groupStates;
+    getResult(dest, destColumn, states.get(group));
+  }
+
   @Override
   public Object getInitialState() {
     return initialState.clone();
@@ -6,20 +6,16 @@ import java.util.Objects;
 
 import javax.annotation.Nonnull;
 
-import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IScriptEvaluator;
-
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import edu.washington.escience.myria.DbException;
-import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.evaluate.EvaluatorCache;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
 import edu.washington.escience.myria.expression.evaluate.ScriptEvalInterface;
@@ -132,6 +128,11 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     return new UserDefinedAggregator(state.clone(), updateEvaluator, emitEvaluators, resultSchema);
   }
 
+  @Override
+  public Aggregator getMerger(final Schema partialSchema, final int column) throws DbException {
+    throw new DbException("user-defined aggregates cannot be computed from partial states");
+  }
+
   /**
    * Produce a {@link ScriptEvalInterface} from {@link Expression}s and {@link ExpressionOperatorParameter}s. This
    * function produces the code for a Java script that executes all expressions in turn and appends the calculated
@@ -163,22 +164,8 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     String script = compute.append(output).toString();
     LOGGER.debug("Compiling UDA {}", script);
 
-    IScriptEvaluator se;
-    try {
-      se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
-    } catch (Exception e) {
-      LOGGER.error("Could not create scriptevaluator", e);
-      throw new DbException("Could not create scriptevaluator", e);
-    }
-    se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
-
-    try {
-      return (ScriptEvalInterface) se.createFastEvaluator(script, ScriptEvalInterface.class, new String[] {
-          Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
-    } catch (CompileException e) {
-      LOGGER.error("Error when compiling expression {}: {}", script, e);
-      throw new DbException("Error when compiling expression: " + script, e);
-    }
+    return EvaluatorCache.getScriptEvaluator(script, ScriptEvalInterface.class, new String[] {
+        Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
   }
 
   /**
@@ -108,7 +108,7 @@ public class GenericShuffleProducer extends Producer {
   }
 
   /**
-   * call partition function to partition this tuple batch as an array of shallow copies of TupleBatch. subclasses can
+   * call partition function to partition this tuple batch as an array of dense copies of TupleBatch. subclasses can
    * override this method to have smarter partition approach.
    * 
    * @param tb the tuple batch to be partitioned.
@@ -351,6 +351,9 @@ public abstract class Producer extends RootOperator {
       if (partitions != null) {
         for (int i = 0; i < numOfPartition; ++i) {
           if (partitions[i] != null) {
+            if (channelIndices[i].length > 1) {
+              partitions[i].shareSerializedForms();
+            }
             for (int j : channelIndices[i]) {
               if (!ioChannelsAvail[j] && mode.equals(FTMode.ABANDON)) {
                 continue;
@@ -379,6 +382,9 @@ public abstract class Producer extends RootOperator {
           if (tb == null) {
             break;
           }
+          if (channelIndices[i].length > 1) {
+            tb.shareSerializedForms();
+          }
           for (int j : channelIndices[i]) {
             if (!ioChannelsAvail[j] && mode.equals(FTMode.ABANDON)) {
               continue;
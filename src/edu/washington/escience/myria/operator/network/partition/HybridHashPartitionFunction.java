@@ -0,0 +1,119 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Hash partitioning that does not send all the tuples of a heavy-hitter key to the same worker. Keys are identified by
+ * the hash code of their fields (see {@link HashUtils#hashColumns(edu.washington.escience.myria.storage.ReadableTable,
+ * int[], int[])}), and tuples whose key hash is not heavy are hash partitioned exactly like
+ * {@link MultiFieldHashPartitionFunction} does.
+ *
+ * The two inputs of a join must be shuffled with the same heavy hashes and opposite roles: on the side that
+ * {@link #isSpreadHeavyKeys() spreads} heavy keys, their tuples are sent to the workers in turn; on the other side,
+ * they are broadcast to all the workers. Every pair of matching tuples then still meets on exactly one worker. Since
+ * the broadcast side sends heavy tuples to every worker, it should be the side with fewer of them.
+ *
+ * On the broadcast side, the heavy tuples go to an additional last partition, so the number of partitions is the
+ * number of workers plus one and the producer must send that partition to all the workers.
+ */
+public final class HybridHashPartitionFunction extends PartitionFunction {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The indices used for partitioning. */
+  @JsonProperty
+  private final int[] indexes;
+  /** The hash codes of the heavy keys, sorted. */
+  @JsonProperty
+  private final int[] heavyHashes;
+  /** True if the tuples of heavy keys are sent to the workers in turn, false if they are broadcast. */
+  @JsonProperty
+  private final boolean spreadHeavyKeys;
+  /** The next worker a tuple of a heavy key is sent to, when they are spread. */
+  private int nextWorker = 0;
+
+  /**
+   * @param numPartitions the number of partitions, see {@link HybridHashPartitionFunction}.
+   * @param indexes the indices used for partitioning.
+   * @param heavyHashes the hash codes of the heavy keys.
+   * @param spreadHeavyKeys true to send the tuples of heavy keys to the workers in turn, false to broadcast them.
+   */
+  @JsonCreator
+  public HybridHashPartitionFunction(@Nullable @JsonProperty("numPartitions") final Integer numPartitions,
+      @JsonProperty(value = "indexes", required = true) final int[] indexes,
+      @JsonProperty(value = "heavyHashes", required = true) final int[] heavyHashes,
+      @JsonProperty(value = "spreadHeavyKeys", required = true) final boolean spreadHeavyKeys) {
+    super(numPartitions);
+    Objects.requireNonNull(indexes, "indexes");
+    Objects.requireNonNull(heavyHashes, "heavyHashes");
+    Preconditions.checkArgument(indexes.length > 0, "HybridHash requires at least 1 field to hash");
+    for (int i = 0; i < indexes.length; ++i) {
+      Preconditions.checkArgument(indexes[i] >= 0, "HybridHash field index %s cannot take negative value %s", i,
+          indexes[i]);
+    }
+    this.indexes = indexes.clone();
+    this.heavyHashes = heavyHashes.clone();
+    Arrays.sort(this.heavyHashes);
+    this.spreadHeavyKeys = spreadHeavyKeys;
+  }
+
+  /**
+   * @return the field indexes on which tuples will be hash partitioned.
+   */
+  public int[] getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * @return true if the tuples of heavy keys are sent to the workers in turn, false if they are broadcast.
+   */
+  public boolean isSpreadHeavyKeys() {
+    return spreadHeavyKeys;
+  }
+
+  /**
+   * @param numWorkers the number of workers the tuples are shuffled to.
+   * @return the number of partitions to use for that many workers.
+   */
+  public int numPartitionsForWorkers(final int numWorkers) {
+    Preconditions.checkArgument(numWorkers > 0, "numWorkers must be > 0");
+    return spreadHeavyKeys ? numWorkers : numWorkers + 1;
+  }
+
+  @Override
+  public int[] partition(@Nonnull final TupleBatch tb) {
+    final int numWorkers = spreadHeavyKeys ? numPartition() : numPartition() - 1;
+    Preconditions.checkState(numWorkers > 0, "HybridHash must have a partition for the heavy keys");
+    final int[] result = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, indexes, result);
+    for (int i = 0; i < result.length; i++) {
+      if (Arrays.binarySearch(heavyHashes, result[i]) >= 0) {
+        if (spreadHeavyKeys) {
+          result[i] = nextWorker;
+          nextWorker = (nextWorker + 1) % numWorkers;
+        } else {
+          result[i] = numWorkers;
+        }
+        continue;
+      }
+      int p = result[i] % numWorkers;
+      if (p < 0) {
+        p = p + numWorkers;
+      }
+      result[i] = p;
+    }
+    return result;
+  }
+}
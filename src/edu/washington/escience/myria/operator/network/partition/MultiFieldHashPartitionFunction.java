@@ -68,8 +68,9 @@ public final class MultiFieldHashPartitionFunction extends PartitionFunction {
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
     final int[] result = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, indexes, result);
     for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashSubRow(tb, indexes, i) % numPartition();
+      int p = result[i] % numPartition();
       if (p < 0) {
         p = p + numPartition();
       }
@@ -9,6 +9,11 @@ import org.jboss.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import org.jboss.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
 import org.jboss.netty.handler.execution.ExecutionHandler;
 
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.parallel.ipc.CompressionCodec;
+import edu.washington.escience.myria.parallel.ipc.FrameCompressionDecoder;
+import edu.washington.escience.myria.parallel.ipc.FrameCompressionEncoder;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessageHandler;
 
@@ -70,12 +75,27 @@ public final class IPCPipelineFactories {
      * */
     private final ExecutionHandler pipelineExecutionHandler;
 
+    /**
+     * the codec that frames are compressed with. It must be the one the pool advertises to remotes.
+     * */
+    private final CompressionCodec compression;
+
+    /**
+     * the network bandwidth in bytes per second, see {@link FrameCompressionEncoder}.
+     * */
+    private final long bandwidthBytesPerSecond;
+
     /**
      * @param pool the owner IPCConnectionPool
      * @param pipelineExecutor possible pipeline executor, null is allowed.
+     * @param compression the codec that frames are compressed with.
+     * @param bandwidthBytesPerSecond the network bandwidth in bytes per second.
      * */
-    MasterClientPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor) {
+    MasterClientPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor,
+        final CompressionCodec compression, final long bandwidthBytesPerSecond) {
       ipcMessageHandler = new IPCMessageHandler(pool);
+      this.compression = compression;
+      this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
       if (pipelineExecutor != null) {
         pipelineExecutionHandler = new ExecutionHandler(pipelineExecutor);
       } else {
@@ -88,6 +108,12 @@ public final class IPCPipelineFactories {
       final ChannelPipeline p = Channels.pipeline();
       p.addLast("frameDecoder", new ProtobufVarint32FrameDecoder()); // upstream 2
       p.addLast("frameEncoder", FRAME_ENCODER); // downstream 2
+      if (compression != CompressionCodec.NONE) {
+        final FrameCompressionDecoder compressionDecoder = new FrameCompressionDecoder();
+        p.addLast("compressionDecoder", compressionDecoder); // upstream 3
+        p.addLast("compressionEncoder", new FrameCompressionEncoder(compression, bandwidthBytesPerSecond,
+            compressionDecoder)); // downstream 1
+      }
 
       if (pipelineExecutionHandler != null) {
         p.addLast("executor", pipelineExecutionHandler);
@@ -105,9 +131,12 @@ public final class IPCPipelineFactories {
     /**
      * @param pool the owner IPCConnectionPool
      * @param pipelineExecutor possible pipeline executor, null is allowed.
+     * @param compression the codec that frames are compressed with.
+     * @param bandwidthBytesPerSecond the network bandwidth in bytes per second.
      * */
-    MasterServerPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor) {
-      super(pool, pipelineExecutor);
+    MasterServerPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor,
+        final CompressionCodec compression, final long bandwidthBytesPerSecond) {
+      super(pool, pipelineExecutor, compression, bandwidthBytesPerSecond);
     }
 
   }
@@ -120,9 +149,12 @@ public final class IPCPipelineFactories {
     /**
      * @param pool the owner IPCConnectionPool
      * @param pipelineExecutor possible pipeline executor, null is allowed.
+     * @param compression the codec that frames are compressed with.
+     * @param bandwidthBytesPerSecond the network bandwidth in bytes per second.
      * */
-    WorkerClientPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor) {
-      super(pool, pipelineExecutor);
+    WorkerClientPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor,
+        final CompressionCodec compression, final long bandwidthBytesPerSecond) {
+      super(pool, pipelineExecutor, compression, bandwidthBytesPerSecond);
     }
 
   }
@@ -135,9 +167,12 @@ public final class IPCPipelineFactories {
     /**
      * @param pool the owner IPCConnectionPool
      * @param pipelineExecutor possible pipeline executor, null is allowed.
+     * @param compression the codec that frames are compressed with.
+     * @param bandwidthBytesPerSecond the network bandwidth in bytes per second.
      * */
-    WorkerServerPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor) {
-      super(pool, pipelineExecutor);
+    WorkerServerPipelineFactory(final IPCConnectionPool pool, final ExecutorService pipelineExecutor,
+        final CompressionCodec compression, final long bandwidthBytesPerSecond) {
+      super(pool, pipelineExecutor, compression, bandwidthBytesPerSecond);
     }
 
   }
@@ -147,6 +182,18 @@ public final class IPCPipelineFactories {
    * */
   static final ProtobufVarint32LengthFieldPrepender FRAME_ENCODER = new ProtobufVarint32LengthFieldPrepender();
 
+  /**
+   * @param mbps a value of {@link MyriaSystemConfigKeys#NETWORK_BANDWIDTH_MBPS}, or null for the default.
+   * @return the bandwidth in bytes per second.
+   * */
+  static long bandwidthBytesPerSecond(final String mbps) {
+    long value = MyriaConstants.NETWORK_BANDWIDTH_MBPS_DEFAULT_VALUE;
+    if (mbps != null) {
+      value = Long.parseLong(mbps);
+    }
+    return value * 1000 * 1000 / Byte.SIZE;
+  }
+
   /**
    * Utility class.
    * */
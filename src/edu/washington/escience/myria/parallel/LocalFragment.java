@@ -191,9 +191,10 @@ public final class LocalFragment {
             cpuBefore = ManagementFactory.getThreadMXBean().getThreadCpuTime(threadId);
           }
         }
+        boolean yielded = false;
         try {
           synchronized (executionLock) {
-            LocalFragment.this.executeActually();
+            yielded = LocalFragment.this.executeActually();
           }
         } catch (RuntimeException ee) {
           LOGGER.error("Unexpected Error: ", ee);
@@ -211,6 +212,10 @@ public final class LocalFragment {
             cpuBefore = 0;
           }
         }
+        if (yielded) {
+          // go to the back of the queue of the thread, behind the fragments that were waiting for it
+          executionHandle = myExecutor.submit(executionPlan);
+        }
         return null;
       }
     };
@@ -425,13 +430,15 @@ public final class LocalFragment {
   /**
    * Actually execute this fragment.
    * 
-   * @return always null. The return value is unused.
+   * @return true if the fragment used up its quantum and yielded, and must be submitted for execution again.
    */
-  private Object executeActually() {
+  private boolean executeActually() {
     beginNanoseconds = System.nanoTime();
     beginMilliseconds = System.currentTimeMillis();
+    final long quantumNanos = getExecutionQuantumNanos();
 
     Throwable failureCause = null;
+    boolean yielded = false;
     if (executionCondition.compareAndSet(EXECUTION_READY | STATE_EXECUTION_REQUESTED, EXECUTION_READY
         | STATE_EXECUTION_REQUESTED | STATE_IN_EXECUTION)) {
       EXECUTE : while (true) {
@@ -452,9 +459,10 @@ public final class LocalFragment {
           AtomicUtils.unsetBitByValue(executionCondition, STATE_INPUT_AVAILABLE);
 
           boolean breakByOutputUnavailable = false;
+          boolean breakByQuantumUsed = false;
           try {
             boolean hasData = true;
-            while (hasData && !breakByOutputUnavailable) {
+            while (hasData && !breakByOutputUnavailable && !breakByQuantumUsed) {
               hasData = false;
               if (root.nextReady() != null) {
                 hasData = true;
@@ -471,6 +479,7 @@ public final class LocalFragment {
                 Thread.currentThread().interrupt();
                 break;
               }
+              breakByQuantumUsed = hasData && System.nanoTime() - beginNanoseconds >= quantumNanos;
             }
           } catch (final Throwable e) {
             if (LOGGER.isErrorEnabled()) {
@@ -480,11 +489,18 @@ public final class LocalFragment {
             AtomicUtils.setBitByValue(executionCondition, STATE_FAIL);
           }
 
-          if (breakByOutputUnavailable) {
+          if (breakByOutputUnavailable || breakByQuantumUsed) {
             // we do not know whether all the inputs have been consumed, recover the input available bit
             AtomicUtils.setBitByValue(executionCondition, STATE_INPUT_AVAILABLE);
           }
 
+          if (breakByQuantumUsed && (executionCondition.get() & STATE_FAIL) == 0) {
+            // yield: keep the execution requested, so that only the resubmitted execution plan runs the fragment
+            AtomicUtils.unsetBitByValue(executionCondition, STATE_IN_EXECUTION);
+            yielded = true;
+            break EXECUTE;
+          }
+
         }
 
         // Check if another round of execution is needed.
@@ -524,7 +540,19 @@ public final class LocalFragment {
         cleanup(true);
       }
     }
-    return null;
+    return yielded;
+  }
+
+  /**
+   * The fragments of a subquery share {@link MyriaConstants#SUBQUERY_EXECUTION_QUANTUM_NANOS}, so that a subquery with
+   * many fragments does not get more of the threads than a subquery with few.
+   *
+   * @return how long this fragment may run before it yields its thread, in nanoseconds.
+   */
+  long getExecutionQuantumNanos() {
+    final int numFragments = Math.max(1, localSubQuery.getFragments().size());
+    return Math.max(MyriaConstants.MIN_FRAGMENT_EXECUTION_QUANTUM_NANOS,
+        MyriaConstants.SUBQUERY_EXECUTION_QUANTUM_NANOS / numFragments);
   }
 
   /**
@@ -2,6 +2,7 @@ package edu.washington.escience.myria.parallel;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Verify;
 import com.google.common.collect.Sets;
@@ -16,7 +17,7 @@ import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
- * Holds the IPC resources for a specific fragment.
+ * Holds the IPC resources for a specific fragment, and accounts for the memory its operators keep.
  */
 public final class LocalFragmentResourceManager {
 
@@ -41,6 +42,9 @@ public final class LocalFragmentResourceManager {
   /** The corresponding fragment. */
   private final LocalFragment fragment;
 
+  /** The bytes of memory reserved by the operators of this fragment. */
+  private final AtomicLong reservedMemoryBytes;
+
   /**
    * @param connectionPool connection pool.
    * @param fragment the corresponding fragment
@@ -49,6 +53,7 @@ public final class LocalFragmentResourceManager {
     inputBuffers = new ConcurrentHashMap<Consumer, StreamInputBuffer<TupleBatch>>();
     ipcPool = connectionPool;
     outputChannels = Sets.newSetFromMap(new ConcurrentHashMap<StreamOutputChannel<TupleBatch>, Boolean>());
+    reservedMemoryBytes = new AtomicLong();
 
     this.fragment = fragment;
   }
@@ -141,6 +146,22 @@ public final class LocalFragmentResourceManager {
     outputChannels.remove(channel);
   }
 
+  /**
+   * Change the memory reserved by the operators of this fragment.
+   *
+   * @param deltaBytes the number of bytes reserved, or released if negative.
+   */
+  public void reserveMemory(final long deltaBytes) {
+    reservedMemoryBytes.addAndGet(deltaBytes);
+  }
+
+  /**
+   * @return the bytes of memory reserved by the operators of this fragment.
+   */
+  public long getReservedMemoryBytes() {
+    return reservedMemoryBytes.get();
+  }
+
   /**
    * clean up, release all resources.
    */
@@ -153,6 +174,7 @@ public final class LocalFragmentResourceManager {
       releaseInputBuffer(c);
     }
     inputBuffers.clear();
+    reservedMemoryBytes.set(0);
   }
 
   /**
@@ -262,6 +262,18 @@ public final class Query {
     future.set(this);
   }
 
+  /**
+   * Set this query as having succeeded without running, because the stored results of an earlier identical query are
+   * still valid.
+   * 
+   * @param cachedQueryId the query whose results are reused.
+   */
+  public synchronized void markResultReused(final long cachedQueryId) {
+    markStart();
+    message = "Reused the stored results of query " + cachedQueryId;
+    markSuccess();
+  }
+
   /**
    * Set the time this query ended to now in ISO8601 format.
    */
@@ -1,12 +1,16 @@
 package edu.washington.escience.myria.parallel;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,6 +37,7 @@ import edu.washington.escience.myria.proto.ControlProto.ControlMessage;
 import edu.washington.escience.myria.storage.TupleBuffer;
 import edu.washington.escience.myria.util.DateTimeUtils;
 import edu.washington.escience.myria.util.IPCUtils;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
 
 /**
  * This class manages the queries running on Myria. It encapsulates the state outside of the Server object and handles
@@ -51,6 +56,27 @@ public class QueryManager {
   @GuardedBy("queryQueue")
   private final TreeMap<Long, Query> queryQueue;
 
+  /** The maximum heap size of each worker, as last reported by the worker. */
+  private final ConcurrentHashMap<Integer, Long> workerMemoryCapacity;
+
+  /** The bytes of memory reserved on each worker by each running query, as last reported by the workers. */
+  private final ConcurrentHashMap<Long, ConcurrentHashMap<Integer, Long>> queryMemoryReserved;
+
+  /**
+   * The bytes of memory on each worker that the running queries may reserve, or 0 to use a fraction of the worker's
+   * maximum heap size. See {@link edu.washington.escience.myria.MyriaSystemConfigKeys#QUERY_MEMORY_BUDGET_BYTES}.
+   */
+  private final long queryMemoryBudget;
+
+  /** Starts the queued queries that fit in memory once the workers report their memory, off the IPC thread. */
+  private final ExecutorService admissionExecutor;
+
+  /** The queries whose stored results can be reused. */
+  private final QueryResultCache resultCache;
+
+  /** The result cache key of each running query that asked to use the result cache and can be cached. */
+  private final ConcurrentHashMap<Long, QueryResultCache.Key> resultCacheKeys;
+
   /**
    * Subqueries currently in execution.
    */
@@ -68,12 +94,21 @@ public class QueryManager {
    * 
    * @param catalog the master catalog. Gets updated when queries finish, for example.
    * @param server the server on which the queries are executed.
+   * @param queryMemoryBudget the bytes of memory on each worker that the running queries may reserve, or 0 to use
+   *          {@link MyriaConstants#QUERY_MEMORY_ADMISSION_FRACTION} of the worker's maximum heap size.
    */
-  public QueryManager(final MasterCatalog catalog, final Server server) {
+  public QueryManager(final MasterCatalog catalog, final Server server, final long queryMemoryBudget) {
+    Preconditions.checkArgument(queryMemoryBudget >= 0, "queryMemoryBudget must be non-negative");
     this.catalog = catalog;
     this.server = server;
+    this.queryMemoryBudget = queryMemoryBudget;
+    admissionExecutor = Executors.newSingleThreadExecutor(new RenamingThreadFactory("Master query admission"));
     queryQueue = Maps.newTreeMap();
     runningQueries = new ConcurrentHashMap<>();
+    workerMemoryCapacity = new ConcurrentHashMap<>();
+    queryMemoryReserved = new ConcurrentHashMap<>();
+    resultCache = new QueryResultCache(catalog, MyriaConstants.QUERY_RESULT_CACHE_MAX_ENTRIES);
+    resultCacheKeys = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
   }
 
@@ -87,15 +122,130 @@ public class QueryManager {
   }
 
   /**
-   * update resource stats from messgaes.
+   * update resource stats from messgaes. A message that reports the memory capacity of a worker also reports the memory
+   * reserved by every query still executing on it, so the reservations of the other queries on that worker are dropped.
    * 
    * @param senderId the sender worer id.
    * @param m the message.
    */
   public void updateResourceStats(final int senderId, final ControlMessage m) {
+    boolean memoryChanged = false;
+    boolean allReserved = false;
+    Set<Long> reportedQueries = new HashSet<>();
     for (ControlProto.ResourceStats stats : m.getResourceStatsList()) {
-      runningQueries.get(stats.getQueryId()).addResourceStats(senderId, ResourceStats.fromProtobuf(stats));
+      if (stats.getMeasurement().equals(MyriaConstants.MEMORY_CAPACITY_MEASUREMENT)) {
+        workerMemoryCapacity.put(senderId, stats.getValue());
+        memoryChanged = true;
+        allReserved = true;
+        continue;
+      }
+      if (stats.getMeasurement().equals(MyriaConstants.MEMORY_RESERVED_MEASUREMENT)) {
+        reportedQueries.add(stats.getQueryId());
+        ConcurrentHashMap<Integer, Long> reserved = queryMemoryReserved.get(stats.getQueryId());
+        if (reserved != null) {
+          reserved.put(senderId, stats.getValue());
+          memoryChanged = true;
+        }
+        continue;
+      }
+      Query query = runningQueries.get(stats.getQueryId());
+      if (query != null) {
+        query.addResourceStats(senderId, ResourceStats.fromProtobuf(stats));
+      }
+    }
+    if (allReserved) {
+      /* The worker has finished its part of the queries it did not report. */
+      for (Map.Entry<Long, ConcurrentHashMap<Integer, Long>> reserved : queryMemoryReserved.entrySet()) {
+        if (!reportedQueries.contains(reserved.getKey())) {
+          reserved.getValue().remove(senderId);
+        }
+      }
     }
+    if (memoryChanged) {
+      try {
+        admissionExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              admitQueuedQueries();
+            } catch (DbException e) {
+              LOGGER.error("Error starting a queued query", e);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        LOGGER.debug("Not starting queued queries, the query manager is shutting down");
+      }
+    }
+  }
+
+  /**
+   * Whether the first queued query fits in memory beside the running queries. A query is assumed to reserve
+   * {@link MyriaConstants#DEFAULT_QUERY_MEMORY_ESTIMATE_BYTES} on every worker unless a worker has reported that it
+   * reserves more, and the queries running at once may reserve the configured memory budget of each worker, or else
+   * {@link MyriaConstants#QUERY_MEMORY_ADMISSION_FRACTION} of its maximum heap size. Until the workers have reported
+   * their heap sizes, queries run one at a time.
+   * 
+   * @return whether the first queued query can start now.
+   */
+  @GuardedBy("queryQueue")
+  private boolean canStartQueuedQuery() {
+    if (runningQueries.isEmpty()) {
+      return true;
+    }
+    if (workerMemoryCapacity.isEmpty()) {
+      return false;
+    }
+    for (Map.Entry<Integer, Long> capacity : workerMemoryCapacity.entrySet()) {
+      final int workerId = capacity.getKey();
+      long reserved = MyriaConstants.DEFAULT_QUERY_MEMORY_ESTIMATE_BYTES;
+      for (Long queryId : runningQueries.keySet()) {
+        long queryReserved = MyriaConstants.DEFAULT_QUERY_MEMORY_ESTIMATE_BYTES;
+        Map<Integer, Long> reports = queryMemoryReserved.get(queryId);
+        if (reports != null && reports.containsKey(workerId)) {
+          queryReserved = Math.max(queryReserved, reports.get(workerId));
+        }
+        reserved += queryReserved;
+      }
+      double budget = queryMemoryBudget;
+      if (queryMemoryBudget == 0) {
+        budget = capacity.getValue() * MyriaConstants.QUERY_MEMORY_ADMISSION_FRACTION;
+      }
+      if (reserved > budget) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Start queued queries, in order, for as long as the next one fits in memory beside the running queries.
+   * 
+   * @throws DbException if there is an error starting a query.
+   */
+  private void admitQueuedQueries() throws DbException {
+    while (true) {
+      Query q;
+      synchronized (queryQueue) {
+        if (queryQueue.isEmpty() || !canStartQueuedQuery()) {
+          return;
+        }
+        q = queryQueue.pollFirstEntry().getValue();
+        startRunning(q);
+      }
+      LOGGER.info("Now advancing to query {}", q.getQueryId());
+      advanceQuery(q);
+    }
+  }
+
+  /**
+   * Mark the specified query as running.
+   * 
+   * @param queryState the query.
+   */
+  private void startRunning(final Query queryState) {
+    queryMemoryReserved.put(queryState.getQueryId(), new ConcurrentHashMap<Integer, Long>());
+    runningQueries.put(queryState.getQueryId(), queryState);
   }
 
   /**
@@ -115,31 +265,22 @@ public class QueryManager {
    */
   private void finishQuery(final Query queryState) throws DbException {
     LOGGER.info("Finishing query {} with status {}", queryState.getQueryId(), queryState.getStatus());
+    QueryResultCache.Key cacheKey = resultCacheKeys.remove(queryState.getQueryId());
+    if (cacheKey != null && queryState.getStatus() == Status.SUCCESS) {
+      resultCache.put(cacheKey, queryState.getQueryId());
+    }
     try {
       catalog.queryFinished(queryState);
     } catch (CatalogException e) {
       throw new DbException("Error finishing query " + queryState.getQueryId(), e);
     } finally {
-      runningQueries.remove(queryState.getQueryId());
-
-      /* See if we can submit a new query. */
-      if (!runningQueries.isEmpty()) {
-        /* TODO replace with proper scheduler as opposed to single-query-at-a-time. */
-        return;
+      synchronized (queryQueue) {
+        runningQueries.remove(queryState.getQueryId());
+        queryMemoryReserved.remove(queryState.getQueryId());
       }
 
       /* Now see if the query queue has anything for us. */
-      Map.Entry<Long, Query> qEntry;
-      synchronized (queryQueue) {
-        qEntry = queryQueue.pollFirstEntry();
-      }
-      if (qEntry == null) {
-        return;
-      }
-      Query q = qEntry.getValue();
-      LOGGER.info("Now advancing to query {}", q.getQueryId());
-      runningQueries.put(q.getQueryId(), q);
-      advanceQuery(q);
+      admitQueuedQueries();
     }
   }
 
@@ -243,14 +384,14 @@ public class QueryManager {
     final Query queryState = new Query(queryId, query, plan, server);
     boolean canStart = false;
     synchronized (queryQueue) {
-      if (queryQueue.isEmpty() && runningQueries.isEmpty()) {
+      if (queryQueue.isEmpty() && canStartQueuedQuery()) {
         canStart = true;
+        startRunning(queryState);
       } else {
         queryQueue.put(queryId, queryState);
       }
     }
     if (canStart) {
-      runningQueries.put(queryId, queryState);
       advanceQuery(queryState);
     }
     return queryState.getFuture();
@@ -484,10 +625,44 @@ public class QueryManager {
         throw new DbException("Profiling mode is only supported when using Postgres as the storage system.");
       }
     }
+    QueryResultCache.Key cacheKey = null;
+    if (query.useResultCache) {
+      cacheKey = resultCache.getKey(query);
+    }
     final long queryID = catalog.newQuery(query);
+    if (cacheKey != null) {
+      Long cachedQueryId = resultCache.get(cacheKey);
+      if (cachedQueryId != null) {
+        return reuseResult(queryID, query, plan, cachedQueryId);
+      }
+      resultCacheKeys.put(queryID, cacheKey);
+    }
     return submitQuery(queryID, query, plan);
   }
 
+  /**
+   * Finish a query right away because the stored results of an earlier identical query are still valid.
+   * 
+   * @param queryId the id of the query.
+   * @param query the query encoding.
+   * @param plan the query that would otherwise be executed.
+   * @param cachedQueryId the query whose results are reused.
+   * @throws DbException if there is an error updating the Catalog
+   * @return the query future, already done.
+   */
+  private QueryFuture reuseResult(final long queryId, final QueryEncoding query, final QueryPlan plan,
+      final long cachedQueryId) throws DbException {
+    LOGGER.info("Query {} reuses the stored results of query {}", queryId, cachedQueryId);
+    final Query queryState = new Query(queryId, query, plan, server);
+    queryState.markResultReused(cachedQueryId);
+    try {
+      catalog.queryFinished(queryState);
+    } catch (CatalogException e) {
+      throw new DbException("Error finishing query " + queryId, e);
+    }
+    return queryState.getFuture();
+  }
+
   /**
    * @param queryId the query that owns the desired temp relation.
    * @param relationKey the key of the desired temp relation.
@@ -552,7 +727,7 @@ public class QueryManager {
   }
 
   /**
-   * Kill all queries currently executing.
+   * Kill all queries currently executing, and stop starting queued queries. Called when the master shuts down.
    */
   protected void killAll() {
     synchronized (queryQueue) {
@@ -564,6 +739,7 @@ public class QueryManager {
     for (MasterSubQuery p : executingSubQueries.values()) {
       p.kill();
     }
+    admissionExecutor.shutdownNow();
   }
 
   /**
@@ -573,6 +749,7 @@ public class QueryManager {
    * @param workerId the worker that died.
    */
   protected void workerDied(final int workerId) {
+    workerMemoryCapacity.remove(workerId);
     for (MasterSubQuery mqp : executingSubQueries.values()) {
       /* for each alive query that the failed worker is assigned to, tell the query that the worker failed. */
       if (mqp.getWorkerAssigned().contains(workerId)) {
@@ -0,0 +1,270 @@
+package edu.washington.escience.myria.parallel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.api.encoding.AbstractConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.ApplyEncoding;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.EOSControllerEncoding;
+import edu.washington.escience.myria.api.encoding.EmptyRelationEncoding;
+import edu.washington.escience.myria.api.encoding.FilterEncoding;
+import edu.washington.escience.myria.api.encoding.IDBControllerEncoding;
+import edu.washington.escience.myria.api.encoding.LeafOperatorEncoding;
+import edu.washington.escience.myria.api.encoding.OperatorEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.SetGlobalEncoding;
+import edu.washington.escience.myria.api.encoding.SingletonEncoding;
+import edu.washington.escience.myria.api.encoding.StatefulApplyEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.TempInsertEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.RandomExpression;
+import edu.washington.escience.myria.expression.StateExpression;
+import edu.washington.escience.myria.operator.Operator;
+
+/**
+ * Remembers the queries whose results are still stored, so that a query submitted again can reuse them instead of
+ * running. A query can be cached if its plan is a single subquery that only reads stored relations, only writes them
+ * by overwriting, and computes no random numbers or state. The results of such a query are the relations it wrote,
+ * and they can be reused as long as neither the relations it read nor the relations it wrote have been written since
+ * it ran (see {@link MasterCatalog#getRelationVersion(RelationKey)}).
+ *
+ * The least recently used entries are evicted once there are more than the maximum number of entries.
+ */
+public final class QueryResultCache {
+
+  /**
+   * Identifies a cacheable query and the versions of the relations it reads.
+   */
+  public static final class Key {
+    /** The fingerprint of the plan. */
+    private final String fingerprint;
+    /** The version of each relation the query reads. */
+    private final ImmutableMap<RelationKey, Long> inputVersions;
+    /** The relations the query writes. */
+    private final ImmutableSet<RelationKey> outputs;
+
+    /**
+     * @param fingerprint the fingerprint of the plan.
+     * @param inputVersions the version of each relation the query reads.
+     * @param outputs the relations the query writes.
+     */
+    private Key(final String fingerprint, final ImmutableMap<RelationKey, Long> inputVersions,
+        final ImmutableSet<RelationKey> outputs) {
+      this.fingerprint = fingerprint;
+      this.inputVersions = inputVersions;
+      this.outputs = outputs;
+    }
+  }
+
+  /**
+   * A query whose results are stored.
+   */
+  private static final class CachedQuery {
+    /** The query that stored the results. */
+    private final long queryId;
+    /** The version of each relation the query read. */
+    private final ImmutableMap<RelationKey, Long> inputVersions;
+    /** The version of each relation the query wrote, right after it wrote them. */
+    private final ImmutableMap<RelationKey, Long> outputVersions;
+
+    /**
+     * @param queryId the query that stored the results.
+     * @param inputVersions the version of each relation the query read.
+     * @param outputVersions the version of each relation the query wrote.
+     */
+    private CachedQuery(final long queryId, final ImmutableMap<RelationKey, Long> inputVersions,
+        final ImmutableMap<RelationKey, Long> outputVersions) {
+      this.queryId = queryId;
+      this.inputVersions = inputVersions;
+      this.outputVersions = outputVersions;
+    }
+  }
+
+  /** The catalog that holds the relation versions. */
+  private final MasterCatalog catalog;
+  /** The cached queries by plan fingerprint, least recently used first. */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, CachedQuery> entries;
+
+  /**
+   * @param catalog the catalog that holds the relation versions.
+   * @param maxEntries the maximum number of queries remembered.
+   */
+  public QueryResultCache(@Nonnull final MasterCatalog catalog, final int maxEntries) {
+    this.catalog = Objects.requireNonNull(catalog, "catalog");
+    Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+    entries = new LinkedHashMap<String, CachedQuery>(16, 0.75f, true) {
+      /** Required for Java serialization. */
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CachedQuery> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param query a query.
+   * @return the key of the query with the current versions of the relations it reads, or <code>null</code> if the
+   *         query cannot be cached.
+   */
+  @Nullable
+  public Key getKey(@Nonnull final QueryEncoding query) {
+    Objects.requireNonNull(query, "query");
+    if (!(query.plan instanceof SubQueryEncoding)) {
+      return null;
+    }
+    ImmutableSet.Builder<RelationKey> outputs = ImmutableSet.builder();
+    Set<RelationKey> inputs = new HashSet<>();
+    for (PlanFragmentEncoding fragment : ((SubQueryEncoding) query.plan).fragments) {
+      for (OperatorEncoding<? extends Operator> op : fragment.operators) {
+        if (op instanceof TableScanEncoding) {
+          inputs.add(((TableScanEncoding) op).relationKey);
+        } else if (op instanceof DbInsertEncoding) {
+          DbInsertEncoding insert = (DbInsertEncoding) op;
+          if (insert.argOverwriteTable == null || !insert.argOverwriteTable || insert.connectionInfo != null) {
+            /* Running an append again changes the stored relation. */
+            return null;
+          }
+          outputs.add(insert.relationKey);
+        } else if (op instanceof LeafOperatorEncoding && !(op instanceof AbstractConsumerEncoding)
+            && !(op instanceof EmptyRelationEncoding) && !(op instanceof SingletonEncoding)) {
+          /* Files and SQL queries can change without the catalog knowing. */
+          return null;
+        } else if (op instanceof TempInsertEncoding || op instanceof SetGlobalEncoding
+            || op instanceof IDBControllerEncoding || op instanceof EOSControllerEncoding) {
+          return null;
+        } else if (!isDeterministic(op)) {
+          /* Running it again may compute different results. */
+          return null;
+        }
+      }
+    }
+    String plan;
+    try {
+      plan =
+          MyriaJsonMapperProvider.getMapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+              .writeValueAsString(query.plan);
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+    String fingerprint = Hashing.sha256().hashString(plan, StandardCharsets.UTF_8).toString();
+    return new Key(fingerprint, getVersions(inputs), outputs.build());
+  }
+
+  /**
+   * @param op an operator.
+   * @return false if the expressions of the operator use random numbers or state, as in
+   *         {@link Expression#isConstant()}.
+   */
+  private static boolean isDeterministic(final OperatorEncoding<? extends Operator> op) {
+    List<Expression> expressions = new ArrayList<>();
+    if (op instanceof ApplyEncoding) {
+      addAll(expressions, ((ApplyEncoding) op).emitExpressions);
+    } else if (op instanceof StatefulApplyEncoding) {
+      StatefulApplyEncoding apply = (StatefulApplyEncoding) op;
+      addAll(expressions, apply.emitExpressions);
+      addAll(expressions, apply.initializerExpressions);
+      addAll(expressions, apply.updaterExpressions);
+    } else if (op instanceof FilterEncoding && ((FilterEncoding) op).argPredicate != null) {
+      expressions.add(((FilterEncoding) op).argPredicate);
+    }
+    for (Expression expression : expressions) {
+      if (expression.hasOperator(RandomExpression.class) || expression.hasOperator(StateExpression.class)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param dest receives the expressions.
+   * @param expressions some expressions, or <code>null</code>.
+   */
+  private static void addAll(final List<Expression> dest, @Nullable final List<Expression> expressions) {
+    if (expressions != null) {
+      dest.addAll(expressions);
+    }
+  }
+
+  /**
+   * @param relations some relations.
+   * @return the current version of each relation.
+   */
+  private ImmutableMap<RelationKey, Long> getVersions(final Set<RelationKey> relations) {
+    ImmutableMap.Builder<RelationKey, Long> versions = ImmutableMap.builder();
+    for (RelationKey relation : relations) {
+      versions.put(relation, catalog.getRelationVersion(relation));
+    }
+    return versions.build();
+  }
+
+  /**
+   * @param key the key of a query, as returned by {@link #getKey(QueryEncoding)}.
+   * @return the id of an earlier query whose stored results are still those the query would compute, or
+   *         <code>null</code> if there is none.
+   */
+  @Nullable
+  public synchronized Long get(@Nonnull final Key key) {
+    Objects.requireNonNull(key, "key");
+    CachedQuery cached = entries.get(key.fingerprint);
+    if (cached == null) {
+      return null;
+    }
+    if (!cached.inputVersions.equals(key.inputVersions)
+        || !cached.outputVersions.equals(getVersions(cached.outputVersions.keySet()))) {
+      /* The inputs or the results have been written since. */
+      entries.remove(key.fingerprint);
+      return null;
+    }
+    return cached.queryId;
+  }
+
+  /**
+   * Remember that a query succeeded, right after it finished.
+   *
+   * @param key the key of the query, as returned by {@link #getKey(QueryEncoding)} when it was submitted.
+   * @param queryId the id of the query.
+   */
+  public synchronized void put(@Nonnull final Key key, final long queryId) {
+    Objects.requireNonNull(key, "key");
+    if (!key.inputVersions.equals(getVersions(key.inputVersions.keySet()))) {
+      /* An input was written while the query ran, so its results may mix two versions. */
+      entries.remove(key.fingerprint);
+      return;
+    }
+    entries.put(key.fingerprint, new CachedQuery(queryId, key.inputVersions, getVersions(key.outputs)));
+  }
+
+  /**
+   * @return the number of queries remembered.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+}
@@ -6,11 +6,13 @@ import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 
 /**
  * Holds metadata about a relation that is created by a subquery.
@@ -28,6 +30,8 @@ public class RelationWriteMetadata implements Serializable {
   private final boolean overwrite;
   /** Whether the relation being written is a temporary or a permanent relation. */
   private final boolean temporary;
+  /** The order in which the tuples are written, or null if they are not written in any particular order. */
+  private final SortOrder sortOrder;
 
   /**
    * Constructs a new relation metadata object.
@@ -41,10 +45,28 @@ public class RelationWriteMetadata implements Serializable {
    */
   public RelationWriteMetadata(@Nonnull final RelationKey relationKey, @Nonnull final Schema schema,
       final boolean overwrite, final boolean temporary) {
+    this(relationKey, schema, overwrite, temporary, null);
+  }
+
+  /**
+   * Constructs a new relation metadata object.
+   * 
+   * @param relationKey the relation to be written
+   * @param schema the schema of the write.
+   * @param overwrite if {@code true}, then the relation will be overwritten / created. if false, the relation will be
+   *          created or appended. If appending, the schema must match the catalog schema.
+   * @param temporary if {@code true}, then the relation will be not be added to the Catalog, and its tuple count will
+   *          not be maintained.
+   * @param sortOrder the order in which the tuples are written, or null if they are not written in any particular
+   *          order.
+   */
+  public RelationWriteMetadata(@Nonnull final RelationKey relationKey, @Nonnull final Schema schema,
+      final boolean overwrite, final boolean temporary, @Nullable final SortOrder sortOrder) {
     this.relationKey = Objects.requireNonNull(relationKey, "relationKey");
     this.schema = Objects.requireNonNull(schema, "schema");
     this.overwrite = overwrite;
     this.temporary = temporary;
+    this.sortOrder = sortOrder;
     workers = new HashSet<>();
   }
 
@@ -96,6 +118,16 @@ public class RelationWriteMetadata implements Serializable {
     return schema;
   }
 
+  /**
+   * Get the order in which the tuples are written to this relation. Each worker stores its own tuples in this order.
+   * 
+   * @return the order in which the tuples are written, or null if they are not written in any particular order.
+   */
+  @Nullable
+  public SortOrder getSortOrder() {
+    return sortOrder;
+  }
+
   /**
    * Get the set of workers on which this relation will be written.
    * 
@@ -112,11 +144,11 @@ public class RelationWriteMetadata implements Serializable {
     }
     RelationWriteMetadata o = (RelationWriteMetadata) other;
     return Objects.equals(schema, o.schema) && Objects.equals(relationKey, o.relationKey)
-        && Objects.equals(overwrite, o.overwrite);
+        && Objects.equals(overwrite, o.overwrite) && Objects.equals(sortOrder, o.sortOrder);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(relationKey, schema, overwrite);
+    return Objects.hash(relationKey, schema, overwrite, sortOrder);
   }
 }
\ No newline at end of file
@@ -52,6 +52,7 @@ import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.TupleWriter;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
@@ -85,6 +86,7 @@ import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.GenericShuffleConsumer;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
+import edu.washington.escience.myria.parallel.ipc.CompressionCodec;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessage;
 import edu.washington.escience.myria.parallel.ipc.InJVMLoopbackChannelSink;
@@ -258,6 +260,11 @@ public final class Server {
    */
   private final IPCConnectionPool connectionPool;
 
+  /**
+   * The codec that IPC frames are compressed with, see {@link MyriaSystemConfigKeys#NETWORK_COMPRESSION}.
+   */
+  private final CompressionCodec compression;
+
   /**
    * {@link ExecutorService} for message processing.
    */
@@ -447,18 +454,21 @@ public final class Server {
     removeWorkerAckReceived = new ConcurrentHashMap<>();
     addWorkerAckReceived = new ConcurrentHashMap<>();
 
-    queryManager = new QueryManager(catalog, this);
+    queryManager =
+        new QueryManager(catalog, this, Long.valueOf(catalog
+            .getConfigurationValue(MyriaSystemConfigKeys.QUERY_MEMORY_BUDGET_BYTES)));
 
     messageQueue = new LinkedBlockingQueue<>();
 
     final Map<Integer, SocketInfo> computingUnits = new HashMap<>(workers);
     computingUnits.put(MyriaConstants.MASTER_ID, masterSocketInfo);
 
+    compression = CompressionCodec.of(catalog.getConfigurationValue(MyriaSystemConfigKeys.NETWORK_COMPRESSION));
     connectionPool =
         new IPCConnectionPool(MyriaConstants.MASTER_ID, computingUnits, IPCConfigurations
             .createMasterIPCServerBootstrap(this), IPCConfigurations.createMasterIPCClientBootstrap(this),
             new TransportMessageSerializer(), new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue),
-            inputBufferCapacity, inputBufferRecoverTrigger);
+            inputBufferCapacity, inputBufferRecoverTrigger, compression);
 
     scheduledTaskExecutor =
         Executors.newSingleThreadScheduledExecutor(new RenamingThreadFactory("Master global timer"));
@@ -806,10 +816,14 @@ public final class Server {
             .availableProcessors() * 2 + 1);
     // Start server with Nb of active threads = 2*NB CPU + 1 as maximum.
 
+    long bandwidth =
+        IPCPipelineFactories.bandwidthBytesPerSecond(getConfiguration(MyriaSystemConfigKeys.NETWORK_BANDWIDTH_MBPS));
     ChannelPipelineFactory serverPipelineFactory =
-        new IPCPipelineFactories.MasterServerPipelineFactory(connectionPool, getPipelineExecutor());
+        new IPCPipelineFactories.MasterServerPipelineFactory(connectionPool, getPipelineExecutor(), compression,
+            bandwidth);
     ChannelPipelineFactory clientPipelineFactory =
-        new IPCPipelineFactories.MasterClientPipelineFactory(connectionPool, getPipelineExecutor());
+        new IPCPipelineFactories.MasterClientPipelineFactory(connectionPool, getPipelineExecutor(), compression,
+            bandwidth);
     ChannelPipelineFactory masterInJVMPipelineFactory =
         new IPCPipelineFactories.MasterInJVMPipelineFactory(connectionPool);
 
@@ -1041,6 +1055,16 @@ public final class Server {
     return catalog.getSchema(relationKey);
   }
 
+  /**
+   * @param relationKey the key of the desired relation.
+   * @return the order in which each worker stores the tuples of the specified relation, or null if they are not stored
+   *         in any particular order.
+   * @throws CatalogException if there is an error getting the order out of the catalog.
+   */
+  public SortOrder getSortOrder(final RelationKey relationKey) throws CatalogException {
+    return catalog.getSortOrder(relationKey);
+  }
+
   /**
    * @param relationKey the key of the desired relation.
    * @param storedRelationId indicates which copy of the desired relation we want to scan.
@@ -277,6 +277,9 @@ public final class SubQuery extends QueryPlan {
           Preconditions.checkArgument(meta.getSchema().equals(metadata.getSchema()),
               "Cannot write to %s with two different Schemas %s and %s in the same subquery %s", relation, meta
                   .getSchema(), metadata.getSchema(), getSubQueryId());
+          Preconditions.checkArgument(Objects.equals(meta.getSortOrder(), metadata.getSortOrder()),
+              "Cannot write to %s in two different orders %s and %s in the same subquery %s", relation, meta
+                  .getSortOrder(), metadata.getSortOrder(), getSubQueryId());
         }
         meta.addWorker(workerId);
       }
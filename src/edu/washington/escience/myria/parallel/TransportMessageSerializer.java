@@ -12,6 +12,7 @@ import com.google.common.base.Preconditions;
 import com.google.protobuf.CodedInputStream;
 
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.parallel.ipc.PayloadSerializer;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -19,7 +20,8 @@ import edu.washington.escience.myria.util.IPCUtils;
 
 /**
  * This class monitors all the input/output IPC data. It makes sure that all input data are of {@link TransportMessage}
- * type. And it does all IPC exception catching and recording.
+ * type, or TupleBatches in {@link TupleBatchWireFormat} if the remote announced that it can read them. And it does all
+ * IPC exception catching and recording.
  * */
 @Sharable
 public class TransportMessageSerializer implements PayloadSerializer {
@@ -27,8 +29,16 @@ public class TransportMessageSerializer implements PayloadSerializer {
   /** The logger for this class. */
   protected static final Logger LOGGER = LoggerFactory.getLogger(TransportMessageSerializer.class);
 
+  /** Payload format flag: TupleBatches may be sent in {@link TupleBatchWireFormat}. */
+  public static final int COLUMNAR_TUPLE_BATCH = 1;
+
+  @Override
+  public int getSupportedFormats() {
+    return COLUMNAR_TUPLE_BATCH;
+  }
+
   @Override
-  public final ChannelBuffer serialize(final Object m) {
+  public final ChannelBuffer serialize(final Object m, final int remoteFormats) {
     Preconditions.checkNotNull(m);
     // m has only 3 possibilities:
     if (m instanceof TransportMessage) {
@@ -40,7 +50,12 @@ public class TransportMessageSerializer implements PayloadSerializer {
       // case 3: TupleBatch
       TupleBatch tb = (TupleBatch) m;
       if (!tb.isEOI()) {
-        return ChannelBuffers.wrappedBuffer(((TupleBatch) m).toTransportMessage().toByteArray());
+        // a batch written to several channels is serialized once, and each channel reads its own view of the bytes
+        ChannelBuffer serialized = tb.getSerializedForm(remoteFormats);
+        if (serialized == null) {
+          serialized = tb.putSerializedForm(remoteFormats, serialize(tb, remoteFormats));
+        }
+        return serialized.duplicate();
       } else {
         return ChannelBuffers.wrappedBuffer(IPCUtils.EOI.toByteArray());
       }
@@ -51,6 +66,18 @@ public class TransportMessageSerializer implements PayloadSerializer {
     }
   }
 
+  /**
+   * @param tb a batch that is not an EOI.
+   * @param remoteFormats the payload formats of the remote.
+   * @return the batch, serialized in the best format the remote can read.
+   */
+  private static ChannelBuffer serialize(final TupleBatch tb, final int remoteFormats) {
+    if ((remoteFormats & COLUMNAR_TUPLE_BATCH) != 0) {
+      return TupleBatchWireFormat.encode(tb);
+    }
+    return ChannelBuffers.wrappedBuffer(tb.toTransportMessage().toByteArray());
+  }
+
   /**
    * @param buf input data buffer.
    * @return Deserialized transport message
@@ -74,9 +101,20 @@ public class TransportMessageSerializer implements PayloadSerializer {
     return TransportMessage.parseFrom(cis);
   }
 
+  /**
+   * @return the de-serialized {@link TransportMessage}, or the TupleBatch if the buffer holds one in
+   *         {@link TupleBatchWireFormat}. In that case the attachment must be the schema of the stream, otherwise the
+   *         batch is not decoded and null is returned.
+   * */
   @Override
   public final Object deSerialize(final ChannelBuffer buffer, final Object processor, final Object att)
       throws IOException {
+    if (TupleBatchWireFormat.isEncoded(buffer)) {
+      if (!(att instanceof Schema)) {
+        return null;
+      }
+      return TupleBatchWireFormat.decode(buffer, (Schema) att);
+    }
     TransportMessage tm = deSerializeTransportMessage(buffer);
     return tm;
   }
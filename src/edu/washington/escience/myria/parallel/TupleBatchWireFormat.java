@@ -0,0 +1,359 @@
+package edu.washington.escience.myria.parallel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTimeZone;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringColumn;
+import edu.washington.escience.myria.column.Utf8StringColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A columnar encoding of {@link TupleBatch}es for the data plane, used on IPC connections whose remote can read it (see
+ * {@link TransportMessageSerializer}). A TransportMessage copies every column into a protobuf {@code bytes} field and
+ * then copies the whole message again into a byte array. This format writes a small header and the buffers of the
+ * columns, gathered into one composite {@link ChannelBuffer}. A batch is laid out as
+ *
+ * <pre>
+ * byte  MARKER
+ * int   number of tuples
+ * int   number of columns
+ * per column: byte encoding, int length of its body in bytes
+ * the bodies of the columns
+ * </pre>
+ *
+ * All numbers are big-endian. The UTF-8 bytes of a {@link Utf8StringColumn} are not copied when sending, and the string
+ * columns of a received batch wrap the received buffer. Primitive columns are Java arrays, so they are copied once in
+ * bulk on each side.
+ */
+public final class TupleBatchWireFormat {
+  /**
+   * The first byte of an encoded batch. A serialized TransportMessage never starts with it, since 0 is not a valid
+   * protobuf field tag.
+   */
+  public static final byte MARKER = 0;
+
+  /** Encoding of an INT column: the values. */
+  private static final byte INT = 0;
+  /** Encoding of a LONG column: the values. */
+  private static final byte LONG = 1;
+  /** Encoding of a FLOAT column: the values. */
+  private static final byte FLOAT = 2;
+  /** Encoding of a DOUBLE column: the values. */
+  private static final byte DOUBLE = 3;
+  /** Encoding of a BOOLEAN column: one bit per value, as in {@link BitSet#toByteArray()}. */
+  private static final byte BOOLEAN = 4;
+  /** Encoding of a DATETIME column: the milliseconds since the epoch of the values. */
+  private static final byte DATETIME = 5;
+  /** Encoding of a STRING column: numTuples + 1 offsets, then the UTF-8 bytes of all values. */
+  private static final byte UTF8_STRING = 6;
+  /** Encoding of a STRING column: the dictionary size, the dictionary encoded as a UTF8_STRING column, then the codes. */
+  private static final byte DICTIONARY_STRING = 7;
+
+  /** The bytes of the header before the column descriptors. */
+  private static final int HEADER_BYTES = 1 + 2 * Integer.SIZE / Byte.SIZE;
+  /** The bytes of a column descriptor. */
+  private static final int COLUMN_HEADER_BYTES = 1 + Integer.SIZE / Byte.SIZE;
+
+  /** Utility class. */
+  private TupleBatchWireFormat() {
+  }
+
+  /**
+   * @param buffer a serialized payload.
+   * @return whether the payload is a batch in this format.
+   */
+  public static boolean isEncoded(final ChannelBuffer buffer) {
+    return buffer.readable() && buffer.getByte(buffer.readerIndex()) == MARKER;
+  }
+
+  /**
+   * @param tb a batch that is not an EOI.
+   * @return the encoded batch. It shares the storage of some of the columns of the batch.
+   */
+  public static ChannelBuffer encode(final TupleBatch tb) {
+    Preconditions.checkArgument(!tb.isEOI(), "cannot encode an EOI batch");
+    final int numTuples = tb.numTuples();
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final ChannelBuffer header = ChannelBuffers.buffer(HEADER_BYTES + COLUMN_HEADER_BYTES * columns.size());
+    header.writeByte(MARKER);
+    header.writeInt(numTuples);
+    header.writeInt(columns.size());
+
+    final List<ChannelBuffer> parts = new ArrayList<ChannelBuffer>(columns.size() * 2 + 1);
+    parts.add(header);
+    for (final Column<?> column : columns) {
+      final int before = parts.size();
+      final byte encoding = encodeColumn(column, numTuples, parts);
+      int length = 0;
+      for (int i = before; i < parts.size(); ++i) {
+        length += parts.get(i).readableBytes();
+      }
+      header.writeByte(encoding);
+      header.writeInt(length);
+    }
+    return ChannelBuffers.wrappedBuffer(parts.toArray(new ChannelBuffer[parts.size()]));
+  }
+
+  /**
+   * Encode a column.
+   *
+   * @param column the column.
+   * @param numTuples the number of tuples in the column.
+   * @param parts the buffers to which the body of the column is appended.
+   * @return the encoding of the column.
+   */
+  private static byte encodeColumn(final Column<?> column, final int numTuples, final List<ChannelBuffer> parts) {
+    switch (column.getType()) {
+      case INT_TYPE: {
+        final ByteBuffer body = ByteBuffer.allocate(numTuples * Integer.SIZE / Byte.SIZE);
+        body.asIntBuffer().put(column.getIntArray(), 0, numTuples);
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return INT;
+      }
+      case LONG_TYPE: {
+        final ByteBuffer body = ByteBuffer.allocate(numTuples * Long.SIZE / Byte.SIZE);
+        body.asLongBuffer().put(column.getLongArray(), 0, numTuples);
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return LONG;
+      }
+      case FLOAT_TYPE: {
+        final ByteBuffer body = ByteBuffer.allocate(numTuples * Float.SIZE / Byte.SIZE);
+        body.asFloatBuffer().put(column.getFloatArray(), 0, numTuples);
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return FLOAT;
+      }
+      case DOUBLE_TYPE: {
+        final ByteBuffer body = ByteBuffer.allocate(numTuples * Double.SIZE / Byte.SIZE);
+        body.asDoubleBuffer().put(column.getDoubleArray(), 0, numTuples);
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return DOUBLE;
+      }
+      case BOOLEAN_TYPE: {
+        final byte[] body = new byte[(numTuples + Byte.SIZE - 1) / Byte.SIZE];
+        for (int row = 0; row < numTuples; ++row) {
+          if (column.getBoolean(row)) {
+            body[row / Byte.SIZE] |= 1 << (row % Byte.SIZE);
+          }
+        }
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return BOOLEAN;
+      }
+      case DATETIME_TYPE: {
+        final ByteBuffer body = ByteBuffer.allocate(numTuples * Long.SIZE / Byte.SIZE);
+        if (column instanceof DateTimeColumn) {
+          body.asLongBuffer().put(((DateTimeColumn) column).getMillisArray(), 0, numTuples);
+        } else {
+          for (int row = 0; row < numTuples; ++row) {
+            body.putLong(column.getDateTimeMillis(row));
+          }
+          body.flip();
+        }
+        parts.add(ChannelBuffers.wrappedBuffer(body));
+        return DATETIME;
+      }
+      case STRING_TYPE:
+        if (column instanceof DictionaryStringColumn) {
+          final DictionaryStringColumn dictionaryColumn = (DictionaryStringColumn) column;
+          final String[] dictionary = dictionaryColumn.getDictionary();
+          final ChannelBuffer size = ChannelBuffers.buffer(Integer.SIZE / Byte.SIZE);
+          size.writeInt(dictionary.length);
+          parts.add(size);
+          encodeUtf8(toUtf8(dictionary, dictionary.length), dictionary.length, parts);
+          final ByteBuffer codes = ByteBuffer.allocate(numTuples * Integer.SIZE / Byte.SIZE);
+          codes.asIntBuffer().put(dictionaryColumn.getCodes(), 0, numTuples);
+          parts.add(ChannelBuffers.wrappedBuffer(codes));
+          return DICTIONARY_STRING;
+        }
+        final Utf8StringColumn utf8;
+        if (column instanceof Utf8StringColumn) {
+          utf8 = (Utf8StringColumn) column;
+        } else {
+          final String[] values = new String[numTuples];
+          for (int row = 0; row < numTuples; ++row) {
+            values[row] = column.getString(row);
+          }
+          utf8 = toUtf8(values, numTuples);
+        }
+        encodeUtf8(utf8, numTuples, parts);
+        return UTF8_STRING;
+      default:
+        throw new UnsupportedOperationException("cannot encode a column of type " + column.getType());
+    }
+  }
+
+  /**
+   * @param values the values.
+   * @param numStrings the number of values.
+   * @return the UTF-8 encoding of the values. Unpaired surrogate characters are replaced, as
+   *         {@link String#getBytes(java.nio.charset.Charset)} does.
+   */
+  private static Utf8StringColumn toUtf8(final String[] values, final int numStrings) {
+    final Utf8StringColumn utf8 = Utf8StringColumn.encode(values, numStrings);
+    if (utf8 != null) {
+      return utf8;
+    }
+    final byte[][] encoded = new byte[numStrings][];
+    final int[] offsets = new int[numStrings + 1];
+    for (int i = 0; i < numStrings; ++i) {
+      encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+      offsets[i + 1] = offsets[i] + encoded[i].length;
+    }
+    final byte[] data = new byte[offsets[numStrings]];
+    for (int i = 0; i < numStrings; ++i) {
+      System.arraycopy(encoded[i], 0, data, offsets[i], encoded[i].length);
+    }
+    return new Utf8StringColumn(data, offsets, numStrings);
+  }
+
+  /**
+   * Append the offsets and the bytes of a UTF-8 column. The bytes are not copied.
+   *
+   * @param column the column.
+   * @param numStrings the number of values in the column.
+   * @param parts the buffers to which the column is appended.
+   */
+  private static void encodeUtf8(final Utf8StringColumn column, final int numStrings, final List<ChannelBuffer> parts) {
+    final int[] offsets = column.getOffsets();
+    final int base = offsets[0];
+    final ChannelBuffer offsetBuffer = ChannelBuffers.buffer((numStrings + 1) * Integer.SIZE / Byte.SIZE);
+    for (int i = 0; i <= numStrings; ++i) {
+      offsetBuffer.writeInt(offsets[i] - base);
+    }
+    parts.add(offsetBuffer);
+    parts.add(ChannelBuffers.wrappedBuffer(column.getBytes(), base, offsets[numStrings] - base));
+  }
+
+  /**
+   * @param buffer an encoded batch, see {@link #isEncoded(ChannelBuffer)}. The string columns of the batch may wrap it,
+   *          so it must not be modified afterwards.
+   * @param schema the schema of the batch.
+   * @return the decoded batch.
+   */
+  public static TupleBatch decode(final ChannelBuffer buffer, final Schema schema) {
+    final ByteBuffer bytes = buffer.toByteBuffer();
+    Preconditions.checkArgument(bytes.get() == MARKER, "not an encoded TupleBatch");
+    final int numTuples = bytes.getInt();
+    final int numColumns = bytes.getInt();
+    Preconditions.checkArgument(numColumns == schema.numColumns(), "received %s columns for schema %s", numColumns,
+        schema);
+    final byte[] encodings = new byte[numColumns];
+    final int[] lengths = new int[numColumns];
+    for (int i = 0; i < numColumns; ++i) {
+      encodings[i] = bytes.get();
+      lengths[i] = bytes.getInt();
+    }
+    final ImmutableList.Builder<Column<?>> columns = ImmutableList.builder();
+    for (int i = 0; i < numColumns; ++i) {
+      final ByteBuffer body = bytes.slice();
+      body.limit(lengths[i]);
+      final Column<?> column = decodeColumn(encodings[i], body, numTuples);
+      Preconditions.checkArgument(column.getType() == schema.getColumnType(i),
+          "received a %s column for column %s of schema %s", column.getType(), i, schema);
+      columns.add(column);
+      bytes.position(bytes.position() + lengths[i]);
+    }
+    return new TupleBatch(schema, columns.build(), numTuples);
+  }
+
+  /**
+   * @param encoding the encoding of the column.
+   * @param body the body of the column.
+   * @param numTuples the number of tuples.
+   * @return the decoded column.
+   */
+  private static Column<?> decodeColumn(final byte encoding, final ByteBuffer body, final int numTuples) {
+    switch (encoding) {
+      case INT: {
+        final int[] data = new int[numTuples];
+        body.asIntBuffer().get(data);
+        return new IntArrayColumn(data, numTuples);
+      }
+      case LONG: {
+        final long[] data = new long[numTuples];
+        body.asLongBuffer().get(data);
+        return new LongColumn(data, numTuples);
+      }
+      case FLOAT: {
+        final float[] data = new float[numTuples];
+        body.asFloatBuffer().get(data);
+        return new FloatColumn(data, numTuples);
+      }
+      case DOUBLE: {
+        final double[] data = new double[numTuples];
+        body.asDoubleBuffer().get(data);
+        return new DoubleColumn(data, numTuples);
+      }
+      case BOOLEAN:
+        return new BooleanColumn(BitSet.valueOf(body), numTuples);
+      case DATETIME: {
+        final long[] data = new long[numTuples];
+        body.asLongBuffer().get(data);
+        return new DateTimeColumn(data, DateTimeZone.getDefault(), numTuples);
+      }
+      case UTF8_STRING:
+        return decodeUtf8(body, numTuples);
+      case DICTIONARY_STRING: {
+        final int dictionarySize = body.getInt();
+        final Utf8StringColumn values = decodeUtf8(body, dictionarySize);
+        final String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; ++i) {
+          dictionary[i] = values.getString(i);
+        }
+        final int[] codes = new int[numTuples];
+        body.asIntBuffer().get(codes);
+        return new DictionaryStringColumn(dictionary, codes, numTuples);
+      }
+      default:
+        throw new IllegalArgumentException("unknown column encoding " + encoding);
+    }
+  }
+
+  /**
+   * Decode a UTF-8 column, wrapping the received bytes if possible. Advances the position of the body past the column.
+   *
+   * @param body the body of the column.
+   * @param numStrings the number of values.
+   * @return the decoded column.
+   */
+  private static Utf8StringColumn decodeUtf8(final ByteBuffer body, final int numStrings) {
+    final int[] offsets = new int[numStrings + 1];
+    body.asIntBuffer().get(offsets);
+    body.position(body.position() + offsets.length * Integer.SIZE / Byte.SIZE);
+    final int length = offsets[numStrings];
+    final byte[] data;
+    final int base;
+    if (body.hasArray()) {
+      data = body.array();
+      base = body.arrayOffset() + body.position();
+    } else {
+      data = new byte[length];
+      body.duplicate().get(data);
+      base = 0;
+    }
+    body.position(body.position() + length);
+    for (int i = 0; i <= numStrings; ++i) {
+      offsets[i] += base;
+    }
+    return new Utf8StringColumn(data, offsets, numStrings);
+  }
+}
@@ -5,7 +5,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileLock;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
@@ -28,6 +30,8 @@ import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 
+import com.google.common.collect.ImmutableList;
+
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
@@ -35,6 +39,7 @@ import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.WorkerCatalog;
+import edu.washington.escience.myria.parallel.ipc.CompressionCodec;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.InJVMLoopbackChannelSink;
 import edu.washington.escience.myria.profiling.ProfilingLogger;
@@ -223,6 +228,24 @@ public final class Worker {
     public synchronized void runInner() {
       LOGGER.trace("sending heartbeat to server");
       sendMessageToMaster(IPCUtils.CONTROL_WORKER_HEARTBEAT).awaitUninterruptibly();
+      sendMessageToMaster(IPCUtils.resourceReport(collectMemoryMeasurements())).awaitUninterruptibly();
+    }
+
+    /**
+     * @return the memory this worker may use, and the memory reserved by each of its executing subqueries, for the
+     *         master to admit queries by.
+     */
+    private List<ResourceStats> collectMemoryMeasurements() {
+      final long timestamp = System.currentTimeMillis();
+      final List<ResourceStats> memoryUsage = new ArrayList<>();
+      memoryUsage.add(new ResourceStats(timestamp, -1, MyriaConstants.MEMORY_CAPACITY_MEASUREMENT, Runtime
+          .getRuntime().maxMemory(), -1, -1));
+      for (WorkerSubQuery subQuery : executingSubQueries.values()) {
+        final SubQueryId subQueryId = subQuery.getSubQueryId();
+        memoryUsage.add(new ResourceStats(timestamp, -1, MyriaConstants.MEMORY_RESERVED_MEASUREMENT, subQuery
+            .getReservedMemoryBytes(), subQueryId.getQueryId(), subQueryId.getSubqueryId()));
+      }
+      return memoryUsage;
     }
   }
 
@@ -307,6 +330,11 @@ public final class Worker {
    */
   private final IPCConnectionPool connectionPool;
 
+  /**
+   * The codec that IPC frames are compressed with, see {@link MyriaSystemConfigKeys#NETWORK_COMPRESSION}.
+   */
+  private final CompressionCodec compression;
+
   /**
    * A indicator of shutting down the worker.
    */
@@ -616,10 +644,11 @@ public final class Worker {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    compression = CompressionCodec.of(catalog.getConfigurationValue(MyriaSystemConfigKeys.NETWORK_COMPRESSION));
     connectionPool =
         new IPCConnectionPool(myID, computingUnits, IPCConfigurations.createWorkerIPCServerBootstrap(this),
             IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(),
-            new WorkerShortMessageProcessor(this), inputBufferCapacity, inputBufferRecoverTrigger);
+            new WorkerShortMessageProcessor(this), inputBufferCapacity, inputBufferRecoverTrigger, compression);
     activeQueries = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
 
@@ -710,6 +739,9 @@ public final class Worker {
   private void finishTask(final SubQueryId subQueryId) {
     executingSubQueries.remove(subQueryId);
     activeQueries.remove(subQueryId.getQueryId());
+    /* Release the memory the master counts for the subquery, without waiting for the next heartbeat. */
+    sendMessageToMaster(IPCUtils.resourceReport(ImmutableList.of(new ResourceStats(System.currentTimeMillis(), -1,
+        MyriaConstants.MEMORY_RESERVED_MEASUREMENT, 0, subQueryId.getQueryId(), subQueryId.getSubqueryId()))));
   }
 
   /**
@@ -753,6 +785,12 @@ public final class Worker {
     messageProcessingExecutor.shutdownNow();
     queryExecutor.shutdown();
     scheduledTaskExecutor.shutdown();
+    synchronized (this) {
+      if (profilingLogger != null) {
+        profilingLogger.close();
+        profilingLogger = null;
+      }
+    }
     if (LOGGER.isInfoEnabled()) {
       LOGGER.info("Worker #" + myID + " shutdown completed");
     }
@@ -780,10 +818,14 @@ public final class Worker {
         new NioServerSocketChannelFactory(bossExecutor, workerExecutor,
             Runtime.getRuntime().availableProcessors() * 2 + 1);
 
+    long bandwidth =
+        IPCPipelineFactories.bandwidthBytesPerSecond(getConfiguration(MyriaSystemConfigKeys.NETWORK_BANDWIDTH_MBPS));
     ChannelPipelineFactory serverPipelineFactory =
-        new IPCPipelineFactories.WorkerServerPipelineFactory(connectionPool, getPipelineExecutor());
+        new IPCPipelineFactories.WorkerServerPipelineFactory(connectionPool, getPipelineExecutor(), compression,
+            bandwidth);
     ChannelPipelineFactory clientPipelineFactory =
-        new IPCPipelineFactories.WorkerClientPipelineFactory(connectionPool, getPipelineExecutor());
+        new IPCPipelineFactories.WorkerClientPipelineFactory(connectionPool, getPipelineExecutor(), compression,
+            bandwidth);
     ChannelPipelineFactory workerInJVMPipelineFactory =
         new IPCPipelineFactories.WorkerInJVMPipelineFactory(connectionPool);
 
@@ -843,6 +885,9 @@ public final class Worker {
    */
   public synchronized ProfilingLogger getProfilingLogger() throws DbException {
     if (profilingLogger == null || !profilingLogger.isValid()) {
+      if (profilingLogger != null) {
+        profilingLogger.close();
+      }
       profilingLogger = null;
       ConnectionInfo connectionInfo = (ConnectionInfo) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_DATABASE_CONN_INFO);
       if (connectionInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL)) {
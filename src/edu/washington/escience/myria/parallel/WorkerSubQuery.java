@@ -250,6 +250,17 @@ public class WorkerSubQuery extends LocalSubQuery {
     }
   }
 
+  /**
+   * @return the number of bytes of memory currently reserved by the operators of this subquery's fragments.
+   */
+  public long getReservedMemoryBytes() {
+    long bytes = 0;
+    for (LocalFragment fragment : fragments) {
+      bytes += fragment.getResourceManager().getReservedMemoryBytes();
+    }
+    return bytes;
+  }
+
   @Override
   public final void kill() {
     for (LocalFragment fragment : fragments) {
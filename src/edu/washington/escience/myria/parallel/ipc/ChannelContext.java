@@ -437,6 +437,11 @@ public class ChannelContext extends AttachmentableAdapter {
    * */
   private volatile Integer remoteReplyID = null;
 
+  /**
+   * the payload formats supported by the remote, as sent in its CONNECT message.
+   * */
+  private volatile int remotePayloadFormats = 0;
+
   /**
    * For channels initiated by this IPC entity, the registration process is that this IPC entity creates a connection,
    * send my IPC ID, and wait for the remote IPC entity sending back its IPC ID within a timeout.
@@ -1115,6 +1120,20 @@ public class ChannelContext extends AttachmentableAdapter {
     remoteReply.setSuccess();
   }
 
+  /**
+   * @return the payload formats supported by the remote, see {@link PayloadSerializer#getSupportedFormats()}.
+   * */
+  final int getRemotePayloadFormats() {
+    return remotePayloadFormats;
+  }
+
+  /**
+   * @param payloadFormats the payload formats supported by the remote, as sent in its CONNECT message.
+   * */
+  final void setRemotePayloadFormats(final int payloadFormats) {
+    remotePayloadFormats = payloadFormats;
+  }
+
   /**
    * Update moste recent IO operation on the owner Channel.
    * */
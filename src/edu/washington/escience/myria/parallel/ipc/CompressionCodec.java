@@ -0,0 +1,36 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.util.Locale;
+
+import edu.washington.escience.myria.util.Lz4Block;
+
+/**
+ * The codecs that {@link FrameCompressionEncoder} can compress IPC frames with. The ordinal of a codec identifies it on
+ * the wire, so new codecs must be appended.
+ */
+public enum CompressionCodec {
+  /** Frames are sent as they are. */
+  NONE,
+  /** DEFLATE at its fastest level, using {@link java.util.zip.Deflater}. */
+  DEFLATE,
+  /** The LZ4 block format, see {@link Lz4Block}. Much faster than DEFLATE, with a lower ratio. */
+  LZ4;
+
+  /**
+   * @return the bit flag of this codec in the codecs advertised in CONNECT messages.
+   */
+  public int flag() {
+    return 1 << ordinal();
+  }
+
+  /**
+   * @param name the name of a codec, case insensitive, or null.
+   * @return the codec, {@link #NONE} if the name is null or empty.
+   */
+  public static CompressionCodec of(final String name) {
+    if (name == null || name.isEmpty()) {
+      return NONE;
+    }
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+}
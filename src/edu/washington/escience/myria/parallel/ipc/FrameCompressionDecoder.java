@@ -0,0 +1,106 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.compression.CompressionException;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+
+import edu.washington.escience.myria.util.Lz4Block;
+
+/**
+ * Decompresses the IPC frames written by a {@link FrameCompressionEncoder}, whatever codec they were compressed with.
+ *
+ * The first frame of a connection is the CONNECT message of the remote. It has no codec header, and it tells which
+ * codecs the remote can decode. Only the frames after the CONNECT messages, and only if both ends advertised codecs,
+ * have a codec header, so remotes that predate frame compression or have it turned off exchange plain frames. The
+ * decoder reads the CONNECT message itself, in the I/O thread, so that it knows how to decode the next frame before
+ * that frame arrives.
+ *
+ * A decoder keeps per-connection state, so every pipeline needs its own instance.
+ */
+public final class FrameCompressionDecoder extends OneToOneDecoder {
+  /** The codecs a decoder can decode, as {@link CompressionCodec#flag()}s. Advertised in CONNECT messages. */
+  public static final int SUPPORTED_CODECS = CompressionCodec.DEFLATE.flag() | CompressionCodec.LZ4.flag();
+
+  /** The decompressor for {@link CompressionCodec#DEFLATE} frames, created on first use. */
+  private Inflater inflater;
+  /** Whether the CONNECT message of the remote has been received. */
+  private boolean connectReceived;
+  /** The codecs the remote can decode, 0 until its CONNECT message has been received. */
+  private volatile int remoteCodecs;
+
+  /**
+   * @return the codecs the remote can decode, as {@link CompressionCodec#flag()}s. 0 if the remote does not compress
+   *         frames or its CONNECT message has not been received.
+   */
+  int getRemoteCodecs() {
+    return remoteCodecs;
+  }
+
+  @Override
+  protected Object decode(final ChannelHandlerContext ctx, final Channel channel, final Object msg)
+      throws DataFormatException {
+    if (!(msg instanceof ChannelBuffer)) {
+      return msg;
+    }
+    final ChannelBuffer frame = (ChannelBuffer) msg;
+    if (!connectReceived) {
+      connectReceived = true;
+      if (frame.readable() && frame.getByte(frame.readerIndex()) == IPCMessage.Header.CONNECT.ordinal()) {
+        IPCMessage.Meta connect = IPCMessage.Meta.deSerialize(frame.duplicate());
+        remoteCodecs = ((IPCMessage.Meta.CONNECT) connect).getCompressionCodecs();
+      }
+      return frame;
+    }
+    if (remoteCodecs == 0) {
+      return frame;
+    }
+    final int codecId = frame.readUnsignedByte();
+    if (codecId >= CompressionCodec.values().length) {
+      throw new CompressionException("unknown compression codec " + codecId);
+    }
+    final CompressionCodec codec = CompressionCodec.values()[codecId];
+    if (codec == CompressionCodec.NONE) {
+      return frame;
+    }
+
+    final int length = frame.readInt();
+    if (length < 0 || length > FrameCompressionEncoder.MAX_COMPRESSED_FRAME_BYTES) {
+      throw new CompressionException("invalid uncompressed frame length " + length);
+    }
+    final int compressedLength = frame.readableBytes();
+    final byte[] input;
+    final int inputOffset;
+    if (frame.hasArray()) {
+      input = frame.array();
+      inputOffset = frame.arrayOffset() + frame.readerIndex();
+    } else {
+      input = new byte[compressedLength];
+      frame.getBytes(frame.readerIndex(), input);
+      inputOffset = 0;
+    }
+    final byte[] output = new byte[length];
+    if (codec == CompressionCodec.LZ4) {
+      try {
+        Lz4Block.decompress(input, inputOffset, compressedLength, output, 0, length);
+      } catch (IllegalArgumentException e) {
+        throw new CompressionException(e.getMessage(), e);
+      }
+    } else {
+      if (inflater == null) {
+        inflater = new Inflater(true);
+      }
+      inflater.reset();
+      inflater.setInput(input, inputOffset, compressedLength);
+      if (inflater.inflate(output) != length || !inflater.finished()) {
+        throw new CompressionException("corrupt DEFLATE frame");
+      }
+    }
+    return ChannelBuffers.wrappedBuffer(output);
+  }
+}
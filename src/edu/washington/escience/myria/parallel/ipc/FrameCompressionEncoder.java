@@ -0,0 +1,184 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.util.Lz4Block;
+
+/**
+ * Compresses the IPC frames written to a channel. The first frame, our CONNECT message, is sent as it is. The
+ * {@link FrameCompressionDecoder} of the same pipeline then learns from the CONNECT message of the remote which codecs
+ * it can decode. If the remote advertised none, e.g., because it predates frame compression or has it turned off, all
+ * frames are sent as they are. Otherwise every later frame gets a one byte header, the ordinal of the
+ * {@link CompressionCodec} it is compressed with. A compressed frame then has its uncompressed length as an int,
+ * followed by the compressed bytes. The decoder of the remote reverses this for any codec, so the two ends of a
+ * connection need not agree on one.
+ *
+ * Compression only pays off if it takes less time than sending the bytes it saves. The encoder therefore measures the
+ * time and ratio of compression over samples of {@value #SAMPLE_FRAMES} frames. When compressing a sample took longer
+ * than sending its saved bytes would have at the configured bandwidth, e.g., because the data is incompressible, the
+ * encoder sends the next {@value #BACKOFF_FRAMES} frames uncompressed before it samples again.
+ *
+ * An encoder keeps per-connection state, so every pipeline needs its own instance.
+ */
+public final class FrameCompressionEncoder extends OneToOneEncoder {
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(FrameCompressionEncoder.class);
+  /** Frames smaller than this, e.g., control messages, are never compressed. */
+  public static final int MIN_COMPRESSED_FRAME_BYTES = 1024;
+  /** Frames larger than this are never compressed, which bounds what a decoder allocates for a frame. */
+  public static final int MAX_COMPRESSED_FRAME_BYTES = 64 * 1024 * 1024;
+  /** The number of compressed frames over which the encoder decides whether compression pays off. */
+  static final int SAMPLE_FRAMES = 16;
+  /** The number of frames sent uncompressed after a sample where compression did not pay off. */
+  static final int BACKOFF_FRAMES = 1024;
+  /** The header of uncompressed frames. */
+  private static final ChannelBuffer NONE_HEADER = ChannelBuffers.unmodifiableBuffer(ChannelBuffers
+      .wrappedBuffer(new byte[] { (byte) CompressionCodec.NONE.ordinal() }));
+
+  /** The codec. */
+  private final CompressionCodec codec;
+  /** The bandwidth of the network, in bytes per second. */
+  private final long bandwidthBytesPerSecond;
+  /** The compressor if the codec is {@link CompressionCodec#DEFLATE}. */
+  private final Deflater deflater;
+  /** The hash table if the codec is {@link CompressionCodec#LZ4}. */
+  private final int[] lz4HashTable;
+  /** The decoder of the same pipeline, which knows the codecs the remote can decode. */
+  private final FrameCompressionDecoder decoder;
+  /** Whether our CONNECT message has been sent. */
+  private boolean connectSent;
+
+  /** The number of frames compressed in the current sample. */
+  private int sampleFrames;
+  /** The uncompressed bytes of the current sample. */
+  private long sampleBytes;
+  /** The compressed bytes of the current sample. */
+  private long sampleCompressedBytes;
+  /** The time spent compressing the current sample. */
+  private long sampleNanos;
+  /** The number of frames still to send uncompressed before the next sample. */
+  private int backoffFrames;
+
+  /**
+   * @param codec the codec.
+   * @param bandwidthBytesPerSecond the bandwidth of the network, in bytes per second.
+   * @param decoder the decoder of the same pipeline.
+   */
+  public FrameCompressionEncoder(final CompressionCodec codec, final long bandwidthBytesPerSecond,
+      final FrameCompressionDecoder decoder) {
+    this.codec = Preconditions.checkNotNull(codec, "codec");
+    this.decoder = Preconditions.checkNotNull(decoder, "decoder");
+    Preconditions.checkArgument(bandwidthBytesPerSecond > 0, "bandwidth must be positive");
+    this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    deflater = codec == CompressionCodec.DEFLATE ? new Deflater(Deflater.BEST_SPEED, true) : null;
+    lz4HashTable = codec == CompressionCodec.LZ4 ? Lz4Block.newHashTable() : null;
+  }
+
+  /**
+   * @return whether the next large frame will be compressed.
+   */
+  synchronized boolean isCompressing() {
+    return codec != CompressionCodec.NONE && backoffFrames == 0;
+  }
+
+  @Override
+  protected synchronized Object encode(final ChannelHandlerContext ctx, final Channel channel, final Object msg) {
+    if (!(msg instanceof ChannelBuffer)) {
+      return msg;
+    }
+    final ChannelBuffer frame = (ChannelBuffer) msg;
+    if (!connectSent) {
+      connectSent = true;
+      return frame;
+    }
+    final int remoteCodecs = decoder.getRemoteCodecs();
+    if (remoteCodecs == 0) {
+      return frame;
+    }
+    final int length = frame.readableBytes();
+    if ((remoteCodecs & codec.flag()) == 0 || length < MIN_COMPRESSED_FRAME_BYTES
+        || length > MAX_COMPRESSED_FRAME_BYTES) {
+      return ChannelBuffers.wrappedBuffer(NONE_HEADER, frame);
+    }
+    if (backoffFrames > 0) {
+      backoffFrames--;
+      return ChannelBuffers.wrappedBuffer(NONE_HEADER, frame);
+    }
+
+    final long start = System.nanoTime();
+    final byte[] input;
+    final int inputOffset;
+    if (frame.hasArray()) {
+      input = frame.array();
+      inputOffset = frame.arrayOffset() + frame.readerIndex();
+    } else {
+      input = new byte[length];
+      frame.getBytes(frame.readerIndex(), input);
+      inputOffset = 0;
+    }
+    final int headerBytes = 1 + Integer.SIZE / Byte.SIZE;
+    final byte[] output;
+    int compressedLength;
+    if (codec == CompressionCodec.LZ4) {
+      output = new byte[headerBytes + Lz4Block.maxCompressedLength(length)];
+      compressedLength = Lz4Block.compress(input, inputOffset, length, output, headerBytes, lz4HashTable);
+    } else {
+      /* Anything that does not fit in the input size is not worth sending compressed. */
+      output = new byte[headerBytes + length];
+      deflater.reset();
+      deflater.setInput(input, inputOffset, length);
+      deflater.finish();
+      compressedLength = deflater.deflate(output, headerBytes, length);
+      if (!deflater.finished()) {
+        compressedLength = length;
+      }
+    }
+    recordSample(length, Math.min(compressedLength, length), System.nanoTime() - start);
+
+    if (compressedLength >= length) {
+      return ChannelBuffers.wrappedBuffer(NONE_HEADER, frame);
+    }
+    output[0] = (byte) codec.ordinal();
+    ChannelBuffers.wrappedBuffer(output).setInt(1, length);
+    return ChannelBuffers.wrappedBuffer(output, 0, headerBytes + compressedLength);
+  }
+
+  /**
+   * Record a compressed frame and decide whether to back off at the end of a sample.
+   *
+   * @param length the uncompressed length of the frame.
+   * @param compressedLength the compressed length of the frame.
+   * @param nanos the time spent compressing the frame.
+   */
+  private void recordSample(final int length, final int compressedLength, final long nanos) {
+    sampleFrames++;
+    sampleBytes += length;
+    sampleCompressedBytes += compressedLength;
+    sampleNanos += nanos;
+    if (sampleFrames < SAMPLE_FRAMES) {
+      return;
+    }
+    final double savedNanos = (sampleBytes - sampleCompressedBytes) * 1e9 / bandwidthBytesPerSecond;
+    if (sampleNanos >= savedNanos) {
+      backoffFrames = BACKOFF_FRAMES;
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("{} compression off for {} frames: {} bytes compressed to {} in {} ms", codec, BACKOFF_FRAMES,
+            sampleBytes, sampleCompressedBytes, sampleNanos / 1e6);
+      }
+    }
+    sampleFrames = 0;
+    sampleBytes = 0;
+    sampleCompressedBytes = 0;
+    sampleNanos = 0;
+  }
+}
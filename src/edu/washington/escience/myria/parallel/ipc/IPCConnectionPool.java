@@ -459,10 +459,37 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
       final ServerBootstrap serverBootstrap, final ClientBootstrap clientBootstrap,
       final PayloadSerializer payloadSerializer, final ShortMessageProcessor<?> mp, final int inputBufferCapacity,
       final int inputBufferRecoverTrigger) {
+    this(myID, remoteAddresses, serverBootstrap, clientBootstrap, payloadSerializer, mp, inputBufferCapacity,
+        inputBufferRecoverTrigger, CompressionCodec.NONE);
+  }
+
+  /**
+   * Construct a connection pool.
+   *
+   * @param myID self id.
+   * @param remoteAddresses remote address mappings.
+   * @param serverBootstrap IPC server bootstrap
+   * @param clientBootstrap IPC client bootstrap
+   * @param payloadSerializer the payload serializer
+   * @param mp short message processor
+   * @param inputBufferCapacity input buffer capacity
+   * @param inputBufferRecoverTrigger input buffer recover trigger.
+   * @param compression the codec that the pipelines of the pool compress frames with. Unless it is
+   *          {@link CompressionCodec#NONE}, the pool advertises {@link FrameCompressionDecoder#SUPPORTED_CODECS} to
+   *          remotes, so the pipelines must then have the frame compression stage.
+   * */
+  public IPCConnectionPool(final int myID, final Map<Integer, SocketInfo> remoteAddresses,
+      final ServerBootstrap serverBootstrap, final ClientBootstrap clientBootstrap,
+      final PayloadSerializer payloadSerializer, final ShortMessageProcessor<?> mp, final int inputBufferCapacity,
+      final int inputBufferRecoverTrigger, final CompressionCodec compression) {
     this.myID = myID;
     this.inputBufferCapacity = inputBufferCapacity;
     this.inputBufferRecoverTrigger = inputBufferRecoverTrigger;
-    myIDMsg = new IPCMessage.Meta.CONNECT(myID);
+    int compressionCodecs = 0;
+    if (compression != CompressionCodec.NONE) {
+      compressionCodecs = FrameCompressionDecoder.SUPPORTED_CODECS;
+    }
+    myIDMsg = new IPCMessage.Meta.CONNECT(myID, payloadSerializer.getSupportedFormats(), compressionCodecs);
     myIPCServerAddress = remoteAddresses.get(myID).getBindAddress();
     this.clientBootstrap = clientBootstrap;
     this.serverBootstrap = serverBootstrap;
@@ -121,6 +121,14 @@ public interface IPCMessage {
        * remote ID.
        * */
       private final int remoteID;
+      /**
+       * the payload formats supported by the remote, see {@link PayloadSerializer#getSupportedFormats()}.
+       * */
+      private final int payloadFormats;
+      /**
+       * the frame compression codecs the remote can decode, see {@link FrameCompressionDecoder#SUPPORTED_CODECS}.
+       * */
+      private final int compressionCodecs;
       /**
        * serialize value.
        * */
@@ -128,12 +136,18 @@ public interface IPCMessage {
 
       /**
        * @param remoteID the remote IPC ID.
+       * @param payloadFormats the payload formats supported by the remote.
+       * @param compressionCodecs the frame compression codecs the remote can decode, 0 if it does not compress frames.
        * */
-      public CONNECT(final int remoteID) {
+      public CONNECT(final int remoteID, final int payloadFormats, final int compressionCodecs) {
         this.remoteID = remoteID;
-        ChannelBuffer bb = ChannelBuffers.buffer(1 + Integer.SIZE / Byte.SIZE);
+        this.payloadFormats = payloadFormats;
+        this.compressionCodecs = compressionCodecs;
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + 3 * Integer.SIZE / Byte.SIZE);
         bb.writeByte((byte) Header.CONNECT.ordinal());
         bb.writeInt(remoteID);
+        bb.writeInt(payloadFormats);
+        bb.writeInt(compressionCodecs);
         serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
       }
 
@@ -144,6 +158,20 @@ public interface IPCMessage {
         return remoteID;
       }
 
+      /**
+       * @return the payload formats supported by the remote.
+       * */
+      public int getPayloadFormats() {
+        return payloadFormats;
+      }
+
+      /**
+       * @return the frame compression codecs the remote can decode, 0 if it does not compress frames.
+       * */
+      public int getCompressionCodecs() {
+        return compressionCodecs;
+      }
+
       @Override
       public ChannelBuffer serialize() {
         return serializeValue.duplicate();
@@ -154,7 +182,18 @@ public interface IPCMessage {
        * @param bb serialized data.
        * */
       public static CONNECT deSerialize(final ChannelBuffer bb) {
-        return new CONNECT(bb.readInt());
+        int remoteID = bb.readInt();
+        // remotes that predate payload formats send only their ID
+        int payloadFormats = 0;
+        if (bb.readableBytes() >= Integer.SIZE / Byte.SIZE) {
+          payloadFormats = bb.readInt();
+        }
+        // remotes that predate frame compression send no codecs
+        int compressionCodecs = 0;
+        if (bb.readableBytes() >= Integer.SIZE / Byte.SIZE) {
+          compressionCodecs = bb.readInt();
+        }
+        return new CONNECT(remoteID, payloadFormats, compressionCodecs);
       }
 
       @Override
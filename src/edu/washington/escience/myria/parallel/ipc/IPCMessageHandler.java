@@ -87,6 +87,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
       if (!ownerConnectionPool.isRemoteValid(remoteID)) {
         throw new ChannelException("Unknown RemoteID: " + remoteID);
       }
+      cc.setRemotePayloadFormats(((IPCMessage.Meta.CONNECT) metaMessage).getPayloadFormats());
       if (ch.getParent() != null) {
         // server channel
         ch.write(ownerConnectionPool.getMyIDAsMsg()).await(); // await to finish channel registering
@@ -226,27 +227,46 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
         final ChannelContext cc = ChannelContext.getChannelContext(ch);
         final int remoteID = cc.getRegisteredChannelContext().getRemoteID();
 
-        TransportMessage tm = (TransportMessage) ownerConnectionPool.getPayloadSerializer().deSerialize(cb, null, null);
-        switch (tm.getType()) {
-          case DATA:
-            StreamInputChannel<?> ic = cc.getRegisteredChannelContext().getIOPair().getInputChannel();
-            if (ic != null) {
-              StreamInputBuffer<?> sib = ic.getInputBuffer();
-              msg = IPCUtils.tmToTupleBatch(tm.getDataMessage(), (Schema) sib.getAttachment());
-            } else {
-              // got a message from a physical channel which is not bound to a logical input channel, ignore
-              // the binding may have been cleaned up due to failure
-              LOGGER.warn("Unknown data message from {} }, through {}, msg: {}", remoteID, ChannelContext
-                  .channelToString(ctx.getChannel()), tm.getDataMessage());
-              return;
-            }
-            break;
-          case QUERY:
-          case CONTROL:
-            msg = tm;
-            break;
-          default:
-            throw new IllegalArgumentException("Unknown message type: " + tm.getType().name());
+        StreamInputChannel<?> ic = cc.getRegisteredChannelContext().getIOPair().getInputChannel();
+        StreamInputBuffer<?> sib = null;
+        if (ic != null) {
+          sib = ic.getInputBuffer();
+        }
+        Object payload;
+        if (sib != null) {
+          payload = ownerConnectionPool.getPayloadSerializer().deSerialize(cb, sib.getProcessor(), sib.getAttachment());
+        } else {
+          payload = ownerConnectionPool.getPayloadSerializer().deSerialize(cb, null, null);
+        }
+        if (!(payload instanceof TransportMessage)) {
+          // stream data in a format other than a TransportMessage
+          if (payload == null) {
+            LOGGER.warn("Unknown data message from {} }, through {}", remoteID, ChannelContext.channelToString(ctx
+                .getChannel()));
+            return;
+          }
+          msg = payload;
+        } else {
+          TransportMessage tm = (TransportMessage) payload;
+          switch (tm.getType()) {
+            case DATA:
+              if (ic != null) {
+                msg = IPCUtils.tmToTupleBatch(tm.getDataMessage(), (Schema) sib.getAttachment());
+              } else {
+                // got a message from a physical channel which is not bound to a logical input channel, ignore
+                // the binding may have been cleaned up due to failure
+                LOGGER.warn("Unknown data message from {} }, through {}, msg: {}", remoteID, ChannelContext
+                    .channelToString(ctx.getChannel()), tm.getDataMessage());
+                return;
+              }
+              break;
+            case QUERY:
+            case CONTROL:
+              msg = tm;
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown message type: " + tm.getType().name());
+          }
         }
       }
     }
@@ -371,7 +391,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
          */
         codedMsg =
             ChannelBuffers.wrappedBuffer(IPCMessage.Data.SERIALIZE_HEAD, ownerConnectionPool.getPayloadSerializer()
-                .serialize(m));
+                .serialize(m, cc.getRemotePayloadFormats()));
       }
       ctx.sendDownstream(new DownstreamMessageEvent(ch, e.getFuture(), codedMsg, e.getRemoteAddress()));
     }
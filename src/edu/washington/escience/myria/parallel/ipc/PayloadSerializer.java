@@ -9,12 +9,20 @@ import org.jboss.netty.buffer.ChannelBuffer;
  * */
 public interface PayloadSerializer {
 
+  /**
+   * @return the payload formats, beyond the default one, that this serializer can de-serialize, as bit flags defined by
+   *         the implementation. They are sent to the remote IPC entity when a connection is registered.
+   * */
+  int getSupportedFormats();
+
   /**
    * @return serialized result.
    * @param p the payload to get serialized.
+   * @param remoteFormats the payload formats that the remote IPC entity can de-serialize, see
+   *          {@link #getSupportedFormats()}.
    * @throws IOException if any I/O error occurs.
    * */
-  ChannelBuffer serialize(Object p) throws IOException;
+  ChannelBuffer serialize(Object p, int remoteFormats) throws IOException;
 
   /**
    * De-serialize payload.
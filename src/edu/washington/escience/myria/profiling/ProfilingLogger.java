@@ -2,7 +2,10 @@ package edu.washington.escience.myria.profiling;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -24,23 +27,63 @@ import edu.washington.escience.myria.storage.TupleBatchBuffer;
 
 /**
  * A logger for profiling data.
+ *
+ * Recording does not block the operators: the records are put in a lock-free queue, and a background thread moves them
+ * into batches and writes the batches to the profiling relations. At most {@link #MAX_PENDING_RECORDS} records wait in
+ * the queue. When the writer falls behind, further records are dropped and counted (see {@link #getNumDropped()})
+ * rather than slowing down the query that is being profiled.
  */
 public class ProfilingLogger {
   /** The logger for this class. */
   private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ProfilingLogger.class);
 
-  /** The connection to the database database. */
+  /** The maximum number of records waiting to be written. */
+  public static final int MAX_PENDING_RECORDS = 1 << 17;
+  /** How long the background thread waits when there is nothing to write, in milliseconds. */
+  private static final long DRAIN_INTERVAL_MS = 100;
+  /** How long {@link #close()} waits for the background thread to stop, in milliseconds. */
+  private static final long CLOSE_TIMEOUT_MS = 5000;
+
+  /**
+   * Writes batches of records to the profiling relations.
+   */
+  interface Sink {
+    /**
+     * @param relationKey the relation to write to.
+     * @param tupleBatch the tuples to write.
+     * @throws DbException if insertion in the database fails.
+     */
+    void insert(RelationKey relationKey, TupleBatch tupleBatch) throws DbException;
+  }
+
+  /** The connection to the database database, or null if the records are written to another {@link Sink}. */
   private final JdbcAccessMethod accessMethod;
 
+  /** Where the batches of records are written. */
+  private final Sink sink;
+
   /** Buffer for recorded events. */
   private final TupleBatchBuffer events;
 
   /** Buffer for tuples sent. */
   private final TupleBatchBuffer sent;
 
-  /** Buffer for tuples sent. */
+  /** Buffer for resource stats. */
   private final TupleBatchBuffer resources;
 
+  /** The records that have not been moved to the buffers yet. */
+  private final ConcurrentLinkedQueue<Record> pending;
+  /** The number of records in {@link #pending}. */
+  private final AtomicInteger numPending;
+  /** The number of records dropped because too many were pending. */
+  private final AtomicLong numDropped;
+  /** Guards the buffers and the database connection, which only the background thread and {@link #flush()} use. */
+  private final Object writeLock;
+  /** The background thread that writes the records. */
+  private final Thread writer;
+  /** Set when this logger is closed. */
+  private volatile boolean closed;
+
   /**
    * Default constructor.
    * 
@@ -49,11 +92,7 @@ public class ProfilingLogger {
    * @throws DbException if any error occurs
    */
   public ProfilingLogger(final ConnectionInfo connectionInfo) throws DbException {
-    Preconditions.checkArgument(connectionInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL),
-        "Profiling only supported with Postgres JDBC connection");
-
-    /* open the database connection */
-    accessMethod = (JdbcAccessMethod) AccessMethod.of(connectionInfo.getDbms(), connectionInfo, false);
+    this(openConnection(connectionInfo));
 
     accessMethod.createUnloggedTableIfNotExists(MyriaConstants.EVENT_PROFILING_RELATION,
         MyriaConstants.EVENT_PROFILING_SCHEMA);
@@ -65,9 +104,64 @@ public class ProfilingLogger {
     createSentIndex();
     createResourceIndex();
 
+    writer.start();
+  }
+
+  /**
+   * A logger that writes the records to the given sink instead of a database. The background thread is not started, so
+   * the records are only written by {@link #flush()}.
+   *
+   * @param sink where the batches of records are written.
+   */
+  ProfilingLogger(final Sink sink) {
+    this(null, sink);
+  }
+
+  /**
+   * @param accessMethod the connection to the database.
+   */
+  private ProfilingLogger(final JdbcAccessMethod accessMethod) {
+    this(accessMethod, new Sink() {
+      @Override
+      public void insert(final RelationKey relationKey, final TupleBatch tupleBatch) throws DbException {
+        accessMethod.tupleBatchInsert(relationKey, tupleBatch);
+      }
+    });
+  }
+
+  /**
+   * @param accessMethod the connection to the database, or null.
+   * @param sink where the batches of records are written.
+   */
+  private ProfilingLogger(final JdbcAccessMethod accessMethod, final Sink sink) {
+    this.accessMethod = accessMethod;
+    this.sink = Preconditions.checkNotNull(sink, "sink");
     events = new TupleBatchBuffer(MyriaConstants.EVENT_PROFILING_SCHEMA);
     sent = new TupleBatchBuffer(MyriaConstants.SENT_PROFILING_SCHEMA);
     resources = new TupleBatchBuffer(MyriaConstants.RESOURCE_PROFILING_SCHEMA);
+
+    pending = new ConcurrentLinkedQueue<>();
+    numPending = new AtomicInteger();
+    numDropped = new AtomicLong();
+    writeLock = new Object();
+    writer = new Thread("Profiling logger") {
+      @Override
+      public void run() {
+        writeInBackground();
+      }
+    };
+    writer.setDaemon(true);
+  }
+
+  /**
+   * @param connectionInfo connection information
+   * @return the connection to the database.
+   * @throws DbException if the connection cannot be opened.
+   */
+  private static JdbcAccessMethod openConnection(final ConnectionInfo connectionInfo) throws DbException {
+    Preconditions.checkArgument(connectionInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL),
+        "Profiling only supported with Postgres JDBC connection");
+    return (JdbcAccessMethod) AccessMethod.of(connectionInfo.getDbms(), connectionInfo, false);
   }
 
   /**
@@ -152,83 +246,282 @@ public class ProfilingLogger {
   }
 
   /**
-   * Appends a single event appearing in an operator to a batch that is flushed either after a certain number of events
-   * are in the batch or {@link #flushEventsBatch()} is called.
-   * 
+   * A record waiting to be written.
+   */
+  private abstract static class Record {
+    /**
+     * Append this record to the buffer of its relation.
+     *
+     * @param logger the logger whose buffers are appended to.
+     */
+    abstract void appendTo(ProfilingLogger logger);
+  }
+
+  /**
+   * An event appearing in an operator.
+   */
+  private static final class EventRecord extends Record {
+    /** The query. */
+    private final long queryId;
+    /** The subquery. */
+    private final int subQueryId;
+    /** The fragment. */
+    private final int fragmentId;
+    /** The operator. */
+    private final int opId;
+    /** The start time of the event in ns. */
+    private final long startTime;
+    /** The end time of the event in ns. */
+    private final long endTime;
+    /** The number of tuples. */
+    private final long numTuples;
+
+    /**
+     * @param operator the operator where this record was logged
+     * @param numTuples the number of tuples
+     * @param startTime the start time of the event in ns
+     * @param endTime the end time of the event in ns
+     */
+    EventRecord(final Operator operator, final long numTuples, final long startTime, final long endTime) {
+      SubQueryId sq = operator.getSubQueryId();
+      queryId = sq.getQueryId();
+      subQueryId = (int) sq.getSubqueryId();
+      fragmentId = operator.getFragmentId();
+      opId = Preconditions.checkNotNull(operator.getOpId(), "opId");
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.numTuples = numTuples;
+    }
+
+    @Override
+    void appendTo(final ProfilingLogger logger) {
+      final TupleBatchBuffer events = logger.events;
+      events.putLong(0, queryId);
+      events.putInt(1, subQueryId);
+      events.putInt(2, fragmentId);
+      events.putInt(3, opId);
+      events.putLong(4, startTime);
+      events.putLong(5, endTime);
+      events.putLong(6, numTuples);
+    }
+  }
+
+  /**
+   * Data sent to a worker.
+   */
+  private static final class SentRecord extends Record {
+    /** The query. */
+    private final long queryId;
+    /** The subquery. */
+    private final int subQueryId;
+    /** The fragment. */
+    private final int fragmentId;
+    /** The time the data was sent in ns. */
+    private final long time;
+    /** The number of tuples sent. */
+    private final long numTuples;
+    /** The worker the data was sent to. */
+    private final int destWorkerId;
+
+    /**
+     * @param operator the operator where this record was logged
+     * @param numTuples the number of tuples sent.
+     * @param destWorkerId the worker if that we send the data to
+     * @param time the time the data was sent in ns
+     */
+    SentRecord(final Operator operator, final int numTuples, final int destWorkerId, final long time) {
+      SubQueryId sq = operator.getSubQueryId();
+      queryId = sq.getQueryId();
+      subQueryId = (int) sq.getSubqueryId();
+      fragmentId = operator.getFragmentId();
+      this.time = time;
+      this.numTuples = numTuples;
+      this.destWorkerId = destWorkerId;
+    }
+
+    @Override
+    void appendTo(final ProfilingLogger logger) {
+      final TupleBatchBuffer sent = logger.sent;
+      sent.putLong(0, queryId);
+      sent.putInt(1, subQueryId);
+      sent.putInt(2, fragmentId);
+      sent.putLong(3, time);
+      sent.putLong(4, numTuples);
+      sent.putInt(5, destWorkerId);
+    }
+  }
+
+  /**
+   * A resource stats.
+   */
+  private static final class ResourceRecord extends Record {
+    /** The stats. */
+    private final ResourceStats stats;
+
+    /**
+     * @param stats the stats.
+     */
+    ResourceRecord(final ResourceStats stats) {
+      this.stats = stats;
+    }
+
+    @Override
+    void appendTo(final ProfilingLogger logger) {
+      final TupleBatchBuffer resources = logger.resources;
+      resources.putLong(0, stats.getTimestamp());
+      resources.putInt(1, stats.getOpId());
+      resources.putString(2, stats.getMeasurement());
+      resources.putLong(3, stats.getValue());
+      resources.putLong(4, stats.getQueryId());
+      resources.putLong(5, stats.getSubqueryId());
+    }
+  }
+
+  /**
+   * Queue a record to be written by the background thread, or drop it if too many records are pending.
+   *
+   * @param record the record.
+   */
+  private void enqueue(final Record record) {
+    if (closed) {
+      return;
+    }
+    if (numPending.incrementAndGet() > MAX_PENDING_RECORDS) {
+      numPending.decrementAndGet();
+      numDropped.incrementAndGet();
+      return;
+    }
+    pending.add(record);
+  }
+
+  /**
+   * Records a single event appearing in an operator. The event is written to the database in a batch, either by the
+   * background thread once a batch is full or by {@link #flush()}.
+   *
    * @param operator the operator where this record was logged
    * @param numTuples the number of tuples
    * @param startTime the start time of the event in ns
-   * 
-   * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordEvent(final Operator operator, final long numTuples, final long startTime)
-      throws DbException {
-    SubQueryId sq = operator.getSubQueryId();
-    events.putLong(0, sq.getQueryId());
-    events.putInt(1, (int) sq.getSubqueryId());
-    events.putInt(2, operator.getFragmentId());
-    events.putInt(3, Preconditions.checkNotNull(operator.getOpId(), "opId"));
-    events.putLong(4, startTime);
-    events.putLong(5, getTime(operator));
-    events.putLong(6, numTuples);
-
-    flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popFilled());
+  public void recordEvent(final Operator operator, final long numTuples, final long startTime) {
+    enqueue(new EventRecord(operator, numTuples, startTime, getTime(operator)));
   }
 
   /**
-   * Record that data was sent to a worker. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
-   * 
+   * Record that data was sent to a worker. The record is written to the database in a batch, either by the background
+   * thread once a batch is full or by {@link #flush()}.
+   *
    * @param operator the operator where this record was logged
    * @param numTuples the number of tuples sent.
    * @param destWorkerId the worker if that we send the data to
-   * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordSent(final Operator operator, final int numTuples, final int destWorkerId)
-      throws DbException {
-    SubQueryId sq = operator.getSubQueryId();
-    sent.putLong(0, sq.getQueryId());
-    sent.putInt(1, (int) sq.getSubqueryId());
-    sent.putInt(2, operator.getFragmentId());
-    sent.putLong(3, getTime(operator));
-    sent.putLong(4, numTuples);
-    sent.putInt(5, destWorkerId);
-
-    flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popFilled());
+  public void recordSent(final Operator operator, final int numTuples, final int destWorkerId) {
+    enqueue(new SentRecord(operator, numTuples, destWorkerId, getTime(operator)));
   }
 
   /**
-   * Record a single resource stats. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
-   * 
+   * Record a single resource stats. The record is written to the database in a batch, either by the background thread
+   * once a batch is full or by {@link #flush()}.
+   *
    * @param stats the resource stats.
+   */
+  public void recordResource(final ResourceStats stats) {
+    enqueue(new ResourceRecord(stats));
+  }
+
+  /**
+   * @return the number of records dropped so far because the database writes could not keep up.
+   */
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  /**
+   * Move the records pending when called to the buffers, and write the buffers that are full. Must hold
+   * {@link #writeLock}.
+   *
    * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordResource(final ResourceStats stats) throws DbException {
-    resources.putLong(0, stats.getTimestamp());
-    resources.putInt(1, stats.getOpId());
-    resources.putString(2, stats.getMeasurement());
-    resources.putLong(3, stats.getValue());
-    resources.putLong(4, stats.getQueryId());
-    resources.putLong(5, stats.getSubqueryId());
-
-    flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popFilled());
+  private void drain() throws DbException {
+    Record record;
+    for (int i = numPending.get(); i > 0 && (record = pending.poll()) != null; --i) {
+      numPending.decrementAndGet();
+      record.appendTo(this);
+      flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popFilled());
+      flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popFilled());
+      flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popFilled());
+    }
   }
 
   /**
-   * Flush the profiling buffers. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
-   * 
+   * The loop of the background thread: write the pending records until this logger is closed.
+   */
+  private void writeInBackground() {
+    long reportedDropped = 0;
+    while (!closed) {
+      try {
+        synchronized (writeLock) {
+          drain();
+        }
+      } catch (DbException e) {
+        LOGGER.error("Error writing profiling data", e);
+      }
+      final long dropped = numDropped.get();
+      if (dropped > reportedDropped) {
+        LOGGER.warn("Dropped {} profiling records because too many were waiting to be written.", dropped
+            - reportedDropped);
+        reportedDropped = dropped;
+      }
+      if (pending.isEmpty()) {
+        try {
+          Thread.sleep(DRAIN_INTERVAL_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Write all the records recorded so far to the database.
+   *
    * @throws DbException if insertion in the database fails
    */
-  public synchronized void flush() throws DbException {
-    flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popAny());
-    flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popAny());
-    flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popAny());
-
-    Preconditions.checkState(sent.numTuples() == 0, "Unwritten sent profiling data.");
-    Preconditions.checkState(events.numTuples() == 0, "Unwritten event profiling data.");
-    Preconditions.checkState(resources.numTuples() == 0, "Unwritten resource profiling data.");
+  public void flush() throws DbException {
+    synchronized (writeLock) {
+      drain();
+      flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popAny());
+      flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popAny());
+      flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popAny());
+
+      Preconditions.checkState(sent.numTuples() == 0, "Unwritten sent profiling data.");
+      Preconditions.checkState(events.numTuples() == 0, "Unwritten event profiling data.");
+      Preconditions.checkState(resources.numTuples() == 0, "Unwritten resource profiling data.");
+    }
+  }
+
+  /**
+   * Stop the background thread and close the database connection. The records that have not been flushed are
+   * discarded.
+   */
+  public void close() {
+    closed = true;
+    writer.interrupt();
+    try {
+      writer.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      LOGGER.warn("The profiling logger thread did not stop within {} milliseconds.", CLOSE_TIMEOUT_MS);
+    }
+    if (accessMethod != null) {
+      try {
+        accessMethod.close();
+      } catch (DbException e) {
+        LOGGER.warn("Error closing the profiling database connection", e);
+      }
+    }
   }
 
   /**
@@ -246,7 +539,7 @@ public class ProfilingLogger {
 
     final long startTime = System.nanoTime();
 
-    accessMethod.tupleBatchInsert(relationKey, tupleBatch);
+    sink.insert(relationKey, tupleBatch);
 
     LOGGER.info("Writing profiling data to {} took {} milliseconds.", relationKey, TimeUnit.NANOSECONDS.toMillis(System
         .nanoTime()
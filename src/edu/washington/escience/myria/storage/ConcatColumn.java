@@ -94,6 +94,12 @@ public class ConcatColumn<T extends Comparable<?>> extends Column<T> {
     return entry.getValue().getDateTime(row - entry.getKey());
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    Map.Entry<Integer, Column<?>> entry = getColumnEntry(row);
+    return entry.getValue().getDateTimeMillis(row - entry.getKey());
+  }
+
   @Override
   public double getDouble(final int row) {
     Map.Entry<Integer, Column<?>> entry = getColumnEntry(row);
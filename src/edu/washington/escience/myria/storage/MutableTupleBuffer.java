@@ -203,6 +203,20 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     return ((DateTimeColumnBuilder) (currentBuildingColumns[column])).getDateTime(tupleIndex);
   }
 
+  @Override
+  public final long getDateTimeMillis(final int column, final int row) {
+    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
+    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
+        && tupleIndex >= currentInProgressTuples) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (tupleBatchIndex < readyTuples.size()) {
+      return readyTuples.get(tupleBatchIndex)[column].getDateTimeMillis(tupleIndex);
+    }
+    return currentBuildingColumns[column].getDateTimeMillis(tupleIndex);
+  }
+
   /**
    * @param row the row number
    * @return the index of the row in the containing TB.
@@ -27,6 +27,16 @@ public interface ReadableColumn extends ColumnInterface {
   @Nonnull
   DateTime getDateTime(final int row);
 
+  /**
+   * Returns the {@link DateTime} value at the specified row in this column as milliseconds since the epoch. Columns
+   * that store DateTimes as milliseconds return them without creating a {@link DateTime}.
+   * 
+   * @param row row of element to return.
+   * @return the element at the specified row in this column, in milliseconds since the epoch.
+   * @throws UnsupportedOperationException if this column does not support this type.
+   */
+  long getDateTimeMillis(final int row);
+
   /**
    * Returns the double value at the specified row in this column.
    * 
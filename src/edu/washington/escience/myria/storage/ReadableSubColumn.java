@@ -48,6 +48,11 @@ public final class ReadableSubColumn implements ReadableColumn {
     return inner.getDateTime(column, row);
   }
 
+  @Override
+  public long getDateTimeMillis(final int row) {
+    return inner.getDateTimeMillis(column, row);
+  }
+
   @Override
   public double getDouble(final int row) {
     return inner.getDouble(column, row);
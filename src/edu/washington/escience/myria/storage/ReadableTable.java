@@ -23,6 +23,13 @@ public interface ReadableTable extends TupleTable {
   @Nonnull
   DateTime getDateTime(final int column, final int row);
 
+  /**
+   * @param column the column of the desired value.
+   * @param row the row of the desired value.
+   * @return the DateTime value in the specified column and row, in milliseconds since the epoch.
+   */
+  long getDateTimeMillis(final int column, final int row);
+
   /**
    * @param column the column of the desired value.
    * @param row the row of the desired value.
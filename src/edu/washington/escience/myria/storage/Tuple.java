@@ -104,6 +104,11 @@ public class Tuple implements Cloneable, AppendableTable, ReadableTable, Seriali
     return (DateTime) getValue(column, row);
   }
 
+  @Override
+  public long getDateTimeMillis(final int column, final int row) {
+    return getDateTime(column, row).getMillis();
+  }
+
   @Override
   public Object getObject(final int column, final int row) {
     return getValue(column, row);
@@ -5,9 +5,14 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
 
 import net.jcip.annotations.ThreadSafe;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.joda.time.DateTime;
 
 import com.google.common.base.Preconditions;
@@ -16,6 +21,7 @@ import com.google.common.collect.ImmutableList;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ColumnScatter;
 import edu.washington.escience.myria.column.PrefixColumn;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
@@ -39,6 +45,11 @@ public class TupleBatch implements ReadableTable, Serializable {
   private final int numTuples;
   /** Whether this TB is an EOI TB. */
   private final boolean isEOI;
+  /**
+   * The serialized forms of this TB, keyed by the payload formats of the remote they were serialized for. Null unless
+   * this TB is sent to several channels, see {@link #shareSerializedForms()}.
+   */
+  private transient volatile ConcurrentMap<Integer, ChannelBuffer> serializedForms;
 
   /**
    * EOI TB constructor.
@@ -215,6 +226,11 @@ public class TupleBatch implements ReadableTable, Serializable {
     return columns.get(column).getDateTime(row);
   }
 
+  @Override
+  public final long getDateTimeMillis(final int column, final int row) {
+    return columns.get(column).getDateTimeMillis(row);
+  }
+
   @Override
   public final int numColumns() {
     return schema.numColumns();
@@ -226,7 +242,8 @@ public class TupleBatch implements ReadableTable, Serializable {
   }
 
   /**
-   * Partition this TB using the partition function. The method is implemented by shallow copy of TupleBatches.
+   * Partition this TB using the partition function. Each partition is a dense copy of its rows, see
+   * {@link ColumnScatter}, unless all tuples are in the same partition, which then gets this TB.
    * 
    * @return an array of TBs. The length of the array is the same as the number of partitions. If no tuple presents in a
    *         partition, say the i'th partition, the i'th element in the result array is null.
@@ -241,19 +258,32 @@ public class TupleBatch implements ReadableTable, Serializable {
 
     final int[] partitions = pf.partition(this);
 
-    BitSet[] resultBitSet = new BitSet[result.length];
+    final int[] counts = new int[result.length];
     for (int i = 0; i < partitions.length; i++) {
       int p = partitions[i];
       Preconditions.checkElementIndex(p, result.length);
-      if (resultBitSet[p] == null) {
-        resultBitSet[p] = new BitSet(result.length);
+      counts[p]++;
+    }
+    for (int p = 0; p < result.length; p++) {
+      if (counts[p] == numTuples) {
+        if (numTuples > 0) {
+          result[p] = this;
+        }
+        return result;
       }
-      resultBitSet[p].set(i);
     }
 
-    for (int i = 0; i < result.length; i++) {
-      if (resultBitSet[i] != null) {
-        result[i] = filter(resultBitSet[i]);
+    final Column<?>[][] scattered = new Column<?>[columns.size()][];
+    for (int column = 0; column < scattered.length; column++) {
+      scattered[column] = ColumnScatter.scatter(columns.get(column), partitions, counts);
+    }
+    for (int p = 0; p < result.length; p++) {
+      if (counts[p] > 0) {
+        ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
+        for (Column<?>[] column : scattered) {
+          newColumns.add(column[p]);
+        }
+        result[p] = new TupleBatch(schema, newColumns.build(), counts[p], isEOI);
       }
     }
     return result;
@@ -312,6 +342,48 @@ public class TupleBatch implements ReadableTable, Serializable {
     return columns;
   }
 
+  /**
+   * Keep the serialized forms of this TB once they are computed, so that a TB that is written to several channels is
+   * only serialized once per payload format. Must be called before the TB is written to the channels.
+   */
+  public final void shareSerializedForms() {
+    if (serializedForms == null) {
+      serializedForms = new ConcurrentHashMap<>(2);
+    }
+  }
+
+  /**
+   * @param remoteFormats the payload formats of the remote.
+   * @return the serialized form of this TB for a remote with those formats, if it has been kept, or null.
+   */
+  @Nullable
+  public final ChannelBuffer getSerializedForm(final int remoteFormats) {
+    final ConcurrentMap<Integer, ChannelBuffer> forms = serializedForms;
+    if (forms == null) {
+      return null;
+    }
+    return forms.get(remoteFormats);
+  }
+
+  /**
+   * Keep the serialized form of this TB for a remote with the given formats, if the serialized forms are shared.
+   *
+   * @param remoteFormats the payload formats of the remote.
+   * @param serialized the serialized form. It must not be modified afterwards.
+   * @return the serialized form to use: the one kept by a concurrent call, if any, or <code>serialized</code>.
+   */
+  public final ChannelBuffer putSerializedForm(final int remoteFormats, final ChannelBuffer serialized) {
+    final ConcurrentMap<Integer, ChannelBuffer> forms = serializedForms;
+    if (forms == null) {
+      return serialized;
+    }
+    final ChannelBuffer previous = forms.putIfAbsent(remoteFormats, serialized);
+    if (previous != null) {
+      return previous;
+    }
+    return serialized;
+  }
+
   /**
    * @return a TransportMessage encoding the TupleBatch.
    * */
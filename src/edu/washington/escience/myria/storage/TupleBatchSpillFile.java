@@ -0,0 +1,163 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.parallel.TupleBatchWireFormat;
+
+/**
+ * A temporary file on local disk holding TupleBatches that an operator moved out of memory. The batches are written in
+ * the same columnar encoding ({@link TupleBatchWireFormat}) that is used to ship them between workers, each preceded
+ * by its length as an int.
+ *
+ * A spill file is written once and may then be read any number of times. It is not thread safe.
+ */
+public final class TupleBatchSpillFile {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(TupleBatchSpillFile.class);
+
+  /** The schema of the spilled tuples. */
+  private final Schema schema;
+  /** The file on disk. */
+  private final File file;
+  /** The stream used to write the file, null once writing has finished. */
+  private DataOutputStream output;
+  /** The number of tuples written to the file. */
+  private long numTuples;
+
+  /**
+   * Create a new, empty spill file in the default temporary-file directory.
+   *
+   * @param schema the schema of the spilled tuples.
+   * @throws IOException if the file cannot be created.
+   */
+  public TupleBatchSpillFile(final Schema schema) throws IOException {
+    this.schema = Objects.requireNonNull(schema, "schema");
+    file = File.createTempFile("myria-spill-", ".tb");
+    output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    numTuples = 0;
+  }
+
+  /**
+   * Append a batch to the end of this file.
+   *
+   * @param tb the batch to be written.
+   * @throws IOException if the batch cannot be written.
+   */
+  public void write(final TupleBatch tb) throws IOException {
+    Preconditions.checkState(output != null, "spill file %s is no longer writable", file);
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    final ChannelBuffer encoded = TupleBatchWireFormat.encode(tb);
+    output.writeInt(encoded.readableBytes());
+    encoded.getBytes(encoded.readerIndex(), output, encoded.readableBytes());
+    numTuples += tb.numTuples();
+  }
+
+  /**
+   * Flush and close the output stream. After this call the file can only be read.
+   *
+   * @throws IOException if the file cannot be flushed.
+   */
+  public void finishWriting() throws IOException {
+    if (output != null) {
+      output.close();
+      output = null;
+    }
+  }
+
+  /**
+   * @return the number of tuples written to this file.
+   */
+  public long numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * @return the schema of the tuples in this file.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Open a new reader over the batches in this file. Writing must have been finished.
+   *
+   * @return a reader positioned at the first batch of the file.
+   * @throws IOException if the file cannot be opened.
+   */
+  public Reader openReader() throws IOException {
+    Preconditions.checkState(output == null, "spill file %s is still being written", file);
+    return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+  }
+
+  /**
+   * Close and remove the file from disk.
+   */
+  public void delete() {
+    try {
+      finishWriting();
+    } catch (IOException e) {
+      LOGGER.warn("error closing spill file {}", file, e);
+    }
+    if (file.exists() && !file.delete()) {
+      LOGGER.warn("unable to delete spill file {}", file);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return file.getPath();
+  }
+
+  /**
+   * Sequentially reads the batches of a spill file.
+   */
+  public final class Reader implements AutoCloseable {
+    /** The input stream. */
+    private final DataInputStream input;
+
+    /**
+     * @param input the stream over the spill file.
+     */
+    private Reader(final DataInputStream input) {
+      this.input = input;
+    }
+
+    /**
+     * @return the next batch in the file, or null if the end of the file has been reached.
+     * @throws IOException if the file cannot be read.
+     */
+    public TupleBatch next() throws IOException {
+      final int length;
+      try {
+        length = input.readInt();
+      } catch (EOFException e) {
+        return null;
+      }
+      final byte[] encoded = new byte[length];
+      input.readFully(encoded);
+      return TupleBatchWireFormat.decode(ChannelBuffers.wrappedBuffer(encoded), schema);
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+  }
+}
@@ -136,6 +136,17 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
     return currentBatch.get(column).getDateTime(localRow);
   }
 
+  @Override
+  public final long getDateTimeMillis(final int column, final int row) {
+    Preconditions.checkElementIndex(row, numTuples());
+    int batchIndex = row / TupleBatch.BATCH_SIZE;
+    int localRow = row % TupleBatch.BATCH_SIZE;
+    if (batchIndex < readyBatches.size()) {
+      return readyBatches.get(batchIndex).getDateTimeMillis(column, localRow);
+    }
+    return currentBatch.get(column).getDateTimeMillis(localRow);
+  }
+
   @Override
   public final double getDouble(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
@@ -0,0 +1,254 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * An index from the hash codes of tuples to their rows in a table, used by hash-based operators to find the candidate
+ * matches of a tuple. Rows are added in order, so the i-th row added to the index must be row i of the table, which is
+ * how the operators append to their {@link MutableTupleBuffer}s.
+ *
+ * The index is an open-addressing hash table over the distinct hash codes. Each slot holds a hash code and the first
+ * and last rows of a chain of the rows with that hash code, in insertion order; the chains are threaded through a
+ * single array of row numbers. All state is kept in flat primitive arrays, so adding a row allocates nothing beyond the
+ * amortized growth of the arrays.
+ *
+ * When the join or grouping key is a single INT or LONG column, the index can also store the value of the key of each
+ * row (see {@link #TupleHashIndex(boolean)}). The probes that take a key then only return rows with exactly that key,
+ * so the caller does not need to compare the tuples through their columns.
+ *
+ * {@link #NONE} marks the end of a chain.
+ */
+public final class TupleHashIndex {
+  /** Returned when there is no further row. */
+  public static final int NONE = -1;
+  /** The initial number of slots, must be a power of two. */
+  private static final int INITIAL_SLOTS = 16;
+  /** The initial number of rows. */
+  private static final int INITIAL_ROWS = 16;
+  /** Multiplier used to spread the hash codes over the slots. */
+  private static final int SPREAD = 0x9E3779B9;
+
+  /** The hash code of each used slot. */
+  private int[] slotHashes;
+  /** The first row of each slot plus one, 0 if the slot is unused. */
+  private int[] slotHeads;
+  /** The last row of each slot. */
+  private int[] slotTails;
+  /** The number of used slots. */
+  private int numUsedSlots;
+  /** log2 of the number of slots. */
+  private int slotBits;
+
+  /** The next row with the same hash code as each row, or {@link #NONE}. */
+  private int[] nexts;
+  /** The key of each row, null if keys are not stored. */
+  private long[] keys;
+  /** The number of rows. */
+  private int numRows;
+
+  /**
+   * Create an index that does not store keys.
+   */
+  public TupleHashIndex() {
+    this(false);
+  }
+
+  /**
+   * @param storeKeys whether the index stores a primitive key with every row.
+   */
+  public TupleHashIndex(final boolean storeKeys) {
+    slotHashes = new int[INITIAL_SLOTS];
+    slotHeads = new int[INITIAL_SLOTS];
+    slotTails = new int[INITIAL_SLOTS];
+    slotBits = Integer.numberOfTrailingZeros(INITIAL_SLOTS);
+    numUsedSlots = 0;
+    nexts = new int[INITIAL_ROWS];
+    if (storeKeys) {
+      keys = new long[INITIAL_ROWS];
+    }
+    numRows = 0;
+  }
+
+  /**
+   * @param schema the schema of a table.
+   * @param keyColumns the key columns of the table.
+   * @return whether the key can be stored in an index, i.e., it is a single INT or LONG column.
+   */
+  public static boolean isPrimitiveKey(final Schema schema, final int[] keyColumns) {
+    if (keyColumns.length != 1) {
+      return false;
+    }
+    Type type = schema.getColumnType(keyColumns[0]);
+    return type == Type.INT_TYPE || type == Type.LONG_TYPE;
+  }
+
+  /**
+   * @param table a table.
+   * @param column an INT or LONG column of the table.
+   * @param row a row of the table.
+   * @return the value in the given column and row, as a long.
+   */
+  public static long getKey(final ReadableTable table, final int column, final int row) {
+    if (table.getSchema().getColumnType(column) == Type.INT_TYPE) {
+      return table.getInt(column, row);
+    }
+    return table.getLong(column, row);
+  }
+
+  /**
+   * @return whether this index stores a key with every row.
+   */
+  public boolean storesKeys() {
+    return keys != null;
+  }
+
+  /**
+   * @return the number of rows in this index.
+   */
+  public int size() {
+    return numRows;
+  }
+
+  /**
+   * Add the next row to an index that does not store keys.
+   *
+   * @param hashCode the hash code of the row.
+   */
+  public void add(final int hashCode) {
+    Preconditions.checkState(keys == null, "this index stores keys");
+    addRow(hashCode);
+  }
+
+  /**
+   * Add the next row to an index that stores keys.
+   *
+   * @param hashCode the hash code of the row.
+   * @param key the key of the row.
+   */
+  public void add(final int hashCode, final long key) {
+    Preconditions.checkState(keys != null, "this index does not store keys");
+    final int row = addRow(hashCode);
+    keys[row] = key;
+  }
+
+  /**
+   * @param hashCode a hash code.
+   * @return the first row with the given hash code, or {@link #NONE}.
+   */
+  public int first(final int hashCode) {
+    int slot = findSlot(hashCode);
+    return slotHeads[slot] - 1;
+  }
+
+  /**
+   * @param row a row.
+   * @return the next row with the same hash code, or {@link #NONE}.
+   */
+  public int next(final int row) {
+    return nexts[row];
+  }
+
+  /**
+   * Only valid for an index that stores keys.
+   *
+   * @param hashCode the hash code of the key.
+   * @param key a key.
+   * @return the first row with the given key, or {@link #NONE}.
+   */
+  public int first(final int hashCode, final long key) {
+    return skipToKey(first(hashCode), key);
+  }
+
+  /**
+   * Only valid for an index that stores keys.
+   *
+   * @param row a row.
+   * @param key the key of the row.
+   * @return the next row with the same key, or {@link #NONE}.
+   */
+  public int next(final int row, final long key) {
+    return skipToKey(nexts[row], key);
+  }
+
+  /**
+   * @param row a row, or {@link #NONE}.
+   * @param key a key.
+   * @return the first row in the chain starting at the given row that has the given key, or {@link #NONE}.
+   */
+  private int skipToKey(final int row, final long key) {
+    int r = row;
+    while (r != NONE && keys[r] != key) {
+      r = nexts[r];
+    }
+    return r;
+  }
+
+  /**
+   * @param hashCode a hash code.
+   * @return the slot of the hash code, or the unused slot where it would be inserted.
+   */
+  private int findSlot(final int hashCode) {
+    final int mask = slotHeads.length - 1;
+    int slot = (hashCode * SPREAD) >>> (Integer.SIZE - slotBits);
+    while (slotHeads[slot] != 0 && slotHashes[slot] != hashCode) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * @param hashCode the hash code of the row.
+   * @return the new row.
+   */
+  private int addRow(final int hashCode) {
+    if (numRows == nexts.length) {
+      int capacity = nexts.length * 2;
+      nexts = Arrays.copyOf(nexts, capacity);
+      if (keys != null) {
+        keys = Arrays.copyOf(keys, capacity);
+      }
+    }
+    final int row = numRows++;
+    nexts[row] = NONE;
+
+    int slot = findSlot(hashCode);
+    if (slotHeads[slot] == 0) {
+      slotHashes[slot] = hashCode;
+      slotHeads[slot] = row + 1;
+      slotTails[slot] = row;
+      if (++numUsedSlots * 2 > slotHeads.length) {
+        resize();
+      }
+    } else {
+      nexts[slotTails[slot]] = row;
+      slotTails[slot] = row;
+    }
+    return row;
+  }
+
+  /**
+   * Double the number of slots.
+   */
+  private void resize() {
+    final int[] oldHashes = slotHashes;
+    final int[] oldHeads = slotHeads;
+    final int[] oldTails = slotTails;
+    slotBits++;
+    slotHashes = new int[oldHeads.length * 2];
+    slotHeads = new int[oldHeads.length * 2];
+    slotTails = new int[oldHeads.length * 2];
+    for (int i = 0; i < oldHeads.length; ++i) {
+      if (oldHeads[i] != 0) {
+        int slot = findSlot(oldHashes[i]);
+        slotHashes[slot] = oldHashes[i];
+        slotHeads[slot] = oldHeads[i];
+        slotTails[slot] = oldTails[i];
+      }
+    }
+  }
+}
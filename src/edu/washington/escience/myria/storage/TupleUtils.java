@@ -3,7 +3,11 @@ package edu.washington.escience.myria.storage;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.StringColumn;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.DateTimeColumnBuilder;
 
 /**
  * Utility functions for dealing with tuples.
@@ -27,7 +31,12 @@ public final class TupleUtils {
         to.appendBoolean(from.getBoolean(fromRow));
         break;
       case DATETIME_TYPE:
-        to.appendDateTime(from.getDateTime(fromRow));
+        if (from instanceof DateTimeColumn && to instanceof DateTimeColumnBuilder) {
+          /* Copy the millis and the zone without creating a DateTime. */
+          ((DateTimeColumnBuilder) to).appendDateTime((DateTimeColumn) from, fromRow);
+        } else {
+          to.appendDateTime(from.getDateTime(fromRow));
+        }
         break;
       case DOUBLE_TYPE:
         to.appendDouble(from.getDouble(fromRow));
@@ -184,7 +193,7 @@ public final class TupleUtils {
       case STRING_TYPE:
         return Type.compareRaw(table1.getString(column1, row1), table2.getString(column2, row2));
       case DATETIME_TYPE:
-        return Type.compareRaw(table1.getDateTime(column1, row1), table2.getDateTime(column2, row2));
+        return Type.compareRaw(table1.getDateTimeMillis(column1, row1), table2.getDateTimeMillis(column2, row2));
     }
 
     throw new IllegalStateException("Invalid type.");
@@ -281,12 +290,13 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(compareColumns1[i], row1).equals(table2.getString(compareColumns2[i], row2))) {
+          if (!stringEquals(table1, compareColumns1[i], row1, table2, compareColumns2[i], row2)) {
             return false;
           }
           break;
         case DATETIME_TYPE:
-          if (!table1.getDateTime(compareColumns1[i], row1).equals(table2.getDateTime(compareColumns2[i], row2))) {
+          if (table1.getDateTimeMillis(compareColumns1[i], row1) != table2
+              .getDateTimeMillis(compareColumns2[i], row2)) {
             return false;
           }
           break;
@@ -337,12 +347,12 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(i, row1).equals(table2.getString(i, row2))) {
+          if (!stringEquals(table1, i, row1, table2, i, row2)) {
             return false;
           }
           break;
         case DATETIME_TYPE:
-          if (!table1.getDateTime(i, row1).equals(table2.getDateTime(i, row2))) {
+          if (table1.getDateTimeMillis(i, row1) != table2.getDateTimeMillis(i, row2)) {
             return false;
           }
           break;
@@ -396,12 +406,12 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(compareColumns[i], row1).equals(table2.getString(i, index))) {
+          if (!stringEquals(table1, compareColumns[i], row1, table2, i, index)) {
             return false;
           }
           break;
         case DATETIME_TYPE:
-          if (!table1.getDateTime(compareColumns[i], row1).equals(table2.getDateTime(i, index))) {
+          if (table1.getDateTimeMillis(compareColumns[i], row1) != table2.getDateTimeMillis(i, index)) {
             return false;
           }
           break;
@@ -409,4 +419,44 @@ public final class TupleUtils {
     }
     return true;
   }
-}
\ No newline at end of file
+
+  /**
+   * Compares two strings, without decoding them if they are stored in encoded {@link StringColumn}s of tuple batches.
+   * 
+   * @param table1 the table that cell 1 is in
+   * @param column1 column number of cell 1
+   * @param row1 row number of cell 1
+   * @param table2 the table that cell 2 is in
+   * @param column2 column number of cell 2
+   * @param row2 row number of cell 2
+   * @return true if the strings are equal
+   */
+  private static boolean stringEquals(final ReadableTable table1, final int column1, final int row1,
+      final ReadableTable table2, final int column2, final int row2) {
+    final StringColumn string1 = asStringColumn(table1, column1);
+    final StringColumn string2 = asStringColumn(table2, column2);
+    if (string1 != null && string2 != null) {
+      return string1.stringEquals(row1, string2, row2);
+    } else if (string1 != null) {
+      return string1.stringEquals(row1, table2.getString(column2, row2));
+    } else if (string2 != null) {
+      return string2.stringEquals(row2, table1.getString(column1, row1));
+    }
+    return table1.getString(column1, row1).equals(table2.getString(column2, row2));
+  }
+
+  /**
+   * @param table a table
+   * @param column a STRING column of the table
+   * @return the column if the table is a tuple batch, otherwise null
+   */
+  private static StringColumn asStringColumn(final ReadableTable table, final int column) {
+    if (table instanceof TupleBatch) {
+      final Column<?> ret = ((TupleBatch) table).getDataColumns().get(column);
+      if (ret instanceof StringColumn) {
+        return (StringColumn) ret;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,169 @@
+package edu.washington.escience.myria.util;
+
+import java.util.BitSet;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * A Bloom filter over the values of some columns of tuples. It may report that a tuple is present when it is not, but
+ * never the opposite.
+ *
+ * The k bit positions of a tuple are derived from two hashes of its key columns (see
+ * {@link HashUtils#hashColumns(ReadableTable, int[], int, int[])}) as <code>h1 + i * h2</code>, so filters built on
+ * different workers over the same number of bits agree, and can be merged by OR-ing their words. Filters are shipped
+ * between operators as tuples of {@link #WORDS_SCHEMA}, one per non-zero 64-bit word.
+ */
+public final class BloomFilter {
+
+  /** The schema of the tuples that carry the words of a filter. */
+  public static final Schema WORDS_SCHEMA = Schema.ofFields(Type.INT_TYPE, "word", Type.LONG_TYPE, "bits");
+
+  /** The seed index of the first hash, see {@link HashUtils}. */
+  private static final int FIRST_SEED = 1;
+  /** The seed index of the second hash, see {@link HashUtils}. */
+  private static final int SECOND_SEED = 2;
+
+  /** The bits of the filter. */
+  private final long[] words;
+  /** The number of bits of the filter. */
+  private final int numBits;
+  /** The number of bits set for each tuple. */
+  private final int numHashes;
+
+  /**
+   * @param numBits the number of bits of the filter, rounded up to a multiple of 64.
+   * @param numHashes the number of bits set for each tuple.
+   */
+  public BloomFilter(final int numBits, final int numHashes) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    Preconditions.checkArgument(numHashes > 0, "numHashes must be positive");
+    words = new long[(int) ((numBits + (long) Long.SIZE - 1) / Long.SIZE)];
+    this.numBits = words.length * Long.SIZE;
+    this.numHashes = numHashes;
+  }
+
+  /**
+   * Add the keys of all the tuples of a table to the filter.
+   *
+   * @param table the tuples.
+   * @param keyColumns the key columns.
+   */
+  public void addAll(final ReadableTable table, final int[] keyColumns) {
+    final int numTuples = table.numTuples();
+    final int[] hash1 = new int[numTuples];
+    final int[] hash2 = new int[numTuples];
+    HashUtils.hashColumns(table, keyColumns, FIRST_SEED, hash1);
+    HashUtils.hashColumns(table, keyColumns, SECOND_SEED, hash2);
+    for (int row = 0; row < numTuples; ++row) {
+      for (int i = 0; i < numHashes; ++i) {
+        final int bit = bitIndex(hash1[row], hash2[row], i);
+        words[bit >>> 6] |= 1L << bit;
+      }
+    }
+  }
+
+  /**
+   * Find the tuples of a table whose keys may be in the filter.
+   *
+   * @param table the tuples.
+   * @param keyColumns the key columns, of the same types as the columns the filter was built over.
+   * @param out receives the rows that may be in the filter. Other bits are not changed.
+   * @return the number of rows that may be in the filter.
+   */
+  public int mightContainAll(final ReadableTable table, final int[] keyColumns, final BitSet out) {
+    final int numTuples = table.numTuples();
+    final int[] hash1 = new int[numTuples];
+    final int[] hash2 = new int[numTuples];
+    HashUtils.hashColumns(table, keyColumns, FIRST_SEED, hash1);
+    HashUtils.hashColumns(table, keyColumns, SECOND_SEED, hash2);
+    int found = 0;
+    for (int row = 0; row < numTuples; ++row) {
+      if (mightContain(hash1[row], hash2[row])) {
+        out.set(row);
+        ++found;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @param hash1 the first hash of a tuple.
+   * @param hash2 the second hash of a tuple.
+   * @return true if all the bits of the tuple are set.
+   */
+  private boolean mightContain(final int hash1, final int hash2) {
+    for (int i = 0; i < numHashes; ++i) {
+      final int bit = bitIndex(hash1, hash2, i);
+      if ((words[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param hash1 the first hash of a tuple.
+   * @param hash2 the second hash of a tuple.
+   * @param i which of the bits of the tuple.
+   * @return the position of the bit in the filter.
+   */
+  private int bitIndex(final int hash1, final int hash2, final int i) {
+    return (int) (((hash1 + (long) i * hash2) & 0xFFFFFFFFL) % numBits);
+  }
+
+  /**
+   * @return the number of 64-bit words of the filter.
+   */
+  public int numWords() {
+    return words.length;
+  }
+
+  /**
+   * @param word the index of a word.
+   * @return the bits of the word.
+   */
+  public long getWord(final int word) {
+    return words[word];
+  }
+
+  /**
+   * Merge bits of another filter over the same number of bits into this one.
+   *
+   * @param word the index of a word.
+   * @param bits the bits of the word in the other filter.
+   */
+  public void orWord(final int word, final long bits) {
+    Preconditions.checkElementIndex(word, words.length, "word of a filter with a different number of bits");
+    words[word] |= bits;
+  }
+
+  /**
+   * Merge the words carried by tuples of {@link #WORDS_SCHEMA} into this filter.
+   *
+   * @param table the tuples.
+   */
+  public void orWords(final ReadableTable table) {
+    for (int row = 0; row < table.numTuples(); ++row) {
+      orWord(table.getInt(0, row), table.getLong(1, row));
+    }
+  }
+
+  /**
+   * Append the non-zero words of this filter as tuples of {@link #WORDS_SCHEMA}.
+   *
+   * @param out the table the tuples are appended to.
+   */
+  public void appendWords(final AppendableTable out) {
+    for (int word = 0; word < words.length; ++word) {
+      if (words[word] != 0) {
+        out.putInt(0, word);
+        out.putLong(1, words[word]);
+      }
+    }
+  }
+}
@@ -1,17 +1,25 @@
 package edu.washington.escience.myria.util;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import com.google.common.base.Preconditions;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
 
+import edu.washington.escience.myria.column.Utf8StringColumn;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
  * A utility class for hashing tuples and parts of tuples.
+ *
+ * The hash of a tuple is the 128-bit x64 MurmurHash3 of its values, laid out in little-endian order, truncated to an
+ * int. This is bit-for-bit what Guava's {@code Hashing.murmur3_128(seed)} computes when the values are put into a
+ * {@code Hasher} one by one, but computed directly on primitive state, without Guava's byte buffers and result objects.
+ * The batch methods ({@link #hashColumns(ReadableTable, int[], int[])} and friends) process one column at a time, so
+ * the type of each column is inspected once per batch instead of once per value, and allocate nothing per row.
+ *
+ * Since hash partitioning depends on these values, they must not change: workers and previously partitioned relations
+ * rely on every tuple hashing the same everywhere.
  */
 public final class HashUtils {
   /** Utility classes have no constructors. */
@@ -21,50 +29,56 @@ public final class HashUtils {
   /** picked from http://planetmath.org/goodhashtableprimes. */
   private static final int[] SEEDS = { 243, 402653189, 24593, 786433, 3145739, 12289, 49157, 6151, 98317, 1572869, };
 
-  /** The hash functions. */
-  private static final HashFunction[] HASH_FUNCTIONS = {
-      Hashing.murmur3_128(SEEDS[0]), Hashing.murmur3_128(SEEDS[1]), Hashing.murmur3_128(SEEDS[2]),
-      Hashing.murmur3_128(SEEDS[3]), Hashing.murmur3_128(SEEDS[4]), Hashing.murmur3_128(SEEDS[5]),
-      Hashing.murmur3_128(SEEDS[6]), Hashing.murmur3_128(SEEDS[7]), Hashing.murmur3_128(SEEDS[8]),
-      Hashing.murmur3_128(SEEDS[9]) };
-
   /**
    * Size of the hash function pool.
    */
   public static final int NUM_OF_HASHFUNCTIONS = 10;
 
+  /** MurmurHash3 x64 128-bit mixing constant. */
+  private static final long C1 = 0x87c37b91114253d5L;
+  /** MurmurHash3 x64 128-bit mixing constant. */
+  private static final long C2 = 0x4cf5ad432745937fL;
+  /** The number of bytes in a MurmurHash3 block. */
+  private static final int BLOCK_SIZE = 16;
+
+  /** Per-thread hash state, reused across calls so that hashing does not allocate. */
+  private static final ThreadLocal<HashState> STATE = new ThreadLocal<HashState>() {
+    @Override
+    protected HashState initialValue() {
+      return new HashState();
+    }
+  };
+
   /**
    * Compute the hash code of all the values in the specified row, in column order.
-   * 
+   *
    * @param table the table containing the values
    * @param row the row to be hashed
    * @return the hash code of all the values in the specified row, in column order
    */
   public static int hashRow(final ReadableTable table, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
+    RowHasher hasher = new RowHasher(SEEDS[0]);
     for (int i = 0; i < table.numColumns(); ++i) {
-      addValue(hasher, table, i, row);
+      hasher.putValue(table.asColumn(i), row);
     }
-    return hasher.hash().asInt();
+    return hasher.hash();
   }
 
   /**
    * Compute the hash code of the value in the specified column and row of the given table.
-   * 
+   *
    * @param table the table containing the values to be hashed
    * @param column the column containing the value to be hashed
    * @param row the row containing the value to be hashed
    * @return the hash code of the specified value
    */
   public static int hashValue(final ReadableTable table, final int column, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    return hashValue(table, column, row, 0);
   }
 
   /**
    * Compute the hash code of the value in the specified column and row of the given table with specific hashcode.
-   * 
+   *
    * @param table the table containing the values to be hashed
    * @param column the column containing the value to be hashed
    * @param row the row containing the value to be hashed
@@ -73,14 +87,14 @@ public final class HashUtils {
    */
   public static int hashValue(final ReadableTable table, final int column, final int row, final int seedIndex) {
     Preconditions.checkPositionIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
-    Hasher hasher = HASH_FUNCTIONS[seedIndex].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    RowHasher hasher = new RowHasher(SEEDS[seedIndex]);
+    hasher.putValue(table.asColumn(column), row);
+    return hasher.hash();
   }
 
   /**
    * Compute the hash code of the specified columns in the specified row of the given table.
-   * 
+   *
    * @param table the table containing the values to be hashed
    * @param hashColumns the columns to be hashed. Order matters
    * @param row the row containing the values to be hashed
@@ -89,51 +103,462 @@ public final class HashUtils {
   public static int hashSubRow(final ReadableTable table, final int[] hashColumns, final int row) {
     Objects.requireNonNull(table, "table");
     Objects.requireNonNull(hashColumns, "hashColumns");
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
+    RowHasher hasher = new RowHasher(SEEDS[0]);
+    for (int column : hashColumns) {
+      hasher.putValue(table.asColumn(column), row);
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Compute the hash codes of all the rows of the given table, as {@link #hashRow(ReadableTable, int)} would.
+   *
+   * @param table the table containing the values to be hashed
+   * @param out receives the hash code of row i at index i; must hold at least {@code table.numTuples()} values
+   */
+  public static void hashRows(final ReadableTable table, final int[] out) {
+    final int numRows = table.numTuples();
+    Preconditions.checkArgument(out.length >= numRows, "out has %s slots for %s rows", out.length, numRows);
+    HashState state = STATE.get();
+    state.reset(numRows, SEEDS[0]);
+    for (int i = 0; i < table.numColumns(); ++i) {
+      state.putColumn(table.asColumn(i), 0, numRows);
+    }
+    state.finishAll(numRows, out);
+  }
+
+  /**
+   * Compute the hash codes of the specified columns in all the rows of the given table, as
+   * {@link #hashSubRow(ReadableTable, int[], int)} would.
+   *
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param out receives the hash code of row i at index i; must hold at least {@code table.numTuples()} values
+   */
+  public static void hashColumns(final ReadableTable table, final int[] hashColumns, final int[] out) {
+    hashColumns(table, hashColumns, 0, out);
+  }
+
+  /**
+   * Compute the hash codes of the specified columns in all the rows of the given table, with a specific hashcode.
+   *
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param seedIndex the index of the chosen hashcode
+   * @param out receives the hash code of row i at index i; must hold at least {@code table.numTuples()} values
+   */
+  public static void hashColumns(final ReadableTable table, final int[] hashColumns, final int seedIndex,
+      final int[] out) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(hashColumns, "hashColumns");
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    final int numRows = table.numTuples();
+    Preconditions.checkArgument(out.length >= numRows, "out has %s slots for %s rows", out.length, numRows);
+    HashState state = STATE.get();
+    state.reset(numRows, SEEDS[seedIndex]);
     for (int column : hashColumns) {
-      addValue(hasher, table, column, row);
+      state.putColumn(table.asColumn(column), 0, numRows);
     }
-    return hasher.hash().asInt();
+    state.finishAll(numRows, out);
+  }
+
+  /**
+   * Compute the hash codes of the specified column in all the rows of the given table, as
+   * {@link #hashValue(ReadableTable, int, int, int)} would.
+   *
+   * @param table the table containing the values to be hashed
+   * @param column the column containing the values to be hashed
+   * @param seedIndex the index of the chosen hashcode
+   * @param out receives the hash code of row i at index i; must hold at least {@code table.numTuples()} values
+   */
+  public static void hashColumn(final ReadableTable table, final int column, final int seedIndex, final int[] out) {
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    final int numRows = table.numTuples();
+    Preconditions.checkArgument(out.length >= numRows, "out has %s slots for %s rows", out.length, numRows);
+    HashState state = STATE.get();
+    state.reset(numRows, SEEDS[seedIndex]);
+    state.putColumn(table.asColumn(column), 0, numRows);
+    state.finishAll(numRows, out);
+  }
+
+  /**
+   * @param k1 the low half of a block.
+   * @return the mixed value.
+   */
+  private static long mixK1(final long k1) {
+    return Long.rotateLeft(k1 * C1, 31) * C2;
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
-   * 
-   * @param hasher the hasher
-   * @param table the table containing the value
-   * @param column the column containing the value
-   * @param row the row containing the value
-   * @return the hasher
+   * @param k2 the high half of a block.
+   * @return the mixed value.
    */
-  private static Hasher addValue(final Hasher hasher, final ReadableTable table, final int column, final int row) {
-    return addValue(hasher, table.asColumn(column), row);
+  private static long mixK2(final long k2) {
+    return Long.rotateLeft(k2 * C2, 33) * C1;
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
-   * 
-   * @param hasher the hasher
-   * @param column the column containing the value
-   * @param row the row containing the value
-   * @return the hasher
+   * @param k a value.
+   * @return the MurmurHash3 finalization of the value.
    */
-  private static Hasher addValue(final Hasher hasher, final ReadableColumn column, final int row) {
-    switch (column.getType()) {
-      case BOOLEAN_TYPE:
-        return hasher.putBoolean(column.getBoolean(row));
-      case DATETIME_TYPE:
-        return hasher.putObject(column.getDateTime(row), TypeFunnel.INSTANCE);
-      case DOUBLE_TYPE:
-        return hasher.putDouble(column.getDouble(row));
-      case FLOAT_TYPE:
-        return hasher.putFloat(column.getFloat(row));
-      case INT_TYPE:
-        return hasher.putInt(column.getInt(row));
-      case LONG_TYPE:
-        return hasher.putLong(column.getLong(row));
-      case STRING_TYPE:
-        return hasher.putObject(column.getString(row), TypeFunnel.INSTANCE);
-    }
-    throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+  private static long fmix64(final long k) {
+    long h = k;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * The MurmurHash3 state of a single row. Small enough for the JIT to keep in registers when it does not escape.
+   */
+  private static final class RowHasher {
+    /** Low half of the hash. */
+    private long h1;
+    /** High half of the hash. */
+    private long h2;
+    /** Bytes 0-7 of the pending block. */
+    private long k1;
+    /** Bytes 8-15 of the pending block. */
+    private long k2;
+    /** The number of bytes in the pending block. */
+    private int pending;
+    /** The number of bytes hashed. */
+    private int length;
+
+    /**
+     * @param seed the seed of the hash function.
+     */
+    RowHasher(final int seed) {
+      h1 = seed;
+      h2 = seed;
+    }
+
+    /**
+     * Append a value to the hash, see {@link HashState#putColumn(ReadableColumn, int, int)}.
+     *
+     * @param column the column containing the value.
+     * @param row the row containing the value.
+     */
+    void putValue(final ReadableColumn column, final int row) {
+      switch (column.getType()) {
+        case BOOLEAN_TYPE:
+          put(column.getBoolean(row) ? 1L : 0L, 1);
+          return;
+        case DATETIME_TYPE:
+          return;
+        case DOUBLE_TYPE:
+          put(Double.doubleToRawLongBits(column.getDouble(row)), 8);
+          return;
+        case FLOAT_TYPE:
+          put(Float.floatToRawIntBits(column.getFloat(row)) & 0xFFFFFFFFL, 4);
+          return;
+        case INT_TYPE:
+          put(column.getInt(row) & 0xFFFFFFFFL, 4);
+          return;
+        case LONG_TYPE:
+          put(column.getLong(row), 8);
+          return;
+        case STRING_TYPE:
+          if (column instanceof Utf8StringColumn && ((Utf8StringColumn) column).isAscii()) {
+            final Utf8StringColumn utf8 = (Utf8StringColumn) column;
+            final byte[] bytes = utf8.getBytes();
+            final int end = utf8.getOffsets()[row + 1];
+            for (int c = utf8.getOffsets()[row]; c < end; ++c) {
+              put(bytes[c], 2);
+            }
+            return;
+          }
+          String s = column.getString(row);
+          for (int c = 0; c < s.length(); ++c) {
+            put(s.charAt(c), 2);
+          }
+          return;
+      }
+      throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+    }
+
+    /**
+     * Append a little-endian value of up to 8 bytes, see {@link HashState#put(int, long, int)}.
+     *
+     * @param bits the value; the bits beyond numBytes must be zero.
+     * @param numBytes the number of bytes of the value.
+     */
+    private void put(final long bits, final int numBytes) {
+      final int p = pending;
+      length += numBytes;
+      if (p < 8) {
+        k1 |= bits << (p * 8);
+        if (p + numBytes > 8) {
+          k2 |= bits >>> ((8 - p) * 8);
+        }
+      } else {
+        k2 |= bits << ((p - 8) * 8);
+      }
+      final int end = p + numBytes;
+      if (end < BLOCK_SIZE) {
+        pending = end;
+        return;
+      }
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+      k1 = end > BLOCK_SIZE ? bits >>> ((BLOCK_SIZE - p) * 8) : 0;
+      k2 = 0;
+      pending = end - BLOCK_SIZE;
+    }
+
+    /**
+     * @return the hash code.
+     */
+    int hash() {
+      return finish(h1, h2, k1, k2, pending, length);
+    }
+  }
+
+  /**
+   * Finish a MurmurHash3 computation.
+   *
+   * @param h1 the low half of the hash.
+   * @param h2 the high half of the hash.
+   * @param k1 bytes 0-7 of the pending block.
+   * @param k2 bytes 8-15 of the pending block.
+   * @param pending the number of bytes in the pending block.
+   * @param length the number of bytes hashed.
+   * @return the low 32 bits of the hash.
+   */
+  private static int finish(final long h1, final long h2, final long k1, final long k2, final int pending,
+      final int length) {
+    long a = h1;
+    long b = h2;
+    if (pending > 0) {
+      a ^= mixK1(k1);
+      b ^= mixK2(k2);
+    }
+    a ^= length;
+    b ^= length;
+    a += b;
+    b += a;
+    a = fmix64(a);
+    b = fmix64(b);
+    a += b;
+    return (int) a;
+  }
+
+  /**
+   * The MurmurHash3 state of a number of rows that are hashed together. Each row has the two halves of its hash, the
+   * two halves of its pending, incomplete block, the number of bytes in the pending block and the total number of
+   * bytes hashed so far. The arrays only ever grow.
+   */
+  private static final class HashState {
+    /** Low half of the hash of each row. */
+    private long[] h1 = new long[0];
+    /** High half of the hash of each row. */
+    private long[] h2 = new long[0];
+    /** Bytes 0-7 of the pending block of each row. */
+    private long[] k1 = new long[0];
+    /** Bytes 8-15 of the pending block of each row. */
+    private long[] k2 = new long[0];
+    /** The number of bytes in the pending block of each row. */
+    private int[] pending = new int[0];
+    /** The number of bytes hashed for each row. */
+    private int[] length = new int[0];
+
+    /**
+     * Start hashing a number of rows.
+     *
+     * @param numRows the number of rows.
+     * @param seed the seed of the hash function.
+     */
+    void reset(final int numRows, final int seed) {
+      if (h1.length < numRows) {
+        h1 = new long[numRows];
+        h2 = new long[numRows];
+        k1 = new long[numRows];
+        k2 = new long[numRows];
+        pending = new int[numRows];
+        length = new int[numRows];
+      }
+      Arrays.fill(h1, 0, numRows, seed);
+      Arrays.fill(h2, 0, numRows, seed);
+      Arrays.fill(k1, 0, numRows, 0L);
+      Arrays.fill(k2, 0, numRows, 0L);
+      Arrays.fill(pending, 0, numRows, 0);
+      Arrays.fill(length, 0, numRows, 0);
+    }
+
+    /**
+     * Append the values of a column to the rows being hashed.
+     *
+     * @param column the column.
+     * @param firstRow the row of the column that goes to the first row being hashed.
+     * @param numRows the number of rows.
+     */
+    void putColumn(final ReadableColumn column, final int firstRow, final int numRows) {
+      switch (column.getType()) {
+        case BOOLEAN_TYPE:
+          for (int i = 0; i < numRows; ++i) {
+            put(i, column.getBoolean(firstRow + i) ? 1L : 0L, 1);
+          }
+          return;
+        case DATETIME_TYPE:
+          /*
+           * DateTimes have always been funneled through TypeFunnel, which has no case for them and so puts nothing.
+           * Hash them the same way to stay compatible.
+           */
+          return;
+        case DOUBLE_TYPE:
+          for (int i = 0; i < numRows; ++i) {
+            put(i, Double.doubleToRawLongBits(column.getDouble(firstRow + i)), 8);
+          }
+          return;
+        case FLOAT_TYPE:
+          for (int i = 0; i < numRows; ++i) {
+            put(i, Float.floatToRawIntBits(column.getFloat(firstRow + i)) & 0xFFFFFFFFL, 4);
+          }
+          return;
+        case INT_TYPE:
+          for (int i = 0; i < numRows; ++i) {
+            put(i, column.getInt(firstRow + i) & 0xFFFFFFFFL, 4);
+          }
+          return;
+        case LONG_TYPE:
+          for (int i = 0; i < numRows; ++i) {
+            put(i, column.getLong(firstRow + i), 8);
+          }
+          return;
+        case STRING_TYPE:
+          if (column instanceof Utf8StringColumn && ((Utf8StringColumn) column).isAscii()) {
+            final Utf8StringColumn utf8 = (Utf8StringColumn) column;
+            final byte[] bytes = utf8.getBytes();
+            final int[] offsets = utf8.getOffsets();
+            for (int i = 0; i < numRows; ++i) {
+              putAsciiChars(i, bytes, offsets[firstRow + i], offsets[firstRow + i + 1]);
+            }
+            return;
+          }
+          for (int i = 0; i < numRows; ++i) {
+            putChars(i, column.getString(firstRow + i));
+          }
+          return;
+      }
+      throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+    }
+
+    /**
+     * Append the UTF-16 code units of a string to a row, two bytes each, as Guava's
+     * {@code Hasher.putUnencodedChars} does.
+     *
+     * @param row the row.
+     * @param s the string.
+     */
+    private void putChars(final int row, final String s) {
+      final int n = s.length();
+      int c = 0;
+      for (; c + 4 <= n; c += 4) {
+        put(row, s.charAt(c) | (long) s.charAt(c + 1) << 16 | (long) s.charAt(c + 2) << 32
+            | (long) s.charAt(c + 3) << 48, 8);
+      }
+      for (; c < n; ++c) {
+        put(row, s.charAt(c), 2);
+      }
+    }
+
+    /**
+     * Append ASCII characters stored one per byte to a row, as {@link #putChars(int, String)} appends them.
+     *
+     * @param row the row.
+     * @param bytes the characters.
+     * @param from the first character.
+     * @param to the end of the characters.
+     */
+    private void putAsciiChars(final int row, final byte[] bytes, final int from, final int to) {
+      int c = from;
+      for (; c + 4 <= to; c += 4) {
+        put(row, bytes[c] | (long) bytes[c + 1] << 16 | (long) bytes[c + 2] << 32 | (long) bytes[c + 3] << 48, 8);
+      }
+      for (; c < to; ++c) {
+        put(row, bytes[c], 2);
+      }
+    }
+
+    /**
+     * Append a little-endian value of up to 8 bytes to a row.
+     *
+     * @param row the row.
+     * @param bits the value; the bits beyond numBytes must be zero.
+     * @param numBytes the number of bytes of the value.
+     */
+    private void put(final int row, final long bits, final int numBytes) {
+      final int p = pending[row];
+      length[row] += numBytes;
+      if (p < 8) {
+        k1[row] |= bits << (p * 8);
+        if (p + numBytes > 8) {
+          k2[row] |= bits >>> ((8 - p) * 8);
+        }
+      } else {
+        k2[row] |= bits << ((p - 8) * 8);
+      }
+      final int end = p + numBytes;
+      if (end < BLOCK_SIZE) {
+        pending[row] = end;
+        return;
+      }
+      mixBlock(row);
+      if (end > BLOCK_SIZE) {
+        /* p > 8 here, so the shift is less than 64. */
+        k1[row] = bits >>> ((BLOCK_SIZE - p) * 8);
+      } else {
+        k1[row] = 0;
+      }
+      k2[row] = 0;
+      pending[row] = end - BLOCK_SIZE;
+    }
+
+    /**
+     * Mix the full pending block of a row into its hash.
+     *
+     * @param row the row.
+     */
+    private void mixBlock(final int row) {
+      long a = h1[row];
+      long b = h2[row];
+      a ^= mixK1(k1[row]);
+      a = Long.rotateLeft(a, 27);
+      a += b;
+      a = a * 5 + 0x52dce729;
+      b ^= mixK2(k2[row]);
+      b = Long.rotateLeft(b, 31);
+      b += a;
+      b = b * 5 + 0x38495ab5;
+      h1[row] = a;
+      h2[row] = b;
+    }
+
+    /**
+     * @param row the row.
+     * @return the hash code of the row.
+     */
+    int finish(final int row) {
+      return HashUtils.finish(h1[row], h2[row], k1[row], k2[row], pending[row], length[row]);
+    }
+
+    /**
+     * @param numRows the number of rows.
+     * @param out receives the hash code of each row.
+     */
+    void finishAll(final int numRows, final int[] out) {
+      for (int i = 0; i < numRows; ++i) {
+        out[i] = finish(i);
+      }
+    }
   }
 }
@@ -0,0 +1,258 @@
+package edu.washington.escience.myria.util;
+
+/**
+ * Compression in the LZ4 block format (https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md). The compressor is
+ * the greedy single-probe one of the reference implementation, which trades some ratio for speed: it is meant for data
+ * that is about to be sent over the network.
+ *
+ * A block is a sequence of (literals, match) pairs. Each starts with a token whose high four bits are the number of
+ * literals and whose low four bits are the length of the match minus {@value #MIN_MATCH}; 15 means that more length
+ * bytes follow. The literals follow, then the match as a two byte little-endian distance back into the output. The last
+ * sequence has only literals.
+ */
+public final class Lz4Block {
+  /** The shortest match. */
+  private static final int MIN_MATCH = 4;
+  /** Matches must start at least this many bytes before the end of the input. */
+  private static final int MATCH_FIND_LIMIT = 12;
+  /** The last bytes of the input are always literals. */
+  private static final int LAST_LITERALS = 5;
+  /** The farthest a match can reach back. */
+  private static final int MAX_DISTANCE = 0xFFFF;
+  /** The value of a 4-bit length that means that more length bytes follow. */
+  private static final int RUN_MASK = 0xF;
+  /** log2 of the number of entries of the hash table. */
+  private static final int HASH_LOG = 14;
+  /** Makes the compressor skip ahead faster in incompressible data. */
+  private static final int SKIP_TRIGGER = 6;
+
+  /** Utility class. */
+  private Lz4Block() {
+  }
+
+  /**
+   * @param length the number of bytes to compress.
+   * @return the most bytes a block of that many bytes can compress to.
+   */
+  public static int maxCompressedLength(final int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * @return a hash table for {@link #compress(byte[], int, int, byte[], int, int[])}.
+   */
+  public static int[] newHashTable() {
+    return new int[1 << HASH_LOG];
+  }
+
+  /**
+   * @param b an array.
+   * @param i an index.
+   * @return the four bytes starting at the index, as an int.
+   */
+  private static int readInt(final byte[] b, final int i) {
+    return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+  }
+
+  /**
+   * @param sequence four bytes.
+   * @return the slot of the hash table for the bytes.
+   */
+  private static int hash(final int sequence) {
+    return (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+  }
+
+  /**
+   * Write a length that does not fit in its token.
+   *
+   * @param dst the output.
+   * @param dstPos where to write.
+   * @param length the length minus {@link #RUN_MASK}.
+   * @return the position after the length.
+   */
+  private static int writeLength(final byte[] dst, final int dstPos, final int length) {
+    int op = dstPos;
+    int remaining = length;
+    while (remaining >= 0xFF) {
+      dst[op++] = (byte) 0xFF;
+      remaining -= 0xFF;
+    }
+    dst[op++] = (byte) remaining;
+    return op;
+  }
+
+  /**
+   * Write the literals of a sequence, and its token without the match length.
+   *
+   * @param src the input.
+   * @param literalStart the first literal.
+   * @param numLiterals the number of literals.
+   * @param dst the output.
+   * @param tokenPos where to write the token.
+   * @return the position after the literals.
+   */
+  private static int writeLiterals(final byte[] src, final int literalStart, final int numLiterals, final byte[] dst,
+      final int tokenPos) {
+    int op = tokenPos + 1;
+    if (numLiterals >= RUN_MASK) {
+      dst[tokenPos] = (byte) (RUN_MASK << 4);
+      op = writeLength(dst, op, numLiterals - RUN_MASK);
+    } else {
+      dst[tokenPos] = (byte) (numLiterals << 4);
+    }
+    System.arraycopy(src, literalStart, dst, op, numLiterals);
+    return op + numLiterals;
+  }
+
+  /**
+   * Compress a block.
+   *
+   * @param src the input.
+   * @param srcOff the start of the input.
+   * @param srcLen the length of the input.
+   * @param dst the output, with room for {@link #maxCompressedLength(int)} bytes.
+   * @param dstOff where to write the output.
+   * @param hashTable a table from {@link #newHashTable()}. It may be reused across calls without clearing.
+   * @return the length of the compressed block.
+   */
+  public static int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff,
+      final int[] hashTable) {
+    final int srcEnd = srcOff + srcLen;
+    final int matchLimit = srcEnd - LAST_LITERALS;
+    final int findLimit = srcEnd - MATCH_FIND_LIMIT;
+    int ip = srcOff;
+    int anchor = srcOff;
+    int op = dstOff;
+    int searchCount = 1 << SKIP_TRIGGER;
+
+    while (ip < findLimit) {
+      final int sequence = readInt(src, ip);
+      final int slot = hash(sequence);
+      int ref = hashTable[slot];
+      hashTable[slot] = ip;
+      /* the table may hold positions of earlier inputs, so check everything. */
+      if (ref < srcOff || ref >= ip || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+        ip += searchCount++ >>> SKIP_TRIGGER;
+        continue;
+      }
+      searchCount = 1 << SKIP_TRIGGER;
+      int start = ip;
+      while (start > anchor && ref > srcOff && src[start - 1] == src[ref - 1]) {
+        --start;
+        --ref;
+      }
+      int matchLength = MIN_MATCH + (ip - start);
+      while (start + matchLength < matchLimit && src[ref + matchLength] == src[start + matchLength]) {
+        ++matchLength;
+      }
+
+      final int tokenPos = op;
+      op = writeLiterals(src, anchor, start - anchor, dst, tokenPos);
+      final int distance = start - ref;
+      dst[op++] = (byte) distance;
+      dst[op++] = (byte) (distance >>> 8);
+      if (matchLength - MIN_MATCH >= RUN_MASK) {
+        dst[tokenPos] |= RUN_MASK;
+        op = writeLength(dst, op, matchLength - MIN_MATCH - RUN_MASK);
+      } else {
+        dst[tokenPos] |= matchLength - MIN_MATCH;
+      }
+      ip = start + matchLength;
+      anchor = ip;
+      if (ip - 2 >= srcOff && ip < findLimit) {
+        hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+      }
+    }
+
+    op = writeLiterals(src, anchor, srcEnd - anchor, dst, op);
+    return op - dstOff;
+  }
+
+  /**
+   * Read a length that did not fit in its token.
+   *
+   * @param src the input.
+   * @param pos the position of the first length byte, updated to after the last one.
+   * @param srcEnd the end of the input.
+   * @return the length.
+   */
+  private static int readLength(final byte[] src, final int[] pos, final int srcEnd) {
+    int length = 0;
+    int b;
+    do {
+      if (pos[0] >= srcEnd) {
+        throw new IllegalArgumentException("corrupt LZ4 block: truncated length");
+      }
+      b = src[pos[0]++] & 0xFF;
+      length += b;
+    } while (b == 0xFF);
+    return length;
+  }
+
+  /**
+   * Decompress a block.
+   *
+   * @param src the input.
+   * @param srcOff the start of the block.
+   * @param srcLen the length of the block.
+   * @param dst the output.
+   * @param dstOff where to write the output.
+   * @param dstLen the length of the decompressed block, which must be known.
+   * @throws IllegalArgumentException if the block is corrupt.
+   */
+  public static void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst,
+      final int dstOff, final int dstLen) {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    final int[] pos = new int[] { srcOff };
+    int op = dstOff;
+    while (true) {
+      if (pos[0] >= srcEnd) {
+        throw new IllegalArgumentException("corrupt LZ4 block: truncated sequence");
+      }
+      final int token = src[pos[0]++] & 0xFF;
+      int numLiterals = token >>> 4;
+      if (numLiterals == RUN_MASK) {
+        numLiterals += readLength(src, pos, srcEnd);
+      }
+      if (numLiterals > srcEnd - pos[0] || numLiterals > dstEnd - op) {
+        throw new IllegalArgumentException("corrupt LZ4 block: literals out of bounds");
+      }
+      System.arraycopy(src, pos[0], dst, op, numLiterals);
+      pos[0] += numLiterals;
+      op += numLiterals;
+      if (pos[0] == srcEnd) {
+        break;
+      }
+
+      if (srcEnd - pos[0] < 2) {
+        throw new IllegalArgumentException("corrupt LZ4 block: truncated match");
+      }
+      final int distance = (src[pos[0]] & 0xFF) | (src[pos[0] + 1] & 0xFF) << 8;
+      pos[0] += 2;
+      int matchLength = token & RUN_MASK;
+      if (matchLength == RUN_MASK) {
+        matchLength += readLength(src, pos, srcEnd);
+      }
+      matchLength += MIN_MATCH;
+      final int ref = op - distance;
+      if (distance == 0 || ref < dstOff || matchLength > dstEnd - op) {
+        throw new IllegalArgumentException("corrupt LZ4 block: match out of bounds");
+      }
+      if (distance >= matchLength) {
+        System.arraycopy(dst, ref, dst, op, matchLength);
+        op += matchLength;
+      } else {
+        /* the match overlaps its own output, e.g., a run of one byte. */
+        for (int i = 0; i < matchLength; ++i) {
+          dst[op] = dst[ref + i];
+          ++op;
+        }
+      }
+    }
+    if (op != dstEnd) {
+      throw new IllegalArgumentException("corrupt LZ4 block: decompressed to " + (op - dstOff) + " bytes, expected "
+          + dstLen);
+    }
+  }
+}
@@ -42,6 +42,17 @@ class DefaultThreadAffinityExecutor implements ThreadAffinityExecutor {
     return r;
   }
 
+  /**
+   * @return the number of tasks that are running or waiting to run in this executor.
+   * */
+  int getNumPendingTasks() {
+    final ThreadPoolExecutor executor = backendThread;
+    if (executor == null) {
+      return Integer.MAX_VALUE;
+    }
+    return executor.getQueue().size() + executor.getActiveCount();
+  }
+
   /**
    * Normal shutdown, wait until the current running task finishes.
    * */
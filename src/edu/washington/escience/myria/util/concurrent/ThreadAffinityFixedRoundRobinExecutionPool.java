@@ -15,8 +15,9 @@ import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
 import com.google.common.base.Preconditions;
 
 /**
- * A simple implementation of the {@link ThreadAffinityExecutorService}. It is fixed-sized. It uses a simple round-robin
- * policy to assign new tasks to an executor.
+ * A simple implementation of the {@link ThreadAffinityExecutorService}. It is fixed-sized. A new task is assigned to
+ * the executor with the fewest pending tasks, and ties are broken round-robin. Tasks cannot be moved to another thread
+ * once assigned, so the load is balanced when a task is placed rather than by stealing work later.
  * */
 public class ThreadAffinityFixedRoundRobinExecutionPool extends AbstractExecutorService implements
     ThreadAffinityExecutorService {
@@ -32,7 +33,7 @@ public class ThreadAffinityFixedRoundRobinExecutionPool extends AbstractExecutor
   private final DefaultThreadAffinityExecutor[] executors;
 
   /**
-   * The next executor to assign for new tasks.
+   * The executor from which the search for the least loaded executor starts.
    * */
   private final AtomicInteger executorIndex = new AtomicInteger(0);
 
@@ -171,7 +172,17 @@ public class ThreadAffinityFixedRoundRobinExecutionPool extends AbstractExecutor
         break;
       }
     }
-    return executors[i];
+    DefaultThreadAffinityExecutor best = executors[i];
+    int bestLoad = best.getNumPendingTasks();
+    for (int j = 1; j < executors.length && bestLoad > 0; j++) {
+      DefaultThreadAffinityExecutor candidate = executors[(i + j) % executors.length];
+      int load = candidate.getNumPendingTasks();
+      if (load < bestLoad) {
+        best = candidate;
+        bestLoad = load;
+      }
+    }
+    return best;
   }
 
   @Override
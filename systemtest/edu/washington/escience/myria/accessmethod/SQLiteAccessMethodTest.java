@@ -1,9 +1,12 @@
 package edu.washington.escience.myria.accessmethod;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
@@ -196,4 +199,104 @@ public class SQLiteAccessMethodTest {
 
     FSUtils.blockingDeleteDirectory(tempDir.toString());
   }
+
+  @Test
+  public void testBatchedInsert() throws Exception {
+    /* A wide schema, so that a statement holds fewer rows, and batch sizes that are not a multiple of that. */
+    final Schema schema =
+        Schema.ofFields("b", Type.BOOLEAN_TYPE, "i", Type.INT_TYPE, "l", Type.LONG_TYPE, "f", Type.FLOAT_TYPE, "d",
+            Type.DOUBLE_TYPE, "s", Type.STRING_TYPE);
+    final TupleBatchBuffer expected = new TupleBatchBuffer(schema);
+    Path tempDir = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_sqlite_access_method_test");
+    final SQLiteInfo sqliteInfo = SQLiteInfo.of(new File(tempDir.toString(), "sqlite.db").getAbsolutePath());
+    final RelationKey relationKey = RelationKey.of("test", "test", "batched");
+    SQLiteAccessMethod accessMethod = new SQLiteAccessMethod(sqliteInfo, false);
+    accessMethod.setPragma("synchronous", "OFF");
+    accessMethod.createTableIfNotExists(relationKey, schema);
+    for (int numTuples : new int[] { 0, 1, 141, 142, 143, 1000, TupleBatch.BATCH_SIZE }) {
+      final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      for (int i = 0; i < numTuples; ++i) {
+        for (TupleBatchBuffer b : new TupleBatchBuffer[] { tbb, expected }) {
+          b.putBoolean(0, i % 3 == 0);
+          b.putInt(1, i);
+          b.putLong(2, numTuples * 100000L + i);
+          b.putFloat(3, i / 2f);
+          b.putDouble(4, i / 3.0);
+          b.putString(5, "row " + i);
+        }
+      }
+      TupleBatch tb = tbb.popAny();
+      if (tb != null) {
+        accessMethod.tupleBatchInsert(relationKey, tb);
+      }
+    }
+    accessMethod.close();
+
+    final Iterator<TupleBatch> it =
+        SQLiteAccessMethod.tupleBatchIteratorFromQuery(sqliteInfo, "SELECT * FROM "
+            + relationKey.toString(MyriaConstants.STORAGE_SYSTEM_SQLITE) + " ORDER BY l", schema);
+    final TupleBatchBuffer actual = new TupleBatchBuffer(schema);
+    while (it.hasNext()) {
+      it.next().compactInto(actual);
+    }
+    assertEquals(TestUtils.tupleBatchToTupleBag(expected), TestUtils.tupleBatchToTupleBag(actual));
+    FSUtils.blockingDeleteDirectory(tempDir.toString());
+  }
+
+  @Test
+  public void testConcurrentWritersToOneDBFile() throws Exception {
+    final int numWriters = 4;
+    final int numBatches = 10;
+    final Schema schema = Schema.ofFields("id", Type.LONG_TYPE, "name", Type.STRING_TYPE);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, "name " + i);
+    }
+    final TupleBatch tb = tbb.popAny();
+
+    Path tempDir = Files.createTempDirectory(MyriaConstants.SYSTEM_NAME + "_sqlite_access_method_test");
+    final SQLiteInfo sqliteInfo = SQLiteInfo.of(new File(tempDir.toString(), "sqlite.db").getAbsolutePath());
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final Thread[] threads = new Thread[numWriters];
+    for (int i = 0; i < numWriters; i++) {
+      final RelationKey relationKey = RelationKey.of("test", "test", "writer" + i);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            SQLiteAccessMethod accessMethod = new SQLiteAccessMethod(sqliteInfo, false);
+            accessMethod.setPragma("journal_mode", "WAL");
+            accessMethod.createTableIfNotExists(relationKey, schema);
+            for (int j = 0; j < numBatches; ++j) {
+              accessMethod.tupleBatchInsert(relationKey, tb);
+            }
+            accessMethod.close();
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      threads[i].setName("SQLiteAccessMethodTest-" + i);
+    }
+    for (final Thread t : threads) {
+      t.start();
+    }
+    for (final Thread t : threads) {
+      t.join();
+    }
+    assertEquals(ImmutableList.of(), errors);
+
+    for (int i = 0; i < numWriters; i++) {
+      final RelationKey relationKey = RelationKey.of("test", "test", "writer" + i);
+      final Iterator<TupleBatch> it =
+          SQLiteAccessMethod.tupleBatchIteratorFromQuery(sqliteInfo, "SELECT COUNT(*) FROM "
+              + relationKey.toString(MyriaConstants.STORAGE_SYSTEM_SQLITE), Schema.ofFields("count", Type.LONG_TYPE));
+      assertEquals(numBatches * TupleBatch.BATCH_SIZE, it.next().getLong(0, 0));
+      while (it.hasNext()) {
+        it.next();
+      }
+    }
+    FSUtils.blockingDeleteDirectory(tempDir.toString());
+  }
 }
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 
@@ -14,6 +16,7 @@ import org.junit.Test;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding.Status;
@@ -28,6 +31,14 @@ import edu.washington.escience.myria.util.TestUtils;
 
 public class QueryQueueTest extends SystemTestBase {
 
+  @Override
+  public Map<String, String> getMasterConfigurations() {
+    HashMap<String, String> masterConfigurations = new HashMap<String, String>();
+    /* Leave no memory for a second query, so that the queued queries run one at a time. */
+    masterConfigurations.put(MyriaSystemConfigKeys.QUERY_MEMORY_BUDGET_BYTES, "1");
+    return masterConfigurations;
+  }
+
   @Test
   public void testTwoQueries() throws Exception {
     TupleSource source1 = new TupleSource(TestUtils.range(TupleBatch.BATCH_SIZE * 250));
@@ -89,7 +100,6 @@ public class QueryQueueTest extends SystemTestBase {
     Query query2 = qf2.get();
     assertEquals(query1.status, Status.ERROR);
     assertEquals(query2.getMessage(), query2.getStatus(), Status.SUCCESS);
-    /* The goal: query 2 should have been started after query 1 finished. */
     assertTrue(query1.finishTime.compareTo(query2.getStartTime()) < 0);
   }
 
@@ -118,7 +128,6 @@ public class QueryQueueTest extends SystemTestBase {
     Query query2 = qf2.get();
     assertEquals(query1.status, Status.ERROR);
     assertEquals(query2.getMessage(), query2.getStatus(), Status.SUCCESS);
-    /* The goal: query 2 should have been started after query 1 finished. */
     assertTrue(query1.finishTime.compareTo(query2.getStartTime()) < 0);
   }
 
@@ -0,0 +1,132 @@
+package edu.washington.escience.myria;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.storage.TupleBuffer;
+
+public class BinaryColumnarTupleWriterTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.BOOLEAN_TYPE, Type.INT_TYPE, Type.LONG_TYPE,
+      Type.FLOAT_TYPE, Type.DOUBLE_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE), ImmutableList.of("a", "b", "c", "d",
+      "e", "f", "g"));
+
+  /**
+   * Reads the next column buffer of a batch.
+   */
+  private static ByteBuffer readColumn(final DataInputStream in, final Type type) throws IOException {
+    assertEquals(BinaryColumnarTupleWriter.typeCode(type), in.readByte());
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Test
+  public void testBinaryColumnarOutput() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryColumnarTupleWriter writer = new BinaryColumnarTupleWriter(out);
+
+    DateTime first = new DateTime(1990, 7, 18, 2, 3, 10);
+    DateTime second = new DateTime(2013, 9, 30, 3, 1, 10);
+    TupleBuffer tuples = new TupleBuffer(SCHEMA);
+    tuples.putBoolean(0, true);
+    tuples.putInt(1, 1);
+    tuples.putLong(2, 100L);
+    tuples.putFloat(3, 3.14f);
+    tuples.putDouble(4, 3.14);
+    tuples.putString(5, "one");
+    tuples.putDateTime(6, first);
+
+    tuples.putBoolean(0, false);
+    tuples.putInt(1, -2);
+    tuples.putLong(2, Long.MAX_VALUE);
+    tuples.putFloat(3, -1.5f);
+    tuples.putDouble(4, 123.456);
+    tuples.putString(5, "dos \u00e9");
+    tuples.putDateTime(6, second);
+
+    writer.writeColumnHeaders(SCHEMA.getColumnNames());
+    writer.writeTuples(tuples);
+    writer.writeTuples(tuples);
+    writer.done();
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    byte[] magic = new byte[8];
+    in.readFully(magic);
+    assertEquals("MYRIACOL", new String(magic, StandardCharsets.US_ASCII));
+    assertEquals(BinaryColumnarTupleWriter.VERSION, in.readInt());
+    assertEquals(SCHEMA.numColumns(), in.readInt());
+    for (String name : SCHEMA.getColumnNames()) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      assertEquals(name, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    for (int batch = 0; batch < 2; ++batch) {
+      assertEquals(2, in.readInt());
+
+      ByteBuffer booleans = readColumn(in, Type.BOOLEAN_TYPE);
+      assertEquals(2, booleans.remaining());
+      assertEquals(1, booleans.get());
+      assertEquals(0, booleans.get());
+
+      ByteBuffer ints = readColumn(in, Type.INT_TYPE);
+      assertEquals(1, ints.getInt());
+      assertEquals(-2, ints.getInt());
+
+      ByteBuffer longs = readColumn(in, Type.LONG_TYPE);
+      assertEquals(100L, longs.getLong());
+      assertEquals(Long.MAX_VALUE, longs.getLong());
+
+      ByteBuffer floats = readColumn(in, Type.FLOAT_TYPE);
+      assertEquals(3.14f, floats.getFloat(), 0.0f);
+      assertEquals(-1.5f, floats.getFloat(), 0.0f);
+
+      ByteBuffer doubles = readColumn(in, Type.DOUBLE_TYPE);
+      assertEquals(3.14, doubles.getDouble(), 0.0);
+      assertEquals(123.456, doubles.getDouble(), 0.0);
+
+      ByteBuffer strings = readColumn(in, Type.STRING_TYPE);
+      int start = strings.getInt();
+      int middle = strings.getInt();
+      int end = strings.getInt();
+      byte[] data = new byte[strings.remaining()];
+      strings.get(data);
+      assertEquals(end, data.length);
+      assertEquals("one", new String(data, start, middle - start, StandardCharsets.UTF_8));
+      assertEquals("dos \u00e9", new String(data, middle, end - middle, StandardCharsets.UTF_8));
+
+      ByteBuffer dates = readColumn(in, Type.DATETIME_TYPE);
+      assertEquals(first.getMillis(), dates.getLong());
+      assertEquals(second.getMillis(), dates.getLong());
+    }
+
+    assertEquals(BinaryColumnarTupleWriter.END_OF_STREAM, in.readInt());
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testErrorMarker() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryColumnarTupleWriter writer = new BinaryColumnarTupleWriter(out);
+    writer.writeColumnHeaders(ImmutableList.of("x"));
+    writer.error();
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    in.skipBytes(8 + 4 + 4 + 4 + 1);
+    assertEquals(BinaryColumnarTupleWriter.ERROR, in.readInt());
+    assertEquals(-1, in.read());
+  }
+}
@@ -3,6 +3,8 @@ package edu.washington.escience.myria.api;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
+import javax.ws.rs.core.Response.Status;
+
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,10 +18,14 @@ import edu.washington.escience.myria.api.encoding.AbstractProducerEncoding;
 import edu.washington.escience.myria.api.encoding.CollectConsumerEncoding;
 import edu.washington.escience.myria.api.encoding.CollectProducerEncoding;
 import edu.washington.escience.myria.api.encoding.EmptyRelationEncoding;
+import edu.washington.escience.myria.api.encoding.PartialAggregateEncoding;
 import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
 import edu.washington.escience.myria.api.encoding.QueryConstruct;
 import edu.washington.escience.myria.api.encoding.SinkRootEncoding;
 import edu.washington.escience.myria.api.encoding.UnionAllEncoding;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.UserDefinedAggregatorFactory;
 
 /**
  * Test of illegal plans submitted via the API.
@@ -135,4 +141,22 @@ public class JsonBadPlanTests {
       assertThat(e.getMessage()).contains("Two different operators cannot produce the same opId 1.");
     }
   }
+
+  @Test
+  public void partialUserDefinedAggregateTest() throws Exception {
+    PartialAggregateEncoding agg = new PartialAggregateEncoding();
+    agg.opId = 1;
+    agg.argChild = 0;
+    agg.argGroupFields = new int[] { 0 };
+    agg.aggregators =
+        new AggregatorFactory[] { new UserDefinedAggregatorFactory(ImmutableList.<Expression> of(), ImmutableList
+            .<Expression> of(), ImmutableList.<Expression> of()) };
+
+    try {
+      agg.validate();
+      fail();
+    } catch (MyriaApiException e) {
+      assertThat(e.getResponse().getStatus()).isEqualTo(Status.BAD_REQUEST.getStatusCode());
+    }
+  }
 }
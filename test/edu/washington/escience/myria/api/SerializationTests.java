@@ -2,6 +2,7 @@ package edu.washington.escience.myria.api;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -9,6 +10,7 @@ import org.junit.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 
+import edu.washington.escience.myria.operator.network.partition.HybridHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
@@ -51,6 +53,16 @@ public class SerializationTests {
     MultiFieldHashPartitionFunction pfMFH = (MultiFieldHashPartitionFunction) deserialized;
     assertArrayEquals(multiFieldIndex, pfMFH.getIndexes());
 
+    /* Hybrid hash */
+    pf = new HybridHashPartitionFunction(6, new int[] { 1 }, new int[] { 42, -7 }, false);
+    serialized = mapper.writeValueAsString(pf);
+    deserialized = reader.readValue(serialized);
+    assertEquals(pf.getClass(), deserialized.getClass());
+    assertEquals(6, deserialized.numPartition());
+    HybridHashPartitionFunction pfHH = (HybridHashPartitionFunction) deserialized;
+    assertArrayEquals(new int[] { 1 }, pfHH.getIndexes());
+    assertFalse(pfHH.isSpreadHeavyKeys());
+
     /* Whole tuple hash */
     pf = new WholeTupleHashPartitionFunction(5);
     serialized = mapper.writeValueAsString(pf);
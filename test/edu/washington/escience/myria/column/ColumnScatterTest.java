@@ -0,0 +1,133 @@
+package edu.washington.escience.myria.column;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+public class ColumnScatterTest {
+
+  private static final int NUM_TUPLES = 1000;
+  private static final Schema SCHEMA = Schema.ofFields(Type.LONG_TYPE, "l", Type.INT_TYPE, "i", Type.DOUBLE_TYPE, "d",
+      Type.FLOAT_TYPE, "f", Type.BOOLEAN_TYPE, "b", Type.DATETIME_TYPE, "t", Type.STRING_TYPE, "utf8",
+      Type.STRING_TYPE, "dictionary", Type.STRING_TYPE, "array");
+
+  /**
+   * @return a batch with a column of every type, and every kind of string column.
+   */
+  private static TupleBatch randomBatch() {
+    final Random random = new Random(7);
+    final long[] longs = new long[NUM_TUPLES];
+    final int[] ints = new int[NUM_TUPLES];
+    final double[] doubles = new double[NUM_TUPLES];
+    final float[] floats = new float[NUM_TUPLES];
+    final BitSet booleans = new BitSet(NUM_TUPLES);
+    final DateTime[] dates = new DateTime[NUM_TUPLES];
+    final String[] strings = new String[NUM_TUPLES];
+    final String[] fewStrings = new String[NUM_TUPLES];
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      longs[i] = random.nextLong();
+      ints[i] = random.nextInt();
+      doubles[i] = random.nextDouble();
+      floats[i] = random.nextFloat();
+      booleans.set(i, random.nextBoolean());
+      dates[i] = new DateTime(random.nextInt() * 1000L);
+      strings[i] = "sé" + random.nextInt(i + 1);
+      fewStrings[i] = "v" + random.nextInt(3);
+    }
+    final List<Column<?>> columns =
+        ImmutableList.<Column<?>> of(new LongColumn(longs, NUM_TUPLES), new IntArrayColumn(ints, NUM_TUPLES),
+            new DoubleColumn(doubles, NUM_TUPLES), new FloatColumn(floats, NUM_TUPLES), new BooleanColumn(booleans,
+                NUM_TUPLES), new DateTimeColumn(dates, NUM_TUPLES), Utf8StringColumn.encode(strings, NUM_TUPLES),
+            DictionaryStringColumn.encode(fewStrings, NUM_TUPLES), new StringArrayColumn(strings, NUM_TUPLES));
+    return new TupleBatch(SCHEMA, columns, NUM_TUPLES);
+  }
+
+  @Test
+  public void testPartition() {
+    final TupleBatch tb = randomBatch();
+    final PartitionFunction pf = new SingleFieldHashPartitionFunction(7, 0);
+    final int[] partitions = pf.partition(tb);
+    final TupleBatch[] result = tb.partition(pf);
+    assertEquals(7, result.length);
+
+    final int[] cursors = new int[result.length];
+    for (int row = 0; row < NUM_TUPLES; ++row) {
+      final int p = partitions[row];
+      final int partitionRow = cursors[p]++;
+      for (int column = 0; column < SCHEMA.numColumns(); ++column) {
+        assertEquals(tb.getObject(column, row), result[p].getObject(column, partitionRow));
+      }
+    }
+    for (int p = 0; p < result.length; ++p) {
+      assertEquals(cursors[p], result[p].numTuples());
+      final List<? extends Column<?>> columns = result[p].getDataColumns();
+      assertTrue(columns.get(0) instanceof LongColumn);
+      assertTrue(columns.get(6) instanceof Utf8StringColumn);
+      assertTrue(columns.get(7) instanceof DictionaryStringColumn);
+      for (Column<?> column : columns) {
+        assertEquals(cursors[p], column.size());
+      }
+    }
+  }
+
+  @Test
+  public void testSinglePartition() {
+    final TupleBatch tb = randomBatch();
+    final TupleBatch[] result = tb.partition(new PartitionFunction(3) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public int[] partition(final TupleBatch data) {
+        final int[] ret = new int[data.numTuples()];
+        Arrays.fill(ret, 2);
+        return ret;
+      }
+    });
+    assertEquals(3, result.length);
+    assertNull(result[0]);
+    assertNull(result[1]);
+    assertSame(tb, result[2]);
+  }
+
+  @Test
+  public void testDictionaryCompacted() {
+    final String[] values = new String[NUM_TUPLES];
+    final int[] partitions = new int[NUM_TUPLES];
+    final int[] counts = new int[2];
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      /* Partition 0 holds 2 values, partition 1 all 20. */
+      values[i] = "v" + (i % 20);
+      partitions[i] = i % 20 < 2 && i % 40 < 20 ? 0 : 1;
+      counts[partitions[i]]++;
+    }
+    final DictionaryStringColumn column = DictionaryStringColumn.encode(values, NUM_TUPLES);
+    final Column<?>[] result = ColumnScatter.scatter(column, partitions, counts);
+    final DictionaryStringColumn first = (DictionaryStringColumn) result[0];
+    final DictionaryStringColumn second = (DictionaryStringColumn) result[1];
+    assertEquals(2, first.getDictionarySize());
+    assertSame(column.getDictionary(), second.getDictionary());
+
+    final int[] cursors = new int[2];
+    for (int row = 0; row < NUM_TUPLES; ++row) {
+      final int p = partitions[row];
+      assertEquals(values[row], result[p].getString(cursors[p]++));
+    }
+  }
+}
@@ -1,14 +1,18 @@
 package edu.washington.escience.myria.column;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.BufferOverflowException;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.Test;
 
 import edu.washington.escience.myria.column.DateTimeColumn;
 import edu.washington.escience.myria.column.builder.DateTimeColumnBuilder;
+import edu.washington.escience.myria.column.mutable.DateTimeMutableColumn;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.DateTimeUtils;
@@ -44,4 +48,28 @@ public class DateTimeColumnTest {
     builder.build();
   }
 
+  @Test
+  public void testZones() {
+    final DateTime utc = new DateTime(1000L, DateTimeZone.UTC);
+    final DateTime tokyo = new DateTime(2000L, DateTimeZone.forID("Asia/Tokyo"));
+    final DateTimeColumnBuilder builder = new DateTimeColumnBuilder();
+    builder.appendDateTime(utc).appendDateTime(utc);
+    final DateTimeColumn sameZone = builder.forkNewBuilder().build();
+    assertFalse(sameZone.hasRowZones());
+    assertEquals(utc, sameZone.getDateTime(1));
+
+    builder.appendDateTime(tokyo);
+    final DateTimeColumn column = builder.build();
+    assertTrue(column.hasRowZones());
+    assertEquals(utc, column.getDateTime(0));
+    assertEquals(utc, column.getDateTime(1));
+    assertEquals(tokyo, column.getDateTime(2));
+    assertEquals(2000L, column.getDateTimeMillis(2));
+
+    final DateTimeMutableColumn mutable =
+        new DateTimeColumnBuilder().appendDateTime(utc).appendDateTime(utc).buildMutable();
+    mutable.replaceDateTime(tokyo, 1);
+    assertEquals(utc, mutable.getDateTime(0));
+    assertEquals(tokyo, mutable.toColumn().getDateTime(1));
+  }
 }
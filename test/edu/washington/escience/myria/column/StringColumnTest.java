@@ -1,15 +1,22 @@
 package edu.washington.escience.myria.column;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.BufferOverflowException;
 
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.StringColumn;
 import edu.washington.escience.myria.column.builder.StringColumnBuilder;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashUtils;
 
 public class StringColumnTest {
 
@@ -42,4 +49,91 @@ public class StringColumnTest {
     builder.build();
   }
 
+  /**
+   * @param values the values.
+   * @return a column built from the values.
+   */
+  private static StringColumn build(final String... values) {
+    final StringColumnBuilder builder = new StringColumnBuilder();
+    for (String value : values) {
+      builder.appendString(value);
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param column a column.
+   * @return the column after a round trip through its protobuf representation.
+   */
+  private static StringColumn roundTrip(final StringColumn column) {
+    return StringColumnBuilder.buildFromProtobuf(column.serializeToProto(), column.size());
+  }
+
+  @Test
+  public void testUtf8() {
+    final String[] values = { "ascii", "", "caf\u00e9", "\u65e5\u672c\u8a9e", "\ud83d\ude00 emoji", "last" };
+    final StringColumn column = build(values);
+    assertTrue(column instanceof Utf8StringColumn);
+    assertFalse(((Utf8StringColumn) column).isAscii());
+    final StringColumn deserialized = roundTrip(column);
+    assertTrue(deserialized instanceof Utf8StringColumn);
+    for (int i = 0; i < values.length; ++i) {
+      assertEquals(values[i], column.getString(i));
+      assertEquals(values[i], deserialized.getString(i));
+      assertTrue(column.stringEquals(i, values[i]));
+      assertTrue(column.stringEquals(i, deserialized, i));
+      assertFalse(column.stringEquals(i, values[(i + 1) % values.length]));
+    }
+  }
+
+  @Test
+  public void testProtoIndicesCountCharacters() {
+    final String[] values = { "caf\u00e9", "\ud83d\ude00", "x" };
+    final ColumnMessage serialized = build(values).serializeToProto();
+    /* Older peers read the indices as offsets into the decoded String. */
+    final String allStrings = serialized.getStringColumn().getData().toStringUtf8();
+    for (int i = 0; i < values.length; ++i) {
+      assertEquals(values[i], allStrings.substring(serialized.getStringColumn().getStartIndices(i), serialized
+          .getStringColumn().getEndIndices(i)));
+    }
+  }
+
+  @Test
+  public void testLoneSurrogate() {
+    final StringColumn column = build("a", "\ud800", "b");
+    assertTrue(column instanceof StringArrayColumn);
+    assertEquals("\ud800", column.getString(1));
+  }
+
+  @Test
+  public void testDictionary() {
+    final StringColumnBuilder builder = new StringColumnBuilder();
+    final String[] values = { "red", "green", "blue", "gr\u00fcn" };
+    for (int i = 0; i < 1000; ++i) {
+      builder.appendString(values[i % values.length]);
+    }
+    final StringColumn column = builder.build();
+    assertTrue(column instanceof DictionaryStringColumn);
+    assertEquals(values.length, ((DictionaryStringColumn) column).getDictionarySize());
+    final StringColumn deserialized = roundTrip(column);
+    for (int i = 0; i < column.size(); ++i) {
+      assertEquals(values[i % values.length], column.getString(i));
+      assertEquals(values[i % values.length], deserialized.getString(i));
+      assertTrue(column.stringEquals(i, column, i % values.length));
+      assertFalse(column.stringEquals(i, column, (i + 1) % values.length));
+    }
+  }
+
+  @Test
+  public void testHashIsIndependentOfRepresentation() {
+    final String[] values = { "ascii", "caf\u00e9", "", "\ud83d\ude00" };
+    final Schema schema = Schema.ofFields("s", Type.STRING_TYPE);
+    final TupleBatch utf8 = new TupleBatch(schema, ImmutableList.<Column<?>> of(build(values)));
+    final TupleBatch strings =
+        new TupleBatch(schema, ImmutableList.<Column<?>> of(new StringArrayColumn(values, values.length)));
+    assertTrue(utf8.getDataColumns().get(0) instanceof Utf8StringColumn);
+    for (int i = 0; i < values.length; ++i) {
+      assertEquals(HashUtils.hashValue(strings, 0, i, 0), HashUtils.hashValue(utf8, 0, i, 0));
+    }
+  }
 }
@@ -26,9 +26,15 @@ import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
+import edu.washington.escience.myria.parallel.RelationWriteMetadata;
 import edu.washington.escience.myria.parallel.SocketInfo;
+import edu.washington.escience.myria.parallel.SubQueryId;
 import edu.washington.escience.myria.util.FSUtils;
 
 public class CatalogTest {
@@ -343,4 +349,40 @@ public class CatalogTest {
     assertEquals(ImmutableSet.copyOf(qs.profilingMode), ImmutableSet.copyOf(query.profilingMode));
     assertEquals(qs.language, query.language);
   }
+
+  /**
+   * Test that the catalog keeps the order in which a relation is stored until tuples are appended to it.
+   * 
+   * @throws CatalogException if there is an error in the Catalog.
+   */
+  @Test
+  public void testRelationSortOrder() throws CatalogException {
+    /* Turn off SQLite logging, it's annoying. */
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.OFF);
+
+    MasterCatalog catalog = MasterCatalog.createInMemory();
+    catalog.addWorker(1, "localhost:9001");
+    QueryEncoding query = new QueryEncoding();
+    query.rawQuery = "sorted";
+    query.logicalRa = "";
+    long queryId = catalog.newQuery(query);
+
+    RelationKey relation = RelationKey.of("test", "test", "sorted");
+    Schema schema = Schema.ofFields(Type.LONG_TYPE, "x", Type.LONG_TYPE, "y");
+    SortOrder sortOrder = SortOrder.of(new int[] { 1, 0 }, new boolean[] { true, false });
+    RelationWriteMetadata sorted = new RelationWriteMetadata(relation, schema, true, false, sortOrder);
+    sorted.addWorker(1);
+    catalog.updateRelationMetadata(ImmutableMap.of(relation, sorted), new SubQueryId(queryId, 0));
+    assertEquals(sortOrder, catalog.getSortOrder(relation));
+    assertEquals(sortOrder, catalog.getDatasetStatus(relation).getSortOrder());
+    assertTrue(sortOrder.satisfies(new int[] { 1 }, new boolean[] { true }));
+    assertTrue(!sortOrder.satisfies(new int[] { 0 }, new boolean[] { false }));
+
+    /* Appending tuples makes the relation unsorted. */
+    RelationWriteMetadata appended = new RelationWriteMetadata(relation, schema, false, false);
+    appended.addWorker(1);
+    catalog.updateRelationMetadata(ImmutableMap.of(relation, appended), new SubQueryId(queryId, 1));
+    assertEquals(null, catalog.getSortOrder(relation));
+    assertEquals(null, catalog.getDatasetStatus(relation).getSortOrder());
+  }
 }
@@ -0,0 +1,65 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.RandomExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+
+public class EvaluatorCacheTest {
+
+  /** a + 1. */
+  private static final Expression PLUS_ONE = new Expression("x", new PlusExpression(new VariableExpression(0),
+      new ConstantExpression(1)));
+
+  /**
+   * @param schema the input schema.
+   * @return the per-row evaluator that {@link GenericEvaluator} compiles for {@link #PLUS_ONE}.
+   * @throws DbException if compilation fails.
+   */
+  private static ExpressionEvalInterface compile(final Schema schema) throws DbException {
+    GenericEvaluator evaluator = new GenericEvaluator(PLUS_ONE, new ExpressionOperatorParameter(schema, -1));
+    return EvaluatorCache.getExpressionEvaluator(evaluator.getJavaExpressionWithAppend(),
+        ExpressionEvalInterface.class, new String[] { Expression.TB, Expression.ROW, Expression.RESULT,
+            Expression.STATE }, Void.TYPE);
+  }
+
+  @Test
+  public void testSameSourceIsCompiledOnce() throws DbException {
+    long hits = EvaluatorCache.getStats().hitCount();
+    ExpressionEvalInterface first = compile(Schema.ofFields("a", Type.INT_TYPE));
+    /* Only the column names differ, so the generated source is the same. */
+    ExpressionEvalInterface second = compile(Schema.ofFields("b", Type.INT_TYPE));
+    assertSame(first, second);
+    assertEquals(hits + 1, EvaluatorCache.getStats().hitCount());
+    /* The type of the column changes the source. */
+    assertNotSame(first, compile(Schema.ofFields("a", Type.LONG_TYPE)));
+  }
+
+  @Test
+  public void testConstantsAreEvaluatedOnEveryUse() throws DbException {
+    ExpressionOperatorParameter parameters = new ExpressionOperatorParameter();
+    Expression random = new Expression("r", new RandomExpression());
+    Object first = new ConstantEvaluator(random, parameters).eval();
+    Object second = new ConstantEvaluator(random, parameters).eval();
+    assertNotEquals(first, second);
+    assertEquals(3, new ConstantEvaluator(new Expression("c", new PlusExpression(new ConstantExpression(1),
+        new ConstantExpression(2))), parameters).eval());
+  }
+
+  @Test(expected = DbException.class)
+  public void testCompileError() throws DbException {
+    EvaluatorCache.getScriptEvaluator("this does not compile", ScriptEvalInterface.class, new String[] {
+        Expression.TB, Expression.ROW, Expression.RESULT, Expression.STATE });
+  }
+}
@@ -0,0 +1,97 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.HeavyHitterSketch;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.network.partition.HybridHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class HybridHashPartitionFunctionTest {
+
+  private static final int NUM_WORKERS = 4;
+  private static final int HEAVY_KEY = -1;
+
+  /*
+   * Generates a batch with the following schema: a (int), b (int), where a is HEAVY_KEY in every other tuple.
+   */
+  private TupleBatch generateSkewedBatch() {
+    final Schema schema = Schema.ofFields("a", Type.INT_TYPE, "b", Type.INT_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 1000; i++) {
+      tbb.putInt(0, i % 2 == 0 ? HEAVY_KEY : i);
+      tbb.putInt(1, i);
+    }
+    return tbb.popAny();
+  }
+
+  private int[] heavyHashes() throws DbException {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(new TupleSource(generateSkewedBatch()), new int[] { 0 });
+    sketch.setMaxCounters(10);
+    sketch.open(TestEnvVars.get());
+    Set<Integer> heavy = new HashSet<>();
+    while (!sketch.eos()) {
+      TupleBatch tb = sketch.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int i = 0; i < tb.numTuples(); i++) {
+        /* Each key occurs once except the heavy one. */
+        if (tb.getLong(1, i) > 100) {
+          heavy.add(tb.getInt(0, i));
+        }
+      }
+    }
+    sketch.close();
+    assertEquals(1, heavy.size());
+    return new int[] { heavy.iterator().next() };
+  }
+
+  @Test
+  public void testSketchFindsHeavyKey() throws DbException {
+    TupleBatch tb = generateSkewedBatch();
+    int[] hashes = new int[tb.numTuples()];
+    HashUtils.hashColumns(tb, new int[] { 0 }, hashes);
+    assertEquals(hashes[0], heavyHashes()[0]);
+  }
+
+  @Test
+  public void testSpreadAndBroadcast() throws DbException {
+    TupleBatch tb = generateSkewedBatch();
+    int[] heavy = heavyHashes();
+    HybridHashPartitionFunction spread = new HybridHashPartitionFunction(null, new int[] { 0 }, heavy, true);
+    spread.setNumPartitions(spread.numPartitionsForWorkers(NUM_WORKERS));
+    HybridHashPartitionFunction broadcast = new HybridHashPartitionFunction(null, new int[] { 0 }, heavy, false);
+    broadcast.setNumPartitions(broadcast.numPartitionsForWorkers(NUM_WORKERS));
+    assertEquals(NUM_WORKERS + 1, broadcast.numPartition());
+
+    int[] spreadPartitions = spread.partition(tb);
+    int[] broadcastPartitions = broadcast.partition(tb);
+    int[] heavyCounts = new int[NUM_WORKERS];
+    for (int i = 0; i < tb.numTuples(); i++) {
+      if (tb.getInt(0, i) == HEAVY_KEY) {
+        heavyCounts[spreadPartitions[i]]++;
+        assertEquals(NUM_WORKERS, broadcastPartitions[i]);
+      } else {
+        /* Light keys go to the same worker on both sides. */
+        assertEquals(spreadPartitions[i], broadcastPartitions[i]);
+        assertTrue(spreadPartitions[i] < NUM_WORKERS);
+      }
+    }
+    for (int count : heavyCounts) {
+      assertEquals(tb.numTuples() / 2 / NUM_WORKERS, count);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -36,7 +37,9 @@ import edu.washington.escience.myria.column.builder.LongColumnBuilder;
 import edu.washington.escience.myria.column.builder.StringColumnBuilder;
 import edu.washington.escience.myria.operator.agg.Aggregate;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
 import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
@@ -905,6 +908,33 @@ public class AggregateTest {
     mga.close();
   }
 
+  @Test
+  public void testMaxOfNegativeDoubles() throws Exception {
+    for (boolean noColumns : new boolean[] { true, false }) {
+      DoubleColumnBuilder builder = new DoubleColumnBuilder().appendDouble(-2.5).appendDouble(-1.5);
+      TupleBatch tb = doAggOpsToCol(builder, new AggregationOp[] { AggregationOp.MAX }, noColumns);
+      assertEquals(-1.5, tb.getDouble(0, 0), 0);
+    }
+  }
+
+  @Test
+  public void testStringAggsInOneAggregator() throws Exception {
+    final Schema schema = Schema.ofFields(Type.INT_TYPE, "g", Type.STRING_TYPE, "s");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (String value : new String[] { "b", "c", "a" }) {
+      tbb.putInt(0, 1);
+      tbb.putString(1, value);
+    }
+    final SingleGroupByAggregate agg =
+        new SingleGroupByAggregate(new TupleSource(tbb), 0, new SingleColumnAggregatorFactory(1, AggregationOp.COUNT,
+            AggregationOp.MIN, AggregationOp.MAX));
+    final TupleBatch result = drain(agg).popAny();
+    assertEquals(1, result.numTuples());
+    assertEquals(3L, result.getLong(1, 0));
+    assertEquals("a", result.getString(2, 0));
+    assertEquals("c", result.getString(3, 0));
+  }
+
   @Test(expected = ArithmeticException.class)
   public void testLongAggOverflow() throws Exception {
     LongColumnBuilder builder = new LongColumnBuilder().appendLong(Long.MAX_VALUE - 1).appendLong(3);
@@ -916,4 +946,108 @@ public class AggregateTest {
     LongColumnBuilder builder = new LongColumnBuilder().appendLong(Long.MIN_VALUE + 1).appendLong(-3);
     doAggOpsToCol(builder, new AggregationOp[] { AggregationOp.SUM }, true);
   }
+
+  /**
+   * @param op the operator.
+   * @return all the output of the operator.
+   * @throws DbException if there is an error.
+   */
+  private static TupleBatchBuffer drain(final Operator op) throws DbException {
+    op.open(TestEnvVars.get());
+    final TupleBatchBuffer result = new TupleBatchBuffer(op.getSchema());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        tb.compactInto(result);
+      }
+    }
+    op.close();
+    return result;
+  }
+
+  /**
+   * @param numTuples the number of tuples.
+   * @param numGroups the number of distinct values of the first two columns.
+   * @return tuples with two grouping columns followed by an INT, a LONG, a DOUBLE, a STRING and a DATETIME column.
+   */
+  private static TupleBatchBuffer groupedTuples(final int numTuples, final int numGroups) {
+    final Schema schema =
+        Schema.ofFields(Type.LONG_TYPE, "g1", Type.STRING_TYPE, "g2", Type.INT_TYPE, "i", Type.LONG_TYPE, "l",
+            Type.DOUBLE_TYPE, "d", Type.STRING_TYPE, "s", Type.DATETIME_TYPE, "t");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      final int group = (i * 7919) % numGroups;
+      tbb.putLong(0, group / 3);
+      tbb.putString(1, "g" + group % 3);
+      tbb.putInt(2, i % 101 - 50);
+      tbb.putLong(3, i);
+      /* Whole numbers, so that the sums do not depend on the order of the additions. */
+      tbb.putDouble(4, i % 37);
+      tbb.putString(5, "s" + i % 53);
+      tbb.putDateTime(6, new DateTime(2010, 1, 1, 0, 0).plusHours(i % 71));
+    }
+    return tbb;
+  }
+
+  /** @return aggregates over the columns of {@link #groupedTuples(int, int)}. */
+  private static AggregatorFactory[] partialFactories() {
+    return new AggregatorFactory[] {
+        new SingleColumnAggregatorFactory(2, AggregationOp.COUNT, AggregationOp.MIN, AggregationOp.MAX,
+            AggregationOp.SUM, AggregationOp.AVG, AggregationOp.STDEV),
+        new SingleColumnAggregatorFactory(3, AggregationOp.SUM, AggregationOp.AVG),
+        new SingleColumnAggregatorFactory(4, AggregationOp.MAX, AggregationOp.STDEV),
+        new SingleColumnAggregatorFactory(5, AggregationOp.MAX),
+        new SingleColumnAggregatorFactory(6, AggregationOp.MIN), new CountAllAggregatorFactory() };
+  }
+
+  @Test
+  public void testPartialMultiGroup() throws DbException {
+    final TupleBatchBuffer tbb = groupedTuples(3 * TupleBatch.BATCH_SIZE, 500);
+    final int[] groups = new int[] { 0, 1 };
+    final MultiGroupByAggregate full = new MultiGroupByAggregate(new TupleSource(tbb), groups, partialFactories());
+    final PartialAggregate partial = new PartialAggregate(new TupleSource(tbb), groups, partialFactories());
+    /* Flush the hash table many times, without switching to pass-through. */
+    partial.setMaxGroups(100);
+    partial.setMinReduction(0);
+    final MultiGroupByAggregate merge = new MultiGroupByAggregate(partial, groups, true, partialFactories());
+
+    final TupleBatchBuffer expected = drain(full);
+    final TupleBatchBuffer actual = drain(merge);
+    assertEquals(full.getSchema(), merge.getSchema());
+    assertEquals(500, expected.numTuples());
+    assertEquals(TestUtils.tupleBatchToTupleBag(expected), TestUtils.tupleBatchToTupleBag(actual));
+    assertFalse(partial.isPassThrough());
+  }
+
+  @Test
+  public void testPartialPassThrough() throws DbException {
+    final TupleBatchBuffer tbb = groupedTuples(3 * TupleBatch.BATCH_SIZE, TupleBatch.BATCH_SIZE);
+    final int[] groups = new int[] { 0, 1 };
+    final PartialAggregate partial = new PartialAggregate(new TupleSource(tbb), groups, partialFactories());
+    partial.setMaxGroups(1000);
+    final TupleBatchBuffer partials = drain(partial);
+    assertTrue(partial.isPassThrough());
+    /* The first full hash table saved nothing, so every later tuple is passed through. */
+    assertEquals(3 * TupleBatch.BATCH_SIZE, partials.numTuples());
+
+    final MultiGroupByAggregate full = new MultiGroupByAggregate(new TupleSource(tbb), groups, partialFactories());
+    final MultiGroupByAggregate merge =
+        new MultiGroupByAggregate(new TupleSource(partials), groups, true, partialFactories());
+    assertEquals(TestUtils.tupleBatchToTupleBag(drain(full)), TestUtils.tupleBatchToTupleBag(drain(merge)));
+  }
+
+  @Test
+  public void testPartialSingleGroup() throws DbException {
+    final TupleBatchBuffer tbb = groupedTuples(2 * TupleBatch.BATCH_SIZE + 17, 40);
+    final SingleGroupByAggregate full = new SingleGroupByAggregate(new TupleSource(tbb), 1, partialFactories());
+    final PartialAggregate partial = new PartialAggregate(new TupleSource(tbb), new int[] { 1 }, partialFactories());
+    partial.setMaxGroups(2);
+    partial.setMinReduction(0);
+    final SingleGroupByAggregate merge = new SingleGroupByAggregate(partial, 0, true, partialFactories());
+
+    final TupleBatchBuffer expected = drain(full);
+    assertEquals(full.getSchema(), merge.getSchema());
+    assertEquals(3, expected.numTuples());
+    assertEquals(TestUtils.tupleBatchToTupleBag(expected), TestUtils.tupleBatchToTupleBag(drain(merge)));
+  }
 }
@@ -6,7 +6,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -15,6 +19,7 @@ import com.google.common.collect.ImmutableList;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.io.ByteArraySource;
 import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.storage.TupleBatch;
 
@@ -97,6 +102,80 @@ public class BinaryFileScanTest {
     assertEquals(1291, getRowCount(bfs));
   }
 
+  /**
+   * @return the schema of the cosmo star files.
+   */
+  private static Schema starSchema() {
+    Type[] typeAr = { Type.LONG_TYPE, // iOrder
+        Type.FLOAT_TYPE, // mass
+        Type.FLOAT_TYPE, // x
+        Type.FLOAT_TYPE, // y
+        Type.FLOAT_TYPE, // z
+        Type.FLOAT_TYPE, // vx
+        Type.FLOAT_TYPE, // vy
+        Type.FLOAT_TYPE, // vz
+        Type.FLOAT_TYPE, // metals
+        Type.FLOAT_TYPE, // tform
+        Type.FLOAT_TYPE, // eps
+        Type.FLOAT_TYPE, // phi
+    };
+    return new Schema(Arrays.asList(typeAr));
+  }
+
+  @Test
+  /**
+   * Test that a memory-mapped local file is read the same as a stream, whole or in splits.
+   */
+  public void testMappedMatchesStream() throws Exception {
+    String filename =
+        "testdata" + File.separatorChar + "binaryfilescan" + File.separatorChar + "cosmo50cmb.256g2bwK.00024.star.bin";
+    byte[] bytes = Files.readAllBytes(Paths.get(filename));
+    List<String> expected = getRows(new BinaryFileScan(starSchema(), new ByteArraySource(bytes), true));
+    assertEquals(1291, expected.size());
+    for (int numSplits = 1; numSplits <= 4; ++numSplits) {
+      List<String> rows = new ArrayList<>();
+      for (int split = 0; split < numSplits; ++split) {
+        BinaryFileScan bfs = new BinaryFileScan(starSchema(), new FileSource(filename), true);
+        bfs.setSplit(split, numSplits);
+        rows.addAll(getRows(bfs));
+      }
+      assertEquals(expected, rows);
+    }
+  }
+
+  @Test
+  /**
+   * Test a memory-mapped file of a single column, which is copied in bulk, over several batches.
+   */
+  public void testMappedSingleColumn() throws Exception {
+    File file = File.createTempFile("BinaryFileScanTest", ".bin");
+    file.deleteOnExit();
+    int numRows = TupleBatch.BATCH_SIZE * 2 + 5;
+    generateBinaryFile(file.getPath(), new Type[] { Type.LONG_TYPE }, numRows);
+    BinaryFileScan bfs = new BinaryFileScan(Schema.ofFields(Type.LONG_TYPE, "x"), new FileSource(file.getPath()));
+    List<String> rows = getRows(bfs);
+    assertEquals(numRows, rows.size());
+    for (int i = 0; i < numRows; ++i) {
+      assertEquals(i + "|", rows.get(i));
+    }
+  }
+
+  @Test(expected = DbException.class)
+  /**
+   * Test that a memory-mapped file that ends in the middle of a row is an error.
+   */
+  public void testMappedPartialRow() throws Exception {
+    File file = File.createTempFile("BinaryFileScanTest", ".bin");
+    file.deleteOnExit();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(1);
+      raf.writeInt(2);
+      raf.writeInt(3);
+    }
+    getRowCount(new BinaryFileScan(Schema.ofFields(Type.INT_TYPE, "x", Type.INT_TYPE, "y"), new FileSource(file
+        .getPath())));
+  }
+
   /**
    * Generates a binary file with the given file name, type array and the number of row.
    * 
@@ -104,7 +183,6 @@ public class BinaryFileScanTest {
    * @param typeAr The type array.
    * @param row The number of row.
    */
-  @SuppressWarnings("unused")
   private void generateBinaryFile(String filename, Type[] typeAr, int row) {
     try {
       RandomAccessFile raf = new RandomAccessFile(filename, "rw");
@@ -162,6 +240,33 @@ public class BinaryFileScanTest {
     }
   }
 
+  /**
+   * Helper function used to run tests.
+   * 
+   * @param fileScan the FileScan object to be tested.
+   * @return all the tuples it produces, as strings.
+   * @throws DbException if the file does not match the given Schema.
+   */
+  private static List<String> getRows(BinaryFileScan fileScan) throws DbException {
+    fileScan.open(null);
+    List<String> rows = new ArrayList<>();
+    while (!fileScan.eos()) {
+      TupleBatch tb = fileScan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        StringBuilder sb = new StringBuilder();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          sb.append(tb.getObject(column, row)).append('|');
+        }
+        rows.add(sb.toString());
+      }
+    }
+    fileScan.close();
+    return rows;
+  }
+
   /**
    * Helper function used to run tests.
    * 
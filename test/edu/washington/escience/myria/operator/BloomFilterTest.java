@@ -0,0 +1,125 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+/**
+ * Tests building, merging, and applying Bloom filters.
+ */
+public class BloomFilterTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "val", Type.STRING_TYPE);
+
+  /**
+   * @param from the first key.
+   * @param to one past the last key.
+   * @return a source of tuples with keys in <code>[from, to)</code>.
+   */
+  private static TupleSource keys(final long from, final long to) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (long i = from; i < to; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, "" + i);
+    }
+    return new TupleSource(tbb);
+  }
+
+  /**
+   * @param op an operator.
+   * @return all the batches it produces.
+   * @throws DbException if there is an error.
+   */
+  private static List<TupleBatch> drain(final Operator op) throws DbException {
+    List<TupleBatch> batches = new ArrayList<>();
+    op.open(TestEnvVars.get());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        batches.add(tb);
+      }
+    }
+    op.close();
+    return batches;
+  }
+
+  /**
+   * @param op an operator whose tuples have a LONG key in column 0.
+   * @return the keys of all the tuples it produces.
+   * @throws DbException if there is an error.
+   */
+  private static Set<Long> drainKeys(final Operator op) throws DbException {
+    Set<Long> keys = new HashSet<>();
+    for (TupleBatch tb : drain(op)) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        keys.add(tb.getLong(0, row));
+      }
+    }
+    return keys;
+  }
+
+  @Test
+  public void testBuilderEmitsNonZeroWords() throws DbException {
+    BloomFilterBuilder builder = new BloomFilterBuilder(keys(0, 100), new int[] { 0 });
+    builder.setNumBits(1 << 12);
+    assertEquals(BloomFilter.WORDS_SCHEMA, builder.getSchema());
+    int numWords = 0;
+    for (TupleBatch tb : drain(builder)) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertTrue(tb.getLong(1, row) != 0);
+        assertTrue(tb.getInt(0, row) < (1 << 12) / 64);
+      }
+      numWords += tb.numTuples();
+    }
+    assertTrue(numWords > 0);
+  }
+
+  @Test
+  public void testSemiJoin() throws DbException {
+    BloomFilterBuilder builder = new BloomFilterBuilder(keys(0, 1000), new int[] { 0 });
+    BloomFilterSemiJoin semiJoin = new BloomFilterSemiJoin(keys(0, 100000), builder, new int[] { 0 });
+    assertEquals(SCHEMA, semiJoin.getSchema());
+    Set<Long> kept = drainKeys(semiJoin);
+    /* No false negatives. */
+    for (long i = 0; i < 1000; ++i) {
+      assertTrue(kept.contains(i));
+    }
+    /* Few false positives with the default size. */
+    assertTrue(kept.size() < 1000 + 1000);
+  }
+
+  @Test
+  public void testMergedFilters() throws DbException {
+    BloomFilterBuilder builder1 = new BloomFilterBuilder(keys(0, 500), new int[] { 0 });
+    BloomFilterBuilder builder2 = new BloomFilterBuilder(keys(2000, 2500), new int[] { 0 });
+    BloomFilterMerge merge = new BloomFilterMerge(new UnionAll(new Operator[] { builder1, builder2 }));
+    BloomFilterSemiJoin semiJoin = new BloomFilterSemiJoin(keys(0, 10000), merge, new int[] { 0 });
+    Set<Long> kept = drainKeys(semiJoin);
+    for (long i = 0; i < 500; ++i) {
+      assertTrue(kept.contains(i));
+      assertTrue(kept.contains(2000 + i));
+    }
+    assertTrue(kept.size() < 1000 + 100);
+  }
+
+  @Test
+  public void testEmptyFilterDropsEverything() throws DbException {
+    BloomFilterBuilder builder = new BloomFilterBuilder(keys(0, 0), new int[] { 0 });
+    BloomFilterSemiJoin semiJoin = new BloomFilterSemiJoin(keys(0, 1000), builder, new int[] { 0 });
+    assertEquals(0, drainKeys(semiJoin).size());
+  }
+}
@@ -2,6 +2,7 @@ package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
@@ -114,4 +115,20 @@ public class DupElimTest {
     assertEquals(3, ans.get(0).numTuples());
     assertEquals(1, ans.get(1).numTuples());
   }
+
+  @Test
+  public void testReservedMemory() throws DbException {
+    TupleSource src = new TupleSource(makeTestData());
+    StreamingStateWrapper dupElim = new StreamingStateWrapper(src, new DupElim());
+
+    dupElim.open(TestEnvVars.get());
+    assertEquals(0, dupElim.getReservedMemoryBytes());
+    while (!dupElim.eos()) {
+      dupElim.nextReady();
+    }
+    /* 4 unique tuples are kept. */
+    assertTrue(dupElim.getReservedMemoryBytes() >= 4 * dupElim.getSchema().estimatedTupleBytes());
+    dupElim.close();
+    assertEquals(0, dupElim.getReservedMemoryBytes());
+  }
 }
@@ -0,0 +1,120 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ExternalOrderByTest {
+
+  /** Few distinct values per column, so that there are many ties; seq tells the input order. */
+  private static final Schema SCHEMA = Schema.ofFields("seq", Type.LONG_TYPE, "i", Type.INT_TYPE, "s",
+      Type.STRING_TYPE, "d", Type.DOUBLE_TYPE, "b", Type.BOOLEAN_TYPE, "t", Type.DATETIME_TYPE, "f", Type.FLOAT_TYPE);
+
+  /**
+   * @param numTuples the number of tuples.
+   * @param batchSize the number of tuples per batch.
+   * @return a source of random tuples.
+   */
+  private static TupleSource randomTuples(final int numTuples, final int batchSize) {
+    final Random random = new Random(11);
+    final List<TupleBatch> batches = new ArrayList<TupleBatch>();
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      if (i % batchSize == 0 && tbb.numTuples() > 0) {
+        batches.add(tbb.popAny());
+      }
+      tbb.putLong(0, i);
+      tbb.putInt(1, random.nextInt(20) - 10);
+      tbb.putString(2, "s" + random.nextInt(30));
+      tbb.putDouble(3, random.nextInt(10) / 4.0 - 1);
+      tbb.putBoolean(4, random.nextBoolean());
+      tbb.putDateTime(5, new DateTime(random.nextInt(15) * 1000L));
+      tbb.putFloat(6, random.nextInt(10) / 4f);
+    }
+    batches.addAll(tbb.getAll());
+    return new TupleSource(batches, SCHEMA);
+  }
+
+  /**
+   * @param root an operator.
+   * @return the tuples produced by the operator, as a list of rows.
+   * @throws DbException if the operator fails.
+   */
+  private static List<List<Object>> drain(final Operator root) throws DbException {
+    final List<List<Object>> rows = new ArrayList<List<Object>>();
+    root.open(null);
+    while (!root.eos()) {
+      final TupleBatch tb = root.nextReady();
+      if (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          final List<Object> tuple = new ArrayList<Object>();
+          for (int column = 0; column < tb.numColumns(); ++column) {
+            tuple.add(tb.getObject(column, row));
+          }
+          rows.add(tuple);
+        }
+      }
+    }
+    root.close();
+    return rows;
+  }
+
+  /**
+   * Compare ExternalOrderBy with InMemoryOrderBy, which sorts stably too.
+   *
+   * @param numTuples the number of input tuples.
+   * @param batchSize the number of tuples per input batch.
+   * @param memoryBudget the memory budget.
+   * @param sortColumns the sort columns.
+   * @param ascending the sort directions.
+   * @throws DbException if the operators fail.
+   */
+  private static void checkSort(final int numTuples, final int batchSize, final long memoryBudget,
+      final int[] sortColumns, final boolean[] ascending) throws DbException {
+    final List<List<Object>> expected =
+        drain(new InMemoryOrderBy(randomTuples(numTuples, batchSize), sortColumns, ascending));
+    final ExternalOrderBy order =
+        new ExternalOrderBy(randomTuples(numTuples, batchSize), sortColumns, ascending);
+    order.setMemoryBudget(memoryBudget);
+    final List<List<Object>> actual = drain(order);
+    assertEquals(numTuples, actual.size());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testInMemory() throws DbException {
+    checkSort(52300, TupleBatch.BATCH_SIZE, 0, new int[] { 1, 2 }, new boolean[] { true, false });
+    checkSort(52300, 777, 0, new int[] { 3, 4, 5 }, new boolean[] { false, true, false });
+    checkSort(52300, TupleBatch.BATCH_SIZE, 0, new int[] { 6 }, new boolean[] { true });
+  }
+
+  @Test
+  public void testSpilled() throws DbException {
+    checkSort(52300, 1000, 5000, new int[] { 2, 1 }, new boolean[] { true, true });
+    checkSort(52300, 333, 1000, new int[] { 5, 3 }, new boolean[] { false, true });
+  }
+
+  @Test
+  public void testMultiPassMerge() throws DbException {
+    /* More runs than can be merged at once. */
+    final int numTuples = 250 * (ExternalSort.MAX_MERGE_FAN_IN * 2 + 5) + 17;
+    checkSort(numTuples, 250, 250, new int[] { 1, 4 }, new boolean[] { false, true });
+  }
+
+  @Test
+  public void testEmpty() throws DbException {
+    checkSort(0, 1, 0, new int[] { 0 }, new boolean[] { true });
+    checkSort(0, 1, 10, new int[] { 0 }, new boolean[] { true });
+  }
+}
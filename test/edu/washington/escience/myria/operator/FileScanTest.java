@@ -3,9 +3,13 @@ package edu.washington.escience.myria.operator;
 import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -228,4 +232,75 @@ public class FileScanTest {
             Type.INT_TYPE, Type.INT_TYPE));
     assertEquals(100, getRowCount(filename, schema, '|'));
   }
+
+  /**
+   * @param fileScan the FileScan object to be tested.
+   * @return all the tuples it produces, as strings.
+   * @throws DbException if the file does not match the given Schema.
+   */
+  private static List<String> getRows(final FileScan fileScan) throws DbException {
+    fileScan.open(null);
+    List<String> rows = new ArrayList<>();
+    while (!fileScan.eos()) {
+      TupleBatch tb = fileScan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        StringBuilder sb = new StringBuilder();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          sb.append(tb.getObject(column, row)).append('|');
+        }
+        rows.add(sb.toString());
+      }
+    }
+    fileScan.close();
+    return rows;
+  }
+
+  @Test
+  public void testLocalFileMatchesStream() throws Exception {
+    final String filename = Paths.get("testdata", "filescan", "random.csv").toString();
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    byte[] bytes = Files.readAllBytes(Paths.get(filename));
+    List<String> expected = getRows(new FileScan(new ByteArraySource(bytes), schema, ' '));
+    assertEquals(10000, expected.size());
+    assertEquals(expected, getRows(new FileScan(filename, schema, ' ')));
+  }
+
+  @Test
+  public void testLocalFileQuotedMatchesStream() throws Exception {
+    for (String name : new String[] { "two_col_string_quoted.txt", "two_col_string_escaped.txt" }) {
+      final String filename = Paths.get("testdata", "filescan", name).toString();
+      final Schema schema = new Schema(ImmutableList.of(Type.STRING_TYPE, Type.STRING_TYPE));
+      byte[] bytes = Files.readAllBytes(Paths.get(filename));
+      List<String> expected = getRows(new FileScan(new ByteArraySource(bytes), schema, null, null, '\\', null));
+      assertEquals(expected, getRows(new FileScan(filename, schema, null, null, '\\', null)));
+    }
+  }
+
+  @Test
+  public void testSplits() throws Exception {
+    File file = File.createTempFile("FileScanTest", ".csv");
+    file.deleteOnExit();
+    try (PrintStream printed = new PrintStream(file)) {
+      printed.print("a,b,c\r\n");
+      for (int i = 0; i < TupleBatch.BATCH_SIZE * 3; ++i) {
+        printed.print(i + "," + (i * 1000000007L) + "," + (i / 8.0) + "\r\n");
+      }
+    }
+    final Schema schema = Schema.ofFields(Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE);
+    for (int numSplits : new int[] { 1, 2, 7 }) {
+      List<String> rows = new ArrayList<>();
+      for (int split = 0; split < numSplits; ++split) {
+        FileScan scan = new FileScan(file.getPath(), schema, null, null, null, 1);
+        scan.setSplit(split, numSplits);
+        rows.addAll(getRows(scan));
+      }
+      assertEquals(TupleBatch.BATCH_SIZE * 3, rows.size());
+      for (int i = 0; i < rows.size(); ++i) {
+        assertEquals(i + "|" + (i * 1000000007L) + "|" + (i / 8.0) + "|", rows.get(i));
+      }
+    }
+  }
 }
@@ -21,8 +21,10 @@ import com.google.common.collect.ImmutableList;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.SortOrder;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.accessmethod.SQLiteInfo;
+import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.FSUtils;
 
@@ -87,6 +89,66 @@ public class SQLiteInsertTest {
     sqliteConnection.dispose();
   }
 
+  @Test
+  public void testSortedInsert() throws Exception {
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.SEVERE);
+    final RelationKey sortedKey = RelationKey.of("test", "test", "my_sorted_tuples");
+    final int numTuples = 3 * TupleBatch.BATCH_SIZE + 17;
+    final TupleBatchBuffer unsorted = new TupleBatchBuffer(schema);
+    final Random r = new Random();
+    for (int i = 0; i < numTuples; ++i) {
+      unsorted.putInt(0, r.nextInt(numTuples));
+      unsorted.putString(1, "value " + i);
+    }
+    final SortOrder sortOrder = SortOrder.of(new int[] { 0 }, new boolean[] { false });
+
+    final DbInsert insert =
+        new DbInsert(new TupleSource(unsorted), sortedKey, SQLiteInfo.of(tempFile.getAbsolutePath()), true);
+    insert.setSortOrder(sortOrder);
+    /* Spill sorted runs to disk. */
+    insert.setSortMemoryBudget(TupleBatch.BATCH_SIZE);
+    assertEquals(sortOrder, insert.writeSet().get(sortedKey).getSortOrder());
+    insert.open(null);
+    while (!insert.eos()) {
+      insert.nextReady();
+    }
+    insert.close();
+
+    /* The relation is indexed in its stored order, so the database sorts it with the index. */
+    final SQLiteConnection sqliteConnection = new SQLiteConnection(tempFile);
+    sqliteConnection.open(false);
+    final SQLiteStatement statement =
+        sqliteConnection.prepare("EXPLAIN QUERY PLAN SELECT * FROM "
+            + sortedKey.toString(MyriaConstants.STORAGE_SYSTEM_SQLITE) + " ORDER BY "
+            + schema.getColumnName(0) + " DESC;");
+    while (statement.step()) {
+      final String plan = statement.columnString(statement.columnCount() - 1);
+      assertTrue(plan, !plan.contains("TEMP B-TREE"));
+    }
+    sqliteConnection.dispose();
+
+    final DbQueryScan scan =
+        new DbQueryScan(SQLiteInfo.of(tempFile.getAbsolutePath()), sortedKey, schema, new int[] { 0 },
+            new boolean[] { false });
+    assertEquals(sortOrder, scan.getSortOrder());
+    scan.open(null);
+    int count = 0;
+    int last = Integer.MAX_VALUE;
+    while (!scan.eos()) {
+      final TupleBatch tb = scan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertTrue(tb.getInt(0, row) <= last);
+        last = tb.getInt(0, row);
+      }
+      count += tb.numTuples();
+    }
+    scan.close();
+    assertEquals(numTuples, count);
+  }
+
   /**
    * Cleanup what we created.
    * 
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
@@ -38,4 +39,30 @@ public class SymmetricHashJoinTest {
     Operator join = new SymmetricHashJoin(left, right, new int[] { 0 }, new int[] { 0 });
     join.open(TestEnvVars.get());
   }
+
+  @Test
+  public void testSpillingJoin() throws DbException {
+    SymmetricHashJoin join =
+        new SymmetricHashJoin(new TupleSource(JoinTestUtils.keyValueInput("l", 30000, 3000)),
+            new TupleSource(JoinTestUtils.keyValueInput("r", 20000, 4000)), new int[] { 0 }, new int[] { 0 });
+    long[] expected = JoinTestUtils.countAndSum(join);
+    assertEquals(150000L, expected[0]);
+
+    join =
+        new SymmetricHashJoin(new TupleSource(JoinTestUtils.keyValueInput("l", 30000, 3000)),
+            new TupleSource(JoinTestUtils.keyValueInput("r", 20000, 4000)), new int[] { 0 }, new int[] { 0 });
+    join.setMemoryBudget(1000);
+    assertArrayEquals(expected, JoinTestUtils.countAndSum(join));
+  }
+
+  @Test
+  public void testSpillingJoinSkewedKey() throws DbException {
+    SymmetricHashJoin join =
+        new SymmetricHashJoin(new TupleSource(JoinTestUtils.keyValueInput("l", 100, 1)),
+            new TupleSource(JoinTestUtils.keyValueInput("r", 2000, 1)), new int[] { 0 }, new int[] { 0 });
+    join.setMemoryBudget(100);
+    long[] result = JoinTestUtils.countAndSum(join);
+    assertEquals(200000L, result[0]);
+    assertEquals(2000L * (99 * 100 / 2) + 100L * (1999 * 2000 / 2), result[1]);
+  }
 }
@@ -1,9 +1,12 @@
 package edu.washington.escience.myria.operator.apply;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -13,6 +16,7 @@ import com.google.common.hash.Hashing;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.expression.AbsExpression;
 import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.CeilExpression;
@@ -647,4 +651,61 @@ public class ApplyTest {
     conditional.getOutputType(new ExpressionOperatorParameter());
   }
 
+  @Test
+  public void testBatchEvaluationMatchesRows() throws Exception {
+    final Schema schema =
+        Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.DOUBLE_TYPE, "d", Type.FLOAT_TYPE, "e",
+            Type.STRING_TYPE);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 1000; ++i) {
+      tbb.putInt(0, i - 500);
+      tbb.putLong(1, i * 31L);
+      tbb.putDouble(2, i / 7.0);
+      tbb.putFloat(3, i / 3.0f);
+      tbb.putString(4, "s" + (i % 13));
+    }
+    final TupleBatch tb = tbb.popAny();
+    final BitSet odd = new BitSet();
+    for (int i = 1; i < tb.numTuples(); i += 2) {
+      odd.set(i);
+    }
+
+    final ExpressionOperator a = new VariableExpression(0);
+    final ExpressionOperator b = new VariableExpression(1);
+    final ExpressionOperator c = new VariableExpression(2);
+    final ExpressionOperator d = new VariableExpression(3);
+    final ExpressionOperator e = new VariableExpression(4);
+    final List<ExpressionOperator> ops =
+        ImmutableList.of(new PlusExpression(a, a), new TimesExpression(a, b), new DivideExpression(c, d),
+            new MinusExpression(d, new ConstantExpression(1.5f)), new ModuloExpression(b, new ConstantExpression(7L)),
+            new AndExpression(new LessThanExpression(a, new ConstantExpression(0)), new EqualsExpression(e,
+                new ConstantExpression("s3"))), new ConditionalExpression(new GreaterThanExpression(c, d), b,
+                new LenExpression(e)), new LenExpression(e));
+
+    final ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(schema, -1);
+    for (ExpressionOperator op : ops) {
+      Expression expr = new Expression("x", op);
+      GenericEvaluator rows = new GenericEvaluator(expr, parameters);
+      rows.compile();
+      GenericEvaluator batches = new GenericEvaluator(expr, parameters);
+      assertTrue(batches.canEvaluateBatch());
+      batches.compileForBatches();
+      for (TupleBatch input : ImmutableList.of(tb, tb.filter(odd))) {
+        Column<?> expected = rows.evaluateColumn(input);
+        Column<?> actual = batches.evaluateColumn(input);
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+          assertEquals(expected.getObject(i), actual.getObject(i));
+        }
+      }
+    }
+
+    /* A string result cannot be written into a primitive array, so the rows are evaluated one by one. */
+    GenericEvaluator upper = new GenericEvaluator(new Expression("x", new ToUpperCaseExpression(e)), parameters);
+    assertFalse(upper.canEvaluateBatch());
+    upper.compileForBatches();
+    assertEquals("S3", upper.evaluateColumn(tb).getString(3));
+  }
+
 }
@@ -0,0 +1,194 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaConstants.FTMode;
+import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.LeafOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class LocalFragmentTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("x", Type.LONG_TYPE);
+
+  /**
+   * A subquery that holds the fragments it is given.
+   */
+  private static final class TestSubQuery extends LocalSubQuery {
+    private final Set<LocalFragment> fragments = new HashSet<LocalFragment>();
+
+    TestSubQuery() {
+      super(new SubQueryId(1, 0), FTMode.NONE, EnumSet.noneOf(ProfilingMode.class));
+    }
+
+    @Override
+    void startExecution() {
+    }
+
+    @Override
+    void init() {
+    }
+
+    @Override
+    void kill() {
+    }
+
+    @Override
+    public Set<Integer> getMissingWorkers() {
+      return new HashSet<Integer>();
+    }
+
+    @Override
+    LocalSubQueryFuture getExecutionFuture() {
+      return null;
+    }
+
+    @Override
+    Set<LocalFragment> getFragments() {
+      return fragments;
+    }
+  }
+
+  /**
+   * Returns the same batch until it is stopped.
+   */
+  private static final class EndlessSource extends LeafOperator {
+    private static final long serialVersionUID = 1L;
+    private final transient TupleBatch batch;
+    private final transient CountDownLatch started = new CountDownLatch(1);
+    private volatile boolean stopped;
+
+    EndlessSource(final TupleBatch batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    protected TupleBatch fetchNextReady() throws DbException {
+      if (stopped) {
+        setEOS();
+        return null;
+      }
+      started.countDown();
+      return batch;
+    }
+
+    @Override
+    protected Schema generateSchema() {
+      return batch.getSchema();
+    }
+
+    @Override
+    protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    }
+
+    @Override
+    protected void cleanup() throws DbException {
+    }
+  }
+
+  private IPCConnectionPool connectionPool;
+  private ExecutorService executor;
+  private TestSubQuery subQuery;
+
+  @Before
+  public void setUp() {
+    connectionPool =
+        new IPCConnectionPool(0, ImmutableMap.of(0, new SocketInfo("localhost", 0)), null, null,
+            new TransportMessageSerializer(), null, 1, 0);
+    executor = Executors.newSingleThreadExecutor();
+    subQuery = new TestSubQuery();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @param source the input of the fragment.
+   * @return a fragment of {@link #subQuery} that runs on {@link #executor}.
+   */
+  private LocalFragment newFragment(final LeafOperator source) {
+    LocalFragment fragment = new LocalFragment(connectionPool, subQuery, new SinkRoot(source), executor);
+    subQuery.fragments.add(fragment);
+    return fragment;
+  }
+
+  /**
+   * @param numBatches the number of batches.
+   * @return that many full batches of tuples.
+   */
+  private static TupleBatchBuffer batches(final int numBatches) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (long i = 0; i < numBatches * TupleBatch.BATCH_SIZE; ++i) {
+      tbb.putLong(0, i);
+    }
+    return tbb;
+  }
+
+  @Test
+  public void testEndlessFragmentYields() throws Exception {
+    EndlessSource endless = new EndlessSource(batches(1).popAny());
+    LocalFragment endlessFragment = newFragment(endless);
+    LocalFragment shortFragment = newFragment(new TupleSource(batches(3)));
+    ImmutableMap<String, Object> execEnvVars = ImmutableMap.of();
+    endlessFragment.init(execEnvVars);
+    shortFragment.init(execEnvVars);
+
+    endlessFragment.start();
+    assertTrue(endless.started.await(10, TimeUnit.SECONDS));
+    /* The only thread is busy with the endless fragment, which must yield it for this one to run. */
+    shortFragment.start();
+    assertTrue(shortFragment.getExecutionFuture().await(10, TimeUnit.SECONDS));
+    assertTrue(shortFragment.getExecutionFuture().isSuccess());
+    assertFalse(endlessFragment.isFinished());
+
+    endless.stopped = true;
+    assertTrue(endlessFragment.getExecutionFuture().await(10, TimeUnit.SECONDS));
+    assertTrue(endlessFragment.getExecutionFuture().isSuccess());
+  }
+
+  @Test
+  public void testExecutionQuantum() {
+    LocalFragment fragment = newFragment(new TupleSource(batches(1)));
+    assertEquals(MyriaConstants.SUBQUERY_EXECUTION_QUANTUM_NANOS, fragment.getExecutionQuantumNanos());
+
+    /* The fragments of a subquery split its quantum. */
+    for (int i = 1; i < 4; ++i) {
+      newFragment(new TupleSource(batches(1)));
+    }
+    assertEquals(MyriaConstants.SUBQUERY_EXECUTION_QUANTUM_NANOS / 4, fragment.getExecutionQuantumNanos());
+
+    /* But each runs for at least the minimum quantum. */
+    final long numFragments = MyriaConstants.SUBQUERY_EXECUTION_QUANTUM_NANOS
+        / MyriaConstants.MIN_FRAGMENT_EXECUTION_QUANTUM_NANOS * 2;
+    while (subQuery.fragments.size() < numFragments) {
+      newFragment(new TupleSource(batches(1)));
+    }
+    assertEquals(MyriaConstants.MIN_FRAGMENT_EXECUTION_QUANTUM_NANOS, fragment.getExecutionQuantumNanos());
+  }
+}
@@ -0,0 +1,192 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.ApplyEncoding;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.FileScanEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.coordinator.catalog.CatalogException;
+import edu.washington.escience.myria.coordinator.catalog.MasterCatalog;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.RandomExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+
+/**
+ * Tests when the stored results of a query can be reused.
+ */
+public class QueryResultCacheTest {
+
+  private static final RelationKey INPUT = RelationKey.of("test", "test", "input");
+  private static final RelationKey OUTPUT = RelationKey.of("test", "test", "output");
+  private static final Schema SCHEMA = Schema.ofFields("x", Type.LONG_TYPE);
+
+  private MasterCatalog catalog;
+  private QueryResultCache cache;
+
+  @Before
+  public void setUp() throws CatalogException {
+    /* Turn off SQLite logging, it's annoying. */
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.OFF);
+    catalog = MasterCatalog.createInMemory();
+    catalog.addWorker(1, "localhost:8001");
+    cache = new QueryResultCache(catalog, 2);
+  }
+
+  /**
+   * @param output the relation the query writes.
+   * @param overwrite whether the query overwrites it.
+   * @return a query that copies {@link #INPUT} to the output.
+   */
+  private static QueryEncoding copyQuery(final RelationKey output, final boolean overwrite) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = INPUT;
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 1;
+    insert.argChild = 0;
+    insert.relationKey = output;
+    insert.argOverwriteTable = overwrite;
+    QueryEncoding query = new QueryEncoding();
+    query.rawQuery = "copy";
+    query.logicalRa = "copy";
+    query.plan = new SubQueryEncoding(ImmutableList.of(PlanFragmentEncoding.of(scan, insert)));
+    return query;
+  }
+
+  /**
+   * @param emit the expression the query computes.
+   * @return a query that writes the expression over {@link #INPUT} to {@link #OUTPUT}.
+   */
+  private static QueryEncoding applyQuery(final ExpressionOperator emit) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = INPUT;
+    ApplyEncoding apply = new ApplyEncoding();
+    apply.opId = 1;
+    apply.argChild = 0;
+    apply.emitExpressions = ImmutableList.of(new Expression("x", emit));
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 2;
+    insert.argChild = 1;
+    insert.relationKey = OUTPUT;
+    insert.argOverwriteTable = true;
+    QueryEncoding query = new QueryEncoding();
+    query.rawQuery = "apply";
+    query.logicalRa = "apply";
+    query.plan = new SubQueryEncoding(ImmutableList.of(PlanFragmentEncoding.of(scan, apply, insert)));
+    return query;
+  }
+
+  /**
+   * Write a relation, as a query would.
+   *
+   * @param relation the relation.
+   * @throws CatalogException if there is an error in the catalog.
+   */
+  private void write(final RelationKey relation) throws CatalogException {
+    long queryId = catalog.newQuery(copyQuery(relation, true));
+    RelationWriteMetadata meta = new RelationWriteMetadata(relation, SCHEMA, true, false);
+    meta.addWorker(1);
+    catalog.updateRelationMetadata(ImmutableMap.of(relation, meta), new SubQueryId(queryId, 0));
+  }
+
+  @Test
+  public void testReuse() throws CatalogException {
+    write(INPUT);
+    QueryResultCache.Key key = cache.getKey(copyQuery(OUTPUT, true));
+    assertNotNull(key);
+    assertNull(cache.get(key));
+    write(OUTPUT);
+    cache.put(key, 7);
+
+    /* The same plan over the same inputs. */
+    assertEquals(Long.valueOf(7), cache.get(cache.getKey(copyQuery(OUTPUT, true))));
+    /* A different plan. */
+    assertNull(cache.get(cache.getKey(copyQuery(RelationKey.of("test", "test", "other"), true))));
+  }
+
+  @Test
+  public void testInputWritten() throws CatalogException {
+    write(INPUT);
+    QueryResultCache.Key key = cache.getKey(copyQuery(OUTPUT, true));
+    write(OUTPUT);
+    cache.put(key, 7);
+    write(INPUT);
+    assertNull(cache.get(cache.getKey(copyQuery(OUTPUT, true))));
+  }
+
+  @Test
+  public void testOutputWritten() throws CatalogException {
+    write(INPUT);
+    QueryResultCache.Key key = cache.getKey(copyQuery(OUTPUT, true));
+    write(OUTPUT);
+    cache.put(key, 7);
+    write(OUTPUT);
+    assertNull(cache.get(cache.getKey(copyQuery(OUTPUT, true))));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInputWrittenWhileRunning() throws CatalogException {
+    write(INPUT);
+    QueryResultCache.Key key = cache.getKey(copyQuery(OUTPUT, true));
+    write(INPUT);
+    write(OUTPUT);
+    cache.put(key, 7);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testNotCacheable() {
+    assertNull(cache.getKey(copyQuery(OUTPUT, false)));
+    FileScanEncoding scan = new FileScanEncoding();
+    scan.opId = 0;
+    QueryEncoding query = copyQuery(OUTPUT, true);
+    ((SubQueryEncoding) query.plan).fragments.get(0).operators.set(0, scan);
+    assertNull(cache.getKey(query));
+    /* Random numbers differ between runs. */
+    assertNotNull(cache.getKey(applyQuery(new VariableExpression(0))));
+    assertNull(cache.getKey(applyQuery(new PlusExpression(new VariableExpression(0), new RandomExpression()))));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws CatalogException {
+    RelationKey[] outputs =
+        new RelationKey[] {
+            RelationKey.of("test", "test", "a"), RelationKey.of("test", "test", "b"),
+            RelationKey.of("test", "test", "c") };
+    for (int i = 0; i < outputs.length; ++i) {
+      QueryResultCache.Key key = cache.getKey(copyQuery(outputs[i], true));
+      write(outputs[i]);
+      cache.put(key, i);
+      if (i == 1) {
+        /* Use the first entry, so that the second is the least recently used. */
+        assertNotNull(cache.get(cache.getKey(copyQuery(outputs[0], true))));
+      }
+    }
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(cache.getKey(copyQuery(outputs[0], true))));
+    assertNull(cache.get(cache.getKey(copyQuery(outputs[1], true))));
+    assertNotNull(cache.get(cache.getKey(copyQuery(outputs[2], true))));
+  }
+}
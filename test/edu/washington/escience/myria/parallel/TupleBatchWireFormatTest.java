@@ -0,0 +1,149 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
+import edu.washington.escience.myria.column.Utf8StringColumn;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class TupleBatchWireFormatTest {
+
+  /** A schema with a column of every type, and a second string column. */
+  private static final Schema SCHEMA = Schema.ofFields("b", Type.BOOLEAN_TYPE, "i", Type.INT_TYPE, "s",
+      Type.STRING_TYPE, "l", Type.LONG_TYPE, "f", Type.FLOAT_TYPE, "d", Type.DOUBLE_TYPE, "t", Type.DATETIME_TYPE,
+      "color", Type.STRING_TYPE);
+
+  /**
+   * @param numTuples the number of tuples.
+   * @return a batch of random tuples.
+   */
+  private static TupleBatch randomBatch(final int numTuples) {
+    final String[] colors = { "red", "green", "blue", "gr\u00fcn" };
+    final Random random = new Random(7);
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int row = 0; row < numTuples; ++row) {
+      tbb.putBoolean(0, random.nextBoolean());
+      tbb.putInt(1, random.nextInt());
+      tbb.putString(2, row % 3 == 0 ? "caf\u00e9 " + row : "row " + row + " \ud83d\ude00");
+      tbb.putLong(3, random.nextLong());
+      tbb.putFloat(4, random.nextFloat());
+      tbb.putDouble(5, random.nextDouble());
+      tbb.putDateTime(6, new DateTime(random.nextInt() * 1000L));
+      tbb.putString(7, colors[random.nextInt(colors.length)]);
+    }
+    return tbb.popAny();
+  }
+
+  /**
+   * @param expected the expected batch.
+   * @param actual the actual batch.
+   */
+  private static void assertBatchEquals(final TupleBatch expected, final TupleBatch actual) {
+    assertEquals(expected.getSchema(), actual.getSchema());
+    assertEquals(expected.numTuples(), actual.numTuples());
+    for (int column = 0; column < expected.numColumns(); ++column) {
+      for (int row = 0; row < expected.numTuples(); ++row) {
+        assertEquals(expected.getObject(column, row), actual.getObject(column, row));
+      }
+    }
+  }
+
+  /**
+   * @param tb a batch.
+   * @return the batch after a round trip through the wire format, from a copy of the bytes as a receiver gets them.
+   */
+  private static TupleBatch roundTrip(final TupleBatch tb) {
+    ChannelBuffer encoded = TupleBatchWireFormat.encode(tb);
+    assertTrue(TupleBatchWireFormat.isEncoded(encoded));
+    ChannelBuffer received = ChannelBuffers.copiedBuffer(encoded);
+    return TupleBatchWireFormat.decode(received, tb.getSchema());
+  }
+
+  @Test
+  public void testRoundTrip() {
+    TupleBatch tb = randomBatch(1234);
+    assertTrue(tb.getDataColumns().get(2) instanceof Utf8StringColumn);
+    assertTrue(tb.getDataColumns().get(7) instanceof DictionaryStringColumn);
+    TupleBatch decoded = roundTrip(tb);
+    assertTrue(decoded.getDataColumns().get(2) instanceof Utf8StringColumn);
+    assertTrue(decoded.getDataColumns().get(7) instanceof DictionaryStringColumn);
+    assertBatchEquals(tb, decoded);
+  }
+
+  @Test
+  public void testEmptyAndSliced() {
+    TupleBatch tb = randomBatch(100);
+    assertEquals(0, roundTrip(tb.prefix(0)).numTuples());
+    TupleBatch prefix = tb.prefix(37);
+    assertBatchEquals(prefix, roundTrip(prefix));
+  }
+
+  @Test
+  public void testUnpairedSurrogate() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("s", Type.STRING_TYPE));
+    tbb.putString(0, "a\ud800b");
+    TupleBatch decoded = roundTrip(tbb.popAny());
+    assertEquals("a?b", decoded.getString(0, 0));
+  }
+
+  @Test
+  public void testSerializerFormats() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer();
+    TupleBatch tb = randomBatch(10);
+    ChannelBuffer proto = serializer.serialize(tb, 0);
+    assertFalse(TupleBatchWireFormat.isEncoded(proto));
+    assertTrue(serializer.deSerialize(proto, null, SCHEMA) instanceof TransportMessage);
+    ChannelBuffer columnar = serializer.serialize(tb, serializer.getSupportedFormats());
+    assertTrue(TupleBatchWireFormat.isEncoded(columnar));
+    Object decoded = serializer.deSerialize(ChannelBuffers.copiedBuffer(columnar), null, SCHEMA);
+    assertBatchEquals(tb, (TupleBatch) decoded);
+    /* EOI batches are always TransportMessages */
+    ChannelBuffer eoi = serializer.serialize(TupleBatch.eoiTupleBatch(SCHEMA), serializer.getSupportedFormats());
+    assertFalse(TupleBatchWireFormat.isEncoded(eoi));
+  }
+
+  @Test
+  public void testSharedSerializedForms() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer();
+    int formats = serializer.getSupportedFormats();
+
+    /* A batch sent to one channel keeps nothing. */
+    TupleBatch single = randomBatch(10);
+    serializer.serialize(single, formats);
+    assertNull(single.getSerializedForm(formats));
+
+    /* A batch sent to several channels is encoded once, and every channel reads its own view. */
+    TupleBatch shared = randomBatch(100);
+    shared.shareSerializedForms();
+    ChannelBuffer first = serializer.serialize(shared, formats);
+    ChannelBuffer kept = shared.getSerializedForm(formats);
+    assertNotNull(kept);
+    first.skipBytes(first.readableBytes());
+    ChannelBuffer second = serializer.serialize(shared, formats);
+    assertSame(kept, shared.getSerializedForm(formats));
+    assertEquals(kept.readableBytes(), second.readableBytes());
+    assertBatchEquals(shared, (TupleBatch) serializer.deSerialize(ChannelBuffers.copiedBuffer(second), null, SCHEMA));
+
+    /* Remotes that read different formats get different forms. */
+    ChannelBuffer proto = serializer.serialize(shared, 0);
+    assertFalse(TupleBatchWireFormat.isEncoded(proto));
+    assertNotNull(shared.getSerializedForm(0));
+    assertTrue(TupleBatchWireFormat.isEncoded(serializer.serialize(shared, formats)));
+  }
+}
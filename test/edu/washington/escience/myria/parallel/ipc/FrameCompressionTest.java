@@ -0,0 +1,168 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.compression.CompressionException;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.junit.Test;
+
+public class FrameCompressionTest {
+  /** 1 Gbit/s. */
+  private static final long BANDWIDTH = 125 * 1000 * 1000;
+
+  /** The encoder of the local end. */
+  private EncoderEmbedder<ChannelBuffer> encoder;
+  /** The decoder of the remote end, null if the remote does not compress frames. */
+  private DecoderEmbedder<ChannelBuffer> remote;
+
+  /**
+   * @param length the length.
+   * @param numValues the number of distinct byte values.
+   * @param runLength the number of times each random byte is repeated.
+   * @param random the source of randomness.
+   * @return a frame of random bytes.
+   */
+  private static ChannelBuffer frame(final int length, final int numValues, final int runLength,
+      final Random random) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i += runLength) {
+      byte value = (byte) random.nextInt(numValues);
+      for (int j = i; j < Math.min(length, i + runLength); ++j) {
+        bytes[j] = value;
+      }
+    }
+    return ChannelBuffers.wrappedBuffer(bytes);
+  }
+
+  /**
+   * @param compressionCodecs the codecs advertised.
+   * @return a CONNECT message.
+   */
+  private static ChannelBuffer connect(final int compressionCodecs) {
+    return new IPCMessage.Meta.CONNECT(1, 0, compressionCodecs).serialize();
+  }
+
+  /**
+   * Create the local encoder and the remote decoder of a connection, and exchange the CONNECT messages.
+   *
+   * @param codec the codec of the local encoder.
+   * @param remoteCodecs the codecs the remote advertises, 0 if it does not compress frames.
+   * @return the local encoder.
+   */
+  private FrameCompressionEncoder connect(final CompressionCodec codec, final int remoteCodecs) {
+    FrameCompressionDecoder localDecoder = new FrameCompressionDecoder();
+    FrameCompressionEncoder handler = new FrameCompressionEncoder(codec, BANDWIDTH, localDecoder);
+    encoder = new EncoderEmbedder<ChannelBuffer>(handler);
+    remote = null;
+    if (remoteCodecs != 0) {
+      remote = new DecoderEmbedder<ChannelBuffer>(new FrameCompressionDecoder());
+    }
+    ChannelBuffer localConnect = connect(FrameCompressionDecoder.SUPPORTED_CODECS);
+    assertEquals(localConnect.readableBytes(), roundTrip(localConnect));
+    DecoderEmbedder<ChannelBuffer> local = new DecoderEmbedder<ChannelBuffer>(localDecoder);
+    ChannelBuffer remoteConnect = connect(remoteCodecs);
+    assertTrue(local.offer(remoteConnect.duplicate()));
+    assertEquals(remoteConnect, local.poll());
+    return handler;
+  }
+
+  /**
+   * Send a frame through the encoder and, if there is one, the remote decoder.
+   *
+   * @param frame the frame.
+   * @return the size of the encoded frame.
+   */
+  private int roundTrip(final ChannelBuffer frame) {
+    assertTrue(encoder.offer(frame.duplicate()));
+    ChannelBuffer encoded = ChannelBuffers.copiedBuffer(encoder.poll());
+    int encodedSize = encoded.readableBytes();
+    if (remote == null) {
+      assertEquals(frame, encoded);
+    } else {
+      assertTrue(remote.offer(encoded));
+      assertEquals(frame, remote.poll());
+    }
+    return encodedSize;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    Random random = new Random(5);
+    for (CompressionCodec codec : CompressionCodec.values()) {
+      connect(codec, FrameCompressionDecoder.SUPPORTED_CODECS);
+      /* small frames are never compressed */
+      assertEquals(11, roundTrip(frame(10, 2, 1, random)));
+      int size = roundTrip(frame(100000, 4, 8, random));
+      if (codec == CompressionCodec.NONE) {
+        assertEquals(100001, size);
+      } else {
+        assertTrue(codec + " " + size, size < 50000);
+      }
+    }
+  }
+
+  @Test
+  public void testRemoteWithoutCompression() {
+    Random random = new Random(5);
+    connect(CompressionCodec.LZ4, 0);
+    assertEquals(10, roundTrip(frame(10, 2, 1, random)));
+    assertEquals(100000, roundTrip(frame(100000, 4, 8, random)));
+  }
+
+  @Test
+  public void testRemoteBeforeCompression() {
+    /* A remote that predates frame compression sends a CONNECT message without codecs. */
+    ChannelBuffer connect = ChannelBuffers.buffer(1 + 2 * Integer.SIZE / Byte.SIZE);
+    connect.writeByte(IPCMessage.Header.CONNECT.ordinal());
+    connect.writeInt(1);
+    connect.writeInt(0);
+    DecoderEmbedder<ChannelBuffer> decoder = new DecoderEmbedder<ChannelBuffer>(new FrameCompressionDecoder());
+    assertTrue(decoder.offer(connect.duplicate()));
+    assertEquals(connect, decoder.poll());
+    ChannelBuffer frame = frame(100, 2, 1, new Random(5));
+    assertTrue(decoder.offer(frame.duplicate()));
+    assertEquals(frame, decoder.poll());
+  }
+
+  @Test
+  public void testUncompressedLengthBounded() {
+    DecoderEmbedder<ChannelBuffer> decoder = new DecoderEmbedder<ChannelBuffer>(new FrameCompressionDecoder());
+    assertTrue(decoder.offer(connect(FrameCompressionDecoder.SUPPORTED_CODECS)));
+    decoder.poll();
+    ChannelBuffer frame = ChannelBuffers.buffer(1 + Integer.SIZE / Byte.SIZE + 16);
+    frame.writeByte(CompressionCodec.LZ4.ordinal());
+    frame.writeInt(FrameCompressionEncoder.MAX_COMPRESSED_FRAME_BYTES + 1);
+    frame.writeZero(16);
+    try {
+      decoder.offer(frame);
+      fail();
+    } catch (CodecEmbedderException e) {
+      assertTrue(e.getCause() instanceof CompressionException);
+    }
+  }
+
+  @Test
+  public void testIncompressibleTurnsOff() {
+    Random random = new Random(5);
+    FrameCompressionEncoder handler = connect(CompressionCodec.LZ4, FrameCompressionDecoder.SUPPORTED_CODECS);
+    for (int i = 0; i < FrameCompressionEncoder.SAMPLE_FRAMES; ++i) {
+      assertTrue(handler.isCompressing());
+      assertEquals(10001, roundTrip(frame(10000, 256, 1, random)));
+    }
+    assertFalse(handler.isCompressing());
+    for (int i = 0; i < FrameCompressionEncoder.BACKOFF_FRAMES; ++i) {
+      roundTrip(frame(10000, 4, 8, random));
+    }
+    assertTrue(handler.isCompressing());
+    assertTrue(roundTrip(frame(10000, 4, 8, random)) < 5000);
+  }
+}
@@ -0,0 +1,78 @@
+package edu.washington.escience.myria.profiling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.parallel.ResourceStats;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+public class ProfilingLoggerTest {
+
+  /** The number of tuples written to each relation. */
+  private Map<RelationKey, Integer> written;
+  private ProfilingLogger logger;
+
+  @Before
+  public void setUp() {
+    written = new HashMap<RelationKey, Integer>();
+    logger = new ProfilingLogger(new ProfilingLogger.Sink() {
+      @Override
+      public void insert(final RelationKey relationKey, final TupleBatch tupleBatch) {
+        Integer count = written.get(relationKey);
+        written.put(relationKey, (count == null ? 0 : count) + tupleBatch.numTuples());
+      }
+    });
+  }
+
+  /**
+   * @param count how many resource stats to record.
+   */
+  private void recordResources(final int count) {
+    for (int i = 0; i < count; ++i) {
+      logger.recordResource(new ResourceStats(i, 0, MyriaConstants.MEMORY_RESERVED_MEASUREMENT, i, 1, 0));
+    }
+  }
+
+  @Test
+  public void testFlushWritesAllPending() throws Exception {
+    final int numRecords = TupleBatch.BATCH_SIZE * 2 + 7;
+    recordResources(numRecords);
+    assertEquals(0, written.size());
+    logger.flush();
+    assertEquals(Integer.valueOf(numRecords), written.get(MyriaConstants.RESOURCE_PROFILING_RELATION));
+    assertEquals(0, logger.getNumDropped());
+  }
+
+  @Test
+  public void testDropWhenFull() throws Exception {
+    final int numExtra = 5;
+    recordResources(ProfilingLogger.MAX_PENDING_RECORDS + numExtra);
+    assertEquals(numExtra, logger.getNumDropped());
+    logger.flush();
+    assertEquals(Integer.valueOf(ProfilingLogger.MAX_PENDING_RECORDS), written
+        .get(MyriaConstants.RESOURCE_PROFILING_RELATION));
+
+    /* Once the queue is drained, records are accepted again. */
+    recordResources(1);
+    logger.flush();
+    assertEquals(numExtra, logger.getNumDropped());
+    assertEquals(Integer.valueOf(ProfilingLogger.MAX_PENDING_RECORDS + 1), written
+        .get(MyriaConstants.RESOURCE_PROFILING_RELATION));
+  }
+
+  @Test
+  public void testNothingRecordedAfterClose() throws Exception {
+    logger.close();
+    recordResources(3);
+    logger.flush();
+    assertEquals(0, written.size());
+    assertEquals(0, logger.getNumDropped());
+  }
+}
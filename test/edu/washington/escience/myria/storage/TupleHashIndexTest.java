@@ -0,0 +1,105 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class TupleHashIndexTest {
+
+  /**
+   * @param index the index.
+   * @param hashCode a hash code.
+   * @return the rows with the given hash code, in the order the index returns them.
+   */
+  private static IntArrayList rowsOf(final TupleHashIndex index, final int hashCode) {
+    IntArrayList ret = new IntArrayList();
+    for (int row = index.first(hashCode); row != TupleHashIndex.NONE; row = index.next(row)) {
+      ret.add(row);
+    }
+    return ret;
+  }
+
+  /**
+   * @param index the index.
+   * @param hashCode a hash code.
+   * @param key a key.
+   * @return the rows with the given key, in the order the index returns them.
+   */
+  private static IntArrayList rowsOf(final TupleHashIndex index, final int hashCode, final long key) {
+    IntArrayList ret = new IntArrayList();
+    for (int row = index.first(hashCode, key); row != TupleHashIndex.NONE; row = index.next(row, key)) {
+      ret.add(row);
+    }
+    return ret;
+  }
+
+  @Test
+  public void testChainsKeepInsertionOrder() {
+    final int numRows = 100000;
+    final int numHashes = 1000;
+    TupleHashIndex index = new TupleHashIndex();
+    for (int row = 0; row < numRows; ++row) {
+      /* spread the hash codes over the high bits only, as a partitioned hash table sees them. */
+      index.add((row % numHashes) << 16);
+    }
+    assertEquals(numRows, index.size());
+    for (int h = 0; h < numHashes; ++h) {
+      IntArrayList rows = rowsOf(index, h << 16);
+      assertEquals(numRows / numHashes, rows.size());
+      for (int i = 0; i < rows.size(); ++i) {
+        assertEquals(h + i * numHashes, rows.get(i));
+      }
+    }
+    assertEquals(TupleHashIndex.NONE, index.first(1));
+  }
+
+  @Test
+  public void testKeysWithSameHashCode() {
+    TupleHashIndex index = new TupleHashIndex(true);
+    assertTrue(index.storesKeys());
+    index.add(7, 100L);
+    index.add(7, 200L);
+    index.add(7, 100L);
+    index.add(8, 100L);
+    assertEquals(IntArrayList.newListWith(0, 2), rowsOf(index, 7, 100L));
+    assertEquals(IntArrayList.newListWith(1), rowsOf(index, 7, 200L));
+    assertEquals(IntArrayList.newListWith(3), rowsOf(index, 8, 100L));
+    assertEquals(new IntArrayList(), rowsOf(index, 8, 200L));
+    assertEquals(IntArrayList.newListWith(0, 1, 2), rowsOf(index, 7));
+  }
+
+  @Test
+  public void testKeysSurviveGrowth() {
+    final int numRows = 10000;
+    TupleHashIndex index = new TupleHashIndex(true);
+    for (int row = 0; row < numRows; ++row) {
+      index.add(row % 10, row);
+    }
+    for (int row = 0; row < numRows; ++row) {
+      assertEquals(IntArrayList.newListWith(row), rowsOf(index, row % 10, row));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddKeyToIndexWithoutKeys() {
+    new TupleHashIndex().add(0, 0L);
+  }
+
+  @Test
+  public void testIsPrimitiveKey() {
+    Schema schema =
+        Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.STRING_TYPE, "d", Type.DOUBLE_TYPE);
+    assertTrue(TupleHashIndex.isPrimitiveKey(schema, new int[] { 0 }));
+    assertTrue(TupleHashIndex.isPrimitiveKey(schema, new int[] { 1 }));
+    assertFalse(TupleHashIndex.isPrimitiveKey(schema, new int[] { 2 }));
+    assertFalse(TupleHashIndex.isPrimitiveKey(schema, new int[] { 3 }));
+    assertFalse(TupleHashIndex.isPrimitiveKey(schema, new int[] { 0, 1 }));
+  }
+}
@@ -0,0 +1,142 @@
+package edu.washington.escience.myria.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Checks that {@link HashUtils} computes exactly the hash codes that Guava's murmur3_128 computed before, since hash
+ * partitioning must not change.
+ */
+public class HashUtilsTest {
+  /** The seeds of {@link HashUtils}. */
+  private static final int[] SEEDS = { 243, 402653189, 24593, 786433, 3145739, 12289, 49157, 6151, 98317, 1572869, };
+  /** A batch with one column of every type. */
+  private static TupleBatch tb;
+
+  @BeforeClass
+  public static void generateInput() {
+    Schema schema =
+        Schema.ofFields("b", Type.BOOLEAN_TYPE, "i", Type.INT_TYPE, "s", Type.STRING_TYPE, "l", Type.LONG_TYPE, "f",
+            Type.FLOAT_TYPE, "d", Type.DOUBLE_TYPE, "t", Type.DATETIME_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    Random random = new Random(42);
+    for (int row = 0; row < 1000; ++row) {
+      tbb.putBoolean(0, random.nextBoolean());
+      tbb.putInt(1, random.nextInt());
+      StringBuilder sb = new StringBuilder();
+      for (int c = random.nextInt(40); c > 0; --c) {
+        sb.append((char) random.nextInt(Character.MAX_VALUE));
+      }
+      tbb.putString(2, sb.toString());
+      tbb.putLong(3, random.nextLong());
+      tbb.putFloat(4, random.nextFloat());
+      tbb.putDouble(5, random.nextDouble());
+      tbb.putDateTime(6, new DateTime(random.nextInt() * 1000L));
+    }
+    tb = tbb.popAny();
+  }
+
+  /**
+   * The way HashUtils used to hash a value.
+   *
+   * @param hasher the hasher.
+   * @param column the column.
+   * @param row the row.
+   */
+  private static void guavaAddValue(final Hasher hasher, final int column, final int row) {
+    switch (tb.getSchema().getColumnType(column)) {
+      case BOOLEAN_TYPE:
+        hasher.putBoolean(tb.getBoolean(column, row));
+        break;
+      case DATETIME_TYPE:
+        hasher.putObject(tb.getDateTime(column, row), TypeFunnel.INSTANCE);
+        break;
+      case DOUBLE_TYPE:
+        hasher.putDouble(tb.getDouble(column, row));
+        break;
+      case FLOAT_TYPE:
+        hasher.putFloat(tb.getFloat(column, row));
+        break;
+      case INT_TYPE:
+        hasher.putInt(tb.getInt(column, row));
+        break;
+      case LONG_TYPE:
+        hasher.putLong(tb.getLong(column, row));
+        break;
+      case STRING_TYPE:
+        hasher.putObject(tb.getString(column, row), TypeFunnel.INSTANCE);
+        break;
+    }
+  }
+
+  /**
+   * @param columns the columns.
+   * @param row the row.
+   * @param seedIndex the seed.
+   * @return the hash code that Guava computes for the given columns of the row.
+   */
+  private static int guavaHash(final int[] columns, final int row, final int seedIndex) {
+    Hasher hasher = Hashing.murmur3_128(SEEDS[seedIndex]).newHasher();
+    for (int column : columns) {
+      guavaAddValue(hasher, column, row);
+    }
+    return hasher.hash().asInt();
+  }
+
+  @Test
+  public void testHashValueMatchesGuava() {
+    int[] out = new int[tb.numTuples()];
+    for (int column = 0; column < tb.numColumns(); ++column) {
+      for (int seedIndex = 0; seedIndex < HashUtils.NUM_OF_HASHFUNCTIONS; ++seedIndex) {
+        HashUtils.hashColumn(tb, column, seedIndex, out);
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          int expected = guavaHash(new int[] { column }, row, seedIndex);
+          assertEquals(expected, HashUtils.hashValue(tb, column, row, seedIndex));
+          assertEquals(expected, out[row]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testHashSubRowMatchesGuava() {
+    /* Combinations that leave blocks partly filled at various offsets. */
+    int[][] columnSets =
+        { { 0, 1 }, { 1, 3 }, { 3, 1, 0 }, { 2, 1 }, { 1, 2, 3 }, { 0, 0, 0, 3, 3, 4 }, { 5, 6, 2, 0 },
+            { 4, 4, 4, 4, 4 }, { 2, 2, 0, 2 } };
+    int[] out = new int[tb.numTuples()];
+    for (int[] columns : columnSets) {
+      HashUtils.hashColumns(tb, columns, out);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        int expected = guavaHash(columns, row, 0);
+        assertEquals(expected, HashUtils.hashSubRow(tb, columns, row));
+        assertEquals(expected, out[row]);
+      }
+    }
+  }
+
+  @Test
+  public void testHashRowMatchesGuava() {
+    int[] all = new int[] { 0, 1, 2, 3, 4, 5, 6 };
+    int[] out = new int[tb.numTuples()];
+    HashUtils.hashRows(tb, out);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int expected = guavaHash(all, row, 0);
+      assertEquals(expected, HashUtils.hashRow(tb, row));
+      assertEquals(expected, out[row]);
+    }
+  }
+}
@@ -5,8 +5,10 @@ import java.util.List;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 
@@ -86,4 +88,43 @@ public final class JoinTestUtils {
 
     return ret;
   }
+
+  /**
+   * @param prefix the prefix of the column names.
+   * @param numTuples the number of tuples.
+   * @param numKeys the number of distinct keys.
+   * @return a relation of (key, value) pairs where key = value mod numKeys.
+   */
+  public static TupleBatchBuffer keyValueInput(final String prefix, final int numTuples, final int numKeys) {
+    TupleBatchBuffer tbb =
+        new TupleBatchBuffer(Schema.ofFields(prefix + "key", Type.LONG_TYPE, prefix + "value", Type.LONG_TYPE));
+    for (long i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i % numKeys);
+      tbb.putLong(1, i);
+    }
+    return tbb;
+  }
+
+  /**
+   * @param join the join to run.
+   * @return {number of result tuples, sum of all result values}.
+   * @throws DbException if the join fails.
+   */
+  public static long[] countAndSum(final Operator join) throws DbException {
+    join.open(TestEnvVars.get());
+    long count = 0;
+    long sum = 0;
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      count += tb.numTuples();
+      for (int i = 0; i < tb.numTuples(); ++i) {
+        sum += tb.getLong(1, i) + tb.getLong(3, i);
+      }
+    }
+    join.close();
+    return new long[] { count, sum };
+  }
 }
@@ -0,0 +1,80 @@
+package edu.washington.escience.myria.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Lz4BlockTest {
+
+  /**
+   * @param input the input.
+   * @param hashTable the hash table.
+   * @return the compressed length.
+   */
+  private static int roundTrip(final byte[] input, final int[] hashTable) {
+    /* compress from the middle of an array, to check the offsets. */
+    byte[] src = new byte[input.length + 10];
+    System.arraycopy(input, 0, src, 7, input.length);
+    byte[] compressed = new byte[Lz4Block.maxCompressedLength(input.length) + 3];
+    int compressedLength = Lz4Block.compress(src, 7, input.length, compressed, 3, hashTable);
+    assertTrue(compressedLength <= Lz4Block.maxCompressedLength(input.length));
+    byte[] output = new byte[input.length + 2];
+    Lz4Block.decompress(compressed, 3, compressedLength, output, 2, input.length);
+    byte[] actual = new byte[input.length];
+    System.arraycopy(output, 2, actual, 0, input.length);
+    assertArrayEquals(input, actual);
+    return compressedLength;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    int[] hashTable = Lz4Block.newHashTable();
+    Random random = new Random(3);
+    for (int length : new int[] { 0, 1, 5, 12, 13, 16, 100, 1000, 65536, 300000 }) {
+      byte[] randomBytes = new byte[length];
+      random.nextBytes(randomBytes);
+      roundTrip(randomBytes, hashTable);
+
+      byte[] zeros = new byte[length];
+      roundTrip(zeros, hashTable);
+
+      byte[] fewValues = new byte[length];
+      for (int i = 0; i < length; ++i) {
+        fewValues[i] = (byte) random.nextInt(4);
+      }
+      roundTrip(fewValues, hashTable);
+    }
+  }
+
+  @Test
+  public void testCompresses() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; ++i) {
+      sb.append("tuple ").append(i % 100).append(',');
+    }
+    byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+    assertTrue(roundTrip(text, Lz4Block.newHashTable()) < text.length / 5);
+    byte[] zeros = new byte[100000];
+    assertTrue(roundTrip(zeros, Lz4Block.newHashTable()) < 1000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncated() {
+    byte[] zeros = new byte[1000];
+    byte[] compressed = new byte[Lz4Block.maxCompressedLength(zeros.length)];
+    int compressedLength = Lz4Block.compress(zeros, 0, zeros.length, compressed, 0, Lz4Block.newHashTable());
+    Lz4Block.decompress(compressed, 0, compressedLength - 1, new byte[zeros.length], 0, zeros.length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongLength() {
+    byte[] zeros = new byte[1000];
+    byte[] compressed = new byte[Lz4Block.maxCompressedLength(zeros.length)];
+    int compressedLength = Lz4Block.compress(zeros, 0, zeros.length, compressed, 0, Lz4Block.newHashTable());
+    Lz4Block.decompress(compressed, 0, compressedLength, new byte[zeros.length + 1], 0, zeros.length + 1);
+  }
+}
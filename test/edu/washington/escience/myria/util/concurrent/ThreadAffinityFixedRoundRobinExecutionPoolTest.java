@@ -0,0 +1,40 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ThreadAffinityFixedRoundRobinExecutionPoolTest {
+
+  @Test
+  public void testNewTasksAvoidBusyThreads() throws Exception {
+    ThreadAffinityFixedRoundRobinExecutionPool pool = new ThreadAffinityFixedRoundRobinExecutionPool(2);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<Void> longTask = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        started.countDown();
+        release.await();
+        return null;
+      }
+    };
+    try {
+      pool.submit(longTask);
+      started.await();
+      ThreadAffinityExecutor busy = pool.getExecutor(longTask);
+      /* Both the round-robin choice and the busy thread's turn go to the idle thread. */
+      ThreadAffinityExecutor first = pool.nextExecutor();
+      ThreadAffinityExecutor second = pool.nextExecutor();
+      assertNotSame(busy, first);
+      assertSame(first, second);
+    } finally {
+      release.countDown();
+      pool.shutdown();
+    }
+  }
+}